@@ -0,0 +1,117 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joining a stream of owner, pet and visit events into owners, starting from an empty state
+ * <p>
+ * Each invocation joins {@value #EVENTS} events, the reported numbers are per event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JoiningStateBenchmark {
+
+    static final int EVENTS = 10_000;
+
+    /**
+     * Share of owner, pet and visit events in percent
+     */
+    @Param({"owner-heavy", "pet-heavy", "visit-heavy"})
+    public String mix;
+
+    private final List<Object> events = new ArrayList<>(EVENTS);
+    private Object[] copies;
+
+    @Setup(Level.Trial)
+    public void generateEvents() {
+        int[] shares;
+        switch (mix) {
+            case "owner-heavy":
+                shares = new int[]{70, 20, 10};
+                break;
+            case "pet-heavy":
+                shares = new int[]{10, 70, 20};
+                break;
+            case "visit-heavy":
+                shares = new int[]{5, 15, 80};
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mix " + mix);
+        }
+
+        Random random = new Random(42);
+        int owners = 0;
+        int pets = 0;
+        for (int i = 0; i < EVENTS; i++) {
+            int roll = random.nextInt(100);
+            if (roll < shares[0] || owners == 0) {
+                // Mostly new owners, some updates of existing ones
+                int ownerId = owners > 0 && random.nextInt(4) == 0 ? 1 + random.nextInt(owners) : ++owners;
+                events.add(new Owner(ownerId, "Jean" + ownerId, "Coleman"));
+            } else if (roll < shares[0] + shares[1] || pets == 0) {
+                int petId = pets > 0 && random.nextInt(4) == 0 ? 1 + random.nextInt(pets) : ++pets;
+                events.add(new Pet(petId, "Samantha" + petId, 1 + random.nextInt(owners)));
+            } else {
+                events.add(new Visit(1 + random.nextInt(pets), "Overall examination. Gave rabies shot."));
+            }
+        }
+        copies = new Object[EVENTS];
+    }
+
+    /**
+     * The join stores and updates the incoming items, every invocation needs fresh ones
+     */
+    @Setup(Level.Invocation)
+    public void copyEvents() {
+        for (int i = 0; i < EVENTS; i++) {
+            Object event = events.get(i);
+            if (event instanceof Owner) {
+                Owner owner = (Owner) event;
+                copies[i] = new Owner(owner.id, owner.firstName, owner.lastName);
+            } else if (event instanceof Pet) {
+                Pet pet = (Pet) event;
+                copies[i] = new Pet(pet.id, pet.name, pet.ownerId);
+            } else {
+                Visit visit = (Visit) event;
+                Visit copy = new Visit(visit.petId, visit.description);
+                copy.setKeywords(Arrays.asList("rabies shot", "overall examination"));
+                copies[i] = copy;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void join(Blackhole blackhole) {
+        JoiningState state = new JoiningState();
+        for (Object event : copies) {
+            blackhole.consume(state.join(event));
+        }
+    }
+}
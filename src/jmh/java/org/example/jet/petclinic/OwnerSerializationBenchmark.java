@@ -0,0 +1,101 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.json.JsonUtil;
+import com.hazelcast.jet.picocli.CommandLine;
+import org.elasticsearch.action.DocWriteRequest;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of joined owners into Elastic requests
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OwnerSerializationBenchmark {
+
+    @Param({"1", "10"})
+    public int pets;
+
+    @Param({"1", "20"})
+    public int visitsPerPet;
+
+    private PetClinicIndexJob job;
+    private Owner owner;
+
+    @Setup
+    public void setUp() {
+        job = new PetClinicIndexJob();
+        new CommandLine(job).parseArgs("--elastic-index", "petclinic-index");
+
+        owner = new Owner(1, "Jean", "Coleman");
+        for (int p = 0; p < pets; p++) {
+            Pet pet = new Pet(p, "Samantha" + p, owner.id);
+            for (int v = 0; v < visitsPerPet; v++) {
+                Visit visit = new Visit(pet.id, "Overall examination. Checked eyes, nose, legs. Gave rabies shot.");
+                visit.setKeywords(Arrays.asList("overall examination", "gave rabies shot", "checked eyes", "nose", "legs"));
+                pet.visits.add(visit);
+            }
+            owner.pets.add(pet);
+        }
+    }
+
+    @Benchmark
+    public String toJson() throws Exception {
+        return JsonUtil.toJson(owner);
+    }
+
+    /**
+     * Renders the owner from the JSON of the pets and visits kept by the previous invocation
+     */
+    @Benchmark
+    public JsonOutput renderFromFragments() {
+        return OwnerJson.render(owner);
+    }
+
+    /**
+     * Renders the owner with a pet changed since the previous invocation, as after a new visit
+     */
+    @Benchmark
+    public JsonOutput renderWithChangedPet() {
+        owner.pets.get(0).json = null;
+        return OwnerJson.render(owner);
+    }
+
+    /**
+     * Renders the owner with no pet and no visit rendered before
+     */
+    @Benchmark
+    public JsonOutput renderWithoutFragments() {
+        for (Pet pet : owner.pets) {
+            pet.json = null;
+            for (Visit visit : pet.visits) {
+                visit.json = null;
+            }
+        }
+        return OwnerJson.render(owner);
+    }
+
+    @Benchmark
+    public DocWriteRequest<?> mapOwnerToElasticRequest() throws Exception {
+        return job.mapOwnerToElasticRequest(owner);
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.jet.petclinic.rake;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyword extraction from visit descriptions of different lengths
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RakeBenchmark {
+
+    private static final String SHORT = "rabies shot";
+
+    private static final String MEDIUM = "Overall examination. Checked eyes, nose, legs. Gave rabies shot.";
+
+    private static final String LONG = "Owner reports that the dog has been vomiting and has had diarrhea " +
+            "for the last three days, appetite is reduced and the dog is lethargic. On examination the abdomen " +
+            "is tender, mucous membranes are pink and moist, temperature is slightly elevated. Blood sample " +
+            "taken for complete blood count and biochemistry, abdominal x-ray shows no foreign body. " +
+            "Prescribed bland diet, probiotics and anti-emetic medication for five days; follow-up visit " +
+            "scheduled in one week, owner advised to come back earlier if the vomiting continues.";
+
+    @Param({"short", "medium", "long"})
+    public String description;
+
+    private Rake rake;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        rake = new Rake("en");
+        switch (description) {
+            case "short":
+                text = SHORT;
+                break;
+            case "medium":
+                text = MEDIUM;
+                break;
+            case "long":
+                text = LONG;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown description " + description);
+        }
+    }
+
+    @Benchmark
+    public LinkedHashMap<String, Double> getKeywordsFromText() {
+        return rake.getKeywordsFromText(text);
+    }
+
+    @Benchmark
+    public List<String> topKeywords() {
+        return rake.topKeywords(text, 5);
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Visit;
+import org.example.jet.petclinic.store.BinaryInput;
+import org.example.jet.petclinic.store.BinaryOutput;
+
+import java.util.List;
+
+/**
+ * Compact binary form of the join aggregates kept in a {@link org.example.jet.petclinic.store.BinaryStore}
+ * <p>
+ * An owner is written with all its pets, a pet with all its visits. Visits are written
+ * by {@link ModelCodec}, names and keywords go through the dictionary of the record.
+ */
+final class AggregateCodec {
+
+    private static final int FORMAT = 7;
+
+    private AggregateCodec() {
+    }
+
+    static void writeOwner(BinaryOutput out, OwnerAggregate owner) {
+        out.writeByte(FORMAT);
+        out.writeNullableInt(owner.id);
+        out.writeDictionaryString(owner.firstName);
+        out.writeDictionaryString(owner.lastName);
+        out.writeVarLong(owner.fingerprint);
+        out.writeVarLong(owner.version);
+        out.writeByte(owner.split ? 1 : 0);
+        out.writeVarLong(owner.generation);
+        out.writeVarInt(owner.pets.size());
+        for (PetAggregate pet : owner.pets.values()) {
+            writePetFields(out, pet);
+        }
+    }
+
+    static OwnerAggregate readOwner(BinaryInput in) {
+        checkFormat(in);
+        OwnerAggregate owner = new OwnerAggregate(in.readNullableInt());
+        owner.firstName = in.readDictionaryString();
+        owner.lastName = in.readDictionaryString();
+        owner.fingerprint = in.readVarLong();
+        owner.version = in.readVarLong();
+        owner.split = in.readByte() != 0;
+        owner.generation = in.readVarLong();
+        int petCount = in.readVarInt();
+        for (int i = 0; i < petCount; i++) {
+            owner.putPet(readPetFields(in));
+        }
+        return owner;
+    }
+
+    static void writePet(BinaryOutput out, PetAggregate pet) {
+        out.writeByte(FORMAT);
+        writePetFields(out, pet);
+    }
+
+    static PetAggregate readPet(BinaryInput in) {
+        checkFormat(in);
+        return readPetFields(in);
+    }
+
+    private static void writePetFields(BinaryOutput out, PetAggregate pet) {
+        out.writeNullableInt(pet.id);
+        out.writeDictionaryString(pet.name);
+        out.writeNullableInt(pet.ownerId);
+        List<Visit> visits = pet.visits();
+        out.writeVarInt(visits.size());
+        for (Visit visit : visits) {
+            ModelCodec.writeVisit(out, visit);
+        }
+    }
+
+    private static PetAggregate readPetFields(BinaryInput in) {
+        PetAggregate pet = new PetAggregate(in.readNullableInt());
+        pet.name = in.readDictionaryString();
+        pet.ownerId = in.readNullableInt();
+        int visitCount = in.readVarInt();
+        for (int i = 0; i < visitCount; i++) {
+            pet.addVisit(ModelCodec.readVisit(in));
+        }
+        return pet;
+    }
+
+    private static void checkFormat(BinaryInput in) {
+        int format = in.readByte();
+        if (format != FORMAT) {
+            throw new IllegalStateException("Unknown aggregate format " + format);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.jet.petclinic;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.hazelcast.jet.cdc.ChangeRecord;
+import com.hazelcast.jet.cdc.Operation;
+import com.hazelcast.jet.cdc.ParsingException;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+
+import java.io.IOException;
+
+/**
+ * Decodes change records of the petclinic tables into model objects
+ * <p>
+ * The JSON of the record value is read with a streaming parser, only the columns of the
+ * model are read, all other fields, e.g. the Debezium metadata, are skipped without
+ * building a map of the whole record.
+ * <p>
+ * A deleted row is decoded from the values before the deletion and wrapped in a {@link Deletion}.
+ */
+final class ChangeRecordDecoder {
+
+    static final String OWNERS_TABLE = "owners";
+    static final String PETS_TABLE = "pets";
+    static final String VISITS_TABLE = "visits";
+
+    // Thread safe, parsers are created per record
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private ChangeRecordDecoder() {
+    }
+
+    static Object decode(ChangeRecord change) throws ParsingException {
+        Object row = decodeRow(change);
+        setTimestamp(row, change.timestamp());
+        return change.operation() == Operation.DELETE ? new Deletion(row) : row;
+    }
+
+    private static void setTimestamp(Object row, long timestamp) {
+        if (row instanceof Owner) {
+            ((Owner) row).timestamp = timestamp;
+        } else if (row instanceof Pet) {
+            ((Pet) row).timestamp = timestamp;
+        } else {
+            ((Visit) row).timestamp = timestamp;
+        }
+    }
+
+    private static Object decodeRow(ChangeRecord change) throws ParsingException {
+        String table = change.table();
+        String json = change.value().toJson();
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ParsingException("Expected a JSON object in " + table + " record: " + json);
+            }
+            switch (table) {
+                case OWNERS_TABLE:
+                    return decodeOwner(parser);
+                case PETS_TABLE:
+                    return decodePet(parser);
+                case VISITS_TABLE:
+                    return decodeVisit(parser);
+                default:
+                    throw new IllegalStateException("Unknown table " + table);
+            }
+        } catch (IOException e) {
+            throw new ParsingException("Parsing " + table + " record failed: " + json, e);
+        }
+    }
+
+    private static Owner decodeOwner(JsonParser parser) throws IOException {
+        Integer id = null;
+        String firstName = null;
+        String lastName = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = readInt(parser);
+                    break;
+                case "first_name":
+                    firstName = readString(parser);
+                    break;
+                case "last_name":
+                    lastName = readString(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new Owner(id, firstName, lastName);
+    }
+
+    private static Pet decodePet(JsonParser parser) throws IOException {
+        Integer id = null;
+        String name = null;
+        Integer ownerId = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = readInt(parser);
+                    break;
+                case "name":
+                    name = readString(parser);
+                    break;
+                case "owner_id":
+                    ownerId = readInt(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new Pet(id, name, ownerId);
+    }
+
+    private static Visit decodeVisit(JsonParser parser) throws IOException {
+        Integer id = null;
+        Integer petId = null;
+        String description = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = readInt(parser);
+                    break;
+                case "pet_id":
+                    petId = readInt(parser);
+                    break;
+                case "description":
+                    description = readString(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new Visit(id, petId, description);
+    }
+
+    private static Integer readInt(JsonParser parser) throws IOException {
+        return parser.getCurrentToken() == JsonToken.VALUE_NULL ? null : parser.getIntValue();
+    }
+
+    private static String readString(JsonParser parser) throws IOException {
+        return parser.getCurrentToken() == JsonToken.VALUE_NULL ? null : parser.getText();
+    }
+}
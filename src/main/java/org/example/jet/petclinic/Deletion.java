@@ -0,0 +1,29 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+
+import java.io.Serializable;
+
+/**
+ * Deleted row of an owner, a pet or a visit, the row holds the values before the deletion
+ */
+final class Deletion implements Serializable {
+
+    final Object row;
+
+    Deletion(Object row) {
+        if (!(row instanceof Owner || row instanceof Pet || row instanceof Visit)) {
+            throw new IllegalArgumentException("Unknown type " + row.getClass());
+        }
+        this.row = row;
+    }
+
+    @Override
+    public String toString() {
+        return "Deletion{" +
+                "row=" + row +
+                '}';
+    }
+}
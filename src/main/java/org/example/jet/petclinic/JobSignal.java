@@ -0,0 +1,91 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.core.ProcessorSupplier;
+import com.hazelcast.topic.ITopic;
+import com.hazelcast.topic.MessageListener;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Progress the job reports to its launcher through a topic named after the job
+ * <p>
+ * The launcher subscribes before it submits the job, so it learns that the job started
+ * or that the bootstrap scan is done without polling.
+ */
+final class JobSignal implements Serializable {
+
+    enum Kind {
+        /**
+         * The job started on the member with the source index
+         */
+        MEMBER_STARTED,
+        /**
+         * The scan processor with the source index has the value ranges left to scan
+         */
+        SCAN_PROGRESS,
+        /**
+         * The processor with the source index received the first change streamed from the
+         * binlog, the change data capture records the changes from here on
+         */
+        CHANGES_STARTED
+    }
+
+    final Kind kind;
+    final int source;
+    final int value;
+
+    private JobSignal(Kind kind, int source, int value) {
+        this.kind = kind;
+        this.source = source;
+        this.value = value;
+    }
+
+    static JobSignal memberStarted(int memberIndex) {
+        return new JobSignal(Kind.MEMBER_STARTED, memberIndex, 0);
+    }
+
+    static JobSignal scanProgress(int processorIndex, int remainingRanges) {
+        return new JobSignal(Kind.SCAN_PROGRESS, processorIndex, remainingRanges);
+    }
+
+    static JobSignal changesStarted(int processorIndex) {
+        return new JobSignal(Kind.CHANGES_STARTED, processorIndex, 0);
+    }
+
+    static String topicName(String jobName) {
+        return jobName + "-signals";
+    }
+
+    /**
+     * Publishes the signal to the topic of the job of the given context
+     */
+    static void publish(ProcessorSupplier.Context context, JobSignal signal) {
+        topic(context).publish(signal);
+    }
+
+    /**
+     * Subscribes the listener to the signals of the job of the given context, returns the
+     * registration to unsubscribe with
+     */
+    static UUID subscribe(ProcessorSupplier.Context context, MessageListener<JobSignal> listener) {
+        return topic(context).addMessageListener(listener);
+    }
+
+    static void unsubscribe(ProcessorSupplier.Context context, UUID registration) {
+        topic(context).removeMessageListener(registration);
+    }
+
+    private static ITopic<JobSignal> topic(ProcessorSupplier.Context context) {
+        return context.jetInstance().getHazelcastInstance().getTopic(topicName(context.jobConfig().getName()));
+    }
+
+    @Override
+    public String toString() {
+        return "JobSignal{" +
+                "kind=" + kind +
+                ", source=" + source +
+                ", value=" + value +
+                '}';
+    }
+}
@@ -1,91 +1,745 @@
 package org.example.jet.petclinic;
 
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.core.metrics.Unit;
+import org.example.jet.petclinic.metrics.Histogram;
 import org.example.jet.petclinic.model.Owner;
 import org.example.jet.petclinic.model.Pet;
 import org.example.jet.petclinic.model.Visit;
+import org.example.jet.petclinic.store.BinaryInput;
+import org.example.jet.petclinic.store.BinaryOutput;
+import org.example.jet.petclinic.store.BinaryStore;
+import org.example.jet.petclinic.store.IntLongMap;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * Joins owners, pets and visits into owners with pets and visits
+ * <p>
+ * The collected data is kept in mutable aggregates that are updated in place,
+ * an immutable {@link Owner} is built only when it is emitted downstream.
+ * <p>
+ * Owners with their pets and visits are kept encoded in a {@link BinaryStore}, on heap,
+ * off-heap or in memory-mapped files. Only recently used owners are kept decoded, they are
+ * written back to the store when evicted and before the state is serialized into a snapshot,
+ * those not changed since they were last stored are not encoded again. The snapshot still
+ * contains all stored owners.
+ * <p>
+ * In the job each partition of owners has its own state, see {@link PetOwnerLookup}.
+ * <p>
+ * When the job starts with a scan of the database, {@link ScannedOwner}s are joined with
+ * the changes, visits are told apart by their ids so a visit both scanned and changed is
+ * joined once. Owners, pets and visits deleted while the scan runs are remembered in
+ * {@link ScanTombstones}, so their scanned rows don't bring them back.
+ * <p>
+ * Orphans - pets without an owner and owners known only from their pets - are evicted once
+ * they wait longer than {@link JoiningStateConfig#getOrphanTtlMillis()} or when there are
+ * more of them than {@link JoiningStateConfig#getMaxOrphansPerPartition()}.
+ * <p>
+ * Each owner keeps the {@link OwnerFingerprint} of its last emitted version. An update that
+ * leaves the owner as it was emitted, e.g. a change of a column that is not indexed or a
+ * replayed change, is suppressed.
+ * <p>
+ * Emitted updates carry a version of the owner that grows with its changes, see
+ * {@link OwnerUpdate#version}.
+ * <p>
+ * Owners with at least {@link JoiningStateConfig#getSplitOwnerPets()} pets or
+ * {@link JoiningStateConfig#getSplitOwnerVisits()} visits are split, their updates are
+ * {@link OwnerUpdate#split} so the sink writes each pet in a document of its own.
+ * <p>
+ * The first update of an owner after the state was created or restored from a snapshot is
+ * {@link OwnerUpdate#full}, the documents written before may be missing or stale, e.g. when
+ * the changes after the snapshot were written and are now replayed.
+ */
 class JoiningState implements Serializable {
 
-    Map<Integer, Owner> ownerIdToOwner = new HashMap<>();
-    Map<Integer, Owner> petIdToOwner = new HashMap<>();
+    private static final long NO_OWNER = Long.MIN_VALUE;
 
-    Map<Integer, Pet> petIdToPet = new HashMap<>();
+    private static final int FORMAT = 3;
+
+    // Versions of owners are binlog times in milliseconds followed by 20 bits of sequence
+    static final int VERSION_TIMESTAMP_SHIFT = 20;
+
+    private JoiningStateConfig config;
+
+    // Owners with their pets and visits
+    private BinaryStore owners;
+
+    // Pets that are not attached to an owner yet, because only their visits were joined
+    private BinaryStore orphanPets;
+
+    private final IntLongMap petIdToOwnerId = new IntLongMap(NO_OWNER);
+
+    // Orphan pets and owners known only from their pets, evicted when they wait for too long
+    private final OrphanIndex orphanPetIndex = new OrphanIndex();
+    private final OrphanIndex shellOwnerIndex = new OrphanIndex();
+
+    private ScanTombstones tombstones;
+
+    // Grows each time the state is restored, see OwnerAggregate#generation
+    private long generation = 1;
+
+    private transient Map<Integer, OwnerAggregate> activeOwners;
+    private transient BinaryOutput output;
+    private transient long nowMillis;
+    private transient long evictedOrphans;
+    private transient long suppressedUpdates;
+    private transient long splitOwners;
+
+    // Created lazily by reportMetrics(), user metrics can be created only on the processor thread
+    private transient Metric orphanPetsMetric;
+    private transient Metric shellOwnersMetric;
+    private transient Metric evictedOrphansMetric;
+    private transient Metric suppressedUpdatesMetric;
+    private transient Metric splitOwnersMetric;
+    private transient Metric ownersMetric;
+    private transient Metric petsMetric;
+    private transient Histogram latencyHistogram;
+    private transient long reportedOrphanPets;
+    private transient long reportedShellOwners;
+    private transient long reportedEvictedOrphans;
+    private transient long reportedSuppressedUpdates;
+    private transient long reportedSplitOwners;
+    private transient long reportedOwners;
+    private transient long reportedPets;
+    private transient long countsReportedAtMillis;
+
+    JoiningState() {
+        this(new JoiningStateConfig());
+    }
+
+    JoiningState(JoiningStateConfig config) {
+        this.config = config;
+        this.owners = new BinaryStore(config.getMemory(), config.getDirectory());
+        this.orphanPets = new BinaryStore(config.getMemory(), config.getDirectory());
+        this.tombstones = new ScanTombstones(config.isBootstrap(), config.getMaxTombstonesPerPartition());
+        init();
+    }
+
+    private void init() {
+        output = new BinaryOutput();
+        activeOwners = new LinkedHashMap<Integer, OwnerAggregate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, OwnerAggregate> eldest) {
+                if (size() > config.getActiveOwnersPerPartition()) {
+                    store(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Applies the configuration of the job, a state restored from a snapshot has only the
+     * number of partitions it was saved with
+     * <p>
+     * The stores are moved to the configured memory, the limits apply from the next item on.
+     * Tombstones are kept only if the job scans the database.
+     *
+     * @throws IllegalStateException if the state was saved with another number of partitions
+     */
+    void configure(JoiningStateConfig config) {
+        if (this.config == config) {
+            return;
+        }
+        config.checkPartitions(this.config.getPartitions());
+        owners = config.inMemory(owners);
+        orphanPets = config.inMemory(orphanPets);
+        tombstones.configure(config.isBootstrap(), config.getMaxTombstonesPerPartition());
+        this.config = config;
+    }
 
     public Owner join(Object item) {
+        OwnerUpdate update = update(item);
+        return update == null ? null : update.owner;
+    }
+
+    /**
+     * Joins the item and returns the update of the owner it belongs to, or null if there
+     * is no owner to emit yet
+     */
+    OwnerUpdate update(Object item) {
+        return update(item, System.currentTimeMillis());
+    }
+
+    /**
+     * Joins the item at the given time, orphans that waited for too long are evicted first
+     */
+    OwnerUpdate update(Object item, long nowMillis) {
+        this.nowMillis = nowMillis;
+        evictOrphans();
+
+        OwnerUpdate update = joinItem(item);
+        if (update == null) {
+            return null;
+        }
+        long timestamp = timestamp(item);
+        // Deletions get their version when the owner is removed
+        if (!update.deleted) {
+            OwnerAggregate owner = owner(update.owner.id);
+            if (isUnchanged(owner, update)) {
+                return null;
+            }
+            if (owner.generation != generation) {
+                owner.generation = generation;
+                owner.changed = true;
+                // Keeps the removed pets, the sink deletes their documents
+                update = OwnerUpdate.merge(update, OwnerUpdate.full(update.owner));
+                owner.fingerprint = OwnerFingerprint.of(update.owner);
+            }
+            if (!owner.split && isHot(owner)) {
+                // The first split write replaces the whole document
+                owner.split = true;
+                splitOwners++;
+                update = OwnerUpdate.full(update.owner);
+            }
+            update = update.withVersion(nextVersion(owner, timestamp));
+            if (owner.split) {
+                update = update.asSplit();
+            }
+        }
+        return timestamp == 0 ? update : update.withTimestamp(timestamp);
+    }
+
+    /**
+     * Returns the version of the next update of the owner emitted for a change at the given
+     * binlog time
+     * <p>
+     * The version is the binlog time shifted left by {@link #VERSION_TIMESTAMP_SHIFT} bits, or
+     * the previous version of the owner plus one if that is not greater, e.g. for scanned owners
+     * or changes in the same millisecond. The version is kept in the state, so a change replayed
+     * after a restart from a snapshot gets the same version as before.
+     */
+    private static long nextVersion(OwnerAggregate owner, long timestamp) {
+        owner.version = Math.max(owner.version + 1, timestamp << VERSION_TIMESTAMP_SHIFT);
+        owner.changed = true;
+        return owner.version;
+    }
+
+    /**
+     * Returns true if the owner has as many pets or visits as split owners have, an owner once
+     * split stays split
+     */
+    private boolean isHot(OwnerAggregate owner) {
+        int pets = config.getSplitOwnerPets();
+        int visits = config.getSplitOwnerVisits();
+        return pets > 0 && owner.pets.size() >= pets || visits > 0 && owner.visitCount() >= visits;
+    }
 
+    /**
+     * Returns true if the update leaves the owner as it was last emitted, otherwise keeps the
+     * fingerprint of the owner to be emitted
+     */
+    private boolean isUnchanged(OwnerAggregate owner, OwnerUpdate update) {
+        if (!update.full && update.pets.isEmpty() && update.removedPetIds.isEmpty()) {
+            // Appended visits are new, the hashes of the visits are added to the fingerprint
+            if (owner.fingerprint != OwnerFingerprint.UNKNOWN) {
+                for (OwnerUpdate.VisitAppend append : update.visits) {
+                    owner.fingerprint += OwnerFingerprint.visit(append.visit.petId, append.visit);
+                }
+            }
+            return false;
+        }
+        long fingerprint = OwnerFingerprint.of(update.owner);
+        if (fingerprint == owner.fingerprint) {
+            suppressedUpdates++;
+            return true;
+        }
+        // A change applied to a document of unknown content leaves it unknown
+        if (update.full || owner.fingerprint != OwnerFingerprint.UNKNOWN) {
+            owner.fingerprint = fingerprint;
+        }
+        return false;
+    }
+
+    private OwnerUpdate joinItem(Object item) {
         if (item instanceof Owner) {
             Owner owner = (Owner) item;
 
-            return ownerIdToOwner.compute(owner.id, (key, currentOwner) -> {
-                if (currentOwner == null) {
-                    // There is no owner with this id, the incoming item is stored and returned
-                    return owner;
-                } else {
-                    // There is an existing owner, update the incoming item with already collected data and return it
-                    return owner.update(currentOwner);
-                }
-            });
+            // The incoming item is updated with already collected data and returned
+            OwnerAggregate aggregate = owner(owner.id);
+            aggregate.update(owner);
+            shellOwnerIndex.remove(owner.id);
+            return OwnerUpdate.full(aggregate.snapshot(owner));
 
         } else if (item instanceof Pet) {
             Pet pet = (Pet) item;
 
-            Pet currentPet = petIdToPet.compute(pet.id, (key, aPet) -> {
-                if (aPet == null) {
-                    // There is no pet with this id, the incoming item is stored and returned
-                    return pet;
+            PetAggregate aggregate;
+            boolean newToOwner = true;
+            long previousOwnerId = petIdToOwnerId.get(pet.id);
+            if (previousOwnerId == NO_OWNER) {
+                aggregate = takeOrphanPet(pet.id);
+            } else {
+                OwnerAggregate previousOwner = owner((int) previousOwnerId);
+                aggregate = previousOwner.pets.get(pet.id);
+                if (pet.ownerId == null || pet.ownerId != previousOwnerId) {
+                    // PetOwnerLookup removes a moved pet from its previous owner first, a pet
+                    // joined without it moves here and the previous owner is not emitted without it
+                    previousOwner.removePet(pet.id);
+                    previousOwner.fingerprint = OwnerFingerprint.UNKNOWN;
+                    petIdToOwnerId.remove(pet.id);
                 } else {
-                    // There is an existing pet, update the incoming item with already collected data and return it
-                    return pet.update(aPet);
+                    newToOwner = false;
                 }
-            });
-
-            Owner petOwner = updatePetForOwner(currentPet);
+            }
+            // A pet moved from another owner comes with the visits joined there
+            aggregate.prependVisits(pet.visits);
+            aggregate.update(pet);
 
-            return ownerIfNameSet(petOwner);
+            return updatePetForOwner(aggregate, newToOwner);
         } else if (item instanceof Visit) {
             Visit visit = (Visit) item;
 
-            Pet pet = petIdToPet.computeIfAbsent(visit.petId, key -> new Pet(visit.petId));
-            Pet updatedPet = pet.addVisit(visit);
+            long ownerId = petIdToOwnerId.get(visit.petId);
+            if (ownerId == NO_OWNER) {
+                // Visit for a pet we haven't seen yet
+                PetAggregate orphan = takeOrphanPet(visit.petId);
+                if (!orphan.containsVisit(visit)) {
+                    orphan.addVisit(visit);
+                }
+                storeOrphanPet(orphan);
+                return null;
+            }
 
-            if (updatedPet.ownerId != null) {
-                return updatePetForOwner(updatedPet);
-            } else {
+            OwnerAggregate owner = owner((int) ownerId);
+            PetAggregate pet = owner.pets.get(visit.petId);
+            if (pet.containsVisit(visit)) {
+                // Already joined with the scanned owner
+                return null;
+            }
+            int index = pet.visitCount();
+            pet.addVisit(visit);
+            owner.changed = true;
+            return owner.hasName() ? OwnerUpdate.visitAppended(owner.snapshot(), index, visit) : null;
+        } else if (item instanceof PetRemoval) {
+            int petId = ((PetRemoval) item).petId;
+
+            if (((PetRemoval) item).deleted) {
+                tombstones.addPet(petId, nowMillis);
+            }
+            long ownerId = petIdToOwnerId.remove(petId);
+            if (ownerId == NO_OWNER) {
                 return null;
             }
+            OwnerAggregate owner = owner((int) ownerId);
+            owner.removePet(petId);
+            return owner.hasName() ? OwnerUpdate.petRemoved(owner.snapshot(), petId) : null;
+        } else if (item instanceof ScannedOwner) {
+            return joinScannedOwner(((ScannedOwner) item).owner);
+        } else if (item instanceof ScanDone) {
+            tombstones.scanDone((ScanDone) item, nowMillis);
+            return null;
+        } else if (item instanceof Deletion) {
+            return delete(((Deletion) item).row);
         } else {
             throw new IllegalArgumentException("Unknown type " + item.getClass());
         }
     }
 
-    private Owner updatePetForOwner(Pet pet) {
-        Owner petOwner = ownerIdToOwner.compute(pet.ownerId, (ownerId, currentOwner) -> {
-            if (currentOwner == null) {
-                // There is no Owner yet for this ownerId, create a empty "shell" owner to put pets in
-                Owner newOwner = new Owner(pet.ownerId, pet);
-                newOwner.id = pet.ownerId;
-                return newOwner;
+    /**
+     * Returns the binlog time of the change of the item, 0 for scanned owners
+     */
+    private static long timestamp(Object item) {
+        Object row = item instanceof Deletion ? ((Deletion) item).row : item;
+        if (row instanceof Owner) {
+            return ((Owner) row).timestamp;
+        } else if (row instanceof Pet) {
+            return ((Pet) row).timestamp;
+        } else if (row instanceof Visit) {
+            return ((Visit) row).timestamp;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of owners, including owners known only from their pets
+     */
+    int ownerCount() {
+        int count = owners.size();
+        for (Integer ownerId : activeOwners.keySet()) {
+            if (!owners.contains(ownerId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int tombstoneCount() {
+        return tombstones.size();
+    }
+
+    int orphanPetCount() {
+        return orphanPets.size();
+    }
+
+    /**
+     * Returns the number of owners known only from their pets
+     */
+    int shellOwnerCount() {
+        return shellOwnerIndex.size();
+    }
+
+    /**
+     * Returns the number of decoded owners changed since they were last stored
+     */
+    int changedOwnerCount() {
+        int count = 0;
+        for (OwnerAggregate owner : activeOwners.values()) {
+            if (owner.changed) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    long evictedOrphanCount() {
+        return evictedOrphans;
+    }
+
+    /**
+     * Returns the number of updates suppressed because they didn't change the owner
+     */
+    long suppressedUpdateCount() {
+        return suppressedUpdates;
+    }
+
+    /**
+     * Returns the number of owners split since the state was created or restored
+     */
+    long splitOwnerCount() {
+        return splitOwners;
+    }
+
+    /**
+     * Adds the changes of the orphan and suppressed update counts since the last call to the metrics
+     * of the processor, all states of the processor add to the same metrics
+     * <p>
+     * The latency of the join started at the given {@link System#nanoTime()} is recorded in the
+     * {@code joinLatencyMicros} histogram. The counts of owners and pets are reported at most
+     * once a second, counting the owners visits the decoded owners.
+     */
+    void reportMetrics(long startNanos) {
+        if (orphanPetsMetric == null) {
+            orphanPetsMetric = Metrics.metric("joinOrphanPets", Unit.COUNT);
+            shellOwnersMetric = Metrics.metric("joinShellOwners", Unit.COUNT);
+            evictedOrphansMetric = Metrics.metric("joinEvictedOrphans", Unit.COUNT);
+            suppressedUpdatesMetric = Metrics.metric("joinSuppressedUpdates", Unit.COUNT);
+            splitOwnersMetric = Metrics.metric("joinSplitOwners", Unit.COUNT);
+            ownersMetric = Metrics.metric("joinOwners", Unit.COUNT);
+            petsMetric = Metrics.metric("joinPets", Unit.COUNT);
+            latencyHistogram = Histogram.latencyMicros("joinLatencyMicros");
+        }
+        latencyHistogram.recordNanosSince(startNanos);
+        if (nowMillis - countsReportedAtMillis >= 1000) {
+            long ownerCount = ownerCount();
+            long petCount = petIdToOwnerId.size();
+            ownersMetric.increment(ownerCount - reportedOwners);
+            petsMetric.increment(petCount - reportedPets);
+            reportedOwners = ownerCount;
+            reportedPets = petCount;
+            countsReportedAtMillis = nowMillis;
+        }
+        long orphanPetCount = orphanPetCount();
+        long shellOwnerCount = shellOwnerCount();
+        orphanPetsMetric.increment(orphanPetCount - reportedOrphanPets);
+        shellOwnersMetric.increment(shellOwnerCount - reportedShellOwners);
+        evictedOrphansMetric.increment(evictedOrphans - reportedEvictedOrphans);
+        reportedOrphanPets = orphanPetCount;
+        reportedShellOwners = shellOwnerCount;
+        reportedEvictedOrphans = evictedOrphans;
+        suppressedUpdatesMetric.increment(suppressedUpdates - reportedSuppressedUpdates);
+        reportedSuppressedUpdates = suppressedUpdates;
+        splitOwnersMetric.increment(splitOwners - reportedSplitOwners);
+        reportedSplitOwners = splitOwners;
+    }
+
+    private void evictOrphans() {
+        long ttl = config.getOrphanTtlMillis();
+        int max = config.getMaxOrphansPerPartition();
+        for (Integer petId; (petId = orphanPetIndex.pollEvictable(nowMillis, ttl, max)) != null; ) {
+            orphanPets.remove(petId);
+            evictedOrphans++;
+        }
+        for (Integer ownerId; (ownerId = shellOwnerIndex.pollEvictable(nowMillis, ttl, max)) != null; ) {
+            OwnerAggregate owner = removeOwner(ownerId);
+            if (owner != null) {
+                evictedOrphans++;
+            }
+        }
+        tombstones.evict(nowMillis);
+    }
+
+    /**
+     * Removes the owner with its pets from the state, returns the removed owner or null
+     */
+    private OwnerAggregate removeOwner(int ownerId) {
+        OwnerAggregate owner = activeOwners.remove(ownerId);
+        if (owner == null) {
+            byte[] bytes = owners.get(ownerId);
+            if (bytes == null) {
+                return null;
+            }
+            owner = AggregateCodec.readOwner(new BinaryInput(bytes));
+        }
+        owners.remove(ownerId);
+        for (Integer petId : owner.pets.keySet()) {
+            petIdToOwnerId.remove(petId);
+        }
+        return owner;
+    }
+
+    /**
+     * Deletes an owner or a visit, deleted pets come as {@link PetRemoval}s
+     */
+    private OwnerUpdate delete(Object row) {
+        if (row instanceof Owner) {
+            int ownerId = ((Owner) row).id;
+            shellOwnerIndex.remove(ownerId);
+            tombstones.addOwner(ownerId, nowMillis);
+            OwnerAggregate owner = removeOwner(ownerId);
+            if (owner == null) {
+                return null;
+            }
+            // The documents of the pets of a split owner are deleted with the owner
+            OwnerUpdate deletion = owner.split
+                    ? OwnerUpdate.deleted(ownerId, new ArrayList<>(owner.pets.keySet()), true)
+                    : OwnerUpdate.deleted(ownerId);
+            return deletion.withVersion(nextVersion(owner, ((Owner) row).timestamp));
+        } else if (row instanceof Visit) {
+            Visit visit = (Visit) row;
+
+            tombstones.addVisit(visit.id, nowMillis);
+            long ownerId = petIdToOwnerId.get(visit.petId);
+            if (ownerId == NO_OWNER) {
+                if (orphanPets.contains(visit.petId)) {
+                    PetAggregate orphan = takeOrphanPet(visit.petId);
+                    orphan.removeVisit(visit.id);
+                    storeOrphanPet(orphan);
+                }
+                return null;
+            }
+            OwnerAggregate owner = owner((int) ownerId);
+            if (!owner.pets.get(visit.petId).removeVisit(visit.id)) {
+                return null;
+            }
+            owner.changed = true;
+            // Indexes of the following visits change, the whole owner is written
+            return owner.hasName() ? OwnerUpdate.full(owner.snapshot()) : null;
+        } else {
+            throw new IllegalArgumentException("Unexpected deletion of " + row);
+        }
+    }
+
+    /**
+     * Adds the scanned rows the change stream didn't bring yet, the changes are newer, rows
+     * deleted since the scan read them are skipped
+     */
+    private OwnerUpdate joinScannedOwner(Owner scanned) {
+        if (tombstones.hasOwner(scanned.id)) {
+            return null;
+        }
+        // Pets known from the change stream get the earlier visits first, they may belong to other owners
+        List<Pet> newPets = new ArrayList<>(scanned.pets.size());
+        for (Pet scannedPet : withoutTombstones(scanned.pets)) {
+            long ownerId = petIdToOwnerId.get(scannedPet.id);
+            if (ownerId == NO_OWNER) {
+                newPets.add(scannedPet);
             } else {
-                // Owner exists, add a pet to it and replace
-                return currentOwner.addPet(pet);
+                OwnerAggregate owner = owner((int) ownerId);
+                owner.pets.get(scannedPet.id).prependVisits(scannedPet.visits);
+                owner.changed = true;
+                // The owner is not emitted with the earlier visits
+                owner.fingerprint = OwnerFingerprint.UNKNOWN;
             }
+        }
 
-        });
+        // Only the scanned owner is used from now on, so it can't be evicted while updated
+        OwnerAggregate owner = owner(scanned.id);
+        if (!owner.hasName()) {
+            owner.update(scanned);
+        }
+        for (Pet scannedPet : newPets) {
+            PetAggregate pet = takeOrphanPet(scannedPet.id);
+            pet.prependVisits(scannedPet.visits);
+            if (pet.name == null && pet.ownerId == null) {
+                pet.name = scannedPet.name;
+                pet.ownerId = scanned.id;
+            }
+            if (pet.ownerId == null || !pet.ownerId.equals(scanned.id)) {
+                // The pet left the owner after the scan started
+                storeOrphanPet(pet);
+                continue;
+            }
+            owner.putPet(pet);
+            petIdToOwnerId.put(pet.id, pet.ownerId);
+            orphanPetIndex.remove(pet.id);
+        }
+        return owner.hasName() ? OwnerUpdate.full(owner.snapshot()) : null;
+    }
 
-        petIdToOwner.putIfAbsent(pet.id, petOwner);
-        return petOwner;
+    /**
+     * Returns copies of the scanned pets without the deleted pets and visits, the scanned pets
+     * are not changed as they may be shared with the {@link ScannedPet}s
+     */
+    private List<Pet> withoutTombstones(List<Pet> scannedPets) {
+        if (!tombstones.isScanning() || tombstones.size() == 0) {
+            return scannedPets;
+        }
+        List<Pet> pets = new ArrayList<>(scannedPets.size());
+        for (Pet scannedPet : scannedPets) {
+            if (tombstones.hasPet(scannedPet.id)) {
+                continue;
+            }
+            Pet pet = new Pet(scannedPet.id, scannedPet.name, scannedPet.ownerId);
+            for (Visit visit : scannedPet.visits) {
+                if (!tombstones.hasVisit(visit.id)) {
+                    pet.visits.add(visit);
+                }
+            }
+            pets.add(pet);
+        }
+        return pets;
     }
 
-    private Owner ownerIfNameSet(Owner owner) {
-        if (owner.firstName == null) {
-            //
+    private OwnerUpdate updatePetForOwner(PetAggregate pet, boolean newToOwner) {
+        if (pet.ownerId == null) {
+            storeOrphanPet(pet);
             return null;
-        } else {
-            return owner;
         }
+
+        // If there is no Owner yet for this ownerId, an empty "shell" owner is created to put pets in
+        OwnerAggregate owner = owner(pet.ownerId);
+        owner.putPet(pet);
+        petIdToOwnerId.put(pet.id, pet.ownerId);
+        orphanPetIndex.remove(pet.id);
+
+        if (!owner.hasName()) {
+            shellOwnerIndex.add(owner.id, nowMillis);
+            return null;
+        }
+        // A pet coming with visits, adopted orphan or moved from another owner, is written whole
+        return newToOwner && pet.visitCount() > 0
+                ? OwnerUpdate.full(owner.snapshot())
+                : OwnerUpdate.petChanged(owner.snapshot(), pet.snapshot());
+    }
+
+    /**
+     * Returns the active owner, or decodes it from the store, or creates a new one
+     */
+    private OwnerAggregate owner(int ownerId) {
+        OwnerAggregate owner = activeOwners.get(ownerId);
+        if (owner == null) {
+            byte[] bytes = owners.get(ownerId);
+            if (bytes == null) {
+                owner = new OwnerAggregate(ownerId);
+            } else {
+                // The stored version is current until the owner is mutated
+                owner = AggregateCodec.readOwner(new BinaryInput(bytes));
+                owner.changed = false;
+            }
+            activeOwners.put(ownerId, owner);
+        }
+        return owner;
+    }
+
+    /**
+     * Writes the owner to the store unless the stored version is current
+     */
+    private void store(OwnerAggregate owner) {
+        if (!owner.changed) {
+            return;
+        }
+        output.clear();
+        AggregateCodec.writeOwner(output, owner);
+        owners.put(owner.id, output.buffer(), 0, output.size());
+        owner.changed = false;
+    }
+
+    private PetAggregate takeOrphanPet(int petId) {
+        byte[] bytes = orphanPets.get(petId);
+        if (bytes == null) {
+            return new PetAggregate(petId);
+        }
+        orphanPets.remove(petId);
+        return AggregateCodec.readPet(new BinaryInput(bytes));
+    }
+
+    private void storeOrphanPet(PetAggregate pet) {
+        output.clear();
+        AggregateCodec.writePet(output, pet);
+        orphanPets.put(pet.id, output.buffer(), 0, output.size());
+        orphanPetIndex.add(pet.id, nowMillis);
+    }
+
+    /**
+     * Writes the state in the form read by {@link #readFrom(DataInput)}, used by
+     * {@link PetClinicSerializers.JoiningStateSerializer}
+     * <p>
+     * The whole state is written to each snapshot, Jet restores from a single snapshot, there
+     * are no delta snapshots. Owners that didn't change are copied as the bytes in the store.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        storeActiveOwners();
+        out.writeByte(FORMAT);
+        out.writeLong(generation);
+        out.writeInt(config.getPartitions());
+        owners.writeEntries(out);
+        orphanPets.writeEntries(out);
+        petIdToOwnerId.writeEntries(out);
+        orphanPetIndex.writeEntries(out);
+        shellOwnerIndex.writeEntries(out);
+        tombstones.writeTo(out);
+    }
+
+    /**
+     * Reads the state, the restored state starts the next generation and is to be configured
+     * by {@link #configure(JoiningStateConfig)}
+     */
+    static JoiningState readFrom(DataInput in) throws IOException {
+        int format = in.readByte();
+        if (format != FORMAT) {
+            throw new IOException("Unknown join state format " + format);
+        }
+        long generation = in.readLong();
+        JoiningState state = new JoiningState(new JoiningStateConfig().setPartitions(in.readInt()));
+        state.generation = generation + 1;
+        state.owners.readEntries(in);
+        state.orphanPets.readEntries(in);
+        state.petIdToOwnerId.readEntries(in);
+        state.orphanPetIndex.readEntries(in);
+        state.shellOwnerIndex.readEntries(in);
+        state.tombstones = ScanTombstones.readFrom(in);
+        return state;
+    }
+
+    private void storeActiveOwners() {
+        // Active owners stay active, the store gets the current version of those that changed,
+        // unchanged active owners are not encoded again
+        for (OwnerAggregate owner : activeOwners.values()) {
+            store(owner);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        storeActiveOwners();
+        out.defaultWriteObject();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        generation++;
+        init();
     }
 }
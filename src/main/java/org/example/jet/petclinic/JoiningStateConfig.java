@@ -0,0 +1,236 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.store.BinaryStore;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the {@link JoiningState}
+ * <p>
+ * The configuration is not saved to snapshots, the states restored from a snapshot are
+ * configured by the job that restores them, see {@link JoiningState#configure}.
+ */
+class JoiningStateConfig implements Serializable {
+
+    static final int DEFAULT_ACTIVE_OWNERS = 10_000;
+    static final int DEFAULT_PARTITIONS = 271;
+    static final int DEFAULT_MAX_ORPHANS = 100_000;
+    static final long DEFAULT_ORPHAN_TTL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    static final int DEFAULT_MAX_TOMBSTONES = 10_000_000;
+
+    private BinaryStore.Memory memory = BinaryStore.Memory.HEAP;
+    private String directory;
+    private int activeOwners = DEFAULT_ACTIVE_OWNERS;
+    private int partitions = DEFAULT_PARTITIONS;
+    private int maxOrphans = DEFAULT_MAX_ORPHANS;
+    private long orphanTtlMillis = DEFAULT_ORPHAN_TTL_MILLIS;
+    private int maxTombstones = DEFAULT_MAX_TOMBSTONES;
+    private int splitOwnerPets;
+    private int splitOwnerVisits;
+    private boolean bootstrap;
+
+    BinaryStore.Memory getMemory() {
+        return memory;
+    }
+
+    /**
+     * Sets where the encoded owners, pets and visits are stored
+     */
+    JoiningStateConfig setMemory(BinaryStore.Memory memory) {
+        this.memory = memory;
+        return this;
+    }
+
+    String getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Sets the directory of the files of the {@link BinaryStore.Memory#MAPPED} stores, null
+     * for the temporary directory of the member
+     */
+    JoiningStateConfig setDirectory(String directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    int getActiveOwners() {
+        return activeOwners;
+    }
+
+    /**
+     * Sets how many recently used owners are kept decoded on heap, in all partitions together
+     */
+    JoiningStateConfig setActiveOwners(int activeOwners) {
+        if (activeOwners < 2) {
+            throw new IllegalArgumentException("activeOwners must be at least 2, was " + activeOwners);
+        }
+        this.activeOwners = activeOwners;
+        return this;
+    }
+
+    /**
+     * Returns how many recently used owners a single partition keeps decoded
+     */
+    int getActiveOwnersPerPartition() {
+        return Math.max(2, activeOwners / partitions);
+    }
+
+    int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Sets the number of partitions the join is split into, each partition has its own
+     * {@link JoiningState} and the partitions are spread over all processors of the job
+     */
+    JoiningStateConfig setPartitions(int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be at least 1, was " + partitions);
+        }
+        this.partitions = partitions;
+        return this;
+    }
+
+    int getMaxOrphans() {
+        return maxOrphans;
+    }
+
+    /**
+     * Sets how many orphans of each kind are kept, in all partitions together - pets without
+     * an owner, owners known only from their pets and visits waiting for their pet
+     */
+    JoiningStateConfig setMaxOrphans(int maxOrphans) {
+        if (maxOrphans < 1) {
+            throw new IllegalArgumentException("maxOrphans must be positive, was " + maxOrphans);
+        }
+        this.maxOrphans = maxOrphans;
+        return this;
+    }
+
+    /**
+     * Returns how many orphans of each kind a single partition keeps
+     */
+    int getMaxOrphansPerPartition() {
+        return Math.max(1, maxOrphans / partitions);
+    }
+
+    long getOrphanTtlMillis() {
+        return orphanTtlMillis;
+    }
+
+    /**
+     * Sets how long an orphan waits for the missing row before it is evicted
+     */
+    JoiningStateConfig setOrphanTtlMillis(long orphanTtlMillis) {
+        if (orphanTtlMillis < 1) {
+            throw new IllegalArgumentException("orphanTtlMillis must be positive, was " + orphanTtlMillis);
+        }
+        this.orphanTtlMillis = orphanTtlMillis;
+        return this;
+    }
+
+    int getMaxTombstones() {
+        return maxTombstones;
+    }
+
+    /**
+     * Sets how many rows deleted during the bootstrap scan are remembered, in all partitions
+     * together, see {@link ScanTombstones}
+     */
+    JoiningStateConfig setMaxTombstones(int maxTombstones) {
+        if (maxTombstones < 1) {
+            throw new IllegalArgumentException("maxTombstones must be positive, was " + maxTombstones);
+        }
+        this.maxTombstones = maxTombstones;
+        return this;
+    }
+
+    /**
+     * Returns how many tombstones a single partition keeps
+     */
+    int getMaxTombstonesPerPartition() {
+        return Math.max(1, maxTombstones / partitions);
+    }
+
+    int getSplitOwnerPets() {
+        return splitOwnerPets;
+    }
+
+    /**
+     * Sets the number of pets from which an owner is split, 0 to split no owner by its pets
+     */
+    JoiningStateConfig setSplitOwnerPets(int splitOwnerPets) {
+        if (splitOwnerPets < 0) {
+            throw new IllegalArgumentException("splitOwnerPets must not be negative, was " + splitOwnerPets);
+        }
+        this.splitOwnerPets = splitOwnerPets;
+        return this;
+    }
+
+    int getSplitOwnerVisits() {
+        return splitOwnerVisits;
+    }
+
+    /**
+     * Sets the number of visits of all pets from which an owner is split, 0 to split no owner
+     * by its visits
+     */
+    JoiningStateConfig setSplitOwnerVisits(int splitOwnerVisits) {
+        if (splitOwnerVisits < 0) {
+            throw new IllegalArgumentException("splitOwnerVisits must not be negative, was " + splitOwnerVisits);
+        }
+        this.splitOwnerVisits = splitOwnerVisits;
+        return this;
+    }
+
+    boolean isBootstrap() {
+        return bootstrap;
+    }
+
+    /**
+     * Sets whether the states start with the owners scanned from the database, deletions are
+     * then remembered until the scan is done, see {@link ScanTombstones}
+     */
+    JoiningStateConfig setBootstrap(boolean bootstrap) {
+        this.bootstrap = bootstrap;
+        return this;
+    }
+
+    boolean isSplitEnabled() {
+        return splitOwnerPets > 0 || splitOwnerVisits > 0;
+    }
+
+    /**
+     * Returns the partition of the given owner or pet id
+     */
+    int partition(int id) {
+        return Math.floorMod(id, partitions);
+    }
+
+    /**
+     * Checks that a state saved with the given number of partitions can continue with this
+     * configuration, the partition of every owner and pet must stay the same
+     *
+     * @throws IllegalStateException if the number of partitions changed
+     */
+    void checkPartitions(int savedPartitions) {
+        if (savedPartitions != partitions) {
+            throw new IllegalStateException("The join state was saved with " + savedPartitions
+                    + " partitions, it can't be restored with " + partitions + " partitions");
+        }
+    }
+
+    /**
+     * Returns the given store if it is in the memory of this configuration, otherwise moves
+     * its records to a new store that is
+     */
+    BinaryStore inMemory(BinaryStore store) {
+        if (store.memory() == memory && Objects.equals(store.directory(), directory)) {
+            return store;
+        }
+        return store.moveTo(memory, directory);
+    }
+}
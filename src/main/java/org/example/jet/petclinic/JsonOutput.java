@@ -0,0 +1,160 @@
+package org.example.jet.petclinic;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer of UTF-8 encoded JSON
+ * <p>
+ * Strings are escaped the way {@code JsonUtil} escapes them, so the bytes are the same as
+ * the bytes of the documents it writes. It is not thread-safe.
+ */
+final class JsonOutput {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+
+    private byte[] buffer;
+    private int position;
+
+    JsonOutput(int initialCapacity) {
+        buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    int size() {
+        return position;
+    }
+
+    /**
+     * Returns the internal buffer, valid bytes are from 0 until {@link #size()}
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Writes already encoded JSON
+     */
+    void writeRaw(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    void writeNull() {
+        writeRaw(NULL);
+    }
+
+    /**
+     * Writes the name of a field with the separator before it, unless it is the first field
+     */
+    void writeName(String name, boolean first) {
+        if (!first) {
+            writeByte(',');
+        }
+        writeString(name);
+        writeByte(':');
+    }
+
+    void writeInt(Integer value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        ensureCapacity(11);
+        int v = value;
+        if (v < 0) {
+            if (v == Integer.MIN_VALUE) {
+                writeAscii("-2147483648");
+                return;
+            }
+            buffer[position++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (int n = v; n >= 10; n /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        position += digits;
+    }
+
+    void writeString(String value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        // A char takes at most 6 bytes, an escape or 3 bytes of UTF-8
+        ensureCapacity(2 + 6 * value.length());
+        byte[] b = buffer;
+        int p = position;
+        b[p++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    b[p++] = '\\';
+                }
+                b[p++] = (byte) c;
+            } else if (c < 0x20) {
+                b[p++] = '\\';
+                switch (c) {
+                    case '\b': b[p++] = 'b'; break;
+                    case '\f': b[p++] = 'f'; break;
+                    case '\n': b[p++] = 'n'; break;
+                    case '\r': b[p++] = 'r'; break;
+                    case '\t': b[p++] = 't'; break;
+                    default:
+                        b[p++] = 'u';
+                        b[p++] = '0';
+                        b[p++] = '0';
+                        b[p++] = HEX[c >> 4];
+                        b[p++] = HEX[c & 0xF];
+                }
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | c >> 6);
+                b[p++] = (byte) (0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                b[p++] = (byte) (0xE0 | c >> 12);
+                b[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+                b[p++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                b[p++] = (byte) (0xF0 | codePoint >> 18);
+                b[p++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                b[p++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                b[p++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                // Unpaired surrogate, replaced like String.getBytes does
+                b[p++] = '?';
+            }
+        }
+        b[p++] = '"';
+        position = p;
+    }
+
+    private void writeAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[position++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+        }
+    }
+}
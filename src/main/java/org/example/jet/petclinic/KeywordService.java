@@ -0,0 +1,148 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.core.metrics.Unit;
+import org.example.jet.petclinic.metrics.Histogram;
+import org.example.jet.petclinic.rake.KeywordCache;
+import org.example.jet.petclinic.rake.Rake;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Extracts keywords of visit descriptions, the keywords of repeated descriptions are cached
+ * <p>
+ * One service is created per processor, the {@link Rake}, the {@link KeywordCache} and the
+ * worker pool are {@link Shared} by all processors of a member. The cache hits, misses and
+ * evictions caused by the processor are reported as the processor's metrics, Jet sums them
+ * per vertex. The latency of the enrichment is recorded in the {@code enrichLatencyMicros}
+ * histogram, per item when enriched on the threads of Jet, per batch from its submission to
+ * the worker pool when enriched asynchronously.
+ */
+class KeywordService {
+
+    static final int KEYWORD_COUNT = 5;
+
+    private final Shared shared;
+    private final Histogram latency = Histogram.threadSafeLatencyMicros("enrichLatencyMicros");
+
+    // Created lazily, user metrics can be created only on the processor thread
+    private Metric hits;
+    private Metric misses;
+    private Metric evictions;
+
+    KeywordService(Shared shared) {
+        this.shared = shared;
+    }
+
+    List<String> keywords(String description) {
+        KeywordCache cache = shared.cache;
+        if (cache == null || description == null) {
+            return shared.rake.topKeywords(description, KEYWORD_COUNT);
+        }
+        initMetrics();
+
+        // Leading and trailing whitespace doesn't change the phrases, RAKE is case sensitive though
+        String text = description.trim();
+        List<String> keywords = cache.get(text);
+        if (keywords != null) {
+            hits.increment();
+            return keywords;
+        }
+        misses.increment();
+        KeywordCache.Put put = cache.put(text, shared.rake.topKeywords(text, KEYWORD_COUNT));
+        evictions.increment(put.evicted);
+        return put.keywords;
+    }
+
+    /**
+     * Runs the function on the worker pool of the member, the function may call
+     * {@link #keywords(String)}
+     */
+    <T> CompletableFuture<T> supplyAsync(Supplier<T> fn) {
+        if (shared.workers == null) {
+            throw new IllegalStateException("Keyword service has no worker pool");
+        }
+        initMetrics();
+        long start = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            T result = fn.get();
+            latency.recordNanosSince(start);
+            return result;
+        }, shared.workers);
+    }
+
+    /**
+     * Records the latency of an enrichment started at the given {@link System#nanoTime()}
+     */
+    void recordLatency(long startNanos) {
+        initMetrics();
+        latency.recordNanosSince(startNanos);
+    }
+
+    private void initMetrics() {
+        if (hits == null) {
+            // Thread safe, asynchronous enrichment updates them from the worker threads
+            hits = Metrics.threadSafeMetric("keywordCacheHits", Unit.COUNT);
+            misses = Metrics.threadSafeMetric("keywordCacheMisses", Unit.COUNT);
+            evictions = Metrics.threadSafeMetric("keywordCacheEvictions", Unit.COUNT);
+            latency.init();
+        }
+    }
+
+    /**
+     * How visits are enriched with keywords
+     */
+    enum Mode {
+
+        /**
+         * On the threads of Jet, blocking the other processors of the thread while scoring
+         */
+        SYNC,
+
+        /**
+         * In batches on a worker pool, owners and pets don't wait for the visits
+         */
+        ASYNC
+    }
+
+    /**
+     * State shared by the keyword services of all processors of a member
+     */
+    static final class Shared {
+
+        final Rake rake;
+        final KeywordCache cache;
+        final ExecutorService workers;
+
+        /**
+         * @param cacheSize maximum number of cached descriptions, 0 disables the cache
+         * @param threads   number of worker threads, 0 for no worker pool
+         */
+        Shared(int cacheSize, int threads) {
+            this.rake = new Rake("en");
+            this.cache = cacheSize > 0 ? new KeywordCache(cacheSize) : null;
+            if (threads > 0) {
+                AtomicInteger threadCount = new AtomicInteger();
+                this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+                    Thread thread = new Thread(runnable, "keyword-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            } else {
+                this.workers = null;
+            }
+        }
+
+        void close() {
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+    }
+}
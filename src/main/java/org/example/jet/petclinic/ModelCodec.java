@@ -0,0 +1,109 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.example.jet.petclinic.store.BinaryInput;
+import org.example.jet.petclinic.store.BinaryOutput;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary form of the model objects
+ * <p>
+ * Names and keywords are written through the dictionary of the output, so a keyword
+ * repeated in many visits of an owner is written once. Lists are written with their
+ * size + 1, 0 stands for a null list.
+ */
+final class ModelCodec {
+
+    private ModelCodec() {
+    }
+
+    static void writeOwner(BinaryOutput out, Owner owner) {
+        out.writeNullableInt(owner.id);
+        out.writeDictionaryString(owner.firstName);
+        out.writeDictionaryString(owner.lastName);
+        if (owner.pets == null) {
+            out.writeVarInt(0);
+        } else {
+            out.writeVarInt(owner.pets.size() + 1);
+            for (Pet pet : owner.pets) {
+                writePet(out, pet);
+            }
+        }
+    }
+
+    static Owner readOwner(BinaryInput in) {
+        Owner owner = new Owner(in.readNullableInt(), in.readDictionaryString(), in.readDictionaryString());
+        int petCount = in.readVarInt() - 1;
+        if (petCount < 0) {
+            owner.pets = null;
+        } else {
+            owner.pets = new ArrayList<>(petCount);
+            for (int i = 0; i < petCount; i++) {
+                owner.pets.add(readPet(in));
+            }
+        }
+        return owner;
+    }
+
+    static void writePet(BinaryOutput out, Pet pet) {
+        out.writeNullableInt(pet.id);
+        out.writeDictionaryString(pet.name);
+        out.writeNullableInt(pet.ownerId);
+        if (pet.visits == null) {
+            out.writeVarInt(0);
+        } else {
+            out.writeVarInt(pet.visits.size() + 1);
+            for (Visit visit : pet.visits) {
+                writeVisit(out, visit);
+            }
+        }
+    }
+
+    static Pet readPet(BinaryInput in) {
+        Integer id = in.readNullableInt();
+        String name = in.readDictionaryString();
+        Pet pet = new Pet(id, name, in.readNullableInt());
+        int visitCount = in.readVarInt() - 1;
+        if (visitCount < 0) {
+            pet.visits = null;
+        } else {
+            pet.visits = new ArrayList<>(visitCount);
+            for (int i = 0; i < visitCount; i++) {
+                pet.visits.add(readVisit(in));
+            }
+        }
+        return pet;
+    }
+
+    static void writeVisit(BinaryOutput out, Visit visit) {
+        out.writeNullableInt(visit.id);
+        out.writeNullableInt(visit.petId);
+        out.writeString(visit.description);
+        if (visit.keywords == null) {
+            out.writeVarInt(0);
+        } else {
+            out.writeVarInt(visit.keywords.size() + 1);
+            for (String keyword : visit.keywords) {
+                out.writeDictionaryString(keyword);
+            }
+        }
+    }
+
+    static Visit readVisit(BinaryInput in) {
+        Integer id = in.readNullableInt();
+        Visit visit = new Visit(id, in.readNullableInt(), in.readString());
+        int keywordCount = in.readVarInt() - 1;
+        if (keywordCount >= 0) {
+            List<String> keywords = new ArrayList<>(keywordCount);
+            for (int i = 0; i < keywordCount; i++) {
+                keywords.add(in.readDictionaryString());
+            }
+            visit.setKeywords(keywords);
+        }
+        return visit;
+    }
+}
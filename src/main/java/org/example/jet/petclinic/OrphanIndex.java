@@ -0,0 +1,79 @@
+package org.example.jet.petclinic;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ids of orphan entries of a join state with the time they were first seen, oldest first
+ * <p>
+ * Orphans are entries waiting for a row that may never come - visits waiting for their pet,
+ * pets waiting for their owner. The index tells which of them to evict when they wait
+ * for too long or when there are too many of them.
+ */
+final class OrphanIndex implements Serializable {
+
+    private final LinkedHashMap<Integer, Long> firstSeen = new LinkedHashMap<>();
+
+    /**
+     * Adds the orphan, an orphan already in the index keeps its time
+     */
+    void add(int id, long nowMillis) {
+        firstSeen.putIfAbsent(id, nowMillis);
+    }
+
+    /**
+     * Removes the orphan, e.g. because the missing row came
+     */
+    void remove(int id) {
+        firstSeen.remove(id);
+    }
+
+    boolean contains(int id) {
+        return firstSeen.containsKey(id);
+    }
+
+    int size() {
+        return firstSeen.size();
+    }
+
+    void clear() {
+        firstSeen.clear();
+    }
+
+    /**
+     * Removes and returns the oldest orphan if it is older than the ttl or if there are
+     * more than max orphans, returns null otherwise
+     */
+    Integer pollEvictable(long nowMillis, long ttlMillis, int max) {
+        if (firstSeen.isEmpty()) {
+            return null;
+        }
+        Iterator<Map.Entry<Integer, Long>> iterator = firstSeen.entrySet().iterator();
+        Map.Entry<Integer, Long> oldest = iterator.next();
+        if (firstSeen.size() > max || nowMillis - oldest.getValue() > ttlMillis) {
+            iterator.remove();
+            return oldest.getKey();
+        }
+        return null;
+    }
+
+    void writeEntries(DataOutput out) throws IOException {
+        out.writeInt(firstSeen.size());
+        for (Map.Entry<Integer, Long> entry : firstSeen.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    void readEntries(DataInput in) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            firstSeen.put(in.readInt(), in.readLong());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Owner with all its pets as collected by {@link JoiningState}
+ * <p>
+ * Pets are indexed by id and kept in the order they were first added.
+ */
+class OwnerAggregate {
+
+    final Integer id;
+    String firstName;
+    String lastName;
+
+    final Map<Integer, PetAggregate> pets = new LinkedHashMap<>();
+
+    // True if the owner changed since it was last stored, set by the mutators of the owner
+    // and by the JoiningState where it changes the pets or the emitted state in place
+    boolean changed = true;
+
+    // Fingerprint of the owner as last emitted by the JoiningState, see OwnerFingerprint
+    long fingerprint = OwnerFingerprint.UNKNOWN;
+
+    // Version of the owner as last emitted by the JoiningState, 0 if not emitted yet
+    long version;
+
+    // Generation of the JoiningState the owner was last emitted in, 0 if not emitted yet
+    long generation;
+
+    // True once the owner has too many pets or visits to be written as a single document
+    boolean split;
+
+    OwnerAggregate(Integer id) {
+        this.id = id;
+    }
+
+    void update(Owner owner) {
+        firstName = owner.firstName;
+        lastName = owner.lastName;
+        changed = true;
+    }
+
+    void putPet(PetAggregate pet) {
+        pets.put(pet.id, pet);
+        changed = true;
+    }
+
+    void removePet(Integer petId) {
+        if (pets.remove(petId) != null) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Returns the number of visits of all pets of the owner
+     */
+    int visitCount() {
+        int count = 0;
+        for (PetAggregate pet : pets.values()) {
+            count += pet.visitCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if the owner record itself was joined, not only its pets
+     */
+    boolean hasName() {
+        return firstName != null;
+    }
+
+    /**
+     * Fills the given owner with the current pets and returns it
+     */
+    Owner snapshot(Owner owner) {
+        List<Pet> petSnapshots = new ArrayList<>(pets.size());
+        for (PetAggregate pet : pets.values()) {
+            petSnapshots.add(pet.snapshot());
+        }
+        owner.pets = Collections.unmodifiableList(petSnapshots);
+        return owner;
+    }
+
+    Owner snapshot() {
+        return snapshot(new Owner(id, firstName, lastName));
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+
+import java.util.List;
+
+/**
+ * 64-bit fingerprint of the indexed fields of an owner with its pets and visits
+ * <p>
+ * The fingerprint is the sum of the hashes of the owner fields, of the fields of each pet and
+ * of each visit with the id of its pet, so the fingerprint of an owner with a new visit is the
+ * previous fingerprint plus the hash of the visit. 0 stands for an unknown fingerprint.
+ */
+final class OwnerFingerprint {
+
+    static final long UNKNOWN = 0;
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private OwnerFingerprint() {
+    }
+
+    static long of(Owner owner) {
+        long fingerprint = mix(hash(hash(hash(SEED, owner.id), owner.firstName), owner.lastName));
+        if (owner.pets != null) {
+            for (Pet pet : owner.pets) {
+                fingerprint += mix(hash(hash(SEED + 1, pet.id), pet.name));
+                if (pet.visits != null) {
+                    for (Visit visit : pet.visits) {
+                        fingerprint += visit(pet.id, visit);
+                    }
+                }
+            }
+        }
+        return fingerprint == UNKNOWN ? 1 : fingerprint;
+    }
+
+    /**
+     * Returns the hash of the visit of the pet, added to the fingerprint of its owner
+     */
+    static long visit(Integer petId, Visit visit) {
+        long hash = hash(hash(hash(SEED + 2, petId), visit.id), visit.description);
+        List<String> keywords = visit.keywords;
+        if (keywords != null) {
+            hash = hash(hash, keywords.size());
+            for (String keyword : keywords) {
+                hash = hash(hash, keyword);
+            }
+        }
+        return mix(hash);
+    }
+
+    private static long hash(long hash, Integer value) {
+        return (hash ^ (value == null ? Long.MIN_VALUE : value)) * FNV_PRIME;
+    }
+
+    private static long hash(long hash, String value) {
+        if (value == null) {
+            return (hash ^ Long.MIN_VALUE) * FNV_PRIME;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        // The length tells "ab", "c" from "a", "bc"
+        return (hash ^ value.length()) * FNV_PRIME;
+    }
+
+    /**
+     * Spreads the bits of the hash, the fmix64 finalizer of MurmurHash3
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB93FE53A87CBL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,220 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+
+import java.util.List;
+
+/**
+ * Renders owners with their pets and visits as JSON documents, the same bytes as
+ * {@code JsonUtil.toJson(owner)} in UTF-8
+ * <p>
+ * Pets and visits are rendered once, the JSON is kept in {@link Pet#json} and {@link Visit#json}.
+ * {@link JoiningState} emits the same visit objects, and the same pet snapshots until the pet
+ * changes, so a document of an owner is mostly a copy of the pets rendered before.
+ */
+final class OwnerJson {
+
+    private OwnerJson() {
+    }
+
+    /**
+     * Returns the document of the owner, the buffer is sized to fit the pets without growing
+     */
+    static JsonOutput render(Owner owner) {
+        List<Pet> pets = owner.pets;
+        byte[][] petJsons = null;
+        int size = 64 + 3 * (length(owner.firstName) + length(owner.lastName));
+        if (pets != null) {
+            petJsons = new byte[pets.size()][];
+            for (int i = 0; i < petJsons.length; i++) {
+                Pet pet = pets.get(i);
+                petJsons[i] = pet == null ? null : pet(pet);
+                size += (petJsons[i] == null ? 4 : petJsons[i].length) + 1;
+            }
+        }
+
+        JsonOutput out = new JsonOutput(size);
+        out.writeByte('{');
+        boolean first = writeOwnerFields(out, owner);
+        if (petJsons != null) {
+            out.writeName("pets", first);
+            out.writeByte('[');
+            for (int i = 0; i < petJsons.length; i++) {
+                if (i > 0) {
+                    out.writeByte(',');
+                }
+                if (petJsons[i] == null) {
+                    out.writeNull();
+                } else {
+                    out.writeRaw(petJsons[i]);
+                }
+            }
+            out.writeByte(']');
+        }
+        out.writeByte('}');
+        return out;
+    }
+
+    /**
+     * Returns the document of a split owner, the owner with the ids of its pets, the pets are
+     * documents of their own
+     */
+    static JsonOutput renderSplit(Owner owner) {
+        List<Pet> pets = owner.pets;
+        int size = 64 + 3 * (length(owner.firstName) + length(owner.lastName))
+                + (pets == null ? 0 : 12 * pets.size());
+        JsonOutput out = new JsonOutput(size);
+        out.writeByte('{');
+        boolean first = writeOwnerFields(out, owner);
+        if (pets != null) {
+            out.writeName("pet_ids", first);
+            out.writeByte('[');
+            boolean firstPet = true;
+            for (Pet pet : pets) {
+                if (pet != null) {
+                    if (!firstPet) {
+                        out.writeByte(',');
+                    }
+                    out.writeInt(pet.id);
+                    firstPet = false;
+                }
+            }
+            out.writeByte(']');
+        }
+        out.writeByte('}');
+        return out;
+    }
+
+    /**
+     * Writes the fields of the owner itself, returns true if none was written
+     */
+    private static boolean writeOwnerFields(JsonOutput out, Owner owner) {
+        boolean first = true;
+        if (owner.firstName != null) {
+            out.writeName("first_name", true);
+            out.writeString(owner.firstName);
+            first = false;
+        }
+        if (owner.id != null) {
+            out.writeName("id", first);
+            out.writeInt(owner.id);
+            first = false;
+        }
+        if (owner.lastName != null) {
+            out.writeName("last_name", first);
+            out.writeString(owner.lastName);
+            first = false;
+        }
+        return first;
+    }
+
+    /**
+     * Returns the JSON of the pet with its visits, rendered on the first call
+     */
+    static byte[] pet(Pet pet) {
+        byte[] json = pet.json;
+        if (json != null) {
+            return json;
+        }
+        List<Visit> visits = pet.visits;
+        byte[][] visitJsons = null;
+        int size = 48 + 3 * length(pet.name);
+        if (visits != null) {
+            visitJsons = new byte[visits.size()][];
+            for (int i = 0; i < visitJsons.length; i++) {
+                Visit visit = visits.get(i);
+                visitJsons[i] = visit == null ? null : visit(visit);
+                size += (visitJsons[i] == null ? 4 : visitJsons[i].length) + 1;
+            }
+        }
+
+        JsonOutput out = new JsonOutput(size);
+        out.writeByte('{');
+        boolean first = true;
+        if (pet.id != null) {
+            out.writeName("id", true);
+            out.writeInt(pet.id);
+            first = false;
+        }
+        if (pet.name != null) {
+            out.writeName("name", first);
+            out.writeString(pet.name);
+            first = false;
+        }
+        if (pet.ownerId != null) {
+            out.writeName("owner_id", first);
+            out.writeInt(pet.ownerId);
+            first = false;
+        }
+        if (visitJsons != null) {
+            out.writeName("visits", first);
+            out.writeByte('[');
+            for (int i = 0; i < visitJsons.length; i++) {
+                if (i > 0) {
+                    out.writeByte(',');
+                }
+                if (visitJsons[i] == null) {
+                    out.writeNull();
+                } else {
+                    out.writeRaw(visitJsons[i]);
+                }
+            }
+            out.writeByte(']');
+        }
+        out.writeByte('}');
+
+        json = out.toByteArray();
+        pet.json = json;
+        return json;
+    }
+
+    /**
+     * Returns the JSON of the visit, rendered on the first call
+     */
+    static byte[] visit(Visit visit) {
+        byte[] json = visit.json;
+        if (json != null) {
+            return json;
+        }
+        JsonOutput out = new JsonOutput(64 + 3 * length(visit.description));
+        out.writeByte('{');
+        boolean first = true;
+        if (visit.description != null) {
+            out.writeName("description", true);
+            out.writeString(visit.description);
+            first = false;
+        }
+        if (visit.id != null) {
+            out.writeName("id", first);
+            out.writeInt(visit.id);
+            first = false;
+        }
+        if (visit.keywords != null) {
+            out.writeName("keywords", first);
+            out.writeByte('[');
+            for (int i = 0; i < visit.keywords.size(); i++) {
+                if (i > 0) {
+                    out.writeByte(',');
+                }
+                out.writeString(visit.keywords.get(i));
+            }
+            out.writeByte(']');
+            first = false;
+        }
+        if (visit.petId != null) {
+            out.writeName("pet_id", first);
+            out.writeInt(visit.petId);
+        }
+        out.writeByte('}');
+
+        json = out.toByteArray();
+        visit.json = json;
+        return json;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.config.IndexType;
+import com.hazelcast.core.HazelcastJsonValue;
+import com.hazelcast.jet.pipeline.Sink;
+import com.hazelcast.jet.pipeline.SinkBuilder;
+import com.hazelcast.map.IMap;
+import org.example.jet.petclinic.model.Owner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Joined owners kept in an {@link IMap} as JSON documents, the same as in the index,
+ * for services reading owners by id, by last name or by pet name at in-memory latency
+ * <p>
+ * The values are {@link HazelcastJsonValue}s, clients query them with predicates or SQL
+ * without the model classes on the classpath. The map can also be read to rebuild the
+ * index without the database.
+ */
+final class OwnerMapView {
+
+    static final String LAST_NAME_ATTRIBUTE = "last_name";
+    static final String PET_NAME_ATTRIBUTE = "pets[any].name";
+
+    private OwnerMapView() {
+    }
+
+    /**
+     * Returns the sink writing the owners of the updates to the map, deleted owners are
+     * removed from the map
+     */
+    static Sink<OwnerUpdate> sink(String mapName) {
+        return SinkBuilder
+                .sinkBuilder("ownerMapSink", context -> new Writer(context.jetInstance().getMap(mapName)))
+                .<OwnerUpdate>receiveFn(Writer::add)
+                .flushFn(Writer::flush)
+                .build();
+    }
+
+    /**
+     * Adds a sorted index on the last name and a hash index on the pet names of the owners,
+     * indexes that already exist are kept
+     */
+    static void addIndexes(IMap<Integer, HazelcastJsonValue> map) {
+        map.addIndex(IndexType.SORTED, LAST_NAME_ATTRIBUTE);
+        map.addIndex(IndexType.HASH, PET_NAME_ATTRIBUTE);
+    }
+
+    static HazelcastJsonValue toJson(Owner owner) {
+        JsonOutput json = OwnerJson.render(owner);
+        return new HazelcastJsonValue(new String(json.buffer(), 0, json.size(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the latest version of each owner received since the last flush
+     */
+    static final class Writer {
+
+        private final IMap<Integer, HazelcastJsonValue> map;
+
+        // Latest update per owner id, in the order the owners were first updated
+        private final Map<Integer, OwnerUpdate> pending = new LinkedHashMap<>();
+
+        Writer(IMap<Integer, HazelcastJsonValue> map) {
+            this.map = map;
+        }
+
+        void add(OwnerUpdate update) {
+            pending.put(update.owner.id, update);
+        }
+
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Map<Integer, HazelcastJsonValue> owners = new HashMap<>();
+            List<Integer> deleted = new ArrayList<>();
+            for (OwnerUpdate update : pending.values()) {
+                if (update.deleted) {
+                    deleted.add(update.owner.id);
+                } else {
+                    owners.put(update.owner.id, toJson(update.owner));
+                }
+            }
+            pending.clear();
+
+            if (!owners.isEmpty()) {
+                map.putAll(owners);
+            }
+            for (Integer ownerId : deleted) {
+                map.delete(ownerId);
+            }
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.cdc.ChangeRecord;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.core.metrics.Unit;
+import com.hazelcast.jet.pipeline.ServiceFactories;
+import com.hazelcast.jet.pipeline.ServiceFactory;
+import com.hazelcast.jet.pipeline.SourceBuilder;
+import com.hazelcast.jet.pipeline.SourceBuilder.SourceBuffer;
+import com.hazelcast.jet.pipeline.StreamSource;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Source reading all owners with their pets and visits from the database, used to
+ * bootstrap the index instead of the snapshot of the change data capture
+ * <p>
+ * The owner ids are split into ranges, one per processor on all members. Each processor
+ * scans its range in chunks of owners, reads the pets and visits of the chunk in the same
+ * transaction and joins them in memory into {@link ScannedOwner}s. The ranges left to scan
+ * are saved to snapshots, a restarted job continues the scan. Each processor reports the
+ * number of ranges it has left in {@link JobSignal}s and emits a {@link ScanDone} once it
+ * has none left, the join states then drop their {@link ScanTombstones}.
+ * <p>
+ * The scan must start after the change data capture records the binlog position it streams
+ * from, so no change made during the scan is missed. The stage after the change data capture
+ * source sends a {@link JobSignal.Kind#CHANGES_STARTED} signal with the first change it
+ * receives, see {@link #changeSignal()}, the processors of the scan read nothing before it.
+ * Once done, the source stays idle.
+ */
+final class OwnerScanSource {
+
+    static final int LOCAL_PARALLELISM = 2;
+
+    /**
+     * Number of owner id ranges not scanned yet, per processor
+     */
+    static final String REMAINING_RANGES_METRIC = "ownerScanRemainingRanges";
+
+    static final String SCANNED_OWNERS_METRIC = "ownerScanOwners";
+
+    private static final String OWNERS_QUERY = "SELECT id, first_name, last_name FROM owners " +
+            "WHERE id >= ? AND id <= ? ORDER BY id LIMIT ?";
+    private static final String PETS_QUERY = "SELECT id, name, owner_id FROM pets " +
+            "WHERE owner_id >= ? AND owner_id <= ? ORDER BY id";
+    private static final String VISITS_QUERY = "SELECT v.id, v.pet_id, v.description FROM visits v " +
+            "JOIN pets p ON p.id = v.pet_id WHERE p.owner_id >= ? AND p.owner_id <= ? ORDER BY v.id";
+
+    private OwnerScanSource() {
+    }
+
+    /**
+     * Returns the source scanning the database at the given JDBC url
+     *
+     * @param chunkSize number of owners read in one transaction
+     */
+    static StreamSource<Object> source(String jdbcUrl, String user, String password, int chunkSize) {
+        return SourceBuilder
+                .stream("ownerScan", context -> new Scanner(context, jdbcUrl, user, password, chunkSize))
+                .<Object>fillBufferFn(Scanner::fillBuffer)
+                .createSnapshotFn(Scanner::remainingRanges)
+                .restoreSnapshotFn(Scanner::restoreRanges)
+                .destroyFn(Scanner::close)
+                .distributed(LOCAL_PARALLELISM)
+                .build();
+    }
+
+    /**
+     * Returns the service of the stage after the change data capture source, it passes the
+     * changes through and tells the scan that the changes started
+     */
+    static ServiceFactory<?, ChangeSignal> changeSignal() {
+        return ServiceFactories.nonSharedService(ChangeSignal::new);
+    }
+
+    /**
+     * Sends the {@link JobSignal.Kind#CHANGES_STARTED} signal with the first change of the processor
+     */
+    static final class ChangeSignal {
+
+        private final Processor.Context context;
+        private boolean sent;
+
+        ChangeSignal(Processor.Context context) {
+            this.context = context;
+        }
+
+        ChangeRecord onChange(ChangeRecord change) {
+            if (!sent) {
+                JobSignal.publish(context, JobSignal.changesStarted(context.globalProcessorIndex()));
+                sent = true;
+            }
+            return change;
+        }
+    }
+
+    /**
+     * Joins the rows of a chunk of owners, pets and visits are in the order of their ids
+     */
+    static List<Owner> join(List<Owner> owners, List<Pet> pets, List<Visit> visits) {
+        Map<Integer, Owner> ownersById = new LinkedHashMap<>();
+        for (Owner owner : owners) {
+            ownersById.put(owner.id, owner);
+        }
+        Map<Integer, Pet> petsById = new HashMap<>();
+        for (Pet pet : pets) {
+            Owner owner = ownersById.get(pet.ownerId);
+            if (owner != null) {
+                owner.pets.add(pet);
+                petsById.put(pet.id, pet);
+            }
+        }
+        for (Visit visit : visits) {
+            Pet pet = petsById.get(visit.petId);
+            if (pet != null) {
+                pet.visits.add(visit);
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * Progress of the scan as reported by the processors of the source in
+     * {@link JobSignal.Kind#SCAN_PROGRESS} signals
+     */
+    static final class Progress {
+
+        private final int processors;
+        private final Map<Integer, Integer> remainingRanges = new HashMap<>();
+
+        /**
+         * @param processors total number of processors of the source in the cluster
+         */
+        Progress(int processors) {
+            this.processors = processors;
+        }
+
+        /**
+         * Records the latest number of ranges the processor has left to scan
+         */
+        void update(int processorIndex, int remaining) {
+            remainingRanges.put(processorIndex, remaining);
+        }
+
+        /**
+         * Returns the number of ranges left to scan by all processors of the source, or -1
+         * if not all processors reported their progress yet
+         */
+        long remainingRanges() {
+            if (remainingRanges.size() < processors) {
+                return -1;
+            }
+            long remaining = 0;
+            for (int processorRemaining : remainingRanges.values()) {
+                remaining += processorRemaining;
+            }
+            return remaining;
+        }
+    }
+
+    /**
+     * Range of owner ids, both ends included
+     */
+    static final class Range implements Serializable {
+
+        final int from;
+        final int to;
+
+        Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String toString() {
+            return "Range{" +
+                    "from=" + from +
+                    ", to=" + to +
+                    '}';
+        }
+    }
+
+    /**
+     * Scan of the owner id ranges of one processor, each chunk of owners with their pets and
+     * visits is read in its own transaction
+     */
+    static final class RangeScan {
+
+        private final Connection connection;
+        private final int processorIndex;
+        private final int processorCount;
+        private final int chunkSize;
+
+        private List<Range> ranges;
+
+        /**
+         * Splits the owner ids in the database into one range per processor and takes the
+         * range of the given processor
+         */
+        RangeScan(Connection connection, int processorIndex, int processorCount, int chunkSize) throws SQLException {
+            this.connection = connection;
+            this.processorIndex = processorIndex;
+            this.processorCount = processorCount;
+            this.chunkSize = chunkSize;
+            this.connection.setAutoCommit(false);
+            this.connection.setReadOnly(true);
+            this.ranges = initialRanges();
+        }
+
+        private List<Range> initialRanges() throws SQLException {
+            List<Range> result = new ArrayList<>(1);
+            try (PreparedStatement statement = connection.prepareStatement("SELECT MIN(id), MAX(id) FROM owners");
+                 ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                long min = resultSet.getLong(1);
+                long max = resultSet.getLong(2);
+                if (!resultSet.wasNull()) {
+                    // Owners inserted after the scan started come with the changes
+                    long span = max - min + 1;
+                    long from = min + span * processorIndex / processorCount;
+                    long to = min + span * (processorIndex + 1) / processorCount - 1;
+                    if (from <= to) {
+                        result.add(new Range((int) from, (int) to));
+                    }
+                }
+            }
+            connection.commit();
+            return result;
+        }
+
+        boolean isDone() {
+            return ranges.isEmpty();
+        }
+
+        int remainingRangeCount() {
+            return ranges.size();
+        }
+
+        /**
+         * Reads the next chunk of owners of the first range left, joined with their pets and
+         * visits. Returns an empty list if the range has no owners left, it is then done.
+         */
+        List<Owner> nextChunk() throws SQLException {
+            Range range = ranges.get(0);
+            List<Owner> owners = readOwners(range);
+            if (owners.isEmpty()) {
+                connection.commit();
+                ranges.remove(0);
+                return owners;
+            }
+            int lastOwnerId = owners.get(owners.size() - 1).id;
+            List<Owner> joined = join(owners, readPets(range.from, lastOwnerId), readVisits(range.from, lastOwnerId));
+            connection.commit();
+
+            // A chunk short of the chunk size read the range to its end
+            if (lastOwnerId >= range.to || owners.size() < chunkSize) {
+                ranges.remove(0);
+            } else {
+                ranges.set(0, new Range(lastOwnerId + 1, range.to));
+            }
+            return joined;
+        }
+
+        private List<Owner> readOwners(Range range) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(OWNERS_QUERY)) {
+                statement.setInt(1, range.from);
+                statement.setInt(2, range.to);
+                statement.setInt(3, chunkSize);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    List<Owner> owners = new ArrayList<>(chunkSize);
+                    while (resultSet.next()) {
+                        owners.add(new Owner(resultSet.getInt(1), resultSet.getString(2), resultSet.getString(3)));
+                    }
+                    return owners;
+                }
+            }
+        }
+
+        private List<Pet> readPets(int fromOwnerId, int toOwnerId) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(PETS_QUERY)) {
+                statement.setInt(1, fromOwnerId);
+                statement.setInt(2, toOwnerId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    List<Pet> pets = new ArrayList<>();
+                    while (resultSet.next()) {
+                        pets.add(new Pet(resultSet.getInt(1), resultSet.getString(2), resultSet.getInt(3)));
+                    }
+                    return pets;
+                }
+            }
+        }
+
+        private List<Visit> readVisits(int fromOwnerId, int toOwnerId) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(VISITS_QUERY)) {
+                statement.setInt(1, fromOwnerId);
+                statement.setInt(2, toOwnerId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    List<Visit> visits = new ArrayList<>();
+                    while (resultSet.next()) {
+                        visits.add(new Visit(resultSet.getInt(1), resultSet.getInt(2), resultSet.getString(3)));
+                    }
+                    return visits;
+                }
+            }
+        }
+
+        List<Range> remainingRanges() {
+            return new ArrayList<>(ranges);
+        }
+
+        /**
+         * Every processor gets the ranges saved by all processors, the ranges are dealt out
+         * again in the same way by all of them, so the number of processors may change
+         */
+        void restoreRanges(List<List<Range>> saved) {
+            List<Range> all = new ArrayList<>();
+            for (List<Range> processorRanges : saved) {
+                all.addAll(processorRanges);
+            }
+            all.sort(Comparator.comparingInt(range -> range.from));
+
+            List<Range> restored = new ArrayList<>();
+            for (int i = processorIndex; i < all.size(); i += processorCount) {
+                restored.add(all.get(i));
+            }
+            ranges = restored;
+        }
+
+        void close() throws SQLException {
+            connection.close();
+        }
+    }
+
+    private static final class Scanner {
+
+        private final Processor.Context context;
+        private final int processorIndex;
+        private final int processorCount;
+        private final RangeScan scan;
+        private final UUID registration;
+
+        private boolean doneEmitted;
+
+        // Set by the thread of the signal listener
+        private volatile boolean changesStarted;
+
+        // Created lazily, user metrics can be created only on the processor thread
+        private Metric remainingRangesMetric;
+        private Metric scannedOwnersMetric;
+        private int reportedRanges = -1;
+
+        Scanner(Processor.Context context, String jdbcUrl, String user, String password, int chunkSize)
+                throws SQLException {
+            this.context = context;
+            this.processorIndex = context.globalProcessorIndex();
+            this.processorCount = context.totalParallelism();
+            // Subscribed when the job initializes, before the change data capture source runs
+            this.registration = JobSignal.subscribe(context, message -> {
+                if (message.getMessageObject().kind == JobSignal.Kind.CHANGES_STARTED) {
+                    changesStarted = true;
+                }
+            });
+            this.scan = new RangeScan(DriverManager.getConnection(jdbcUrl, user, password),
+                    processorIndex, processorCount, chunkSize);
+        }
+
+        void fillBuffer(SourceBuffer<Object> buffer) throws SQLException {
+            if (remainingRangesMetric == null) {
+                remainingRangesMetric = Metrics.metric(REMAINING_RANGES_METRIC, Unit.COUNT);
+                scannedOwnersMetric = Metrics.metric(SCANNED_OWNERS_METRIC, Unit.COUNT);
+            }
+            reportProgress();
+            if (scan.isDone()) {
+                if (!doneEmitted) {
+                    // Emitted again after a restart, the join states ignore the repeated signal
+                    buffer.add(new ScanDone(processorIndex, processorCount, 0));
+                    doneEmitted = true;
+                }
+                return;
+            }
+            if (!changesStarted) {
+                return;
+            }
+
+            List<Owner> owners = scan.nextChunk();
+            for (Owner owner : owners) {
+                buffer.add(new ScannedOwner(owner));
+            }
+            scannedOwnersMetric.increment(owners.size());
+            reportProgress();
+        }
+
+        private void reportProgress() {
+            int remaining = scan.remainingRangeCount();
+            remainingRangesMetric.set(remaining);
+            if (reportedRanges != remaining) {
+                JobSignal.publish(context, JobSignal.scanProgress(processorIndex, remaining));
+                reportedRanges = remaining;
+            }
+        }
+
+        List<Range> remainingRanges() {
+            return scan.remainingRanges();
+        }
+
+        void restoreRanges(List<List<Range>> saved) {
+            scan.restoreRanges(saved);
+        }
+
+        void close() throws SQLException {
+            JobSignal.unsubscribe(context, registration);
+            scan.close();
+        }
+    }
+}
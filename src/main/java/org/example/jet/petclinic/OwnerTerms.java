@@ -0,0 +1,78 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.Traversers;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.example.jet.petclinic.search.TermChange;
+import org.example.jet.petclinic.search.Terms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Terms of an owner in the keyword index, kept per owner id to turn the updates of the
+ * owner into the changes of the index
+ * <p>
+ * The terms are the words of the names of the owner, of the names of its pets and of the
+ * keywords of their visits. An update emits only the terms the owner gained or lost.
+ */
+final class OwnerTerms {
+
+    private Set<String> terms;
+
+    OwnerTerms() {
+        this(Collections.emptySet());
+    }
+
+    OwnerTerms(Set<String> terms) {
+        this.terms = terms;
+    }
+
+    /**
+     * Returns the changes of the index for the update of the owner, a deleted owner
+     * loses all its terms
+     */
+    Traverser<TermChange> update(OwnerUpdate update) {
+        Set<String> current = update.deleted ? Collections.emptySet() : terms(update.owner);
+        int ownerId = update.owner.id;
+        List<TermChange> changes = new ArrayList<>();
+        for (String term : terms) {
+            if (!current.contains(term)) {
+                changes.add(TermChange.removed(term, ownerId));
+            }
+        }
+        for (String term : current) {
+            if (!terms.contains(term)) {
+                changes.add(TermChange.added(term, ownerId));
+            }
+        }
+        terms = current;
+        return Traversers.traverseIterable(changes);
+    }
+
+    Set<String> terms() {
+        return terms;
+    }
+
+    static Set<String> terms(Owner owner) {
+        Set<String> terms = new HashSet<>();
+        Terms.addTerms(owner.firstName, terms);
+        Terms.addTerms(owner.lastName, terms);
+        for (Pet pet : owner.pets) {
+            Terms.addTerms(pet.name, terms);
+            for (Visit visit : pet.visits) {
+                if (visit.keywords != null) {
+                    for (String keyword : visit.keywords) {
+                        Terms.addTerms(keyword, terms);
+                    }
+                }
+            }
+        }
+        return terms;
+    }
+}
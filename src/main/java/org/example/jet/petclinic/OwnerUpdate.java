@@ -0,0 +1,214 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Change of an owner emitted by {@link JoiningState}
+ * <p>
+ * Carries the complete current owner and, unless the change is {@link #full}, what changed
+ * since the previous update of the owner - pets whose own fields changed, visits appended to
+ * pets and removed pets. The sink can then send only the changes instead of the whole owner.
+ */
+class OwnerUpdate implements Serializable {
+
+    /**
+     * The owner with all its pets and visits
+     */
+    final Owner owner;
+
+    /**
+     * True if the whole owner must be written, e.g. because the fields of the owner changed
+     */
+    final boolean full;
+
+    /**
+     * Pets with changed fields, the visits of these pets are not set
+     */
+    final List<Pet> pets;
+
+    final List<VisitAppend> visits;
+
+    /**
+     * Ids of removed pets, a full or deleting update keeps the pets removed by the updates merged
+     * into it and a deletion of a split owner carries all its pets, so their documents can be
+     * deleted
+     */
+    final List<Integer> removedPetIds;
+
+    /**
+     * True if the owner was deleted, the owner carries only the id
+     */
+    final boolean deleted;
+
+    /**
+     * Binlog time of the oldest change in the update in epoch milliseconds, 0 if not known
+     */
+    final long timestamp;
+
+    /**
+     * Version of the owner document, greater than the versions of the previous updates of the
+     * owner, 0 if not known
+     */
+    final long version;
+
+    /**
+     * True if the owner is written split, the owner without its pets and each pet in a document
+     * of its own, because the owner has too many pets or visits
+     */
+    final boolean split;
+
+    private OwnerUpdate(Owner owner, boolean full, List<Pet> pets, List<VisitAppend> visits,
+                        List<Integer> removedPetIds) {
+        this(owner, full, pets, visits, removedPetIds, false, 0, 0, false);
+    }
+
+    private OwnerUpdate(Owner owner, boolean full, List<Pet> pets, List<VisitAppend> visits,
+                        List<Integer> removedPetIds, boolean deleted, long timestamp, long version,
+                        boolean split) {
+        this.owner = owner;
+        this.full = full;
+        this.deleted = deleted;
+        this.pets = pets;
+        this.visits = visits;
+        this.removedPetIds = removedPetIds;
+        this.timestamp = timestamp;
+        this.version = version;
+        this.split = split;
+    }
+
+    static OwnerUpdate full(Owner owner) {
+        return new OwnerUpdate(owner, true, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+    }
+
+    static OwnerUpdate petChanged(Owner owner, Pet pet) {
+        return new OwnerUpdate(owner, false, Collections.singletonList(new Pet(pet.id, pet.name, pet.ownerId)),
+                Collections.emptyList(), Collections.emptyList());
+    }
+
+    static OwnerUpdate visitAppended(Owner owner, int index, Visit visit) {
+        return new OwnerUpdate(owner, false, Collections.emptyList(),
+                Collections.singletonList(new VisitAppend(index, visit)), Collections.emptyList());
+    }
+
+    static OwnerUpdate petRemoved(Owner owner, int petId) {
+        return new OwnerUpdate(owner, false, Collections.emptyList(), Collections.emptyList(),
+                Collections.singletonList(petId));
+    }
+
+    static OwnerUpdate deleted(int ownerId) {
+        return deleted(ownerId, Collections.emptyList(), false);
+    }
+
+    /**
+     * Returns the deletion of the owner, the ids of the pets of a split owner are given
+     */
+    static OwnerUpdate deleted(int ownerId, List<Integer> petIds, boolean split) {
+        return new OwnerUpdate(new Owner(ownerId, null, null), false, Collections.emptyList(),
+                Collections.emptyList(), petIds, true, 0, 0, split);
+    }
+
+    /**
+     * Returns the update with the binlog time of the change it was made of
+     */
+    OwnerUpdate withTimestamp(long timestamp) {
+        return new OwnerUpdate(owner, full, pets, visits, removedPetIds, deleted, timestamp, version, split);
+    }
+
+    /**
+     * Returns the update with the given version of the owner document
+     */
+    OwnerUpdate withVersion(long version) {
+        return new OwnerUpdate(owner, full, pets, visits, removedPetIds, deleted, timestamp, version, split);
+    }
+
+    /**
+     * Returns the update of the owner written split
+     */
+    OwnerUpdate asSplit() {
+        return new OwnerUpdate(owner, full, pets, visits, removedPetIds, deleted, timestamp, version, true);
+    }
+
+    /**
+     * Combines two consecutive updates of the same owner into one
+     * <p>
+     * The changes of both updates are kept in order. Pet removals mixed with other changes
+     * are not replayed, the whole owner is written instead, the removed pets are kept for the
+     * documents of the pets of split owners. A deletion replaces all pending changes, an owner
+     * created again after a deletion is written whole. The merged update keeps the timestamp
+     * of the older changes and the version and the form of the newer one.
+     */
+    static OwnerUpdate merge(OwnerUpdate older, OwnerUpdate newer) {
+        long timestamp = older.timestamp == 0 ? newer.timestamp : older.timestamp;
+        long version = Math.max(older.version, newer.version);
+        List<Integer> removedPetIds = concat(older.removedPetIds, newer.removedPetIds);
+        if (newer.deleted) {
+            return new OwnerUpdate(newer.owner, false, Collections.emptyList(), Collections.emptyList(),
+                    removedPetIds, true, timestamp, version, newer.split);
+        }
+        if (older.deleted || older.full || newer.full || !removedPetIds.isEmpty()) {
+            return new OwnerUpdate(newer.owner, true, Collections.emptyList(), Collections.emptyList(),
+                    removedPetIds, false, timestamp, version, newer.split);
+        }
+        return new OwnerUpdate(newer.owner, false, concat(older.pets, newer.pets),
+                concat(older.visits, newer.visits), Collections.emptyList(), false, timestamp, version,
+                newer.split);
+    }
+
+    private static <T> List<T> concat(List<T> first, List<T> second) {
+        if (first.isEmpty()) {
+            return second;
+        } else if (second.isEmpty()) {
+            return first;
+        }
+        List<T> result = new ArrayList<>(first.size() + second.size());
+        result.addAll(first);
+        result.addAll(second);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "OwnerUpdate{" +
+                "ownerId=" + owner.id +
+                ", full=" + full +
+                ", deleted=" + deleted +
+                ", timestamp=" + timestamp +
+                ", version=" + version +
+                ", split=" + split +
+                ", pets=" + pets +
+                ", visits=" + visits +
+                ", removedPetIds=" + removedPetIds +
+                '}';
+    }
+
+    /**
+     * Visit appended to the visits of its pet at the given index
+     * <p>
+     * The index makes the append idempotent, a visit replayed after a restart is not added twice.
+     */
+    static final class VisitAppend implements Serializable {
+
+        final int index;
+        final Visit visit;
+
+        VisitAppend(int index, Visit visit) {
+            this.index = index;
+            this.visit = visit;
+        }
+
+        @Override
+        public String toString() {
+            return "VisitAppend{" +
+                    "index=" + index +
+                    ", visit=" + visit +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.example.jet.petclinic;
+
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Painless script applying the changes of an {@link OwnerUpdate} to the owner document
+ * <p>
+ * Removed pets are removed, changed pets are updated or appended without touching their
+ * visits and new visits are appended to their pets. A visit is appended only if the pet
+ * has exactly as many visits as the index of the visit, so applying the same script
+ * twice does not duplicate visits.
+ * <p>
+ * The field names are the ones of the JSON written for the full owner.
+ */
+final class OwnerUpdateScript {
+
+    static final String SOURCE = "" +
+            "List pets = ctx._source.pets;\n" +
+            "if (pets == null) { pets = new ArrayList(); ctx._source.pets = pets; }\n" +
+            "for (def id : params.removed_pets) {\n" +
+            "  for (int i = pets.size() - 1; i >= 0; i--) { if (pets.get(i).id == id) { pets.remove(i); } }\n" +
+            "}\n" +
+            "for (def pet : params.pets) {\n" +
+            "  def existing = null;\n" +
+            "  for (def p : pets) { if (p.id == pet.id) { existing = p; } }\n" +
+            "  if (existing == null) {\n" +
+            "    existing = new HashMap(); existing.id = pet.id; existing.visits = new ArrayList(); pets.add(existing);\n" +
+            "  }\n" +
+            "  existing.name = pet.name; existing.owner_id = pet.owner_id;\n" +
+            "}\n" +
+            "for (def append : params.visits) {\n" +
+            "  for (def p : pets) {\n" +
+            "    if (p.id == append.visit.pet_id) {\n" +
+            "      if (p.visits == null) { p.visits = new ArrayList(); }\n" +
+            "      if (p.visits.size() == append.index) { p.visits.add(append.visit); }\n" +
+            "    }\n" +
+            "  }\n" +
+            "}\n";
+
+    private OwnerUpdateScript() {
+    }
+
+    static Script script(OwnerUpdate update) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("removed_pets", update.removedPetIds);
+
+        List<Map<String, Object>> pets = new ArrayList<>(update.pets.size());
+        for (Pet pet : update.pets) {
+            Map<String, Object> source = new LinkedHashMap<>();
+            source.put("id", pet.id);
+            source.put("owner_id", pet.ownerId);
+            source.put("name", pet.name);
+            pets.add(source);
+        }
+        params.put("pets", pets);
+
+        List<Map<String, Object>> visits = new ArrayList<>(update.visits.size());
+        for (OwnerUpdate.VisitAppend append : update.visits) {
+            Map<String, Object> source = new HashMap<>();
+            source.put("index", append.index);
+            source.put("visit", visitSource(append.visit));
+            visits.add(source);
+        }
+        params.put("visits", visits);
+
+        return new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, SOURCE, params);
+    }
+
+    private static Map<String, Object> visitSource(Visit visit) {
+        Map<String, Object> source = new LinkedHashMap<>();
+        source.put("id", visit.id);
+        source.put("pet_id", visit.petId);
+        source.put("description", visit.description);
+        source.put("keywords", visit.keywords);
+        return source;
+    }
+}
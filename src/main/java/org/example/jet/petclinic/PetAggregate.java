@@ -0,0 +1,138 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pet with all its visits as collected by {@link JoiningState}
+ * <p>
+ * The {@link Pet} emitted downstream is built lazily and reused until the pet changes.
+ */
+class PetAggregate {
+
+    final Integer id;
+    String name;
+    Integer ownerId;
+
+    private VisitLog visits = new VisitLog();
+
+    // Visit ids grow, a visit with a greater id than all known visits is new
+    private int maxVisitId = Integer.MIN_VALUE;
+
+    private Pet snapshot;
+
+    PetAggregate(Integer id) {
+        this.id = id;
+    }
+
+    /**
+     * Updates the pet with the incoming item, the item becomes the current snapshot
+     */
+    void update(Pet pet) {
+        name = pet.name;
+        ownerId = pet.ownerId;
+
+        pet.visits = visits.view();
+        snapshot = pet;
+    }
+
+    void addVisit(Visit visit) {
+        visits.append(visit);
+        if (visit.id != null && visit.id > maxVisitId) {
+            maxVisitId = visit.id;
+        }
+        snapshot = null;
+    }
+
+    /**
+     * Returns true if a visit with the id of the given visit was already added
+     */
+    boolean containsVisit(Visit visit) {
+        if (visit.id == null || visit.id > maxVisitId) {
+            return false;
+        }
+        for (Visit existing : visits.view()) {
+            if (visit.id.equals(existing.id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Puts the given visits, which happened before the visits added so far, in front of them
+     * <p>
+     * Visits added so far that are among the given visits are not repeated.
+     */
+    void prependVisits(List<Visit> earlier) {
+        if (earlier.isEmpty()) {
+            return;
+        }
+        List<Visit> later = visits.view();
+        Set<Integer> earlierIds = new HashSet<>();
+        for (Visit visit : earlier) {
+            earlierIds.add(visit.id);
+        }
+
+        // Existing views keep the previous log
+        visits = new VisitLog();
+        maxVisitId = Integer.MIN_VALUE;
+        for (Visit visit : earlier) {
+            addVisit(visit);
+        }
+        for (Visit visit : later) {
+            if (visit.id == null || !earlierIds.contains(visit.id)) {
+                addVisit(visit);
+            }
+        }
+    }
+
+    /**
+     * Removes the visit with the given id, returns false if the pet has no such visit
+     */
+    boolean removeVisit(Integer visitId) {
+        List<Visit> current = visits.view();
+        int index = -1;
+        for (int i = 0; i < current.size(); i++) {
+            if (visitId.equals(current.get(i).id)) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return false;
+        }
+
+        // Existing views keep the previous log
+        visits = new VisitLog();
+        maxVisitId = Integer.MIN_VALUE;
+        for (int i = 0; i < current.size(); i++) {
+            if (i != index) {
+                addVisit(current.get(i));
+            }
+        }
+        snapshot = null;
+        return true;
+    }
+
+    int visitCount() {
+        return visits.size();
+    }
+
+    List<Visit> visits() {
+        return visits.view();
+    }
+
+    Pet snapshot() {
+        if (snapshot == null) {
+            Pet pet = new Pet(id, name, ownerId);
+            pet.visits = visits.view();
+            snapshot = pet;
+        }
+        return snapshot;
+    }
+}
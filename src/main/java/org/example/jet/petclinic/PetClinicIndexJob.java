@@ -1,46 +1,69 @@
 package org.example.jet.petclinic;
 
+import com.hazelcast.core.HazelcastJsonValue;
+import com.hazelcast.function.SupplierEx;
+import com.hazelcast.jet.JetInstance;
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.Traversers;
 import com.hazelcast.jet.cdc.ChangeRecord;
 import com.hazelcast.jet.cdc.ParsingException;
 import com.hazelcast.jet.cdc.mysql.MySqlCdcSources;
-import com.hazelcast.jet.elastic.ElasticSinks;
-import com.hazelcast.jet.json.JsonUtil;
+import com.hazelcast.jet.config.JobConfig;
+import com.hazelcast.jet.config.ProcessingGuarantee;
 import com.hazelcast.jet.picocli.CommandLine.Option;
 import com.hazelcast.jet.pipeline.Pipeline;
-import com.hazelcast.jet.pipeline.ServiceFactories;
 import com.hazelcast.jet.pipeline.ServiceFactory;
 import com.hazelcast.jet.pipeline.Sink;
+import com.hazelcast.jet.pipeline.Sources;
 import com.hazelcast.jet.pipeline.StreamSource;
+import com.hazelcast.jet.pipeline.StreamStage;
 import org.apache.http.HttpHost;
 import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.example.jet.petclinic.elastic.CoalescingElasticSinkP;
+import org.example.jet.petclinic.elastic.ElasticBulkConfig;
+import org.example.jet.petclinic.elastic.ElasticIndexRefresh;
+import org.example.jet.petclinic.metrics.Histogram;
+import org.example.jet.petclinic.metrics.PrometheusEndpoint;
 import org.example.jet.petclinic.model.Owner;
 import org.example.jet.petclinic.model.Pet;
 import org.example.jet.petclinic.model.Visit;
-import org.example.jet.petclinic.rake.Rake;
+import org.example.jet.petclinic.search.KeywordIndexSinkP;
+import org.example.jet.petclinic.search.PostingList;
+import org.example.jet.petclinic.search.TermPostingsP;
+import org.example.jet.petclinic.store.BinaryStore;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+
+import static com.hazelcast.jet.Util.entry;
+import static java.util.Collections.singletonList;
 
 /**
  * Job that is
  * - reading CDC events from a petclinic database
  * - enriching the events with keywords
  * - joining events from different tables into single record
- * - writing to an Elastic index
+ * - writing to an Elastic index, only the latest version of each owner in bulk requests,
+ *   and optionally to an owner map or to an in-memory keyword index
  */
 public class PetClinicIndexJob implements Serializable {
 
-    private static final String DATABASE = "petclinic";
+    static final String JOB_NAME = "PetClinicIndexJob";
+    static final String REINDEX_JOB_NAME = "PetClinicReindexJob";
 
-    private static final String OWNERS_TABLE = "owners";
-    private static final String PETS_TABLE = "pets";
-    private static final String VISITS_TABLE = "visits";
+    private static final String DATABASE = "petclinic";
 
     private static final String[] TABLE_WHITELIST = {"petclinic.owners", "petclinic.pets", "petclinic.visits"};
 
@@ -65,8 +88,262 @@ public class PetClinicIndexJob implements Serializable {
     @Option(names = {"-i", "--elastic-index"}, description = "elastic index")
     private String elasticIndex;
 
+    @Option(names = {"--elastic-bulk-size"}, description = "maximum number of documents in a bulk request",
+            defaultValue = "1000")
+    private int elasticBulkSize;
+
+    @Option(names = {"--elastic-flush-interval"},
+            description = "milliseconds an owner waits for more updates before it is written", defaultValue = "1000")
+    private long elasticFlushInterval;
+
+    @Option(names = {"--elastic-max-in-flight"}, description = "maximum number of bulk requests in flight per processor",
+            defaultValue = "2")
+    private int elasticMaxInFlight;
+
+    @Option(names = {"--elastic-external-versioning"}, description = "write whole owners with the version of their " +
+            "last change as the external version, so that replayed and reordered writes never overwrite newer owners")
+    private boolean elasticExternalVersioning;
+
+    @Option(names = {"--keyword-cache-size"},
+            description = "number of visit descriptions with cached keywords per member, 0 disables the cache",
+            defaultValue = "10000")
+    private int keywordCacheSize;
+
+    @Option(names = {"--keyword-enrichment"},
+            description = "SYNC to score visits on the Jet threads, ASYNC to score them in batches on a worker pool",
+            defaultValue = "ASYNC")
+    private KeywordService.Mode keywordEnrichment;
+
+    @Option(names = {"--keyword-batch-size"}, description = "maximum number of visits scored in one batch",
+            defaultValue = "64")
+    private int keywordBatchSize;
+
+    @Option(names = {"--keyword-threads"}, description = "number of worker threads scoring visits per member, " +
+            "0 for the number of available processors", defaultValue = "0")
+    private int keywordThreads;
+
+    @Option(names = {"--bootstrap"},
+            description = "scan the database into the index instead of the change data capture snapshot")
+    private boolean bootstrap;
+
+    @Option(names = {"--bootstrap-chunk-size"}, description = "number of owners read in one transaction of the scan",
+            defaultValue = "1000")
+    private int bootstrapChunkSize;
+
+    @Option(names = {"--owner-map"}, description = "name of the IMap the joined owners are also written to, " +
+            "as JSON with indexes on the last name and the pet names")
+    private String ownerMap;
+
+    @Option(names = {"--keyword-index"}, description = "name of the replicated map the owners are also indexed " +
+            "in by the words of their names, pet names and visit keywords, for searching without Elasticsearch")
+    private String keywordIndex;
+
+    @Option(names = {"--reindex-from-owner-map"}, description = "write the owners in the owner map to the index " +
+            "and stop, instead of starting the job")
+    private boolean reindexFromOwnerMap;
+
+    @Option(names = {"--prometheus-port"}, description = "port the metrics are served at in the Prometheus format, " +
+            "the members of a host use the following ports, 0 for none", defaultValue = "0")
+    private int prometheusPort;
+
+    @Option(names = {"--processing-guarantee"}, description = "NONE, AT_LEAST_ONCE or EXACTLY_ONCE",
+            defaultValue = "EXACTLY_ONCE")
+    private ProcessingGuarantee processingGuarantee;
+
+    @Option(names = {"--snapshot-interval"}, description = "milliseconds between snapshots of the job state",
+            defaultValue = "10000")
+    private long snapshotInterval;
+
+    @Option(names = {"--export-snapshot"}, description = "name of the snapshot the running job is cancelled with, " +
+            "the new job starts from it")
+    private String exportSnapshot;
+
+    @Option(names = {"--initial-snapshot"}, description = "name of an exported snapshot the job starts from")
+    private String initialSnapshot;
+
+    @Option(names = {"--join-state-memory"}, description = "where the join state is stored, HEAP, OFF_HEAP " +
+            "or MAPPED to files paged in and out by the operating system", defaultValue = "HEAP")
+    private BinaryStore.Memory joinStateMemory;
+
+    @Option(names = {"--join-state-directory"}, description = "directory of the files of the MAPPED join state, " +
+            "required with MAPPED")
+    private String joinStateDirectory;
+
+    @Option(names = {"--join-state-active-owners"}, description = "number of recently used owners kept decoded",
+            defaultValue = "10000")
+    private int joinStateActiveOwners;
+
+    @Option(names = {"--join-partitions"}, description = "number of partitions the join is split into",
+            defaultValue = "271")
+    private int joinPartitions;
+
+    @Option(names = {"--join-max-orphans"}, description = "maximum number of pets and owners waiting for " +
+            "their owner or name, and of pets with visits waiting for the pet, in the whole join", defaultValue = "100000")
+    private int joinMaxOrphans;
+
+    @Option(names = {"--join-orphan-ttl"}, description = "milliseconds an orphan waits before it is dropped",
+            defaultValue = "86400000")
+    private long joinOrphanTtl;
+
+    @Option(names = {"--join-max-tombstones"}, description = "maximum number of owners, pets and visits deleted " +
+            "during the bootstrap scan in the whole join, the job fails when more are deleted", defaultValue = "10000000")
+    private int joinMaxTombstones;
+
+    @Option(names = {"--split-owner-pets"}, description = "number of pets of an owner from which its pets are " +
+            "written as documents of their own, in the index with the -pets suffix, 0 for never", defaultValue = "0")
+    private int splitOwnerPets;
+
+    @Option(names = {"--split-owner-visits"}, description = "number of visits of an owner from which its pets are " +
+            "written as documents of their own, in the index with the -pets suffix, 0 for never", defaultValue = "0")
+    private int splitOwnerVisits;
+
     public Pipeline pipeline() {
-        StreamSource<ChangeRecord> mysqlSource = MySqlCdcSources
+        return pipeline(mysqlSource());
+    }
+
+    /**
+     * Returns the pipeline reading the changes from the given source instead of the database,
+     * e.g. the generated changes of a load test
+     */
+    Pipeline pipeline(StreamSource<ChangeRecord> changeSource) {
+        // Rake, the cache and the workers are shared by the processors of a member
+        int keywordWorkers = keywordEnrichment == KeywordService.Mode.SYNC ? 0
+                : keywordThreads > 0 ? keywordThreads : Runtime.getRuntime().availableProcessors();
+        ServiceFactory<?, KeywordService> keywordService = ServiceFactory
+                .withCreateContextFn(context -> {
+                    KeywordService.Shared shared = new KeywordService.Shared(keywordCacheSize, keywordWorkers);
+                    // Created once per member when the job starts
+                    JobSignal.publish(context, JobSignal.memberStarted(context.memberIndex()));
+                    return shared;
+                })
+                .withDestroyContextFn(KeywordService.Shared::close)
+                .withCreateServiceFn((context, shared) -> new KeywordService(shared));
+
+        // The endpoint serves all metrics of the member, it is started with the first stage
+        ServiceFactory<?, Histogram> decodeService = ServiceFactory
+                .withCreateContextFn(context -> prometheusPort > 0
+                        ? PrometheusEndpoint.start(prometheusPort + context.memberIndex()) : null)
+                .withDestroyContextFn(endpoint -> {
+                    if (endpoint != null) {
+                        endpoint.close();
+                    }
+                })
+                .withCreateServiceFn((context, endpoint) -> Histogram.latencyMicros("decodeLatencyMicros"));
+
+        // Merges the updates of each owner until they are written in a bulk request
+        Sink<OwnerUpdate> elasticSink = CoalescingElasticSinkP.multiRequestSink(
+                "elasticSink",
+                elasticClientFn(),
+                update -> update.owner.id,
+                OwnerUpdate::merge,
+                this::mapOwnerUpdateToElasticRequests,
+                update -> update.timestamp,
+                elasticBulkConfig()
+        );
+
+        if (joinStateMemory == BinaryStore.Memory.MAPPED && joinStateDirectory == null) {
+            // The temporary directory is often a small tmpfs, i.e. memory again
+            throw new IllegalStateException("The MAPPED join state needs the --join-state-directory option");
+        }
+        JoiningStateConfig joiningStateConfig = new JoiningStateConfig()
+                .setMemory(joinStateMemory)
+                .setDirectory(joinStateDirectory)
+                .setActiveOwners(joinStateActiveOwners)
+                .setPartitions(joinPartitions)
+                .setMaxOrphans(joinMaxOrphans)
+                .setMaxTombstones(joinMaxTombstones)
+                .setOrphanTtlMillis(joinOrphanTtl)
+                .setSplitOwnerPets(splitOwnerPets)
+                .setSplitOwnerVisits(splitOwnerVisits)
+                .setBootstrap(bootstrap);
+
+        Pipeline p = Pipeline.create();
+        StreamStage<ChangeRecord> records = p
+                .readFrom(changeSource)
+                .withoutTimestamps();
+        if (bootstrap) {
+            // The scan starts with the first change, so no change made during the scan is missed
+            records = records.mapUsingService(OwnerScanSource.changeSignal(), OwnerScanSource.ChangeSignal::onChange)
+                             .setName("signalChangesStarted");
+        }
+        StreamStage<Object> changes = records
+                .mapUsingService(decodeService, PetClinicIndexJob::mapChangeRecordToPOJO).setName("mapChangeRecordToPOJO");
+        if (bootstrap) {
+            StreamStage<Object> scannedOwners = p
+                    .readFrom(OwnerScanSource.source(jdbcUrl(), databaseUser, databasePassword, bootstrapChunkSize))
+                    .withoutTimestamps();
+            changes = changes.merge(scannedOwners);
+        }
+
+        StreamStage<Object> events;
+        if (keywordEnrichment == KeywordService.Mode.SYNC) {
+            events = changes
+                    .mapUsingService(keywordService, (service, item) -> {
+                        long start = System.nanoTime();
+                        Object enriched = enrichWithKeywords(service, item);
+                        service.recordLatency(start);
+                        return enriched;
+                    }).setName("enrichWithKeywords");
+        } else {
+            // Only visits are scored, in order, so the visits of each pet keep their order
+            StreamStage<Object> visits = changes
+                    .filter(PetClinicIndexJob::hasVisits).setName("filterVisits")
+                    .mapUsingServiceAsyncBatched(keywordService, keywordBatchSize,
+                            PetClinicIndexJob::enrichWithKeywordsAsync).setName("enrichWithKeywords");
+            events = changes
+                    .filter(item -> !hasVisits(item)).setName("filterOwnersAndPets")
+                    .merge(visits);
+        }
+
+        // Owners carry their id, pets and visits get the owner id from the lookup partitioned by pet id
+        StreamStage<Map.Entry<Integer, Object>> owners = events
+                .filter(PetClinicIndexJob::isOwner).setName("filterOwners")
+                .map(item -> entry(ownerId(item), item)).setName("keyByOwnerId");
+        StreamStage<Map.Entry<Integer, Object>> petsAndVisits = events
+                .flatMap(item -> petsAndVisits(joiningStateConfig, item)).setName("filterPetsAndVisits")
+                .groupingKey(item -> joiningStateConfig.partition(PetOwnerLookup.petId(item)))
+                .flatMapStateful(() -> new PetOwnerLookup(joiningStateConfig),
+                        (lookup, partition, item) -> {
+                            // A state restored from a snapshot gets the configuration of the job
+                            lookup.configure(joiningStateConfig);
+                            Traverser<Map.Entry<Integer, Object>> routed = lookup.route(item);
+                            lookup.reportMetrics();
+                            return routed;
+                        }).setName("PetOwnerLookup::route");
+
+        StreamStage<OwnerUpdate> updates = owners
+                .merge(petsAndVisits)
+                .groupingKey(entry -> joiningStateConfig.partition(entry.getKey()))
+                .mapStateful(() -> new JoiningState(joiningStateConfig),
+                        (state, partition, entry) -> {
+                            state.configure(joiningStateConfig);
+                            long start = System.nanoTime();
+                            OwnerUpdate update = state.update(entry.getValue());
+                            state.reportMetrics(start);
+                            return update;
+                        }).setName("JoiningState::update");
+        if (elasticHost != null) {
+            updates.writeTo(elasticSink);
+        }
+        if (ownerMap != null) {
+            updates.writeTo(OwnerMapView.sink(ownerMap));
+        }
+        if (keywordIndex != null) {
+            // The previous terms of each owner give the postings to add and remove, the posting
+            // list of each term is then kept by a single processor in the cluster
+            updates.groupingKey(update -> update.owner.id)
+                   .flatMapStateful(OwnerTerms::new, (terms, ownerId, update) -> terms.update(update))
+                   .setName("OwnerTerms::update")
+                   .groupingKey(change -> change.term)
+                   .<Map.Entry<String, PostingList>>customTransform("TermPostings::apply", TermPostingsP::new)
+                   .writeTo(KeywordIndexSinkP.sink("keywordIndexSink", keywordIndex));
+        }
+
+        return p;
+    }
+
+    private StreamSource<ChangeRecord> mysqlSource() {
+        MySqlCdcSources.Builder mysqlSourceBuilder = MySqlCdcSources
                 .mysql("mysql-cdc")
                 .setDatabaseAddress(databaseAddress)
                 .setDatabasePort(databasePort)
@@ -74,79 +351,262 @@ public class PetClinicIndexJob implements Serializable {
                 .setDatabasePassword(databasePassword)
                 .setClusterName(clusterName)
                 .setDatabaseWhitelist(DATABASE)
-                .setTableWhitelist(TABLE_WHITELIST)
-                .build();
+                .setTableWhitelist(TABLE_WHITELIST);
+        if (bootstrap) {
+            // The owner scan replaces the snapshot, the changes start at the binlog position of the job start
+            mysqlSourceBuilder.setCustomProperty("snapshot.mode", "schema_only");
+        }
+        return mysqlSourceBuilder.build();
+    }
 
-        ServiceFactory<?, Rake> keywordService = ServiceFactories.sharedService((context) -> new Rake("en"));
+    /**
+     * Returns the batch pipeline writing all owners in the owner map to the index
+     */
+    public Pipeline reindexPipeline() {
+        if (ownerMap == null) {
+            throw new IllegalStateException("Reindexing needs the --owner-map option");
+        }
+        Pipeline p = Pipeline.create();
+        p.readFrom(Sources.<Integer, HazelcastJsonValue>map(ownerMap))
+         .writeTo(CoalescingElasticSinkP.sink(
+                 "elasticSink",
+                 elasticClientFn(),
+                 Map.Entry::getKey,
+                 entry -> new IndexRequest(elasticIndex)
+                         .id(entry.getKey().toString())
+                         .source(entry.getValue().toString(), XContentType.JSON),
+                 elasticBulkConfig()
+         ));
+        return p;
+    }
 
-        Sink<Owner> elasticSink = ElasticSinks.elastic(
-                () -> RestClient.builder(HttpHost.create(elasticHost)),
-                this::mapOwnerToElasticRequest
-        );
+    /**
+     * Returns the config to submit the {@link #pipeline()} with
+     */
+    public JobConfig jobConfig() {
+        JobConfig config = new JobConfig()
+                .setName(JOB_NAME)
+                .setProcessingGuarantee(processingGuarantee)
+                .setSnapshotIntervalMillis(snapshotInterval);
+        String snapshotName = exportSnapshot != null ? exportSnapshot : initialSnapshot;
+        if (snapshotName != null) {
+            config.setInitialSnapshotName(snapshotName);
+        }
+        return PetClinicSerializers.register(config);
+    }
 
-        Pipeline p = Pipeline.create();
-        p.readFrom(mysqlSource)
-         .withoutTimestamps()
-         .map(PetClinicIndexJob::mapChangeRecordToPOJO).setName("mapChangeRecordToPOJO")
-         .mapUsingService(keywordService, PetClinicIndexJob::enrichWithKeywords).setName("enrichWithKeywords")
-         .mapStateful(JoiningState::new, JoiningState::join).setName("JoiningState::join")
-         .writeTo(elasticSink);
+    /**
+     * Returns the name of the snapshot to export from the running job before the new job is
+     * submitted, or null
+     */
+    public String getExportSnapshot() {
+        return exportSnapshot;
+    }
 
-        return p;
+    public JobConfig reindexJobConfig() {
+        return new JobConfig().setName(REINDEX_JOB_NAME);
     }
 
-    private static Object mapChangeRecordToPOJO(ChangeRecord change) throws ParsingException {
-        Map<String, Object> changeMap = change.value().toMap();
+    public boolean isBootstrap() {
+        return bootstrap;
+    }
 
-        switch (change.table()) {
-            case OWNERS_TABLE: {
-                Integer ownerId = (Integer) changeMap.get("id");
-                String firstName = (String) changeMap.get("first_name");
-                String lastName = (String) changeMap.get("last_name");
+    public boolean isReindexFromOwnerMap() {
+        return reindexFromOwnerMap;
+    }
 
-                return new Owner(ownerId, firstName, lastName);
-            }
+    /**
+     * Adds the indexes of the owner map if the owners are written to one
+     */
+    public void addOwnerMapIndexes(JetInstance jet) {
+        if (ownerMap != null) {
+            OwnerMapView.addIndexes(jet.getMap(ownerMap));
+        }
+    }
 
-            case PETS_TABLE: {
-                Integer petId = (Integer) changeMap.get("id");
-                String name = (String) changeMap.get("name");
-                Integer ownerId = (Integer) changeMap.get("owner_id");
+    /**
+     * Turns the refresh of the index off for the bootstrap scan
+     */
+    public void disableIndexRefresh() throws IOException {
+        try (RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(HttpHost.create(elasticHost)))) {
+            ElasticIndexRefresh.disable(client, elasticIndex);
+        }
+    }
 
-                return new Pet(petId, name, ownerId);
-            }
+    public void restoreIndexRefresh() throws IOException {
+        try (RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(HttpHost.create(elasticHost)))) {
+            ElasticIndexRefresh.restore(client, elasticIndex);
+        }
+    }
 
-            case VISITS_TABLE:
-                Integer petId = (Integer) changeMap.get("pet_id");
-                String description = (String) changeMap.get("description");
+    private SupplierEx<RestClientBuilder> elasticClientFn() {
+        return () -> RestClient.builder(HttpHost.create(elasticHost));
+    }
 
-                return new Visit(petId, description);
+    private ElasticBulkConfig elasticBulkConfig() {
+        return new ElasticBulkConfig()
+                .setBulkSize(elasticBulkSize)
+                .setFlushIntervalMillis(elasticFlushInterval)
+                .setMaxInFlightBulks(elasticMaxInFlight);
+    }
+
+    private String jdbcUrl() {
+        return "jdbc:mysql://" + databaseAddress + ":" + databasePort + "/" + DATABASE;
+    }
 
-            default:
-                throw new IllegalStateException("Unknown table " + change.table());
+    /**
+     * Returns true for items carrying visits, a deleted visit goes with the visits, so it can't overtake them,
+     * the end of the scan goes with the scanned owners
+     */
+    private static boolean hasVisits(Object item) {
+        return item instanceof Visit || item instanceof ScannedOwner || item instanceof ScanDone
+                || item instanceof Deletion && ((Deletion) item).row instanceof Visit;
+    }
+
+    private static boolean isOwner(Object item) {
+        return item instanceof Owner || item instanceof ScannedOwner
+                || item instanceof Deletion && ((Deletion) item).row instanceof Owner;
+    }
+
+    private static int ownerId(Object item) {
+        if (item instanceof ScannedOwner) {
+            return ((ScannedOwner) item).owner.id;
+        } else if (item instanceof Deletion) {
+            return ((Owner) ((Deletion) item).row).id;
         }
+        return ((Owner) item).id;
+    }
 
+    /**
+     * Returns the items for the {@link PetOwnerLookup}, a scanned owner gives the owner of each of its pets,
+     * the end of the scan is sent to every partition of the lookup, which passes it on to the join
+     */
+    private static Traverser<Object> petsAndVisits(JoiningStateConfig config, Object item) {
+        if (item instanceof Owner || item instanceof Deletion && ((Deletion) item).row instanceof Owner) {
+            return Traversers.empty();
+        } else if (item instanceof ScannedOwner) {
+            Owner owner = ((ScannedOwner) item).owner;
+            return Traversers.traverseIterable(owner.pets).map(pet -> new ScannedPet(pet.id, owner.id, pet.visits));
+        } else if (item instanceof ScanDone) {
+            ScanDone done = (ScanDone) item;
+            List<Object> partitions = new ArrayList<>(config.getPartitions());
+            for (int partition = 0; partition < config.getPartitions(); partition++) {
+                partitions.add(done.forPartition(partition));
+            }
+            return Traversers.traverseIterable(partitions);
+        }
+        return Traversers.singleton(item);
+    }
+
+    private static Object mapChangeRecordToPOJO(Histogram latency, ChangeRecord change) throws ParsingException {
+        long start = System.nanoTime();
+        Object item = ChangeRecordDecoder.decode(change);
+        latency.recordNanosSince(start);
+        return item;
     }
 
-    private static Object enrichWithKeywords(Rake service, Object item) {
+    private static Object enrichWithKeywords(KeywordService service, Object item) {
         if (item instanceof Visit) {
             Visit visit = (Visit) item;
 
-            LinkedHashMap<String, Double> keywordsFromText = service.getKeywordsFromText(visit.description);
-            List<String> keywords = keywordsFromText.keySet()
-                                                    .stream()
-                                                    .limit(5)
-                                                    .collect(Collectors.toList());
+            List<String> keywords = service.keywords(visit.description);
 
             visit.setKeywords(keywords);
 
+        } else if (item instanceof ScannedOwner) {
+            for (Pet pet : ((ScannedOwner) item).owner.pets) {
+                for (Visit visit : pet.visits) {
+                    visit.setKeywords(service.keywords(visit.description));
+                }
+            }
         }
         return item;
     }
 
-    private DocWriteRequest<?> mapOwnerToElasticRequest(Owner owner) throws Exception {
+    private static CompletableFuture<List<Object>> enrichWithKeywordsAsync(KeywordService service, List<Object> items) {
+        return service.supplyAsync(() -> {
+            for (Object item : items) {
+                enrichWithKeywords(service, item);
+            }
+            return items;
+        });
+    }
+
+    /**
+     * Writes a split owner with its pets as documents of their own, other owners as a single
+     * document, deleting the pet documents left from an owner split before
+     */
+    List<DocWriteRequest<?>> mapOwnerUpdateToElasticRequests(OwnerUpdate update)
+            throws Exception {
+        SplitOwnerRequests splitRequests = new SplitOwnerRequests(elasticIndex, elasticPetIndex(),
+                elasticExternalVersioning);
+        if (update.split) {
+            return splitRequests.map(update);
+        }
+        DocWriteRequest<?> request = mapOwnerUpdateToElasticRequest(update);
+        if (update.removedPetIds.isEmpty() || splitOwnerPets == 0 && splitOwnerVisits == 0) {
+            return singletonList(request);
+        }
+        List<DocWriteRequest<?>> requests = new ArrayList<>();
+        requests.add(request);
+        splitRequests.addPetDeletes(requests, update, update.removedPetIds);
+        return requests;
+    }
+
+    /**
+     * Returns the index of the pets of split owners
+     */
+    String elasticPetIndex() {
+        return elasticIndex + "-pets";
+    }
+
+    /**
+     * Writes the whole owner when the update is full, otherwise only the changes, a deleted
+     * owner is deleted from the index
+     */
+    DocWriteRequest<?> mapOwnerUpdateToElasticRequest(OwnerUpdate update) throws Exception {
+        if (elasticExternalVersioning) {
+            return mapOwnerUpdateToVersionedElasticRequest(update);
+        }
+        if (update.deleted) {
+            return new DeleteRequest(elasticIndex, update.owner.id.toString());
+        }
+        if (update.full) {
+            return mapOwnerToElasticRequest(update.owner);
+        }
+        return new UpdateRequest(elasticIndex, update.owner.id.toString())
+                .script(OwnerUpdateScript.script(update));
+    }
+
+    /**
+     * Writes the whole owner, the document is built from the JSON of the pets and visits
+     * rendered for the previous writes of the owner
+     */
+    DocWriteRequest<?> mapOwnerToElasticRequest(Owner owner) {
+        JsonOutput json = OwnerJson.render(owner);
         return new UpdateRequest(elasticIndex, owner.id.toString())
-                .doc(JsonUtil.toJson(owner), XContentType.JSON)
+                .doc(json.buffer(), 0, json.size(), XContentType.JSON)
                 .docAsUpsert(true);
     }
 
+    /**
+     * Writes the whole owner, or deletes it, with the version of the update as the external
+     * version, Elasticsearch rejects the write if the document has the same or a newer version
+     * <p>
+     * Updates of a document can't be versioned externally, so the changes are not sent alone.
+     */
+    DocWriteRequest<?> mapOwnerUpdateToVersionedElasticRequest(OwnerUpdate update) {
+        String id = update.owner.id.toString();
+        if (update.deleted) {
+            return new DeleteRequest(elasticIndex, id)
+                    .versionType(VersionType.EXTERNAL)
+                    .version(update.version);
+        }
+        JsonOutput json = OwnerJson.render(update.owner);
+        return new IndexRequest(elasticIndex).id(id)
+                .source(json.buffer(), 0, json.size(), XContentType.JSON)
+                .versionType(VersionType.EXTERNAL)
+                .version(update.version);
+    }
+
 }
@@ -3,11 +3,18 @@ package org.example.jet.petclinic;
 import com.hazelcast.jet.Jet;
 import com.hazelcast.jet.JetInstance;
 import com.hazelcast.jet.Job;
-import com.hazelcast.jet.config.JobConfig;
 import com.hazelcast.jet.core.JobStatus;
 import com.hazelcast.jet.picocli.CommandLine;
 import com.hazelcast.logging.ILogger;
 import com.hazelcast.logging.Logger;
+import com.hazelcast.topic.ITopic;
+import com.hazelcast.topic.Message;
+import com.hazelcast.topic.MessageListener;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class PetClinicIndexingApp {
 
@@ -19,17 +26,118 @@ public class PetClinicIndexingApp {
 
         JetInstance jet = Jet.bootstrappedInstance();
 
-        log.info("Submitting PetClinicIndexJob");
+        if (petClinicIndexJob.isReindexFromOwnerMap()) {
+            log.info("Reindexing the owners of the owner map");
+            jet.newJob(petClinicIndexJob.reindexPipeline(), petClinicIndexJob.reindexJobConfig()).join();
+            log.info("Reindexing done");
+            return;
+        }
+
+        if (petClinicIndexJob.getExportSnapshot() != null) {
+            exportSnapshot(jet, petClinicIndexJob.getExportSnapshot());
+        }
+
+        if (petClinicIndexJob.isBootstrap()) {
+            log.info("Disabling index refresh for the bootstrap scan");
+            petClinicIndexJob.disableIndexRefresh();
+        }
+
+        petClinicIndexJob.addOwnerMapIndexes(jet);
+
+        // Subscribed before the job is submitted, so no signal is missed
+        int members = jet.getCluster().getMembers().size();
+        SignalListener listener = new SignalListener(members, members * OwnerScanSource.LOCAL_PARALLELISM);
+        ITopic<JobSignal> signals = jet.getHazelcastInstance().getTopic(JobSignal.topicName(PetClinicIndexJob.JOB_NAME));
+        UUID registration = signals.addMessageListener(listener);
+        try {
+            log.info("Submitting PetClinicIndexJob");
+            Job job = jet.newJob(petClinicIndexJob.pipeline(), petClinicIndexJob.jobConfig());
 
-        Job job = jet.newJob(petClinicIndexJob.pipeline(), new JobConfig().setName("PetClinicIndexJob"));
+            await(job, listener.started, "start");
+            log.info("PetClinicIndexJob started on all members, status=" + job.getStatus());
+
+            if (petClinicIndexJob.isBootstrap()) {
+                log.info("The bootstrap scan starts with the first change streamed from the binlog");
+                await(job, listener.scanned, "finish the bootstrap scan");
+                log.info("Bootstrap scan done, restoring index refresh");
+                petClinicIndexJob.restoreIndexRefresh();
+            }
+        } finally {
+            signals.removeMessageListener(registration);
+        }
+    }
 
-        while (job.getStatus() == JobStatus.NOT_RUNNING || job.getStatus() == JobStatus.STARTING) {
-            log.info("PetClinicIndexJob status=" + job.getStatus());
-            Thread.sleep(1000);
+    /**
+     * Cancels the running job, saving its state to the named snapshot for the new job
+     */
+    private static void exportSnapshot(JetInstance jet, String snapshotName) {
+        Job running = jet.getJob(PetClinicIndexJob.JOB_NAME);
+        if (running == null || running.getStatus() == JobStatus.FAILED || running.getStatus() == JobStatus.COMPLETED) {
+            throw new IllegalStateException("No running PetClinicIndexJob to export the snapshot from");
         }
+        log.info("Cancelling PetClinicIndexJob with snapshot " + snapshotName);
+        running.cancelAndExportSnapshot(snapshotName);
 
-        log.info("PetClinicIndexJob status=" + job.getStatus());
+        // The job name is taken until the cancelled job terminates
+        running.getFuture().handle((result, error) -> null).join();
     }
 
+    /**
+     * Waits for the given stage of the job, fails if the job terminates first
+     */
+    private static void await(Job job, CompletableFuture<Void> stage, String description) throws Exception {
+        CompletableFuture.anyOf(stage, job.getFuture()).get();
+        if (!stage.isDone()) {
+            throw new IllegalStateException("PetClinicIndexJob terminated before it could " + description
+                    + ", status=" + job.getStatus());
+        }
+    }
+
+    /**
+     * Completes the futures of the job stages as the signals of the job arrive
+     */
+    private static final class SignalListener implements MessageListener<JobSignal> {
+
+        final CompletableFuture<Void> started = new CompletableFuture<>();
+        final CompletableFuture<Void> scanned = new CompletableFuture<>();
 
+        private final int members;
+        private final Set<Integer> startedMembers = new HashSet<>();
+        private boolean changesStarted;
+        private final OwnerScanSource.Progress scanProgress;
+
+        SignalListener(int members, int scanners) {
+            this.members = members;
+            this.scanProgress = new OwnerScanSource.Progress(scanners);
+        }
+
+        @Override
+        public synchronized void onMessage(Message<JobSignal> message) {
+            JobSignal signal = message.getMessageObject();
+            switch (signal.kind) {
+                case MEMBER_STARTED:
+                    startedMembers.add(signal.source);
+                    if (startedMembers.size() >= members) {
+                        started.complete(null);
+                    }
+                    break;
+                case CHANGES_STARTED:
+                    if (!changesStarted) {
+                        log.info("Change data capture streams the binlog, the bootstrap scan starts");
+                        changesStarted = true;
+                    }
+                    break;
+                case SCAN_PROGRESS:
+                    scanProgress.update(signal.source, signal.value);
+                    long remaining = scanProgress.remainingRanges();
+                    log.info("Bootstrap scan ranges remaining=" + (remaining < 0 ? "unknown" : remaining));
+                    if (remaining == 0) {
+                        scanned.complete(null);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown signal " + signal);
+            }
+        }
+    }
 }
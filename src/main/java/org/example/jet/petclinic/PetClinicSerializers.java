@@ -0,0 +1,365 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.config.JobConfig;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.example.jet.petclinic.search.PostingList;
+import org.example.jet.petclinic.search.TermChange;
+import org.example.jet.petclinic.search.TermPostings;
+import org.example.jet.petclinic.store.BinaryInput;
+import org.example.jet.petclinic.store.BinaryOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hazelcast serializers of the items passed between the vertices of the job and of the
+ * join state saved to snapshots, replacing the default java serialization
+ * <p>
+ * Model objects are written in the {@link ModelCodec} form followed by their timestamp,
+ * the states write their binary stores as they are.
+ */
+public final class PetClinicSerializers {
+
+    static final int OWNER_TYPE_ID = 1001;
+    static final int PET_TYPE_ID = 1002;
+    static final int VISIT_TYPE_ID = 1003;
+    static final int PET_REMOVAL_TYPE_ID = 1004;
+    static final int JOINING_STATE_TYPE_ID = 1005;
+    static final int PET_OWNER_LOOKUP_TYPE_ID = 1006;
+    static final int SCANNED_OWNER_TYPE_ID = 1007;
+    static final int SCANNED_PET_TYPE_ID = 1008;
+    static final int DELETION_TYPE_ID = 1009;
+    static final int TERM_CHANGE_TYPE_ID = 1010;
+    static final int OWNER_TERMS_TYPE_ID = 1011;
+    static final int TERM_POSTINGS_TYPE_ID = 1012;
+    static final int SCAN_DONE_TYPE_ID = 1013;
+
+    private PetClinicSerializers() {
+    }
+
+    /**
+     * Registers the serializers with the given job config
+     */
+    public static JobConfig register(JobConfig config) {
+        return config
+                .registerSerializer(Owner.class, OwnerSerializer.class)
+                .registerSerializer(Pet.class, PetSerializer.class)
+                .registerSerializer(Visit.class, VisitSerializer.class)
+                .registerSerializer(PetRemoval.class, PetRemovalSerializer.class)
+                .registerSerializer(JoiningState.class, JoiningStateSerializer.class)
+                .registerSerializer(PetOwnerLookup.class, PetOwnerLookupSerializer.class)
+                .registerSerializer(ScannedOwner.class, ScannedOwnerSerializer.class)
+                .registerSerializer(ScannedPet.class, ScannedPetSerializer.class)
+                .registerSerializer(Deletion.class, DeletionSerializer.class)
+                .registerSerializer(TermChange.class, TermChangeSerializer.class)
+                .registerSerializer(OwnerTerms.class, OwnerTermsSerializer.class)
+                .registerSerializer(TermPostings.class, TermPostingsSerializer.class)
+                .registerSerializer(ScanDone.class, ScanDoneSerializer.class);
+    }
+
+    /**
+     * Writes an object in its {@link BinaryOutput} form, prefixed with the length
+     */
+    abstract static class CodecSerializer<T> implements StreamSerializer<T> {
+
+        // Serializers are shared by all threads of the member
+        private final ThreadLocal<BinaryOutput> output = ThreadLocal.withInitial(BinaryOutput::new);
+
+        @Override
+        public void write(ObjectDataOutput out, T object) throws IOException {
+            BinaryOutput buffer = output.get();
+            buffer.clear();
+            encode(buffer, object);
+            out.writeInt(buffer.size());
+            out.write(buffer.buffer(), 0, buffer.size());
+        }
+
+        @Override
+        public T read(ObjectDataInput in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return decode(new BinaryInput(bytes));
+        }
+
+        abstract void encode(BinaryOutput out, T object);
+
+        abstract T decode(BinaryInput in);
+    }
+
+    public static final class OwnerSerializer extends CodecSerializer<Owner> {
+
+        @Override
+        public int getTypeId() {
+            return OWNER_TYPE_ID;
+        }
+
+        @Override
+        void encode(BinaryOutput out, Owner owner) {
+            ModelCodec.writeOwner(out, owner);
+            out.writeVarLong(owner.timestamp);
+        }
+
+        @Override
+        Owner decode(BinaryInput in) {
+            Owner owner = ModelCodec.readOwner(in);
+            owner.timestamp = in.readVarLong();
+            return owner;
+        }
+    }
+
+    public static final class PetSerializer extends CodecSerializer<Pet> {
+
+        @Override
+        public int getTypeId() {
+            return PET_TYPE_ID;
+        }
+
+        @Override
+        void encode(BinaryOutput out, Pet pet) {
+            ModelCodec.writePet(out, pet);
+            out.writeVarLong(pet.timestamp);
+        }
+
+        @Override
+        Pet decode(BinaryInput in) {
+            Pet pet = ModelCodec.readPet(in);
+            pet.timestamp = in.readVarLong();
+            return pet;
+        }
+    }
+
+    public static final class VisitSerializer extends CodecSerializer<Visit> {
+
+        @Override
+        public int getTypeId() {
+            return VISIT_TYPE_ID;
+        }
+
+        @Override
+        void encode(BinaryOutput out, Visit visit) {
+            ModelCodec.writeVisit(out, visit);
+            out.writeVarLong(visit.timestamp);
+        }
+
+        @Override
+        Visit decode(BinaryInput in) {
+            Visit visit = ModelCodec.readVisit(in);
+            visit.timestamp = in.readVarLong();
+            return visit;
+        }
+    }
+
+    public static final class PetRemovalSerializer implements StreamSerializer<PetRemoval> {
+
+        @Override
+        public int getTypeId() {
+            return PET_REMOVAL_TYPE_ID;
+        }
+
+        @Override
+        public void write(ObjectDataOutput out, PetRemoval removal) throws IOException {
+            out.writeInt(removal.petId);
+            out.writeBoolean(removal.deleted);
+        }
+
+        @Override
+        public PetRemoval read(ObjectDataInput in) throws IOException {
+            return new PetRemoval(in.readInt(), in.readBoolean());
+        }
+    }
+
+    public static final class JoiningStateSerializer implements StreamSerializer<JoiningState> {
+
+        @Override
+        public int getTypeId() {
+            return JOINING_STATE_TYPE_ID;
+        }
+
+        @Override
+        public void write(ObjectDataOutput out, JoiningState state) throws IOException {
+            state.writeTo(out);
+        }
+
+        @Override
+        public JoiningState read(ObjectDataInput in) throws IOException {
+            return JoiningState.readFrom(in);
+        }
+    }
+
+    public static final class PetOwnerLookupSerializer implements StreamSerializer<PetOwnerLookup> {
+
+        @Override
+        public int getTypeId() {
+            return PET_OWNER_LOOKUP_TYPE_ID;
+        }
+
+        @Override
+        public void write(ObjectDataOutput out, PetOwnerLookup lookup) throws IOException {
+            lookup.writeTo(out);
+        }
+
+        @Override
+        public PetOwnerLookup read(ObjectDataInput in) throws IOException {
+            return PetOwnerLookup.readFrom(in);
+        }
+    }
+
+    public static final class ScannedOwnerSerializer extends CodecSerializer<ScannedOwner> {
+
+        @Override
+        public int getTypeId() {
+            return SCANNED_OWNER_TYPE_ID;
+        }
+
+        @Override
+        void encode(BinaryOutput out, ScannedOwner scanned) {
+            ModelCodec.writeOwner(out, scanned.owner);
+        }
+
+        @Override
+        ScannedOwner decode(BinaryInput in) {
+            return new ScannedOwner(ModelCodec.readOwner(in));
+        }
+    }
+
+    public static final class ScannedPetSerializer extends CodecSerializer<ScannedPet> {
+
+        @Override
+        public int getTypeId() {
+            return SCANNED_PET_TYPE_ID;
+        }
+
+        @Override
+        void encode(BinaryOutput out, ScannedPet pet) {
+            out.writeSignedVarInt(pet.petId);
+            out.writeSignedVarInt(pet.ownerId);
+            out.writeVarInt(pet.visits.size());
+            for (Visit visit : pet.visits) {
+                ModelCodec.writeVisit(out, visit);
+            }
+        }
+
+        @Override
+        ScannedPet decode(BinaryInput in) {
+            int petId = in.readSignedVarInt();
+            int ownerId = in.readSignedVarInt();
+            int count = in.readVarInt();
+            List<Visit> visits = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                visits.add(ModelCodec.readVisit(in));
+            }
+            return new ScannedPet(petId, ownerId, visits);
+        }
+    }
+
+    public static final class ScanDoneSerializer implements StreamSerializer<ScanDone> {
+
+        @Override
+        public int getTypeId() {
+            return SCAN_DONE_TYPE_ID;
+        }
+
+        @Override
+        public void write(ObjectDataOutput out, ScanDone done) throws IOException {
+            out.writeInt(done.processorIndex);
+            out.writeInt(done.processorCount);
+            out.writeInt(done.partition);
+        }
+
+        @Override
+        public ScanDone read(ObjectDataInput in) throws IOException {
+            return new ScanDone(in.readInt(), in.readInt(), in.readInt());
+        }
+    }
+
+    public static final class DeletionSerializer implements StreamSerializer<Deletion> {
+
+        @Override
+        public int getTypeId() {
+            return DELETION_TYPE_ID;
+        }
+
+        @Override
+        public void write(ObjectDataOutput out, Deletion deletion) throws IOException {
+            // The row is written by its own serializer
+            out.writeObject(deletion.row);
+        }
+
+        @Override
+        public Deletion read(ObjectDataInput in) throws IOException {
+            return new Deletion(in.readObject());
+        }
+    }
+
+    public static final class TermChangeSerializer implements StreamSerializer<TermChange> {
+
+        @Override
+        public int getTypeId() {
+            return TERM_CHANGE_TYPE_ID;
+        }
+
+        @Override
+        public void write(ObjectDataOutput out, TermChange change) throws IOException {
+            out.writeUTF(change.term);
+            out.writeInt(change.docId);
+            out.writeBoolean(change.added);
+        }
+
+        @Override
+        public TermChange read(ObjectDataInput in) throws IOException {
+            return new TermChange(in.readUTF(), in.readInt(), in.readBoolean());
+        }
+    }
+
+    public static final class OwnerTermsSerializer implements StreamSerializer<OwnerTerms> {
+
+        @Override
+        public int getTypeId() {
+            return OWNER_TERMS_TYPE_ID;
+        }
+
+        @Override
+        public void write(ObjectDataOutput out, OwnerTerms ownerTerms) throws IOException {
+            out.writeInt(ownerTerms.terms().size());
+            for (String term : ownerTerms.terms()) {
+                out.writeUTF(term);
+            }
+        }
+
+        @Override
+        public OwnerTerms read(ObjectDataInput in) throws IOException {
+            int count = in.readInt();
+            Set<String> terms = new HashSet<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                terms.add(in.readUTF());
+            }
+            return new OwnerTerms(terms);
+        }
+    }
+
+    public static final class TermPostingsSerializer implements StreamSerializer<TermPostings> {
+
+        @Override
+        public int getTypeId() {
+            return TERM_POSTINGS_TYPE_ID;
+        }
+
+        @Override
+        public void write(ObjectDataOutput out, TermPostings postings) throws IOException {
+            out.writeByteArray(postings.postings().encode());
+        }
+
+        @Override
+        public TermPostings read(ObjectDataInput in) throws IOException {
+            return new TermPostings(PostingList.decode(in.readByteArray()));
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.Traversers;
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.core.metrics.Unit;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.example.jet.petclinic.store.BinaryInput;
+import org.example.jet.petclinic.store.BinaryOutput;
+import org.example.jet.petclinic.store.IntLongMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.hazelcast.jet.Util.entry;
+
+/**
+ * Routes pets and visits to the owner they belong to
+ * <p>
+ * The join is partitioned by owner id, owners carry the id, pets carry the owner id,
+ * but visits only carry the pet id. This state, partitioned by pet id, remembers the
+ * owner of every pet and pairs each pet and visit with its owner id, so the join can
+ * route it to the partition of the owner.
+ * <p>
+ * Visits of a pet without a known owner are held back until the pet arrives with an owner.
+ * The state also keeps the visits routed for each pet, so the visits follow the pet when it
+ * moves: a {@link PetRemoval} is sent to the previous owner and the pet is sent with all its
+ * visits to the new one, also when both owners are in the same partition, so the join emits
+ * the previous owner without the pet.
+ * <p>
+ * Pets read by the initial scan come as {@link ScannedPet}s with their visits, they only set
+ * the owner of pets not known from the change stream. Pets and visits deleted while the scan
+ * runs are remembered in {@link ScanTombstones}, their scanned rows are sent as deletions to
+ * the scanned owner instead, so the join doesn't add them back.
+ * <p>
+ * Pending visits of a pet are dropped when the pet doesn't arrive within
+ * {@link JoiningStateConfig#getOrphanTtlMillis()}, or when more than
+ * {@link JoiningStateConfig#getMaxOrphansPerPartition()} pets have pending visits.
+ * A deleted pet is removed from its owner, a deleted visit is passed to the owner.
+ */
+class PetOwnerLookup implements Serializable {
+
+    private static final long NO_OWNER = Long.MIN_VALUE;
+
+    private static final int FORMAT = 4;
+
+    private JoiningStateConfig config;
+
+    private final IntLongMap petIdToOwnerId = new IntLongMap(NO_OWNER);
+
+    // Visits of pets without a known owner, by pet id
+    private final Map<Integer, List<Visit>> pendingVisits = new HashMap<>();
+    private final OrphanIndex pendingPetIndex = new OrphanIndex();
+    private int pendingVisitCount;
+
+    // Visits routed to the owner of each pet, sent with the pet when it moves
+    private final VisitStore visitLogs;
+
+    private ScanTombstones tombstones;
+
+    private transient long evictedVisits;
+
+    // Created lazily by reportMetrics(), user metrics can be created only on the processor thread
+    private transient Metric pendingVisitsMetric;
+    private transient Metric evictedVisitsMetric;
+    private transient long reportedPendingVisits;
+    private transient long reportedEvictedVisits;
+
+    PetOwnerLookup(JoiningStateConfig config) {
+        this.config = config;
+        this.visitLogs = new VisitStore(config.getMemory(), config.getDirectory());
+        this.tombstones = new ScanTombstones(config.isBootstrap(), config.getMaxTombstonesPerPartition());
+    }
+
+    /**
+     * Applies the configuration of the job, a state restored from a snapshot has only the
+     * number of partitions it was saved with, see {@link JoiningState#configure}
+     *
+     * @throws IllegalStateException if the state was saved with another number of partitions
+     */
+    void configure(JoiningStateConfig config) {
+        if (this.config == config) {
+            return;
+        }
+        config.checkPartitions(this.config.getPartitions());
+        visitLogs.moveTo(config);
+        tombstones.configure(config.isBootstrap(), config.getMaxTombstonesPerPartition());
+        this.config = config;
+    }
+
+    /**
+     * Returns the pet id of a pet or a visit, the key this state is partitioned by, a
+     * {@link ScanDone} is sent to its partition
+     */
+    static int petId(Object item) {
+        if (item instanceof Pet) {
+            return ((Pet) item).id;
+        } else if (item instanceof Visit) {
+            return ((Visit) item).petId;
+        } else if (item instanceof ScannedPet) {
+            return ((ScannedPet) item).petId;
+        } else if (item instanceof Deletion) {
+            return petId(((Deletion) item).row);
+        } else if (item instanceof ScanDone) {
+            return ((ScanDone) item).partition;
+        } else {
+            throw new IllegalArgumentException("Unknown type " + item.getClass());
+        }
+    }
+
+    /**
+     * Returns the items to join paired with the id of their owner
+     */
+    Traverser<Map.Entry<Integer, Object>> route(Object item) {
+        return route(item, System.currentTimeMillis());
+    }
+
+    /**
+     * Routes the item at the given time, pending visits that waited for too long are dropped first
+     */
+    Traverser<Map.Entry<Integer, Object>> route(Object item, long nowMillis) {
+        evictPendingVisits(nowMillis);
+
+        if (item instanceof Pet) {
+            Pet pet = (Pet) item;
+
+            List<Map.Entry<Integer, Object>> routed = new ArrayList<>(2);
+            long previousOwnerId = pet.ownerId == null
+                    ? petIdToOwnerId.remove(pet.id)
+                    : petIdToOwnerId.put(pet.id, pet.ownerId);
+            boolean moved = previousOwnerId == NO_OWNER || pet.ownerId == null || previousOwnerId != pet.ownerId;
+            if (previousOwnerId != NO_OWNER && moved) {
+                routed.add(entry((int) previousOwnerId, new PetRemoval(pet.id)));
+            }
+            if (pet.ownerId != null) {
+                if (moved) {
+                    // The new owner doesn't know the visits joined with the previous one
+                    pet.visits = visitLogs.get(pet.id);
+                }
+                routed.add(entry(pet.ownerId, pet));
+                routePendingVisits(pet.id, pet.ownerId, routed);
+            }
+            return Traversers.traverseIterable(routed);
+        } else if (item instanceof Visit) {
+            Visit visit = (Visit) item;
+
+            long ownerId = petIdToOwnerId.get(visit.petId);
+            if (ownerId == NO_OWNER) {
+                pendingVisits.computeIfAbsent(visit.petId, petId -> new ArrayList<>()).add(visit);
+                pendingPetIndex.add(visit.petId, nowMillis);
+                pendingVisitCount++;
+                return Traversers.empty();
+            }
+            visitLogs.append(visit.petId, visit);
+            return Traversers.singleton(entry((int) ownerId, visit));
+        } else if (item instanceof ScannedPet) {
+            ScannedPet pet = (ScannedPet) item;
+
+            if (tombstones.hasPet(pet.petId)) {
+                // Deleted after the scan read it, the join of the scanned owner must not add it
+                return Traversers.singleton(entry(pet.ownerId, new PetRemoval(pet.petId, true)));
+            }
+            List<Map.Entry<Integer, Object>> routed = new ArrayList<>(0);
+            List<Visit> visits = new ArrayList<>(pet.visits.size());
+            for (Visit visit : pet.visits) {
+                if (tombstones.hasVisit(visit.id)) {
+                    routed.add(entry(pet.ownerId, new Deletion(visit)));
+                } else {
+                    visits.add(visit);
+                }
+            }
+            // Scanned visits precede the visits of the change stream, whatever the owner
+            visitLogs.prepend(pet.petId, visits);
+            // The owner known from the change stream is newer, the scanned pet itself goes with its owner
+            if (petIdToOwnerId.get(pet.petId) != NO_OWNER) {
+                return Traversers.traverseIterable(routed);
+            }
+            petIdToOwnerId.put(pet.petId, pet.ownerId);
+            routePendingVisits(pet.petId, pet.ownerId, routed);
+            return Traversers.traverseIterable(routed);
+        } else if (item instanceof ScanDone) {
+            ScanDone done = (ScanDone) item;
+
+            // The join partition of the same number is told too
+            tombstones.scanDone(done, nowMillis);
+            return Traversers.singleton(entry(done.partition, done));
+        } else if (item instanceof Deletion) {
+            return routeDeletion(((Deletion) item).row, nowMillis);
+        } else {
+            throw new IllegalArgumentException("Unknown type " + item.getClass());
+        }
+    }
+
+    private Traverser<Map.Entry<Integer, Object>> routeDeletion(Object row, long nowMillis) {
+        if (row instanceof Pet) {
+            int petId = ((Pet) row).id;
+
+            removePendingVisits(petId);
+            visitLogs.remove(petId);
+            tombstones.addPet(petId, nowMillis);
+            long ownerId = petIdToOwnerId.remove(petId);
+            return ownerId == NO_OWNER
+                    ? Traversers.empty()
+                    : Traversers.singleton(entry((int) ownerId, new PetRemoval(petId, true)));
+        } else if (row instanceof Visit) {
+            Visit visit = (Visit) row;
+
+            visitLogs.remove(visit.petId, visit.id);
+            tombstones.addVisit(visit.id, nowMillis);
+            long ownerId = petIdToOwnerId.get(visit.petId);
+            if (ownerId == NO_OWNER) {
+                List<Visit> visits = pendingVisits.get(visit.petId);
+                if (visits != null) {
+                    int before = visits.size();
+                    visits.removeIf(pending -> visit.id.equals(pending.id));
+                    pendingVisitCount -= before - visits.size();
+                    if (visits.isEmpty()) {
+                        removePendingVisits(visit.petId);
+                    }
+                }
+                return Traversers.empty();
+            }
+            return Traversers.singleton(entry((int) ownerId, new Deletion(visit)));
+        } else {
+            throw new IllegalArgumentException("Unexpected deletion of " + row);
+        }
+    }
+
+    private void evictPendingVisits(long nowMillis) {
+        long ttl = config.getOrphanTtlMillis();
+        int max = config.getMaxOrphansPerPartition();
+        for (Integer petId; (petId = pendingPetIndex.pollEvictable(nowMillis, ttl, max)) != null; ) {
+            List<Visit> visits = pendingVisits.remove(petId);
+            if (visits != null) {
+                pendingVisitCount -= visits.size();
+                evictedVisits += visits.size();
+            }
+        }
+        tombstones.evict(nowMillis);
+    }
+
+    private List<Visit> removePendingVisits(int petId) {
+        pendingPetIndex.remove(petId);
+        List<Visit> visits = pendingVisits.remove(petId);
+        if (visits != null) {
+            pendingVisitCount -= visits.size();
+        }
+        return visits;
+    }
+
+    private void routePendingVisits(int petId, int ownerId, List<Map.Entry<Integer, Object>> routed) {
+        List<Visit> visits = removePendingVisits(petId);
+        if (visits != null) {
+            for (Visit visit : visits) {
+                visitLogs.append(petId, visit);
+                routed.add(entry(ownerId, visit));
+            }
+        }
+    }
+
+    int pendingVisitCount() {
+        return pendingVisitCount;
+    }
+
+    int visitLogCount() {
+        return visitLogs.size();
+    }
+
+    long evictedVisitCount() {
+        return evictedVisits;
+    }
+
+    /**
+     * Adds the changes of the pending visit counts since the last call to the metrics of the
+     * processor, all states of the processor add to the same metrics
+     */
+    void reportMetrics() {
+        if (pendingVisitsMetric == null) {
+            pendingVisitsMetric = Metrics.metric("lookupPendingVisits", Unit.COUNT);
+            evictedVisitsMetric = Metrics.metric("lookupEvictedVisits", Unit.COUNT);
+        }
+        pendingVisitsMetric.increment(pendingVisitCount - reportedPendingVisits);
+        evictedVisitsMetric.increment(evictedVisits - reportedEvictedVisits);
+        reportedPendingVisits = pendingVisitCount;
+        reportedEvictedVisits = evictedVisits;
+    }
+
+    /**
+     * Writes the state in the form read by {@link #readFrom(DataInput)}, used by
+     * {@link PetClinicSerializers.PetOwnerLookupSerializer}
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT);
+        out.writeInt(config.getPartitions());
+        petIdToOwnerId.writeEntries(out);
+
+        BinaryOutput visits = new BinaryOutput();
+        visits.writeVarInt(pendingVisits.size());
+        for (Map.Entry<Integer, List<Visit>> entry : pendingVisits.entrySet()) {
+            visits.writeSignedVarInt(entry.getKey());
+            visits.writeVarInt(entry.getValue().size());
+            for (Visit visit : entry.getValue()) {
+                ModelCodec.writeVisit(visits, visit);
+            }
+        }
+        out.writeInt(visits.size());
+        out.write(visits.buffer(), 0, visits.size());
+        pendingPetIndex.writeEntries(out);
+        visitLogs.writeEntries(out);
+        tombstones.writeTo(out);
+    }
+
+    /**
+     * Reads the state, the restored state is to be configured by {@link #configure(JoiningStateConfig)}
+     */
+    static PetOwnerLookup readFrom(DataInput in) throws IOException {
+        int format = in.readByte();
+        if (format != FORMAT) {
+            throw new IOException("Unknown lookup format " + format);
+        }
+        PetOwnerLookup lookup = new PetOwnerLookup(new JoiningStateConfig().setPartitions(in.readInt()));
+        lookup.petIdToOwnerId.readEntries(in);
+
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        BinaryInput visits = new BinaryInput(bytes);
+        int petCount = visits.readVarInt();
+        for (int i = 0; i < petCount; i++) {
+            int petId = visits.readSignedVarInt();
+            int visitCount = visits.readVarInt();
+            List<Visit> petVisits = new ArrayList<>(visitCount);
+            for (int j = 0; j < visitCount; j++) {
+                petVisits.add(ModelCodec.readVisit(visits));
+            }
+            lookup.pendingVisits.put(petId, petVisits);
+            lookup.pendingVisitCount += visitCount;
+        }
+        lookup.pendingPetIndex.readEntries(in);
+        lookup.visitLogs.readEntries(in);
+        lookup.tombstones = ScanTombstones.readFrom(in);
+        return lookup;
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.jet.petclinic;
+
+import java.io.Serializable;
+
+/**
+ * Removes a pet from its owner, sent to the previous owner when a pet moves to another owner
+ * or when it is deleted
+ */
+final class PetRemoval implements Serializable {
+
+    final int petId;
+
+    // True if the pet was deleted, not moved
+    final boolean deleted;
+
+    PetRemoval(int petId) {
+        this(petId, false);
+    }
+
+    PetRemoval(int petId, boolean deleted) {
+        this.petId = petId;
+        this.deleted = deleted;
+    }
+
+    @Override
+    public String toString() {
+        return "PetRemoval{" +
+                "petId=" + petId +
+                ", deleted=" + deleted +
+                '}';
+    }
+}
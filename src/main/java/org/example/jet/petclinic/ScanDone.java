@@ -0,0 +1,36 @@
+package org.example.jet.petclinic;
+
+import java.io.Serializable;
+
+/**
+ * Tells a partition of the {@link PetOwnerLookup} and of the {@link JoiningState} that a
+ * processor of the {@link OwnerScanSource} has no more owners to scan
+ */
+final class ScanDone implements Serializable {
+
+    final int processorIndex;
+    final int processorCount;
+    final int partition;
+
+    ScanDone(int processorIndex, int processorCount, int partition) {
+        this.processorIndex = processorIndex;
+        this.processorCount = processorCount;
+        this.partition = partition;
+    }
+
+    /**
+     * Returns the copy of the signal for the given partition
+     */
+    ScanDone forPartition(int partition) {
+        return new ScanDone(processorIndex, processorCount, partition);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanDone{" +
+                "processorIndex=" + processorIndex +
+                ", processorCount=" + processorCount +
+                ", partition=" + partition +
+                '}';
+    }
+}
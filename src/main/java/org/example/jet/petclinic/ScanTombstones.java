@@ -0,0 +1,160 @@
+package org.example.jet.petclinic;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ids of owners, pets and visits deleted while the bootstrap scan runs
+ * <p>
+ * The scan may read a row before the change stream brings its deletion and the scanned row
+ * may arrive after the deletion, which then finds nothing to delete. The join states skip
+ * scanned rows that have a tombstone, so deleted rows don't come back.
+ * <p>
+ * Tombstones are kept only while the scan runs. Each processor of the scan sends a
+ * {@link ScanDone} when it has no ranges left, the tombstones are dropped
+ * {@link #DONE_GRACE_MILLIS} after all of them did, scanned owners on the parallel paths
+ * of the pipeline may still arrive after the signal. Until then no tombstone is dropped, unlike
+ * orphans they don't expire: a deleted row could come back. Their number has its own limit,
+ * {@link JoiningStateConfig#getMaxTombstonesPerPartition()}, the join fails when it is exceeded.
+ */
+final class ScanTombstones implements Serializable {
+
+    static final long DONE_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final long NOT_DONE = Long.MIN_VALUE;
+
+    private final OrphanIndex owners = new OrphanIndex();
+    private final OrphanIndex pets = new OrphanIndex();
+    private final OrphanIndex visits = new OrphanIndex();
+
+    private final Set<Integer> doneProcessors = new HashSet<>();
+    private long doneMillis = NOT_DONE;
+    private boolean scanning;
+    private int max;
+
+    /**
+     * @param scanning true if the state starts with a bootstrap scan
+     * @param max      maximum number of tombstones
+     */
+    ScanTombstones(boolean scanning, int max) {
+        this.scanning = scanning;
+        this.max = max;
+    }
+
+    boolean isScanning() {
+        return scanning;
+    }
+
+    /**
+     * Starts or stops keeping tombstones when the state is restored by a job with or without
+     * a bootstrap scan, a scan already done sends its {@link ScanDone}s again
+     */
+    void configure(boolean scanning, int max) {
+        if (!scanning) {
+            clear();
+        }
+        this.scanning = scanning;
+        this.max = max;
+    }
+
+    void addOwner(int ownerId, long nowMillis) {
+        add(owners, ownerId, nowMillis);
+    }
+
+    void addPet(int petId, long nowMillis) {
+        add(pets, petId, nowMillis);
+    }
+
+    void addVisit(int visitId, long nowMillis) {
+        add(visits, visitId, nowMillis);
+    }
+
+    /**
+     * @throws IllegalStateException if the tombstone is one more than the maximum
+     */
+    private void add(OrphanIndex index, int id, long nowMillis) {
+        if (!scanning || index.contains(id)) {
+            return;
+        }
+        if (size() >= max) {
+            throw new IllegalStateException("More than " + max + " rows of a partition of the join were deleted "
+                    + "during the bootstrap scan, raise the maximum number of tombstones and scan again");
+        }
+        index.add(id, nowMillis);
+    }
+
+    boolean hasOwner(int ownerId) {
+        return owners.contains(ownerId);
+    }
+
+    boolean hasPet(int petId) {
+        return pets.contains(petId);
+    }
+
+    boolean hasVisit(Integer visitId) {
+        return visitId != null && visits.contains(visitId);
+    }
+
+    int size() {
+        return owners.size() + pets.size() + visits.size();
+    }
+
+    /**
+     * Records that the processor of the scan is done
+     */
+    void scanDone(ScanDone done, long nowMillis) {
+        doneProcessors.add(done.processorIndex);
+        if (doneMillis == NOT_DONE && doneProcessors.size() >= done.processorCount) {
+            doneMillis = nowMillis;
+        }
+    }
+
+    /**
+     * Drops all tombstones once the scan is done
+     */
+    void evict(long nowMillis) {
+        if (doneMillis != NOT_DONE && nowMillis - doneMillis >= DONE_GRACE_MILLIS) {
+            clear();
+            scanning = false;
+        }
+    }
+
+    private void clear() {
+        owners.clear();
+        pets.clear();
+        visits.clear();
+        doneProcessors.clear();
+        doneMillis = NOT_DONE;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeBoolean(scanning);
+        out.writeLong(doneMillis);
+        out.writeInt(doneProcessors.size());
+        for (int processorIndex : doneProcessors) {
+            out.writeInt(processorIndex);
+        }
+        owners.writeEntries(out);
+        pets.writeEntries(out);
+        visits.writeEntries(out);
+    }
+
+    static ScanTombstones readFrom(DataInput in) throws IOException {
+        // The maximum comes with the configuration of the job
+        ScanTombstones tombstones = new ScanTombstones(in.readBoolean(), Integer.MAX_VALUE);
+        tombstones.doneMillis = in.readLong();
+        int doneCount = in.readInt();
+        for (int i = 0; i < doneCount; i++) {
+            tombstones.doneProcessors.add(in.readInt());
+        }
+        tombstones.owners.readEntries(in);
+        tombstones.pets.readEntries(in);
+        tombstones.visits.readEntries(in);
+        return tombstones;
+    }
+}
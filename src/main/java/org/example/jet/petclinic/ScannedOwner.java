@@ -0,0 +1,28 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Owner;
+
+import java.io.Serializable;
+
+/**
+ * Owner with its pets and visits read by the initial scan of the database, see {@link OwnerScanSource}
+ * <p>
+ * The change stream starts before the scan, so changes of the same rows may be joined
+ * before or after the scanned owner. {@link JoiningState} prefers the changes and adds
+ * only the scanned rows it doesn't know yet.
+ */
+final class ScannedOwner implements Serializable {
+
+    final Owner owner;
+
+    ScannedOwner(Owner owner) {
+        this.owner = owner;
+    }
+
+    @Override
+    public String toString() {
+        return "ScannedOwner{" +
+                "owner=" + owner +
+                '}';
+    }
+}
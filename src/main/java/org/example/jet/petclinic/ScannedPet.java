@@ -0,0 +1,37 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Visit;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owner and visits of a pet read by the initial scan of the database, tells {@link PetOwnerLookup}
+ * where to route the visits of the pet and which visits to send with the pet when it moves
+ */
+final class ScannedPet implements Serializable {
+
+    final int petId;
+    final int ownerId;
+    final List<Visit> visits;
+
+    ScannedPet(int petId, int ownerId) {
+        this(petId, ownerId, new ArrayList<>(0));
+    }
+
+    ScannedPet(int petId, int ownerId, List<Visit> visits) {
+        this.petId = petId;
+        this.ownerId = ownerId;
+        this.visits = visits;
+    }
+
+    @Override
+    public String toString() {
+        return "ScannedPet{" +
+                "petId=" + petId +
+                ", ownerId=" + ownerId +
+                ", visits=" + visits.size() +
+                '}';
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.jet.petclinic;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.example.jet.petclinic.model.Pet;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maps updates of split owners to the requests writing them
+ * <p>
+ * The document of a split owner has the fields of the owner and the ids of its pets in
+ * {@code pet_ids}, each pet is a document in the pet index, with the id
+ * {@code <ownerId>_<petId>} and the same fields as in the {@code pets} of a whole owner. The
+ * writes of an owner touch only its own pet documents, so a pet moving between two split owners
+ * is deleted by one and indexed by the other without racing. The owner document is small, so it is
+ * always written whole, pets are written only when they changed or got new visits. A new visit
+ * of an owner with thousands of them then writes the owner and one pet.
+ * <p>
+ * The requests are versioned externally with the version of the update if the owners are,
+ * see {@link OwnerUpdate#version}.
+ */
+class SplitOwnerRequests implements Serializable {
+
+    private final String ownerIndex;
+    private final String petIndex;
+    private final boolean versioned;
+
+    SplitOwnerRequests(String ownerIndex, String petIndex, boolean versioned) {
+        this.ownerIndex = ownerIndex;
+        this.petIndex = petIndex;
+        this.versioned = versioned;
+    }
+
+    /**
+     * Returns the requests writing the split owner, the first of them writes the owner document
+     */
+    List<DocWriteRequest<?>> map(OwnerUpdate update) {
+        List<DocWriteRequest<?>> requests = new ArrayList<>();
+        if (update.deleted) {
+            requests.add(version(new DeleteRequest(ownerIndex, update.owner.id.toString()), update));
+            addPetDeletes(requests, update, update.removedPetIds);
+            return requests;
+        }
+
+        JsonOutput json = OwnerJson.renderSplit(update.owner);
+        requests.add(version(new IndexRequest(ownerIndex).id(update.owner.id.toString())
+                .source(json.buffer(), 0, json.size(), XContentType.JSON), update));
+        if (update.full) {
+            Set<Integer> petIds = new HashSet<>();
+            for (Pet pet : update.owner.pets) {
+                petIds.add(pet.id);
+            }
+            List<Integer> removedPetIds = new ArrayList<>();
+            for (Integer petId : update.removedPetIds) {
+                if (!petIds.contains(petId)) {
+                    removedPetIds.add(petId);
+                }
+            }
+            addPetDeletes(requests, update, removedPetIds);
+            for (Pet pet : update.owner.pets) {
+                requests.add(indexPet(pet, update));
+            }
+            return requests;
+        }
+
+        Set<Integer> changedPetIds = new HashSet<>();
+        for (Pet pet : update.pets) {
+            changedPetIds.add(pet.id);
+        }
+        for (OwnerUpdate.VisitAppend append : update.visits) {
+            changedPetIds.add(append.visit.petId);
+        }
+        for (Pet pet : update.owner.pets) {
+            if (changedPetIds.contains(pet.id)) {
+                requests.add(indexPet(pet, update));
+            }
+        }
+        addPetDeletes(requests, update, update.removedPetIds);
+        return requests;
+    }
+
+    /**
+     * Adds the deletes of the pet documents, e.g. left by an owner split before it was deleted
+     * and created again
+     */
+    void addPetDeletes(List<DocWriteRequest<?>> requests, OwnerUpdate update, List<Integer> petIds) {
+        for (Integer petId : petIds) {
+            requests.add(version(new DeleteRequest(petIndex, petDocumentId(update.owner.id, petId)), update));
+        }
+    }
+
+    private DocWriteRequest<?> indexPet(Pet pet, OwnerUpdate update) {
+        byte[] json = OwnerJson.pet(pet);
+        return version(new IndexRequest(petIndex).id(petDocumentId(update.owner.id, pet.id))
+                .source(json, XContentType.JSON), update);
+    }
+
+    /**
+     * Returns the id of the document of the pet of the owner
+     */
+    static String petDocumentId(int ownerId, int petId) {
+        return ownerId + "_" + petId;
+    }
+
+    private DocWriteRequest<?> version(DocWriteRequest<?> request, OwnerUpdate update) {
+        if (versioned) {
+            request.versionType(VersionType.EXTERNAL);
+            request.version(update.version);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Visit;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Append-only log of visits of a single pet
+ * <p>
+ * Appending is O(1) amortized. Views returned by {@link #view()} are immutable - they see only
+ * the visits appended before the view was created, so they can be emitted downstream while the
+ * log keeps growing, without copying the visits.
+ */
+final class VisitLog {
+
+    private static final Visit[] EMPTY = new Visit[0];
+
+    private Visit[] visits = EMPTY;
+    private int size;
+
+    void append(Visit visit) {
+        if (size == visits.length) {
+            visits = Arrays.copyOf(visits, Math.max(4, size * 2));
+        }
+        visits[size++] = visit;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns an immutable view of the visits appended so far
+     */
+    List<Visit> view() {
+        return new View(visits, size);
+    }
+
+    /**
+     * Appends write past the end of every existing view, either to a slot the view doesn't
+     * cover or to a new array, so the view never changes
+     */
+    private static final class View extends AbstractList<Visit> implements RandomAccess, Serializable {
+
+        private final Visit[] visits;
+        private final int size;
+
+        View(Visit[] visits, int size) {
+            this.visits = visits;
+            this.size = size;
+        }
+
+        @Override
+        public Visit get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return visits[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private Object writeReplace() {
+            return new ArrayList<>(this);
+        }
+    }
+}
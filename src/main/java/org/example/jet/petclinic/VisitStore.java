@@ -0,0 +1,171 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Visit;
+import org.example.jet.petclinic.store.BinaryInput;
+import org.example.jet.petclinic.store.BinaryOutput;
+import org.example.jet.petclinic.store.BinaryStore;
+import org.example.jet.petclinic.store.IntLongMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Visits of pets by pet id, encoded in a {@link BinaryStore}
+ * <p>
+ * Each visit is a record of its own, keyed by a record id and linked to the previous visit
+ * of the pet, the pet maps to its last visit. A visit is appended without reading or copying
+ * the visits before it. Reading, removing and prepending walk the visits of the pet.
+ * <p>
+ * Record: {@code [varint previous record id + 1, 0 for none][visit]}
+ */
+final class VisitStore implements Serializable {
+
+    private static final long NONE = -1;
+
+    private BinaryStore visits;
+
+    // Record id of the last visit of each pet
+    private final IntLongMap lastRecords = new IntLongMap(NONE);
+    private int nextRecordId;
+
+    private transient BinaryOutput output;
+
+    VisitStore(BinaryStore.Memory memory, String directory) {
+        this.visits = new BinaryStore(memory, directory);
+    }
+
+    /**
+     * Moves the visits to the memory of the given configuration
+     */
+    void moveTo(JoiningStateConfig config) {
+        visits = config.inMemory(visits);
+    }
+
+    /**
+     * Returns the number of pets with visits
+     */
+    int size() {
+        return lastRecords.size();
+    }
+
+    void append(int petId, Visit visit) {
+        if (nextRecordId == Integer.MAX_VALUE) {
+            renumber();
+        }
+        BinaryOutput out = output();
+        out.writeVarInt((int) (lastRecords.get(petId) + 1));
+        // Each visit has a dictionary of its own, so it can be read without the visits before it
+        ModelCodec.writeVisit(out, visit);
+        int recordId = nextRecordId++;
+        visits.put(recordId, out.buffer(), 0, out.size());
+        lastRecords.put(petId, recordId);
+    }
+
+    /**
+     * Puts the given visits, which happened before the visits of the pet, in front of them,
+     * the visits of the pet that are among them are not repeated
+     */
+    void prepend(int petId, List<Visit> earlier) {
+        if (earlier.isEmpty()) {
+            return;
+        }
+        Set<Integer> earlierIds = new HashSet<>();
+        for (Visit visit : earlier) {
+            earlierIds.add(visit.id);
+        }
+        List<Visit> later = get(petId);
+        remove(petId);
+        for (Visit visit : earlier) {
+            append(petId, visit);
+        }
+        for (Visit visit : later) {
+            if (visit.id == null || !earlierIds.contains(visit.id)) {
+                append(petId, visit);
+            }
+        }
+    }
+
+    /**
+     * Returns the visits of the pet in the order they were added, empty if there are none
+     */
+    List<Visit> get(int petId) {
+        List<Visit> result = new ArrayList<>();
+        for (long recordId = lastRecords.get(petId); recordId != NONE; ) {
+            BinaryInput in = new BinaryInput(visits.get((int) recordId));
+            recordId = in.readVarInt() - 1L;
+            result.add(ModelCodec.readVisit(in));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Removes the visit with the given id from the visits of the pet
+     */
+    void remove(int petId, Integer visitId) {
+        List<Visit> current = get(petId);
+        if (!current.removeIf(visit -> visitId.equals(visit.id))) {
+            return;
+        }
+        remove(petId);
+        for (Visit visit : current) {
+            append(petId, visit);
+        }
+    }
+
+    void remove(int petId) {
+        for (long recordId = lastRecords.remove(petId); recordId != NONE; ) {
+            BinaryInput in = new BinaryInput(visits.get((int) recordId));
+            visits.remove((int) recordId);
+            recordId = in.readVarInt() - 1L;
+        }
+    }
+
+    void writeEntries(DataOutput out) throws IOException {
+        visits.writeEntries(out);
+        lastRecords.writeEntries(out);
+        out.writeInt(nextRecordId);
+    }
+
+    void readEntries(DataInput in) throws IOException {
+        visits.readEntries(in);
+        lastRecords.readEntries(in);
+        nextRecordId = in.readInt();
+    }
+
+    /**
+     * Gives the records new ids from 0, once the ids ran out
+     */
+    private void renumber() {
+        int[] petIds = new int[lastRecords.size()];
+        int[] count = {0};
+        lastRecords.forEach((petId, recordId) -> petIds[count[0]++] = petId);
+        List<List<Visit>> petVisits = new ArrayList<>(petIds.length);
+        for (int petId : petIds) {
+            petVisits.add(get(petId));
+        }
+        visits.clear();
+        lastRecords.clear();
+        nextRecordId = 0;
+        for (int i = 0; i < petIds.length; i++) {
+            for (Visit visit : petVisits.get(i)) {
+                append(petIds[i], visit);
+            }
+        }
+    }
+
+    private BinaryOutput output() {
+        if (output == null) {
+            output = new BinaryOutput();
+        }
+        output.clear();
+        return output;
+    }
+}
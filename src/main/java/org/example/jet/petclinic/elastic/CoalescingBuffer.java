@@ -0,0 +1,96 @@
+package org.example.jet.petclinic.elastic;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+
+/**
+ * Keeps the latest pending value per key until it is taken to be written
+ * <p>
+ * A new value replaces the pending value of the same key, or is merged with it by the
+ * given merge function, e.g. when the values are changes that all must be written.
+ * <p>
+ * A key taken to be written is in flight until {@link #complete(Collection)}, a newer
+ * value for such key stays pending and is not taken, so two versions of the same key are
+ * never written concurrently and can't overtake each other.
+ * <p>
+ * Not thread-safe.
+ */
+public final class CoalescingBuffer<K, V> {
+
+    private final BinaryOperator<V> mergeFn;
+    private final LinkedHashMap<K, V> pending = new LinkedHashMap<>();
+    private final Set<K> inFlight = new HashSet<>();
+    private long coalesced;
+
+    public CoalescingBuffer() {
+        this((older, newer) -> newer);
+    }
+
+    /**
+     * @param mergeFn merges the pending value of a key (first argument) with a newer one
+     */
+    public CoalescingBuffer(BinaryOperator<V> mergeFn) {
+        this.mergeFn = mergeFn;
+    }
+
+    /**
+     * Adds the value, merges it with the pending value of the same key if there is one
+     */
+    public void put(K key, V value) {
+        V older = pending.get(key);
+        if (older == null) {
+            pending.put(key, value);
+        } else {
+            pending.put(key, mergeFn.apply(older, value));
+            coalesced++;
+        }
+    }
+
+    public boolean containsPending(K key) {
+        return pending.containsKey(key);
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Returns the number of values merged with a newer value before they were written
+     */
+    public long coalescedCount() {
+        return coalesced;
+    }
+
+    /**
+     * Removes at most {@code max} pending values of keys that are not in flight, in the order
+     * the keys were added, and marks their keys in flight
+     */
+    public Map<K, V> take(int max) {
+        Map<K, V> taken = new LinkedHashMap<>();
+        Iterator<Map.Entry<K, V>> iterator = pending.entrySet().iterator();
+        while (taken.size() < max && iterator.hasNext()) {
+            Map.Entry<K, V> entry = iterator.next();
+            if (inFlight.add(entry.getKey())) {
+                taken.put(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Marks the keys as written, newer values of the keys can be taken again
+     */
+    public void complete(Collection<K> keys) {
+        inFlight.removeAll(keys);
+    }
+}
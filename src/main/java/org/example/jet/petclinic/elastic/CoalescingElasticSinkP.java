@@ -0,0 +1,399 @@
+package org.example.jet.petclinic.elastic;
+
+import com.hazelcast.function.BinaryOperatorEx;
+import com.hazelcast.function.FunctionEx;
+import com.hazelcast.function.SupplierEx;
+import com.hazelcast.function.ToLongFunctionEx;
+import com.hazelcast.jet.JetException;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.core.ProcessorMetaSupplier;
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.core.metrics.Unit;
+import com.hazelcast.jet.pipeline.Sink;
+import com.hazelcast.jet.pipeline.Sinks;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.rest.RestStatus;
+import org.example.jet.petclinic.metrics.Histogram;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Elasticsearch sink that writes only the latest document of each key
+ * <p>
+ * Items are partitioned by key, so all versions of a document reach the same processor.
+ * The processor keeps the latest version per key in a {@link CoalescingBuffer}, or merges
+ * the versions with a merge function if the items are changes of a document, and sends
+ * the pending documents in a single bulk request once there are
+ * {@link ElasticBulkConfig#getBulkSize()} of them, or once the oldest of them waited for
+ * {@link ElasticBulkConfig#getFlushIntervalMillis()}. Bulk requests are sent asynchronously,
+ * at most {@link ElasticBulkConfig#getMaxInFlightBulks()} at a time.
+ * <p>
+ * All pending documents are written before a snapshot completes, a failed bulk request
+ * fails the job, which then restarts from the last snapshot. A write with an external version
+ * rejected because the document has the same or a newer version is not a failure, the write
+ * is stale, e.g. replayed after a restart. Stale writes are counted in the
+ * {@code elasticStaleWrites} metric.
+ * <p>
+ * The sizes and latencies of the bulk requests are recorded in the {@code elasticBulkSize}
+ * and {@code elasticBulkLatencyMillis} histograms. If the items carry the time of their
+ * change, the time from the change to the acknowledgement of its write is recorded in the
+ * {@code elasticLagMillis} histogram.
+ */
+public final class CoalescingElasticSinkP<T> extends AbstractProcessor {
+
+    private static final int LOCAL_PARALLELISM = 2;
+
+    private final SupplierEx<RestClientBuilder> clientFn;
+    private final FunctionEx<? super T, ?> keyFn;
+    private final RequestsFn<? super T> mapToRequestsFn;
+    private final ToLongFunctionEx<? super T> timestampFn;
+    private final ElasticBulkConfig config;
+    private final long flushIntervalNanos;
+
+    private final CoalescingBuffer<Object, T> buffer;
+
+    // Completed bulks, added by the threads of the client, handled by the processor thread
+    private final Queue<Completion> completions = new ConcurrentLinkedQueue<>();
+
+    private RestHighLevelClient client;
+    private int inFlightBulks;
+    private long firstPendingNanos;
+
+    private final Histogram bulkSizes = Histogram.sizes("elasticBulkSize");
+    private final Histogram bulkLatencies = Histogram.latencyMillis("elasticBulkLatencyMillis");
+    private final Histogram lags = Histogram.latencyMillis("elasticLagMillis");
+    private Metric staleWrites;
+
+    CoalescingElasticSinkP(
+            SupplierEx<RestClientBuilder> clientFn,
+            FunctionEx<? super T, ?> keyFn,
+            BinaryOperatorEx<T> mergeFn,
+            RequestFn<? super T> mapToRequestFn,
+            ToLongFunctionEx<? super T> timestampFn,
+            ElasticBulkConfig config
+    ) {
+        this(clientFn, keyFn, mergeFn, toRequestsFn(mapToRequestFn), timestampFn, config);
+    }
+
+    private CoalescingElasticSinkP(
+            SupplierEx<RestClientBuilder> clientFn,
+            FunctionEx<? super T, ?> keyFn,
+            BinaryOperatorEx<T> mergeFn,
+            RequestsFn<? super T> mapToRequestsFn,
+            ToLongFunctionEx<? super T> timestampFn,
+            ElasticBulkConfig config
+    ) {
+        this.clientFn = clientFn;
+        this.keyFn = keyFn;
+        this.buffer = new CoalescingBuffer<>(mergeFn);
+        this.mapToRequestsFn = mapToRequestsFn;
+        this.timestampFn = timestampFn;
+        this.config = config;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getFlushIntervalMillis());
+    }
+
+    /**
+     * Returns a sink writing the latest document of each key
+     *
+     * @param name           name of the sink
+     * @param clientFn       supplier of the Elasticsearch client builder
+     * @param keyFn          key of the document, usually the document id
+     * @param mapToRequestFn maps an item to the request writing it
+     * @param config         bulk sizes and intervals
+     */
+    public static <T> Sink<T> sink(
+            String name,
+            SupplierEx<RestClientBuilder> clientFn,
+            FunctionEx<? super T, ?> keyFn,
+            FunctionEx<? super T, ? extends DocWriteRequest<?>> mapToRequestFn,
+            ElasticBulkConfig config
+    ) {
+        return sink(name, clientFn, keyFn, (older, newer) -> newer,
+                mapToRequestFn::apply, item -> 0, config);
+    }
+
+    /**
+     * Returns a sink writing changes of documents, the pending changes of a key are merged
+     *
+     * @param name           name of the sink
+     * @param clientFn       supplier of the Elasticsearch client builder
+     * @param keyFn          key of the document, usually the document id
+     * @param mergeFn        merges a pending change (first argument) with a newer change of the same key
+     * @param mapToRequestFn maps a change to the request writing it
+     * @param timestampFn    time of the oldest change merged into the item in epoch milliseconds,
+     *                       0 if not known
+     * @param config         bulk sizes and intervals
+     */
+    public static <T> Sink<T> sink(
+            String name,
+            SupplierEx<RestClientBuilder> clientFn,
+            FunctionEx<? super T, ?> keyFn,
+            BinaryOperatorEx<T> mergeFn,
+            RequestFn<? super T> mapToRequestFn,
+            ToLongFunctionEx<? super T> timestampFn,
+            ElasticBulkConfig config
+    ) {
+        return multiRequestSink(name, clientFn, keyFn, mergeFn, toRequestsFn(mapToRequestFn), timestampFn, config);
+    }
+
+    /**
+     * Returns a sink writing changes of documents, where a change may write several documents,
+     * the pending changes of a key are merged
+     *
+     * @param name            name of the sink
+     * @param clientFn        supplier of the Elasticsearch client builder
+     * @param keyFn           key of the document, usually the document id
+     * @param mergeFn         merges a pending change (first argument) with a newer change of the same key
+     * @param mapToRequestsFn maps a change to the requests writing it, the first of them writes
+     *                        the document of the key
+     * @param timestampFn     time of the oldest change merged into the item in epoch milliseconds,
+     *                        0 if not known
+     * @param config          bulk sizes and intervals
+     */
+    public static <T> Sink<T> multiRequestSink(
+            String name,
+            SupplierEx<RestClientBuilder> clientFn,
+            FunctionEx<? super T, ?> keyFn,
+            BinaryOperatorEx<T> mergeFn,
+            RequestsFn<? super T> mapToRequestsFn,
+            ToLongFunctionEx<? super T> timestampFn,
+            ElasticBulkConfig config
+    ) {
+        return Sinks.fromProcessor(name,
+                ProcessorMetaSupplier.of(LOCAL_PARALLELISM,
+                        () -> new CoalescingElasticSinkP<>(clientFn, keyFn, mergeFn, mapToRequestsFn, timestampFn,
+                                config)),
+                keyFn);
+    }
+
+    private static <T> RequestsFn<T> toRequestsFn(RequestFn<? super T> mapToRequestFn) {
+        return item -> singletonList(mapToRequestFn.apply(item));
+    }
+
+    @Override
+    public boolean isCooperative() {
+        // The client may block, e.g. on the first request or when connecting
+        return false;
+    }
+
+    @Override
+    protected void init(Context context) {
+        client = new RestHighLevelClient(clientFn.get());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected boolean tryProcess(int ordinal, Object item) {
+        handleCompletions();
+
+        T document = (T) item;
+        Object key = keyFn.apply(document);
+        if (buffer.pendingCount() >= config.getBulkSize() && !buffer.containsPending(key)) {
+            sendBulks();
+            if (buffer.pendingCount() >= config.getBulkSize()) {
+                // All bulks are in flight, wait for some of them to complete
+                return false;
+            }
+        }
+
+        if (buffer.pendingCount() == 0) {
+            firstPendingNanos = System.nanoTime();
+        }
+        buffer.put(key, document);
+        if (buffer.pendingCount() >= config.getBulkSize()) {
+            sendBulks();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryProcess() {
+        handleCompletions();
+        if (buffer.pendingCount() > 0 && System.nanoTime() - firstPendingNanos >= flushIntervalNanos) {
+            sendBulks();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean saveToSnapshot() {
+        return flushAll();
+    }
+
+    @Override
+    public boolean complete() {
+        return flushAll();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    private boolean flushAll() {
+        handleCompletions();
+        sendBulks();
+        return buffer.pendingCount() == 0 && inFlightBulks == 0;
+    }
+
+    private void sendBulks() {
+        while (inFlightBulks < config.getMaxInFlightBulks() && buffer.pendingCount() > 0) {
+            Map<Object, T> documents = buffer.take(config.getBulkSize());
+            if (documents.isEmpty()) {
+                // The keys of all pending documents are in flight
+                return;
+            }
+
+            BulkRequest request = new BulkRequest();
+            long[] timestamps = new long[documents.size()];
+            int i = 0;
+            for (Map.Entry<Object, T> document : documents.entrySet()) {
+                timestamps[i++] = timestampFn.applyAsLong(document.getValue());
+                for (DocWriteRequest<?> write : mapToRequestsFn.apply(document.getValue())) {
+                    request.add(write);
+                }
+            }
+            Set<Object> keys = documents.keySet();
+            long sentNanos = System.nanoTime();
+            inFlightBulks++;
+            client.bulkAsync(request, RequestOptions.DEFAULT, new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    int stale = 0;
+                    boolean failed = false;
+                    if (response.hasFailures()) {
+                        for (BulkItemResponse item : response) {
+                            if (!item.isFailed()) {
+                                continue;
+                            }
+                            if (isStale(request.requests().get(item.getItemId()), item.getFailure())) {
+                                stale++;
+                            } else {
+                                failed = true;
+                            }
+                        }
+                    }
+                    completions.add(new Completion(keys, timestamps, sentNanos, stale, failed
+                            ? new JetException("Bulk request failed: " + response.buildFailureMessage())
+                            : null));
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    completions.add(new Completion(keys, timestamps, sentNanos, 0, e));
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns true if the write was rejected because it is externally versioned and the
+     * document has the same or a newer version
+     */
+    private static boolean isStale(DocWriteRequest<?> write, BulkItemResponse.Failure failure) {
+        return (write.versionType() == VersionType.EXTERNAL || write.versionType() == VersionType.EXTERNAL_GTE)
+                && failure.getStatus() == RestStatus.CONFLICT;
+    }
+
+    private void handleCompletions() {
+        for (Completion completion; (completion = completions.poll()) != null; ) {
+            inFlightBulks--;
+            buffer.complete(completion.keys);
+            if (completion.failure != null) {
+                throw new JetException("Writing to Elasticsearch failed", completion.failure);
+            }
+            recordMetrics(completion);
+        }
+    }
+
+    private void recordMetrics(Completion completion) {
+        bulkSizes.record(completion.timestamps.length);
+        if (staleWrites == null) {
+            staleWrites = Metrics.metric("elasticStaleWrites", Unit.COUNT);
+        }
+        staleWrites.increment(completion.staleWrites);
+        bulkLatencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - completion.sentNanos));
+        long nowMillis = System.currentTimeMillis();
+        for (long timestamp : completion.timestamps) {
+            if (timestamp > 0) {
+                // The clocks of the database and the member may differ
+                lags.record(Math.max(0, nowMillis - timestamp));
+            }
+        }
+    }
+
+    private static final class Completion {
+
+        final Set<Object> keys;
+        final long[] timestamps;
+        final long sentNanos;
+        final int staleWrites;
+        final Exception failure;
+
+        Completion(Set<Object> keys, long[] timestamps, long sentNanos, int staleWrites, Exception failure) {
+            this.keys = keys;
+            this.timestamps = timestamps;
+            this.sentNanos = sentNanos;
+            this.staleWrites = staleWrites;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Maps an item to the request writing it
+     */
+    @FunctionalInterface
+    public interface RequestFn<T> extends Serializable {
+
+        DocWriteRequest<?> applyEx(T item) throws Exception;
+
+        default DocWriteRequest<?> apply(T item) {
+            try {
+                return applyEx(item);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new JetException("Mapping " + item + " to a request failed", e);
+            }
+        }
+    }
+
+    /**
+     * Maps an item to the requests writing it, the first request writes the document of the
+     * key of the item, the others write documents that depend on it
+     */
+    @FunctionalInterface
+    public interface RequestsFn<T> extends Serializable {
+
+        List<DocWriteRequest<?>> applyEx(T item) throws Exception;
+
+        default List<DocWriteRequest<?>> apply(T item) {
+            try {
+                return applyEx(item);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new JetException("Mapping " + item + " to requests failed", e);
+            }
+        }
+    }
+}
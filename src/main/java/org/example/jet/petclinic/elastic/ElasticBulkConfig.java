@@ -0,0 +1,63 @@
+package org.example.jet.petclinic.elastic;
+
+import java.io.Serializable;
+
+/**
+ * Configuration of the {@link CoalescingElasticSinkP}
+ */
+public class ElasticBulkConfig implements Serializable {
+
+    static final int DEFAULT_BULK_SIZE = 1000;
+    static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    static final int DEFAULT_MAX_IN_FLIGHT_BULKS = 2;
+
+    private int bulkSize = DEFAULT_BULK_SIZE;
+    private long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+    private int maxInFlightBulks = DEFAULT_MAX_IN_FLIGHT_BULKS;
+
+    public int getBulkSize() {
+        return bulkSize;
+    }
+
+    /**
+     * Sets the maximum number of documents in a single bulk request, a bulk is sent
+     * as soon as there are this many documents pending
+     */
+    public ElasticBulkConfig setBulkSize(int bulkSize) {
+        if (bulkSize < 1) {
+            throw new IllegalArgumentException("bulkSize must be positive, was " + bulkSize);
+        }
+        this.bulkSize = bulkSize;
+        return this;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    /**
+     * Sets how long a document may wait for more updates of the same key before it is sent
+     */
+    public ElasticBulkConfig setFlushIntervalMillis(long flushIntervalMillis) {
+        if (flushIntervalMillis < 0) {
+            throw new IllegalArgumentException("flushIntervalMillis must not be negative, was " + flushIntervalMillis);
+        }
+        this.flushIntervalMillis = flushIntervalMillis;
+        return this;
+    }
+
+    public int getMaxInFlightBulks() {
+        return maxInFlightBulks;
+    }
+
+    /**
+     * Sets the maximum number of bulk requests a single processor has in flight
+     */
+    public ElasticBulkConfig setMaxInFlightBulks(int maxInFlightBulks) {
+        if (maxInFlightBulks < 1) {
+            throw new IllegalArgumentException("maxInFlightBulks must be positive, was " + maxInFlightBulks);
+        }
+        this.maxInFlightBulks = maxInFlightBulks;
+        return this;
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.jet.petclinic.elastic;
+
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.settings.Settings;
+
+import java.io.IOException;
+
+/**
+ * Turns the periodic refresh of an index off and on, a bulk load into an index without
+ * refreshes is faster, the loaded documents are searchable once the refresh is on again
+ */
+public final class ElasticIndexRefresh {
+
+    private static final String REFRESH_INTERVAL = "index.refresh_interval";
+
+    private ElasticIndexRefresh() {
+    }
+
+    /**
+     * Turns the refresh of the index off, creates the index if it doesn't exist
+     */
+    public static void disable(RestHighLevelClient client, String index) throws IOException {
+        Settings settings = Settings.builder().put(REFRESH_INTERVAL, "-1").build();
+        if (client.indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT)) {
+            client.indices().putSettings(new UpdateSettingsRequest(index).settings(settings), RequestOptions.DEFAULT);
+        } else {
+            client.indices().create(new CreateIndexRequest(index).settings(settings), RequestOptions.DEFAULT);
+        }
+    }
+
+    /**
+     * Turns the refresh of the index back to the default interval
+     */
+    public static void restore(RestHighLevelClient client, String index) throws IOException {
+        Settings settings = Settings.builder().putNull(REFRESH_INTERVAL).build();
+        client.indices().putSettings(new UpdateSettingsRequest(index).settings(settings), RequestOptions.DEFAULT);
+    }
+}
@@ -0,0 +1,147 @@
+package org.example.jet.petclinic.metrics;
+
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.core.metrics.Unit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Histogram kept as user metrics of the processor, a counter per bucket with the count and
+ * the sum of the values
+ * <p>
+ * The bucket bounds grow exponentially, 1, 2, 5, 10, 20, 50... so the relative error of a
+ * percentile is the same for small and large values. The counters add up across processors
+ * and members, unlike percentiles; {@link PrometheusEndpoint} exposes them as a Prometheus
+ * histogram, the percentiles are computed when queried.
+ * <p>
+ * A bucket counts the values up to its bound not counted by the bucket before, the metric of
+ * a bucket is named {@code <name>_le_<bound>}. Values above the last bound are only in the
+ * {@code <name>_count} and {@code <name>_sum} metrics.
+ * <p>
+ * The metrics are created by the first {@link #record(long)}, user metrics can be created only
+ * on the processor thread. Histograms of the same name in a processor share the metrics.
+ */
+public final class Histogram {
+
+    static final String BUCKET_INFIX = "_le_";
+    static final String COUNT_SUFFIX = "_count";
+    static final String SUM_SUFFIX = "_sum";
+
+    private final String name;
+    private final Unit unit;
+    private final long[] bounds;
+    private final boolean threadSafe;
+
+    private Metric[] buckets;
+    private Metric count;
+    private Metric sum;
+
+    private Histogram(String name, Unit unit, long[] bounds, boolean threadSafe) {
+        this.name = name;
+        this.unit = unit;
+        this.bounds = bounds;
+        this.threadSafe = threadSafe;
+    }
+
+    /**
+     * Returns a histogram of latencies in microseconds, from 10 us to 10 s
+     */
+    public static Histogram latencyMicros(String name) {
+        return new Histogram(name, Unit.COUNT, oneTwoFive(10, 10_000_000), false);
+    }
+
+    /**
+     * Returns a histogram of latencies in microseconds recorded from any thread, it must be
+     * {@link #init() initialized} on the processor thread
+     */
+    public static Histogram threadSafeLatencyMicros(String name) {
+        return new Histogram(name, Unit.COUNT, oneTwoFive(10, 10_000_000), true);
+    }
+
+    /**
+     * Returns a histogram of latencies in milliseconds, from 1 ms to 10 min
+     */
+    public static Histogram latencyMillis(String name) {
+        return new Histogram(name, Unit.MS, oneTwoFive(1, 600_000), false);
+    }
+
+    /**
+     * Returns a histogram of sizes from 1 to 100,000
+     */
+    public static Histogram sizes(String name) {
+        return new Histogram(name, Unit.COUNT, oneTwoFive(1, 100_000), false);
+    }
+
+    /**
+     * Creates the metrics, if not created yet
+     */
+    public void init() {
+        if (buckets != null) {
+            return;
+        }
+        Metric[] metrics = new Metric[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            metrics[i] = metric(name + BUCKET_INFIX + bounds[i], Unit.COUNT);
+        }
+        count = metric(name + COUNT_SUFFIX, Unit.COUNT);
+        sum = metric(name + SUM_SUFFIX, unit);
+        buckets = metrics;
+    }
+
+    public void record(long value) {
+        init();
+        int bucket = bucket(bounds, value);
+        if (bucket < bounds.length) {
+            buckets[bucket].increment();
+        }
+        count.increment();
+        sum.increment(value);
+    }
+
+    /**
+     * Records the nanoseconds since the given {@link System#nanoTime()} in microseconds
+     */
+    public void recordNanosSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    private Metric metric(String metricName, Unit metricUnit) {
+        return threadSafe ? Metrics.threadSafeMetric(metricName, metricUnit) : Metrics.metric(metricName, metricUnit);
+    }
+
+    /**
+     * Returns the index of the first bound not below the value, the number of bounds if the
+     * value is above all bounds
+     */
+    static int bucket(long[] bounds, long value) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (bounds[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the bounds 1, 2 and 5 times the powers of ten from min to max, min must be a
+     * power of ten
+     */
+    static long[] oneTwoFive(long min, long max) {
+        List<Long> bounds = new ArrayList<>();
+        for (long power = min; power <= max; power *= 10) {
+            for (long factor : new long[]{1, 2, 5}) {
+                if (power * factor <= max) {
+                    bounds.add(power * factor);
+                }
+            }
+        }
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -0,0 +1,219 @@
+package org.example.jet.petclinic.metrics;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP endpoint serving the Jet metrics of the member in the Prometheus text format
+ * <p>
+ * Jet publishes its metrics, the user metrics of the jobs included, as JMX MBeans of the
+ * {@code com.hazelcast.jet} domain. The endpoint renders the numeric attributes of these
+ * MBeans at {@code /metrics}, named {@code jet_<attribute>} and labelled with the tags of
+ * the MBean, e.g. the job, the vertex and the processor. {@link Histogram} metrics are
+ * rendered as Prometheus histograms.
+ */
+public final class PrometheusEndpoint implements Closeable {
+
+    static final String DOMAIN = "com.hazelcast.jet";
+    static final String PREFIX = "jet_";
+
+    private static final ILogger log = Logger.getLogger(PrometheusEndpoint.class);
+
+    private final MBeanServer mBeanServer;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private PrometheusEndpoint(MBeanServer mBeanServer, HttpServer server, ExecutorService executor) {
+        this.mBeanServer = mBeanServer;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the endpoint on the given port of all interfaces
+     */
+    public static PrometheusEndpoint start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "prometheus-endpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        PrometheusEndpoint endpoint =
+                new PrometheusEndpoint(ManagementFactory.getPlatformMBeanServer(), server, executor);
+        server.createContext("/metrics", endpoint::handle);
+        server.setExecutor(executor);
+        server.start();
+        log.info("Serving metrics at http://localhost:" + server.getAddress().getPort() + "/metrics");
+        return endpoint;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body;
+        int status = 200;
+        try {
+            body = render(mBeanServer).getBytes(StandardCharsets.UTF_8);
+        } catch (JMException e) {
+            log.warning("Rendering the metrics failed", e);
+            body = e.toString().getBytes(StandardCharsets.UTF_8);
+            status = 500;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Returns the Jet metrics of the MBean server in the Prometheus text format
+     */
+    static String render(MBeanServer mBeanServer) throws JMException {
+        // Samples grouped by metric name, Prometheus expects the samples of a metric together
+        Map<String, List<String>> samples = new TreeMap<>();
+        for (ObjectName name : mBeanServer.queryNames(new ObjectName(DOMAIN + ":type=Metrics,*"), null)) {
+            String labels = labels(name);
+            Map<String, Number> values = new TreeMap<>();
+            for (MBeanAttributeInfo attribute : mBeanServer.getMBeanInfo(name).getAttributes()) {
+                Object value = mBeanServer.getAttribute(name, attribute.getName());
+                if (value instanceof Number) {
+                    values.put(attribute.getName(), (Number) value);
+                }
+            }
+            addSamples(samples, labels, values);
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, List<String>> metric : samples.entrySet()) {
+            String type = metric.getKey().endsWith(" histogram") ? "histogram" : "untyped";
+            String metricName = metric.getKey().replace(" histogram", "");
+            text.append("# TYPE ").append(metricName).append(' ').append(type).append('\n');
+            for (String sample : metric.getValue()) {
+                text.append(sample).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Adds the samples of the values of an MBean, buckets of histograms are made cumulative
+     */
+    private static void addSamples(Map<String, List<String>> samples, String labels, Map<String, Number> values) {
+        Map<String, TreeMap<Long, Long>> histograms = new LinkedHashMap<>();
+        for (Map.Entry<String, Number> value : values.entrySet()) {
+            String attribute = value.getKey();
+            int infix = attribute.lastIndexOf(Histogram.BUCKET_INFIX);
+            if (infix > 0) {
+                long bound = Long.parseLong(attribute.substring(infix + Histogram.BUCKET_INFIX.length()));
+                histograms.computeIfAbsent(attribute.substring(0, infix), key -> new TreeMap<>())
+                          .put(bound, value.getValue().longValue());
+            }
+        }
+        for (Map.Entry<String, Number> value : values.entrySet()) {
+            String attribute = value.getKey();
+            if (attribute.contains(Histogram.BUCKET_INFIX) || isHistogramTotal(attribute, histograms)) {
+                continue;
+            }
+            String metricName = PREFIX + sanitize(attribute);
+            samples.computeIfAbsent(metricName, key -> new ArrayList<>())
+                   .add(metricName + braces(labels) + ' ' + value.getValue());
+        }
+        for (Map.Entry<String, TreeMap<Long, Long>> histogram : histograms.entrySet()) {
+            String metricName = PREFIX + sanitize(histogram.getKey());
+            List<String> lines = samples.computeIfAbsent(metricName + " histogram", key -> new ArrayList<>());
+            long cumulative = 0;
+            for (Map.Entry<Long, Long> bucket : histogram.getValue().entrySet()) {
+                cumulative += bucket.getValue();
+                lines.add(metricName + "_bucket" + braces(join(labels, "le=\"" + bucket.getKey() + '"'))
+                        + ' ' + cumulative);
+            }
+            Number count = values.get(histogram.getKey() + Histogram.COUNT_SUFFIX);
+            Number sum = values.get(histogram.getKey() + Histogram.SUM_SUFFIX);
+            lines.add(metricName + "_bucket" + braces(join(labels, "le=\"+Inf\"")) + ' '
+                    + (count == null ? cumulative : count));
+            lines.add(metricName + "_count" + braces(labels) + ' ' + (count == null ? cumulative : count));
+            if (sum != null) {
+                lines.add(metricName + "_sum" + braces(labels) + ' ' + sum);
+            }
+        }
+    }
+
+    private static boolean isHistogramTotal(String attribute, Map<String, TreeMap<Long, Long>> histograms) {
+        for (String histogram : histograms.keySet()) {
+            if (attribute.equals(histogram + Histogram.COUNT_SUFFIX) || attribute.equals(histogram + Histogram.SUM_SUFFIX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the labels of the MBean name, the tags of Jet metrics are properties like
+     * {@code tag2="vertex=JoiningState::update"}
+     */
+    private static String labels(ObjectName name) {
+        StringBuilder labels = new StringBuilder();
+        for (Map.Entry<String, String> property : new TreeMap<>(name.getKeyPropertyList()).entrySet()) {
+            String key = property.getKey();
+            String value = property.getValue();
+            if (key.equals("type")) {
+                continue;
+            }
+            if (key.startsWith("tag")) {
+                String tag = value.startsWith("\"") ? ObjectName.unquote(value) : value;
+                int separator = tag.indexOf('=');
+                key = tag.substring(0, separator);
+                value = tag.substring(separator + 1);
+            }
+            labels.append(labels.length() == 0 ? "" : ",")
+                  .append(sanitize(key)).append("=\"").append(escape(value)).append('"');
+        }
+        return labels.toString();
+    }
+
+    private static String join(String labels, String label) {
+        return labels.isEmpty() ? label : labels + ',' + label;
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : '{' + labels + '}';
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
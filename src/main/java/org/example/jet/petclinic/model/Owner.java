@@ -1,5 +1,6 @@
 package org.example.jet.petclinic.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.io.Serializable;
@@ -21,6 +22,13 @@ public class Owner implements Serializable {
 
     public List<Pet> pets = new ArrayList<>();
 
+    /**
+     * Time of the binlog event of the change of the row in epoch milliseconds, 0 if not known,
+     * carried to measure the lag of the index, it is not indexed
+     */
+    @JsonIgnore
+    public long timestamp;
+
     // Used by Json deserialization
     public Owner() {
     }
@@ -31,36 +39,6 @@ public class Owner implements Serializable {
         this.lastName = lastName;
     }
 
-    public Owner(Integer ownerId, Pet pet) {
-        this.id = ownerId;
-        pets.add(pet);
-    }
-
-    public Owner update(Owner other) {
-        pets = new ArrayList<>(other.pets);
-        return this;
-    }
-
-    public Owner addPet(Pet newPet) {
-        Owner newOwner = new Owner(id, firstName, lastName);
-
-        boolean update = false;
-        for (Pet pet : pets) {
-            if (pet.id.equals(newPet.id)) {
-                newOwner.pets.add(newPet);
-                update = true;
-                break;
-            } else {
-                newOwner.pets.add(pet);
-            }
-        }
-
-        if (!update) {
-            newOwner.pets.add(newPet);
-        }
-        return newOwner;
-    }
-
     @Override
     public String toString() {
         return "Owner{" +
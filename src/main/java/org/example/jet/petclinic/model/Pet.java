@@ -1,5 +1,6 @@
 package org.example.jet.petclinic.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.io.Serializable;
@@ -20,6 +21,20 @@ public class Pet implements Serializable {
 
     public List<Visit> visits = new ArrayList<>();
 
+    /**
+     * Time of the binlog event of the change of the row in epoch milliseconds, 0 if not known,
+     * carried to measure the lag of the index, it is not indexed
+     */
+    @JsonIgnore
+    public long timestamp;
+
+    /**
+     * The pet with its visits as JSON, rendered when first written and reused while the pet
+     * doesn't change, it is not indexed
+     */
+    @JsonIgnore
+    public transient volatile byte[] json;
+
     public Pet() {
     }
 
@@ -33,18 +48,6 @@ public class Pet implements Serializable {
         this.ownerId = ownerId;
     }
 
-    public Pet addVisit(Visit newVisit) {
-        Pet newPet = new Pet(id, name, ownerId);
-        newPet.visits = new ArrayList<>(visits);
-        newPet.visits.add(newVisit);
-        return newPet;
-    }
-
-    public Pet update(Pet other) {
-        this.visits = new ArrayList<>(other.visits);
-        return this;
-    }
-
     @Override
     public String toString() {
         return "Pet{" +
@@ -1,5 +1,6 @@
 package org.example.jet.petclinic.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.io.Serializable;
@@ -10,11 +11,26 @@ import java.util.List;
  */
 public class Visit implements Serializable {
 
+    public Integer id;
     @JsonProperty("pet_id")
     public Integer petId;
     public String description;
     public List<String> keywords;
 
+    /**
+     * Time of the binlog event of the change of the row in epoch milliseconds, 0 if not known,
+     * carried to measure the lag of the index, it is not indexed
+     */
+    @JsonIgnore
+    public long timestamp;
+
+    /**
+     * The visit as JSON, rendered when first written and reused while the visit doesn't
+     * change, it is not indexed
+     */
+    @JsonIgnore
+    public transient volatile byte[] json;
+
     public Visit() {
     }
 
@@ -23,6 +39,12 @@ public class Visit implements Serializable {
         this.description = description;
     }
 
+    public Visit(Integer id, Integer petId, String description) {
+        this.id = id;
+        this.petId = petId;
+        this.description = description;
+    }
+
     public void setKeywords(List<String> keywords) {
         this.keywords = keywords;
     }
@@ -30,7 +52,8 @@ public class Visit implements Serializable {
     @Override
     public String toString() {
         return "Visit{" +
-                "petId=" + petId +
+                "id=" + id +
+                ", petId=" + petId +
                 ", description='" + description + '\'' +
                 ", keywords=" + keywords +
                 '}';
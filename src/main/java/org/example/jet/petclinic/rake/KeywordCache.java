@@ -0,0 +1,140 @@
+package org.example.jet.petclinic.rake;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of keywords by the text they were extracted from
+ * <p>
+ * The cache is split into segments, each an LRU map guarded by its own lock, so it can be
+ * shared by all processors of a member without them contending on a single lock.
+ * Texts are compared as they are, any normalization is up to the caller - note that
+ * {@link Rake} is case sensitive, so texts differing in case may have different keywords.
+ * <p>
+ * Cached keyword lists are immutable, they are shared by all visits with the same text.
+ */
+public final class KeywordCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int maxSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public KeywordCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive, was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        int segmentSize = (maxSize + SEGMENTS - 1) / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * Returns the cached keywords of the text or null
+     */
+    public List<String> get(String text) {
+        Segment segment = segment(text);
+        List<String> keywords;
+        synchronized (segment) {
+            keywords = segment.get(text);
+        }
+        if (keywords == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return keywords;
+    }
+
+    /**
+     * Caches the keywords of the text, evicting the least recently used entries of the segment
+     *
+     * @return the cached immutable list and the number of evicted entries, see {@link Put}
+     */
+    public Put put(String text, List<String> keywords) {
+        List<String> cached = Collections.unmodifiableList(keywords);
+        Segment segment = segment(text);
+        int evicted;
+        synchronized (segment) {
+            segment.put(text, cached);
+            evicted = segment.evicted;
+            segment.evicted = 0;
+        }
+        evictions.add(evicted);
+        return new Put(cached, evicted);
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private Segment segment(String text) {
+        int h = text.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Result of {@link #put(String, List)}
+     */
+    public static final class Put {
+
+        public final List<String> keywords;
+        public final int evicted;
+
+        Put(List<String> keywords, int evicted) {
+            this.keywords = keywords;
+            this.evicted = evicted;
+        }
+    }
+
+    private static final class Segment extends LinkedHashMap<String, List<String>> {
+
+        private final int maxSize;
+        private int evicted;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+            if (size() > maxSize) {
+                evicted++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package org.example.jet.petclinic.rake;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scores candidate keyword phrases and selects the best ones
+ * <p>
+ * Words are interned to dense int ids, frequencies, degrees and scores are kept in primitive
+ * arrays indexed by the id and the best phrases are picked with a bounded heap. All working
+ * arrays are reused between documents, so a scorer must be confined to a single thread.
+ * <p>
+ * The order of the selected phrases is the one of the original implementation - by score
+ * descending, phrases with equal score in reverse order of their first appearance.
+ */
+final class KeywordScorer {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_RETAINED_CAPACITY = 1 << 16;
+
+    private List<String> phrases;
+
+    // Word ids of all phrases, words of phrase i are at phraseOffsets[i] until phraseOffsets[i + 1]
+    private int[] occurrences;
+    private int[] phraseOffsets;
+
+    // Interned words, a word is identified by a region of the phrase it first appeared in
+    private int wordCount;
+    private int[] wordSlots;
+    private int[] wordPhrase;
+    private int[] wordStart;
+    private int[] wordLength;
+    private int[] frequencies;
+    private int[] degrees;
+    private double[] wordScores;
+
+    // Distinct phrases in order of first appearance
+    private int uniqueCount;
+    private int[] phraseSlots;
+    private int[] uniquePhrase;
+    private double[] uniqueScores;
+
+    private int[] heap;
+    private int selected;
+
+    KeywordScorer() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Scores the given phrases and selects at most {@code k} best of them
+     *
+     * @param phrases candidate phrases as produced by {@link PhraseTokenizer#phrases(String)}
+     * @param k       maximum number of phrases to select
+     * @return number of selected phrases
+     */
+    int select(List<String> phrases, int k) {
+        reset(phrases);
+        scoreWords();
+        scorePhrases();
+        selectTop(k);
+        return selected;
+    }
+
+    /**
+     * Returns the selected phrase of the given rank, 0 is the best one
+     */
+    String phrase(int rank) {
+        return phrases.get(uniquePhrase[heap[rank]]);
+    }
+
+    /**
+     * Returns the score of the selected phrase of the given rank, 0 is the best one
+     */
+    double score(int rank) {
+        return uniqueScores[heap[rank]];
+    }
+
+    /**
+     * Releases the references to the last scored document
+     */
+    void clear() {
+        phrases = null;
+        if (occurrences.length > MAX_RETAINED_CAPACITY || wordSlots.length > MAX_RETAINED_CAPACITY
+                || phraseSlots.length > MAX_RETAINED_CAPACITY) {
+            allocate(INITIAL_CAPACITY);
+        }
+    }
+
+    private void allocate(int capacity) {
+        occurrences = new int[capacity];
+        phraseOffsets = new int[capacity + 1];
+        wordSlots = new int[capacity * 2];
+        wordPhrase = new int[capacity];
+        wordStart = new int[capacity];
+        wordLength = new int[capacity];
+        frequencies = new int[capacity];
+        degrees = new int[capacity];
+        wordScores = new double[capacity];
+        phraseSlots = new int[capacity * 2];
+        uniquePhrase = new int[capacity];
+        uniqueScores = new double[capacity];
+        heap = new int[capacity];
+    }
+
+    private void reset(List<String> phrases) {
+        this.phrases = phrases;
+        int phraseCount = phrases.size();
+        if (phraseOffsets.length <= phraseCount) {
+            int capacity = Integer.highestOneBit(phraseCount) << 1;
+            phraseOffsets = new int[capacity + 1];
+            phraseSlots = new int[capacity * 2];
+            uniquePhrase = new int[capacity];
+            uniqueScores = new double[capacity];
+            heap = new int[capacity];
+        }
+        Arrays.fill(wordSlots, 0);
+        Arrays.fill(phraseSlots, 0);
+        wordCount = 0;
+        uniqueCount = 0;
+        selected = 0;
+    }
+
+    /**
+     * Word score is the word degree (collective length of phrases the word appears in)
+     * divided by the number of times the word appears
+     * <p>
+     * The frequency and degree updates are intentionally crossed, exactly as in the
+     * original implementation, so the scores (and keywords) stay the same.
+     */
+    private void scoreWords() {
+        int occurrenceCount = 0;
+        for (int p = 0; p < phrases.size(); p++) {
+            phraseOffsets[p] = occurrenceCount;
+            String phrase = phrases.get(p);
+            int length = phrase.length();
+            int i = 0;
+
+            while (i < length) {
+                if (!PhraseTokenizer.isWordChar(phrase.charAt(i))) {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < length && PhraseTokenizer.isWordChar(phrase.charAt(i))) {
+                    i++;
+                }
+                if (!PhraseTokenizer.isNumeric(phrase, start, i)) {
+                    if (occurrenceCount == occurrences.length) {
+                        occurrences = Arrays.copyOf(occurrences, occurrenceCount * 2);
+                    }
+                    occurrences[occurrenceCount++] = internWord(p, start, i);
+                }
+            }
+
+            int degree = occurrenceCount - phraseOffsets[p] - 1;
+            for (int o = phraseOffsets[p]; o < occurrenceCount; o++) {
+                int word = occurrences[o];
+                frequencies[word] = degrees[word] + 1;
+                degrees[word] = frequencies[word] + degree;
+            }
+        }
+        phraseOffsets[phrases.size()] = occurrenceCount;
+
+        for (int word = 0; word < wordCount; word++) {
+            wordScores[word] = (degrees[word] + frequencies[word]) / (frequencies[word] * 1.0);
+        }
+    }
+
+    private void scorePhrases() {
+        for (int p = 0; p < phrases.size(); p++) {
+            if (internPhrase(p)) {
+                double score = 0.0;
+                for (int o = phraseOffsets[p]; o < phraseOffsets[p + 1]; o++) {
+                    score += wordScores[occurrences[o]];
+                }
+                uniqueScores[uniqueCount - 1] = score;
+            }
+        }
+    }
+
+    /**
+     * Keeps the best {@code k} phrases in a min-heap with the worst kept phrase at the root,
+     * then sorts the heap in place so that {@code heap[0]} holds the best phrase
+     */
+    private void selectTop(int k) {
+        int size = 0;
+        for (int u = 0; u < uniqueCount && k > 0; u++) {
+            if (size < k) {
+                heap[size] = u;
+                siftUp(size++);
+            } else if (isWorse(heap[0], u)) {
+                heap[0] = u;
+                siftDown(0, size);
+            }
+        }
+        selected = size;
+
+        for (int end = size - 1; end > 0; end--) {
+            int worst = heap[0];
+            heap[0] = heap[end];
+            heap[end] = worst;
+            siftDown(0, end);
+        }
+    }
+
+    private boolean isWorse(int a, int b) {
+        int compare = Double.compare(uniqueScores[a], uniqueScores[b]);
+        return compare < 0 || (compare == 0 && a < b);
+    }
+
+    private void siftUp(int index) {
+        int item = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isWorse(item, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = item;
+    }
+
+    private void siftDown(int index, int size) {
+        int item = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && isWorse(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!isWorse(heap[child], item)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = item;
+    }
+
+    private int internWord(int phrase, int start, int end) {
+        if (wordCount * 2 >= wordSlots.length) {
+            growWords();
+        }
+        String text = phrases.get(phrase);
+        int length = end - start;
+        int mask = wordSlots.length - 1;
+        int slot = PhraseTokenizer.hash(text, start, end) & mask;
+        int id;
+        while ((id = wordSlots[slot] - 1) >= 0) {
+            if (wordLength[id] == length
+                    && phrases.get(wordPhrase[id]).regionMatches(wordStart[id], text, start, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        id = wordCount++;
+        wordSlots[slot] = id + 1;
+        wordPhrase[id] = phrase;
+        wordStart[id] = start;
+        wordLength[id] = length;
+        frequencies[id] = 0;
+        degrees[id] = 0;
+        return id;
+    }
+
+    private void growWords() {
+        int capacity = wordPhrase.length * 2;
+        wordPhrase = Arrays.copyOf(wordPhrase, capacity);
+        wordStart = Arrays.copyOf(wordStart, capacity);
+        wordLength = Arrays.copyOf(wordLength, capacity);
+        frequencies = Arrays.copyOf(frequencies, capacity);
+        degrees = Arrays.copyOf(degrees, capacity);
+        wordScores = Arrays.copyOf(wordScores, capacity);
+
+        wordSlots = new int[capacity * 2];
+        int mask = wordSlots.length - 1;
+        for (int id = 0; id < wordCount; id++) {
+            int start = wordStart[id];
+            int slot = PhraseTokenizer.hash(phrases.get(wordPhrase[id]), start, start + wordLength[id]) & mask;
+            while (wordSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            wordSlots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Returns true if the phrase was seen for the first time
+     */
+    private boolean internPhrase(int phrase) {
+        String text = phrases.get(phrase);
+        int mask = phraseSlots.length - 1;
+        int slot = PhraseTokenizer.hash(text, 0, text.length()) & mask;
+        int unique;
+        while ((unique = phraseSlots[slot] - 1) >= 0) {
+            if (phrases.get(uniquePhrase[unique]).equals(text)) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        unique = uniqueCount++;
+        phraseSlots[slot] = unique + 1;
+        uniquePhrase[unique] = phrase;
+        return true;
+    }
+}
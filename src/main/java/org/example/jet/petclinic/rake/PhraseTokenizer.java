@@ -0,0 +1,204 @@
+package org.example.jet.petclinic.rake;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Splits text into candidate keyword phrases in a single character scan
+ * <p>
+ * Produces exactly the phrases the original regex based implementation did:
+ * - the text is split into sentences on {@code . ! ? , ; : \t \ " ( ) '}, right single quotation mark and en dash
+ * - every stop word standing on a word boundary and not followed by {@code [\w-]} ends a phrase
+ * - phrases are trimmed and lower-cased, empty phrases are dropped
+ * <p>
+ * Stop words are kept in an open addressing table that is probed directly with a region
+ * of the scanned text, so no substring is created unless a phrase is emitted.
+ * <p>
+ * Instances are immutable and safe to share between threads.
+ */
+final class PhraseTokenizer {
+
+    private final String[] stopWords;
+    private final int mask;
+
+    PhraseTokenizer(Collection<String> stopWords) {
+        int capacity = Integer.highestOneBit(Math.max(stopWords.size(), 1) * 4 - 1) << 1;
+        this.stopWords = new String[capacity];
+        this.mask = capacity - 1;
+
+        for (String word : stopWords) {
+            if (!word.isEmpty() && !isStopWord(word, 0, word.length())) {
+                int slot = hash(word, 0, word.length()) & mask;
+                while (this.stopWords[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                this.stopWords[slot] = word;
+            }
+        }
+    }
+
+    /**
+     * Returns the candidate keyword phrases of the given text in order of appearance
+     *
+     * @param text given text
+     * @return trimmed, lower-cased, non-empty phrases, possibly containing duplicates
+     */
+    List<String> phrases(String text) {
+        List<String> phrases = new ArrayList<>();
+        int length = text.length();
+        int phraseStart = 0;
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isPhraseDelimiter(c)) {
+                addPhrase(phrases, text, phraseStart, i);
+                phraseStart = ++i;
+            } else if (isBoundaryBefore(text, i)) {
+                int end = stopWordRunEnd(text, i);
+                if (isStopWord(text, i, end)) {
+                    addPhrase(phrases, text, phraseStart, i);
+                    phraseStart = i = end;
+                } else {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+        }
+        addPhrase(phrases, text, phraseStart, length);
+        return phrases;
+    }
+
+    /**
+     * Returns true if the character is a part of a word as understood by RAKE word scoring
+     * <p>
+     * Matches the {@code [a-zA-Z0-9_\\+/-\\]} class of the original implementation, note that
+     * {@code /-\} is a range including digits, upper case letters and some punctuation,
+     * but not the '-' character itself.
+     */
+    static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '/' && c <= '\\') || c == '_' || c == '+';
+    }
+
+    /**
+     * Returns true if the region consists of ASCII digits only
+     */
+    static boolean isNumeric(String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return to > from;
+    }
+
+    private static void addPhrase(List<String> phrases, String text, int from, int to) {
+        while (from < to && text.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && text.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        if (from < to) {
+            phrases.add(text.substring(from, to).toLowerCase());
+        }
+    }
+
+    private static boolean isPhraseDelimiter(char c) {
+        switch (c) {
+            case '.':
+            case '!':
+            case '?':
+            case ',':
+            case ';':
+            case ':':
+            case '\t':
+            case '\\':
+            case '"':
+            case '(':
+            case ')':
+            case '\'':
+            case '\u2019':
+            case '\u2013':
+            case '|':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Stop words were matched by {@code \bword(?![\w-])}, so a stop word must span the whole
+     * run of {@code [a-zA-Z0-9_-]} characters starting at the given index
+     */
+    private static int stopWordRunEnd(String text, int from) {
+        int i = from;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Mirrors {@code \b} of java.util.regex in front of a word character - the previous
+     * code point must not be a letter, digit, underscore or a non-spacing mark with a base character
+     */
+    private static boolean isBoundaryBefore(String text, int i) {
+        if (!Character.isLetterOrDigit(text.charAt(i))) {
+            return false;
+        }
+        if (i == 0) {
+            return true;
+        }
+        int before = Character.codePointBefore(text, i);
+        if (before == '_' || Character.isLetterOrDigit(before)) {
+            return false;
+        }
+        return Character.getType(before) != Character.NON_SPACING_MARK || !hasBaseCharacter(text, i - 1);
+    }
+
+    private static boolean hasBaseCharacter(String text, int i) {
+        for (int x = i; x >= 0; x--) {
+            int ch = Character.codePointAt(text, x);
+            if (Character.isLetterOrDigit(ch)) {
+                return true;
+            }
+            if (Character.getType(ch) != Character.NON_SPACING_MARK) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean isStopWord(String text, int from, int to) {
+        if (from == to) {
+            return false;
+        }
+        int length = to - from;
+        int slot = hash(text, from, to) & mask;
+        String word;
+        while ((word = stopWords[slot]) != null) {
+            if (word.length() == length && word.regionMatches(0, text, from, length)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    static int hash(String text, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+}
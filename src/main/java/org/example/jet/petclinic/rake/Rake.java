@@ -19,7 +19,10 @@ import java.util.*;
  */
 public class Rake {
     String language;
-    String stopWordsPattern;
+    PhraseTokenizer tokenizer;
+
+    // Rake is shared by all processors of a member, the scoring buffers are per thread
+    private final ThreadLocal<KeywordScorer> scorer = ThreadLocal.withInitial(KeywordScorer::new);
 
     public Rake(String language) {
         this.language = language;
@@ -37,16 +40,7 @@ public class Rake {
                 while ((line = bufferedReader.readLine()) != null)
                     stopWords.add(line.trim());
 
-                ArrayList<String> regexList = new ArrayList<>();
-
-                // Turn the stop words into an array of regex
-                for (String word : stopWords) {
-                    String regex = "\\b" + word + "(?![\\w-])";
-                    regexList.add(regex);
-                }
-
-                // Join all regexes into global pattern
-                this.stopWordsPattern = String.join("|", regexList);
+                this.tokenizer = new PhraseTokenizer(stopWords);
             } catch (Exception e) {
                 throw new Error("An error occurred reading stop words for language " + language);
             }
@@ -55,156 +49,49 @@ public class Rake {
     }
 
     /**
-     * Returns a list of all sentences in a given string of text
+     * Extracts keywords from the given text body using the RAKE algorithm
      *
      * @param text
-     * @return String[]
-     */
-    private String[] getSentences(String text) {
-        return text.split("[.!?,;:\\t\\\\\\\\\"\\\\(\\\\)\\\\'\\u2019\\u2013]|\\\\s\\\\-\\\\s");
-    }
-
-    /**
-     * Returns a list of all words that are have a length greater than a specified number of characters
-     *
-     * @param text given text
-     * @param size minimum size
-     */
-    private String[] separateWords(String text, int size) {
-        String[] split = text.split("[^a-zA-Z0-9_\\\\+/-\\\\]");
-        ArrayList<String> words = new ArrayList<>();
-
-        for (String word : split) {
-            String current = word.trim().toLowerCase();
-            int len = current.length();
-
-            if (len > size && len > 0 && !isNumeric(current))
-                words.add(current);
-        }
-
-        return words.toArray(new String[words.size()]);
-    }
-
-    private static boolean isNumeric(String str) {
-        return str.matches("-?\\d+(\\.\\d+)?");  //match a number with optional '-' and decimal.
-    }
-
-    /**
-     * Generates a list of keywords by splitting sentences by their stop words
-     *
-     * @param sentences
-     * @return
+     * @return all keywords with their scores, ordered from the highest score
      */
-    private String[] getKeywords(String[] sentences) {
-        ArrayList<String> phraseList = new ArrayList<>();
-
-        for (String sentence : sentences) {
-            String temp = sentence.trim().replaceAll(this.stopWordsPattern, "|");
-            String[] phrases = temp.split("\\|");
-
-            for (String phrase : phrases) {
-                phrase = phrase.trim().toLowerCase();
-
-                if (phrase.length() > 0)
-                    phraseList.add(phrase);
+    public LinkedHashMap<String, Double> getKeywordsFromText(String text) {
+        List<String> phrases = tokenizer.phrases(text);
+        KeywordScorer scorer = this.scorer.get();
+        try {
+            int count = scorer.select(phrases, phrases.size());
+            LinkedHashMap<String, Double> result = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                result.put(scorer.phrase(i), scorer.score(i));
             }
+            return result;
+        } finally {
+            scorer.clear();
         }
-
-        return phraseList.toArray(new String[phraseList.size()]);
     }
 
     /**
-     * Calculates word scores for each word in a collection of phrases
+     * Extracts at most k best keywords from the given text body using the RAKE algorithm
      * <p>
-     * Scores is calculated by dividing the word degree (collective length of phrases the word appears in)
-     * by the number of times the word appears
+     * Returns the same keywords as the first k keys of {@link #getKeywordsFromText(String)},
+     * without building and sorting the scores of all keywords
      *
-     * @param phrases
-     * @return
-     */
-    private LinkedHashMap<String, Double> calculateWordScores(String[] phrases) {
-        LinkedHashMap<String, Integer> wordFrequencies = new LinkedHashMap<>();
-        LinkedHashMap<String, Integer> wordDegrees = new LinkedHashMap<>();
-        LinkedHashMap<String, Double> wordScores = new LinkedHashMap<>();
-
-        for (String phrase : phrases) {
-            String[] words = this.separateWords(phrase, 0);
-            int length = words.length;
-            int degree = length - 1;
-
-            for (String word : words) {
-                wordFrequencies.put(word, wordDegrees.getOrDefault(word, 0) + 1);
-                wordDegrees.put(word, wordFrequencies.getOrDefault(word, 0) + degree);
-            }
-        }
-
-        for (String item : wordFrequencies.keySet()) {
-            wordDegrees.put(item, wordDegrees.get(item) + wordFrequencies.get(item));
-            wordScores.put(item, wordDegrees.get(item) / (wordFrequencies.get(item) * 1.0));
-        }
-
-        return wordScores;
-    }
-
-    /**
-     * Returns a list of keyword candidates and their respective word scores
-     *
-     * @param phrases
-     * @param wordScores
-     * @return
+     * @param text given text
+     * @param k    maximum number of keywords
+     * @return keywords ordered from the highest score
      */
-    private LinkedHashMap<String, Double> getCandidateKeywordScores(String[] phrases, LinkedHashMap<String, Double> wordScores) {
-        LinkedHashMap<String, Double> keywordCandidates = new LinkedHashMap<>();
-
-        for (String phrase : phrases) {
-            double score = 0.0;
-
-            String[] words = this.separateWords(phrase, 0);
-
-            for (String word : words) {
-                score += wordScores.get(word);
+    public List<String> topKeywords(String text, int k) {
+        List<String> phrases = tokenizer.phrases(text);
+        KeywordScorer scorer = this.scorer.get();
+        try {
+            int count = scorer.select(phrases, k);
+            List<String> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(scorer.phrase(i));
             }
-
-            keywordCandidates.put(phrase, score);
+            return result;
+        } finally {
+            scorer.clear();
         }
-
-        return keywordCandidates;
-    }
-
-    /**
-     * Sorts a LinkedHashMap by value from lowest to highest
-     *
-     * @param map
-     * @return
-     */
-    private LinkedHashMap<String, Double> sortHashMap(LinkedHashMap<String, Double> map) {
-        LinkedHashMap<String, Double> result = new LinkedHashMap<>();
-        List<Map.Entry<String, Double>> list = new LinkedList<>(map.entrySet());
-
-        Collections.sort(list, Comparator.comparing(Map.Entry::getValue));
-        Collections.reverse(list);
-
-        for (Iterator<Map.Entry<String, Double>> it = list.iterator(); it.hasNext(); ) {
-            Map.Entry<String, Double> entry = it.next();
-            result.put(entry.getKey(), entry.getValue());
-        }
-
-        return result;
-    }
-
-    /**
-     * Extracts keywords from the given text body using the RAKE algorithm
-     *
-     * @param text
-     */
-    public LinkedHashMap<String, Double> getKeywordsFromText(String text) {
-        String[] sentences = this.getSentences(text);
-        String[] keywords = this.getKeywords(sentences);
-
-        LinkedHashMap<String, Double> wordScores = this.calculateWordScores(keywords);
-        LinkedHashMap<String, Double> keywordCandidates = this.getCandidateKeywordScores(keywords, wordScores);
-
-        return this.sortHashMap(keywordCandidates);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,120 @@
+package org.example.jet.petclinic.search;
+
+import com.hazelcast.core.EntryAdapter;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.MapEvent;
+import com.hazelcast.replicatedmap.ReplicatedMap;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Queries of the inverted index written by {@link KeywordIndexSinkP}
+ * <p>
+ * Every member holds a copy of the replicated map, a query on a member reads only local
+ * memory. The terms are also kept sorted here, updated by a listener of the map, to find
+ * the terms with a prefix without scanning the map. A new term is found by prefix once
+ * its event arrived, usually within milliseconds of the write.
+ */
+public final class KeywordIndex implements Closeable {
+
+    private final ReplicatedMap<String, byte[]> index;
+    private final NavigableSet<String> terms = new ConcurrentSkipListSet<>();
+    private final UUID registration;
+
+    public KeywordIndex(HazelcastInstance instance, String mapName) {
+        this.index = instance.getReplicatedMap(mapName);
+        // Registered before the terms are read, so no term added meanwhile is missed
+        this.registration = index.addEntryListener(new TermListener());
+        terms.addAll(index.keySet());
+    }
+
+    /**
+     * Returns the documents containing the term
+     */
+    public PostingList term(String term) {
+        byte[] encoded = index.get(term);
+        return encoded == null ? PostingList.EMPTY : PostingList.decode(encoded);
+    }
+
+    /**
+     * Returns the documents containing any term starting with the prefix
+     */
+    public PostingList prefix(String prefix) {
+        PostingList result = PostingList.EMPTY;
+        for (String term : terms.tailSet(prefix)) {
+            if (!term.startsWith(prefix)) {
+                break;
+            }
+            result = result.or(term(term));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the documents containing all the terms
+     */
+    public PostingList all(String... terms) {
+        if (terms.length == 0) {
+            return PostingList.EMPTY;
+        }
+        PostingList result = term(terms[0]);
+        for (int i = 1; i < terms.length && !result.isEmpty(); i++) {
+            result = result.and(term(terms[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the documents containing all the words of the text, the last word may be
+     * incomplete and matches as a prefix, as the text typed into a search box
+     */
+    public PostingList search(String text) {
+        List<String> words = new ArrayList<>();
+        Terms.addTerms(text, words);
+        if (words.isEmpty()) {
+            return PostingList.EMPTY;
+        }
+        String last = words.remove(words.size() - 1);
+        PostingList result = prefix(last);
+        for (int i = 0; i < words.size() && !result.isEmpty(); i++) {
+            result = result.and(term(words.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of terms in the index
+     */
+    public int termCount() {
+        return terms.size();
+    }
+
+    @Override
+    public void close() {
+        index.removeEntryListener(registration);
+    }
+
+    private final class TermListener extends EntryAdapter<String, byte[]> {
+
+        @Override
+        public void entryAdded(EntryEvent<String, byte[]> event) {
+            terms.add(event.getKey());
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<String, byte[]> event) {
+            terms.remove(event.getKey());
+        }
+
+        @Override
+        public void mapCleared(MapEvent event) {
+            terms.clear();
+        }
+    }
+}
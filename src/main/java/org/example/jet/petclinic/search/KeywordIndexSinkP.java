@@ -0,0 +1,147 @@
+package org.example.jet.petclinic.search;
+
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.core.Inbox;
+import com.hazelcast.jet.core.ProcessorMetaSupplier;
+import com.hazelcast.jet.pipeline.Sink;
+import com.hazelcast.jet.pipeline.Sinks;
+import com.hazelcast.replicatedmap.ReplicatedMap;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sink writing the encoded {@link PostingList} of each term to a {@link ReplicatedMap},
+ * the inverted index queried by {@link KeywordIndex}
+ * <p>
+ * The posting lists come from the {@link TermPostings} of the terms and are partitioned
+ * by term, so the posting list of a term is written by a single processor. Only the latest
+ * posting list of each term in an inbox is written, terms without documents are removed.
+ * Each write replicates the whole posting list to all members, so a posting list of at least
+ * {@link Writer#LARGE_POSTINGS} documents is written at most once per
+ * {@link Writer#LARGE_WRITE_INTERVAL_MILLIS}, the latest version waits until then.
+ * <p>
+ * The processor keeps no state, waiting posting lists are written before a snapshot, the
+ * posting lists emitted again after a restart overwrite the ones written before.
+ */
+public final class KeywordIndexSinkP extends AbstractProcessor {
+
+    private static final int LOCAL_PARALLELISM = 1;
+
+    private final String mapName;
+
+    private Writer writer;
+
+    KeywordIndexSinkP(String mapName) {
+        this.mapName = mapName;
+    }
+
+    /**
+     * Returns a sink writing the posting lists of terms to the replicated map of the given name
+     */
+    public static Sink<Map.Entry<String, PostingList>> sink(String name, String mapName) {
+        return Sinks.fromProcessor(name,
+                ProcessorMetaSupplier.of(LOCAL_PARALLELISM, () -> new KeywordIndexSinkP(mapName)),
+                Map.Entry::getKey);
+    }
+
+    @Override
+    public boolean isCooperative() {
+        // Writes to the replicated map may block
+        return false;
+    }
+
+    @Override
+    protected void init(Context context) {
+        writer = new Writer(context.jetInstance().getHazelcastInstance().getReplicatedMap(mapName));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void process(int ordinal, Inbox inbox) {
+        for (Object item; (item = inbox.poll()) != null; ) {
+            writer.add((Map.Entry<String, PostingList>) item);
+        }
+        writer.flush();
+    }
+
+    @Override
+    public boolean tryProcess() {
+        writer.flush();
+        return true;
+    }
+
+    @Override
+    public boolean saveToSnapshot() {
+        writer.flushAll();
+        return true;
+    }
+
+    /**
+     * Writes the latest posting list of each term received since the last flush
+     */
+    static final class Writer {
+
+        static final int LARGE_POSTINGS = 10_000;
+        static final long LARGE_WRITE_INTERVAL_MILLIS = 1000;
+
+        private final ReplicatedMap<String, byte[]> index;
+        private final Map<String, PostingList> pending = new LinkedHashMap<>();
+        private final Map<String, Long> largeWrittenAtNanos = new HashMap<>();
+
+        Writer(ReplicatedMap<String, byte[]> index) {
+            this.index = index;
+        }
+
+        void add(Map.Entry<String, PostingList> postings) {
+            pending.put(postings.getKey(), postings.getValue());
+        }
+
+        /**
+         * Writes the pending posting lists, except large ones written less than
+         * {@link #LARGE_WRITE_INTERVAL_MILLIS} ago
+         */
+        void flush() {
+            flush(System.nanoTime(), false);
+        }
+
+        /**
+         * Writes all pending posting lists
+         */
+        void flushAll() {
+            flush(System.nanoTime(), true);
+        }
+
+        void flush(long nowNanos, boolean all) {
+            long intervalNanos = TimeUnit.MILLISECONDS.toNanos(LARGE_WRITE_INTERVAL_MILLIS);
+            for (Iterator<Map.Entry<String, PostingList>> iterator = pending.entrySet().iterator();
+                 iterator.hasNext(); ) {
+                Map.Entry<String, PostingList> entry = iterator.next();
+                String term = entry.getKey();
+                PostingList postings = entry.getValue();
+                if (postings.size() >= LARGE_POSTINGS) {
+                    Long writtenAt = largeWrittenAtNanos.get(term);
+                    if (!all && writtenAt != null && nowNanos - writtenAt < intervalNanos) {
+                        continue;
+                    }
+                    largeWrittenAtNanos.put(term, nowNanos);
+                } else {
+                    largeWrittenAtNanos.remove(term);
+                }
+                if (postings.isEmpty()) {
+                    index.remove(term);
+                } else {
+                    index.put(term, postings.encode());
+                }
+                iterator.remove();
+            }
+        }
+
+        int pendingCount() {
+            return pending.size();
+        }
+    }
+}
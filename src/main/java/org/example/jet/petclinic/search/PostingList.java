@@ -0,0 +1,214 @@
+package org.example.jet.petclinic.search;
+
+import org.example.jet.petclinic.store.BinaryInput;
+import org.example.jet.petclinic.store.BinaryOutput;
+
+import java.util.Arrays;
+
+/**
+ * Immutable sorted set of document ids containing a term
+ * <p>
+ * Encoded as the number of ids followed by the gaps between consecutive ids, each as a
+ * LEB128 varint. Ids of documents created close in time are close, most gaps take a
+ * single byte.
+ */
+public final class PostingList {
+
+    public static final PostingList EMPTY = new PostingList(new int[0]);
+
+    // Sorted, without duplicates
+    private final int[] ids;
+
+    private PostingList(int[] ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Returns the posting list of the given ids, in any order and with duplicates
+     */
+    public static PostingList of(int... ids) {
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        return new PostingList(distinct(sorted));
+    }
+
+    public static PostingList decode(byte[] bytes) {
+        BinaryInput in = new BinaryInput(bytes);
+        int[] ids = new int[in.readVarInt()];
+        int id = 0;
+        for (int i = 0; i < ids.length; i++) {
+            id += in.readVarInt();
+            ids[i] = id;
+        }
+        return new PostingList(ids);
+    }
+
+    public byte[] encode() {
+        BinaryOutput out = new BinaryOutput(ids.length + 5);
+        out.writeVarInt(ids.length);
+        int previous = 0;
+        for (int id : ids) {
+            out.writeVarInt(id - previous);
+            previous = id;
+        }
+        return out.toByteArray();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    public boolean contains(int id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    /**
+     * Returns a copy of the ids in ascending order
+     */
+    public int[] toArray() {
+        return ids.clone();
+    }
+
+    /**
+     * Returns the posting list with the added ids and without the removed ids, both given
+     * as posting lists, an id in both is removed
+     * <p>
+     * The ids are merged in a single pass, this posting list is returned if the update
+     * doesn't change it.
+     */
+    public PostingList update(PostingList added, PostingList removed) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return this;
+        }
+        int[] result = new int[ids.length + added.ids.length];
+        int count = 0;
+        boolean changed = false;
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < ids.length || j < added.ids.length) {
+            int id;
+            boolean present;
+            if (j == added.ids.length || i < ids.length && ids[i] < added.ids[j]) {
+                id = ids[i++];
+                present = true;
+            } else if (i == ids.length || ids[i] > added.ids[j]) {
+                id = added.ids[j++];
+                present = false;
+            } else {
+                id = ids[i++];
+                j++;
+                present = true;
+            }
+            while (k < removed.ids.length && removed.ids[k] < id) {
+                k++;
+            }
+            if (k < removed.ids.length && removed.ids[k] == id) {
+                changed |= present;
+            } else {
+                changed |= !present;
+                result[count++] = id;
+            }
+        }
+        return changed ? new PostingList(Arrays.copyOf(result, count)) : this;
+    }
+
+    /**
+     * Returns the ids in both posting lists
+     */
+    public PostingList and(PostingList other) {
+        int[] result = new int[Math.min(ids.length, other.ids.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < ids.length && j < other.ids.length; ) {
+            if (ids[i] < other.ids[j]) {
+                i++;
+            } else if (ids[i] > other.ids[j]) {
+                j++;
+            } else {
+                result[count++] = ids[i];
+                i++;
+                j++;
+            }
+        }
+        return new PostingList(Arrays.copyOf(result, count));
+    }
+
+    /**
+     * Returns the ids in any of the posting lists
+     */
+    public PostingList or(PostingList other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        int[] result = new int[ids.length + other.ids.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ids.length && j < other.ids.length) {
+            if (ids[i] < other.ids[j]) {
+                result[count++] = ids[i++];
+            } else if (ids[i] > other.ids[j]) {
+                result[count++] = other.ids[j++];
+            } else {
+                result[count++] = ids[i++];
+                j++;
+            }
+        }
+        while (i < ids.length) {
+            result[count++] = ids[i++];
+        }
+        while (j < other.ids.length) {
+            result[count++] = other.ids[j++];
+        }
+        return new PostingList(Arrays.copyOf(result, count));
+    }
+
+    /**
+     * Returns the ids of this posting list not in the other one
+     */
+    public PostingList andNot(PostingList other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        int[] result = new int[ids.length];
+        int count = 0;
+        for (int i = 0, j = 0; i < ids.length; i++) {
+            while (j < other.ids.length && other.ids[j] < ids[i]) {
+                j++;
+            }
+            if (j == other.ids.length || other.ids[j] != ids[i]) {
+                result[count++] = ids[i];
+            }
+        }
+        return new PostingList(Arrays.copyOf(result, count));
+    }
+
+    private static int[] distinct(int[] sorted) {
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PostingList && Arrays.equals(ids, ((PostingList) o).ids);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ids);
+    }
+
+    @Override
+    public String toString() {
+        return "PostingList" + Arrays.toString(ids);
+    }
+}
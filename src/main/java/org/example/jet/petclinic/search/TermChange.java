@@ -0,0 +1,36 @@
+package org.example.jet.petclinic.search;
+
+import java.io.Serializable;
+
+/**
+ * Document added to or removed from the posting list of a term
+ */
+public final class TermChange implements Serializable {
+
+    public final String term;
+    public final int docId;
+    public final boolean added;
+
+    public TermChange(String term, int docId, boolean added) {
+        this.term = term;
+        this.docId = docId;
+        this.added = added;
+    }
+
+    public static TermChange added(String term, int docId) {
+        return new TermChange(term, docId, true);
+    }
+
+    public static TermChange removed(String term, int docId) {
+        return new TermChange(term, docId, false);
+    }
+
+    @Override
+    public String toString() {
+        return "TermChange{" +
+                "term='" + term + '\'' +
+                ", docId=" + docId +
+                ", added=" + added +
+                '}';
+    }
+}
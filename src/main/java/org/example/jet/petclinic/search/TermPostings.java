@@ -0,0 +1,120 @@
+package org.example.jet.petclinic.search;
+
+import java.util.Arrays;
+
+/**
+ * Posting list of a term, the state of the stage applying {@link TermChange}s
+ * <p>
+ * The changes are partitioned by term across the cluster, so there is a single owner of the
+ * posting list of each term and the index is only written, never read back.
+ * <p>
+ * Changes are buffered as the ids to add and to remove, both small, and merged into the
+ * posting list in one pass by {@link #flush()}, see {@link TermPostingsP}. Merging each
+ * change on its own would copy the posting list of a frequent term once per change.
+ */
+public final class TermPostings {
+
+    private PostingList postings;
+
+    private final SortedIds added = new SortedIds();
+    private final SortedIds removed = new SortedIds();
+
+    public TermPostings() {
+        this(PostingList.EMPTY);
+    }
+
+    public TermPostings(PostingList postings) {
+        this.postings = postings;
+    }
+
+    /**
+     * Buffers the change until the next {@link #flush()}, a later change of a document
+     * overrides an earlier one
+     */
+    public void buffer(TermChange change) {
+        if (change.added) {
+            removed.remove(change.docId);
+            added.add(change.docId);
+        } else {
+            added.remove(change.docId);
+            removed.add(change.docId);
+        }
+    }
+
+    public boolean hasBuffered() {
+        return added.size > 0 || removed.size > 0;
+    }
+
+    /**
+     * Merges the buffered changes into the posting list, returns the updated posting list,
+     * or null if the changes had no effect
+     */
+    public PostingList flush() {
+        if (!hasBuffered()) {
+            return null;
+        }
+        PostingList updated = postings.update(added.toPostingList(), removed.toPostingList());
+        added.clear();
+        removed.clear();
+        if (updated == postings) {
+            return null;
+        }
+        postings = updated;
+        return updated;
+    }
+
+    /**
+     * Applies the change, returns the updated posting list, or null if the change had no effect
+     */
+    public PostingList apply(TermChange change) {
+        buffer(change);
+        return flush();
+    }
+
+    /**
+     * Returns the posting list without the buffered changes
+     */
+    public PostingList postings() {
+        return postings;
+    }
+
+    /**
+     * Sorted set of ids changed since the last flush
+     */
+    private static final class SortedIds {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        }
+
+        PostingList toPostingList() {
+            return size == 0 ? PostingList.EMPTY : PostingList.of(Arrays.copyOf(ids, size));
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
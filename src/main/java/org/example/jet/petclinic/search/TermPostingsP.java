@@ -0,0 +1,100 @@
+package org.example.jet.petclinic.search;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.Traversers;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.core.Inbox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.hazelcast.jet.Util.entry;
+
+/**
+ * Processor keeping the {@link TermPostings} of the terms it receives {@link TermChange}s of,
+ * emits the updated posting list of each changed term once per inbox
+ * <p>
+ * The changes of an inbox are buffered by term and merged into each posting list in one pass,
+ * so a burst of changes of a frequent term copies and emits its posting list once instead of
+ * once per change. The input is partitioned by term, the posting lists are saved to snapshots
+ * by term.
+ */
+public final class TermPostingsP extends AbstractProcessor {
+
+    private final Map<String, TermPostings> postingsByTerm = new HashMap<>();
+
+    // Terms with buffered changes, in the order of their first change
+    private final Map<String, TermPostings> changed = new LinkedHashMap<>();
+
+    private Traverser<Map.Entry<String, PostingList>> flushTraverser;
+    private Traverser<Map.Entry<String, TermPostings>> snapshotTraverser;
+
+    @Override
+    public void process(int ordinal, Inbox inbox) {
+        // The posting lists of the previous inbox are emitted first
+        if (flushTraverser != null && !emitFromTraverser(flushTraverser)) {
+            return;
+        }
+        for (Object item; (item = inbox.poll()) != null; ) {
+            TermChange change = (TermChange) item;
+            TermPostings postings = postingsByTerm.computeIfAbsent(change.term, term -> new TermPostings());
+            postings.buffer(change);
+            changed.put(change.term, postings);
+        }
+        flushTraverser = Traversers.traverseIterable(flush());
+        if (emitFromTraverser(flushTraverser)) {
+            flushTraverser = null;
+        }
+    }
+
+    @Override
+    public boolean tryProcess() {
+        if (flushTraverser != null && emitFromTraverser(flushTraverser)) {
+            flushTraverser = null;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean saveToSnapshot() {
+        if (flushTraverser != null) {
+            if (!emitFromTraverser(flushTraverser)) {
+                return false;
+            }
+            flushTraverser = null;
+        }
+        if (snapshotTraverser == null) {
+            snapshotTraverser = Traversers.traverseIterable(postingsByTerm.entrySet())
+                                          .onFirstNull(() -> snapshotTraverser = null);
+        }
+        return emitFromTraverserToSnapshot(snapshotTraverser);
+    }
+
+    @Override
+    protected void restoreFromSnapshot(Object key, Object value) {
+        postingsByTerm.put((String) key, (TermPostings) value);
+    }
+
+    /**
+     * Merges the buffered changes, returns the posting lists of the terms they changed,
+     * terms left without documents are forgotten
+     */
+    private List<Map.Entry<String, PostingList>> flush() {
+        List<Map.Entry<String, PostingList>> updated = new ArrayList<>(changed.size());
+        for (Map.Entry<String, TermPostings> entry : changed.entrySet()) {
+            PostingList postings = entry.getValue().flush();
+            if (postings == null) {
+                continue;
+            }
+            if (postings.isEmpty()) {
+                postingsByTerm.remove(entry.getKey());
+            }
+            updated.add(entry(entry.getKey(), postings));
+        }
+        changed.clear();
+        return updated;
+    }
+}
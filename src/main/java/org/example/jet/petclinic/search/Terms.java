@@ -0,0 +1,33 @@
+package org.example.jet.petclinic.search;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Splits text into the terms of the keyword index, lowercase words of letters and digits
+ * <p>
+ * Indexed documents and queries are split the same way, so a query matches the text as
+ * it was written.
+ */
+public final class Terms {
+
+    private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private Terms() {
+    }
+
+    /**
+     * Adds the terms of the text to the given collection, null text has no terms
+     */
+    public static void addTerms(String text, Collection<String> terms) {
+        if (text == null) {
+            return;
+        }
+        for (String word : SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                terms.add(word);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.jet.petclinic.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads values written by {@link BinaryOutput}
+ */
+public final class BinaryInput {
+
+    private final byte[] buffer;
+    private int position;
+    private final int limit;
+
+    // Strings read with readDictionaryString, in order of first appearance
+    private List<String> dictionary;
+
+    public BinaryInput(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    public BinaryInput(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Returns an input of the next bytes, with a dictionary of its own, and skips them
+     */
+    public BinaryInput slice(int length) {
+        checkAvailable(length);
+        BinaryInput slice = new BinaryInput(buffer, position, length);
+        position += length;
+        return slice;
+    }
+
+    public int readByte() {
+        checkAvailable(1);
+        return buffer[position++];
+    }
+
+    public int readVarInt() {
+        return (int) readVarLong();
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            checkAvailable(1);
+            b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    public int readSignedVarInt() {
+        int zigZag = readVarInt();
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    public Integer readNullableInt() {
+        long value = readVarLong();
+        if (value == 0) {
+            return null;
+        }
+        int zigZag = (int) (value - 1);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    public String readString() {
+        int length = readVarInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        checkAvailable(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    public String readDictionaryString() {
+        int index = readVarInt();
+        if (index == 0) {
+            return null;
+        }
+        if (dictionary == null) {
+            dictionary = new ArrayList<>();
+        }
+        if (index == 1) {
+            String value = readString();
+            dictionary.add(value);
+            return value;
+        }
+        if (index - 2 >= dictionary.size()) {
+            throw new IllegalStateException("Unknown dictionary index " + (index - 2) + " at " + position);
+        }
+        return dictionary.get(index - 2);
+    }
+
+    private void checkAvailable(int length) {
+        if (position + length > limit) {
+            throw new IllegalStateException("Unexpected end of data at " + position + ", limit " + limit);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.example.jet.petclinic.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Growable byte buffer with compact encodings of ints and strings
+ * <p>
+ * Ints are written as variable-length LEB128, signed values zig-zag encoded first.
+ * Nullable values use 0 as the null marker, so a null costs a single byte.
+ * Strings that repeat within one record can be written through a dictionary, so
+ * that every repetition is written as a small index.
+ * The buffer is reused after {@link #clear()}, it is not thread-safe.
+ */
+public final class BinaryOutput {
+
+    private byte[] buffer;
+    private int position;
+
+    // Index of the strings written with writeDictionaryString since the last clear
+    private Map<String, Integer> dictionary;
+
+    public BinaryOutput() {
+        this(256);
+    }
+
+    public BinaryOutput(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    public void clear() {
+        position = 0;
+        if (dictionary != null) {
+            dictionary.clear();
+        }
+    }
+
+    public int size() {
+        return position;
+    }
+
+    /**
+     * Returns the internal buffer, valid bytes are from 0 until {@link #size()}
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    public void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeNullableInt(Integer value) {
+        if (value == null) {
+            writeVarLong(0);
+        } else {
+            int zigZag = (value << 1) ^ (value >> 31);
+            writeVarLong((zigZag & 0xFFFFFFFFL) + 1);
+        }
+    }
+
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Writes the string the first time it is seen since {@link #clear()},
+     * afterwards only its index in the dictionary
+     */
+    public void writeDictionaryString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        if (dictionary == null) {
+            dictionary = new HashMap<>();
+        }
+        Integer index = dictionary.putIfAbsent(value, dictionary.size());
+        if (index == null) {
+            writeVarInt(1);
+            writeString(value);
+        } else {
+            writeVarInt(index + 2);
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+        }
+    }
+}
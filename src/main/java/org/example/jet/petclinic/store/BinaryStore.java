@@ -0,0 +1,375 @@
+package org.example.jet.petclinic.store;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Int-keyed store of binary values
+ * <p>
+ * Values are appended to large chunks of memory, on heap, off-heap or mapped from files,
+ * an {@link IntLongMap} maps a key to the chunk and offset of its latest value.
+ * Replaced and removed values are garbage, once there is more garbage than live
+ * data the live values are copied to new chunks and the old chunks are dropped. Dropped
+ * off-heap and mapped chunks are freed and unmapped right away, not when they are garbage
+ * collected.
+ * <p>
+ * Each record is laid out as {@code [int key][int length][bytes]}.
+ * <p>
+ * Not thread-safe.
+ */
+public final class BinaryStore implements Serializable {
+
+    /**
+     * Where the chunks are allocated
+     */
+    public enum Memory {
+        HEAP,
+        OFF_HEAP,
+        /**
+         * Chunks mapped from temporary files, the operating system pages out the values
+         * not read recently, so the store may be larger than the memory
+         */
+        MAPPED
+    }
+
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+    private static final int MAX_CHUNK_SIZE = 1 << 24;
+    private static final int HEADER_SIZE = 8;
+    private static final long MISSING = -1;
+
+    // Unsafe.invokeCleaner(ByteBuffer), null if not accessible
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    private final Memory memory;
+
+    // Directory of the files of mapped chunks, null for the temporary directory
+    private final String directory;
+
+    private transient IntLongMap index;
+    private transient Arena arena;
+    private transient long liveBytes;
+    private transient long garbageBytes;
+
+    public BinaryStore(Memory memory) {
+        this(memory, null);
+    }
+
+    /**
+     * @param directory directory of the files of {@link Memory#MAPPED} chunks, null for
+     *                  the temporary directory
+     */
+    public BinaryStore(Memory memory, String directory) {
+        this.memory = memory;
+        this.directory = directory;
+        init();
+    }
+
+    private void init() {
+        if (arena != null) {
+            arena.release();
+        }
+        index = new IntLongMap(MISSING);
+        arena = new Arena(memory, directory);
+        liveBytes = 0;
+        garbageBytes = 0;
+    }
+
+    public Memory memory() {
+        return memory;
+    }
+
+    public String directory() {
+        return directory;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the size of all live records
+     */
+    public long liveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Returns the size of all allocated chunks
+     */
+    public long allocatedBytes() {
+        return arena.allocated;
+    }
+
+    public boolean contains(int key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Returns a copy of the value or null if there is no value for the key
+     */
+    public byte[] get(int key) {
+        long address = index.get(key);
+        return address == MISSING ? null : arena.read(address);
+    }
+
+    public void put(int key, byte[] value) {
+        put(key, value, 0, value.length);
+    }
+
+    public void put(int key, byte[] value, int offset, int length) {
+        long address = arena.append(key, value, offset, length);
+        long previous = index.put(key, address);
+        if (previous != MISSING) {
+            garbage(previous);
+        }
+        liveBytes += HEADER_SIZE + length;
+        compactIfNeeded();
+    }
+
+    /**
+     * Removes the value, returns true if there was one
+     */
+    public boolean remove(int key) {
+        long previous = index.remove(key);
+        if (previous == MISSING) {
+            return false;
+        }
+        garbage(previous);
+        compactIfNeeded();
+        return true;
+    }
+
+    public void clear() {
+        init();
+    }
+
+    /**
+     * Returns a store in the given memory with the records of this store, which is left empty
+     */
+    public BinaryStore moveTo(Memory memory, String directory) {
+        BinaryStore moved = new BinaryStore(memory, directory);
+        Arena from = arena;
+        index.forEach((key, address) -> moved.index.put(key, moved.arena.copy(from, address)));
+        moved.liveBytes = liveBytes;
+        clear();
+        return moved;
+    }
+
+    /**
+     * Calls the consumer for every key in the store, in no particular order
+     * <p>
+     * The consumer must not modify the store.
+     */
+    public void forEachKey(IntConsumer consumer) {
+        index.forEach((key, address) -> consumer.accept(key));
+    }
+
+    private void garbage(long address) {
+        int recordSize = arena.recordSize(address);
+        liveBytes -= recordSize;
+        garbageBytes += recordSize;
+    }
+
+    private void compactIfNeeded() {
+        if (garbageBytes > MIN_CHUNK_SIZE && garbageBytes > liveBytes) {
+            Arena compacted = new Arena(memory, directory);
+            Arena current = arena;
+            index.forEach((key, address) -> index.put(key, compacted.copy(current, address)));
+            arena = compacted;
+            current.release();
+            garbageBytes = 0;
+        }
+    }
+
+    /**
+     * Writes all records, they can be read back with {@link #readEntries(DataInput)}
+     */
+    public void writeEntries(DataOutput out) throws IOException {
+        int[] keys = new int[index.size()];
+        long[] addresses = new long[keys.length];
+        int[] count = {0};
+        index.forEach((key, address) -> {
+            keys[count[0]] = key;
+            addresses[count[0]++] = address;
+        });
+
+        out.writeInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            byte[] value = arena.read(addresses[i]);
+            out.writeInt(keys[i]);
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    /**
+     * Replaces the content of this store with records written by {@link #writeEntries(DataOutput)}
+     */
+    public void readEntries(DataInput in) throws IOException {
+        init();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int key = in.readInt();
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            put(key, value);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        writeEntries(out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        readEntries(in);
+    }
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                                .findVirtual(unsafeClass, "invokeCleaner",
+                                        MethodType.methodType(void.class, ByteBuffer.class))
+                                .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // The chunks are then released when they are garbage collected
+            return null;
+        }
+    }
+
+    /**
+     * Chunks of memory records are appended to, an address is {@code chunk << 32 | offset}
+     */
+    private static final class Arena {
+
+        private final Memory memory;
+        private final String directory;
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private ByteBuffer current;
+        private long allocated;
+
+        Arena(Memory memory, String directory) {
+            this.memory = memory;
+            this.directory = directory;
+        }
+
+        long append(int key, byte[] value, int offset, int length) {
+            ByteBuffer chunk = chunkFor(HEADER_SIZE + length);
+            int position = chunk.position();
+            chunk.putInt(key);
+            chunk.putInt(length);
+            chunk.put(value, offset, length);
+            return address(chunks.size() - 1, position);
+        }
+
+        long copy(Arena from, long address) {
+            ByteBuffer source = from.chunks.get((int) (address >>> 32)).duplicate();
+            int offset = (int) address;
+            int recordSize = HEADER_SIZE + source.getInt(offset + 4);
+            source.limit(offset + recordSize).position(offset);
+
+            ByteBuffer chunk = chunkFor(recordSize);
+            int position = chunk.position();
+            chunk.put(source);
+            return address(chunks.size() - 1, position);
+        }
+
+        byte[] read(long address) {
+            ByteBuffer chunk = chunks.get((int) (address >>> 32)).duplicate();
+            int offset = (int) address;
+            byte[] value = new byte[chunk.getInt(offset + 4)];
+            chunk.position(offset + HEADER_SIZE);
+            chunk.get(value);
+            return value;
+        }
+
+        /**
+         * Frees the off-heap chunks and unmaps the mapped ones, the arena must not be used
+         * afterwards, no buffer of it may be left
+         */
+        void release() {
+            if (memory != Memory.HEAP && INVOKE_CLEANER != null) {
+                for (ByteBuffer chunk : chunks) {
+                    try {
+                        INVOKE_CLEANER.invokeExact(chunk);
+                    } catch (Throwable e) {
+                        throw new IllegalStateException("Releasing a chunk failed", e);
+                    }
+                }
+            }
+            chunks.clear();
+            current = null;
+            allocated = 0;
+        }
+
+        int recordSize(long address) {
+            return HEADER_SIZE + chunks.get((int) (address >>> 32)).getInt((int) address + 4);
+        }
+
+        private ByteBuffer chunkFor(int recordSize) {
+            if (current == null || current.remaining() < recordSize) {
+                // Grow chunks with the total size, so the number of chunks stays logarithmic
+                int size = (int) Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, allocated));
+                size = Math.max(size, recordSize);
+                current = allocate(size);
+                chunks.add(current);
+                allocated += size;
+            }
+            return current;
+        }
+
+        private ByteBuffer allocate(int size) {
+            switch (memory) {
+                case HEAP:
+                    return ByteBuffer.allocate(size);
+                case OFF_HEAP:
+                    return ByteBuffer.allocateDirect(size);
+                case MAPPED:
+                    return map(size);
+                default:
+                    throw new IllegalStateException("Unknown memory " + memory);
+            }
+        }
+
+        private ByteBuffer map(int size) {
+            try {
+                Path dir = Paths.get(directory == null ? System.getProperty("java.io.tmpdir") : directory);
+                Path file = Files.createTempFile(dir, "binary-store-", ".chunk");
+                // The mapping stays valid after the channel is closed and the file is deleted,
+                // the pages are released when the arena is released
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+                    return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Mapping a chunk of " + size + " bytes failed", e);
+            }
+        }
+
+        private static long address(int chunk, int offset) {
+            return ((long) chunk << 32) | (offset & 0xFFFFFFFFL);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.example.jet.petclinic.store;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Open addressing hash map with primitive int keys and long values
+ * <p>
+ * Uses linear probing and backward shift deletion, so there are no tombstones.
+ * A value equal to {@code missingValue} is returned for absent keys.
+ */
+public final class IntLongMap implements Serializable {
+
+    private static final int FREE_KEY = 0;
+    private static final int MIN_CAPACITY = 8;
+
+    private final long missingValue;
+
+    private transient int[] keys;
+    private transient long[] values;
+    private transient int mask;
+    private transient int size;
+
+    // The free key is a valid key too, it is kept aside
+    private transient boolean hasFreeKey;
+    private transient long freeKeyValue;
+
+    public IntLongMap(long missingValue) {
+        this.missingValue = missingValue;
+        allocate(MIN_CAPACITY);
+    }
+
+    public long missingValue() {
+        return missingValue;
+    }
+
+    public int size() {
+        return size + (hasFreeKey ? 1 : 0);
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey;
+        }
+        return keys[slot(key)] != FREE_KEY;
+    }
+
+    public long get(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : missingValue;
+        }
+        int slot = slot(key);
+        return keys[slot] == FREE_KEY ? missingValue : values[slot];
+    }
+
+    /**
+     * Associates the value with the key, returns the previous value or the missing value
+     */
+    public long put(int key, long value) {
+        if (key == FREE_KEY) {
+            long previous = hasFreeKey ? freeKeyValue : missingValue;
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return previous;
+        }
+        int slot = slot(key);
+        if (keys[slot] != FREE_KEY) {
+            long previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (mask + 1) / 4 * 3) {
+            allocate((mask + 1) * 2);
+        }
+        return missingValue;
+    }
+
+    /**
+     * Removes the key, returns the previous value or the missing value
+     */
+    public long remove(int key) {
+        if (key == FREE_KEY) {
+            long previous = hasFreeKey ? freeKeyValue : missingValue;
+            hasFreeKey = false;
+            return previous;
+        }
+        int slot = slot(key);
+        if (keys[slot] == FREE_KEY) {
+            return missingValue;
+        }
+        long previous = values[slot];
+        size--;
+
+        // Shift back the following entries of the probe sequence that may move to the gap
+        int gap = slot;
+        int i = (slot + 1) & mask;
+        while (keys[i] != FREE_KEY) {
+            int ideal = hash(keys[i]) & mask;
+            if (((i - ideal) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[gap] = FREE_KEY;
+        return previous;
+    }
+
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    /**
+     * Calls the consumer for every entry. The consumer may replace values of existing keys
+     * with {@link #put(int, long)}, but must not add or remove keys.
+     */
+    public void forEach(IntLongConsumer consumer) {
+        if (hasFreeKey) {
+            consumer.accept(FREE_KEY, freeKeyValue);
+        }
+        int[] keys = this.keys;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE_KEY) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    private int slot(int key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void allocate(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+
+        keys = new int[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+
+        if (oldKeys != null) {
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE_KEY) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all entries, they can be read back with {@link #readEntries(DataInput)}
+     */
+    public void writeEntries(DataOutput out) throws IOException {
+        out.writeInt(size());
+        if (hasFreeKey) {
+            out.writeInt(FREE_KEY);
+            out.writeLong(freeKeyValue);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE_KEY) {
+                out.writeInt(keys[slot]);
+                out.writeLong(values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Replaces the content of this map with entries written by {@link #writeEntries(DataOutput)}
+     */
+    public void readEntries(DataInput in) throws IOException {
+        int count = in.readInt();
+        clear();
+        allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, count * 2 - 1)) << 1));
+        for (int i = 0; i < count; i++) {
+            put(in.readInt(), in.readLong());
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        writeEntries(out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        readEntries(in);
+    }
+
+    @FunctionalInterface
+    public interface IntLongConsumer {
+        void accept(int key, long value);
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.cdc.ChangeRecord;
+import com.hazelcast.jet.cdc.Operation;
+import com.hazelcast.jet.cdc.ParsingException;
+import com.hazelcast.jet.cdc.RecordPart;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ChangeRecordDecoderTest {
+
+    @Test
+    public void when_ownerRecord_then_shouldDecodeOwner() throws Exception {
+        Object item = ChangeRecordDecoder.decode(record("owners",
+                "{\"id\":1,\"first_name\":\"George\",\"last_name\":\"Franklin\",\"address\":\"110 W. Liberty St.\"," +
+                        "\"city\":\"Madison\",\"telephone\":\"6085551023\",\"__op\":\"c\",\"__ts_ms\":1600000000000}"));
+
+        assertThat(item).isInstanceOf(Owner.class);
+        Owner owner = (Owner) item;
+        assertThat(owner.id).isEqualTo(1);
+        assertThat(owner.firstName).isEqualTo("George");
+        assertThat(owner.lastName).isEqualTo("Franklin");
+    }
+
+    @Test
+    public void when_petRecord_then_shouldDecodePet() throws Exception {
+        Object item = ChangeRecordDecoder.decode(record("pets",
+                "{\"id\":7,\"name\":\"Samantha\",\"birth_date\":\"2012-09-04\",\"type_id\":1,\"owner_id\":6}"));
+
+        assertThat(item).isInstanceOf(Pet.class);
+        Pet pet = (Pet) item;
+        assertThat(pet.id).isEqualTo(7);
+        assertThat(pet.name).isEqualTo("Samantha");
+        assertThat(pet.ownerId).isEqualTo(6);
+    }
+
+    @Test
+    public void when_visitRecord_then_shouldDecodeVisit() throws Exception {
+        Object item = ChangeRecordDecoder.decode(record("visits",
+                "{\"id\":1,\"pet_id\":7,\"visit_date\":\"2013-01-01\",\"description\":\"rabies \\\"shot\\\"\"," +
+                        "\"__source\":{\"file\":\"mysql-bin.000003\",\"pos\":[1,2]}}"));
+
+        assertThat(item).isInstanceOf(Visit.class);
+        Visit visit = (Visit) item;
+        assertThat(visit.petId).isEqualTo(7);
+        assertThat(visit.description).isEqualTo("rabies \"shot\"");
+    }
+
+    @Test
+    public void when_nullColumn_then_shouldDecodeNull() throws Exception {
+        Pet pet = (Pet) ChangeRecordDecoder.decode(record("pets", "{\"id\":7,\"name\":null,\"owner_id\":null}"));
+
+        assertThat(pet.name).isNull();
+        assertThat(pet.ownerId).isNull();
+    }
+
+    @Test
+    public void when_deleteRecord_then_shouldDecodeDeletionOfRow() throws Exception {
+        Object item = ChangeRecordDecoder.decode(record("visits", Operation.DELETE,
+                "{\"id\":1,\"pet_id\":7,\"description\":\"rabies shot\",\"__deleted\":\"true\"}"));
+
+        assertThat(item).isInstanceOf(Deletion.class);
+        Visit visit = (Visit) ((Deletion) item).row;
+        assertThat(visit.id).isEqualTo(1);
+        assertThat(visit.petId).isEqualTo(7);
+    }
+
+    @Test
+    public void when_record_then_shouldCarryItsTimestamp() throws Exception {
+        Pet pet = (Pet) ChangeRecordDecoder.decode(record("pets", Operation.INSERT, 1600000000000L,
+                "{\"id\":7,\"name\":\"Samantha\",\"owner_id\":6}"));
+        Deletion deletion = (Deletion) ChangeRecordDecoder.decode(record("visits", Operation.DELETE, 1600000000001L,
+                "{\"id\":1,\"pet_id\":7,\"description\":\"rabies shot\"}"));
+
+        assertThat(pet.timestamp).isEqualTo(1600000000000L);
+        assertThat(((Visit) deletion.row).timestamp).isEqualTo(1600000000001L);
+    }
+
+    @Test
+    public void when_malformedRecord_then_shouldThrowParsingException() {
+        assertThatThrownBy(() -> ChangeRecordDecoder.decode(record("pets", "{\"id\":7,\"name\":")))
+                .isInstanceOf(ParsingException.class);
+    }
+
+    private static ChangeRecord record(String table, String valueJson) {
+        return record(table, Operation.INSERT, valueJson);
+    }
+
+    private static ChangeRecord record(String table, Operation operation, String valueJson) {
+        return record(table, operation, 0, valueJson);
+    }
+
+    private static ChangeRecord record(String table, Operation operation, long timestamp, String valueJson) {
+        return new ChangeRecord() {
+            @Override
+            public long timestamp() {
+                return timestamp;
+            }
+
+            @Override
+            public Operation operation() {
+                return operation;
+            }
+
+            @Override
+            public String database() {
+                return "petclinic";
+            }
+
+            @Override
+            public String table() {
+                return table;
+            }
+
+            @Override
+            public RecordPart key() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public RecordPart value() {
+                return new RecordPart() {
+                    @Override
+                    public <T> T toObject(Class<T> clazz) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public Map<String, Object> toMap() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public String toJson() {
+                        return valueJson;
+                    }
+                };
+            }
+
+            @Override
+            public String toJson() {
+                return valueJson;
+            }
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.jet.petclinic;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process stand-in for the bulk endpoint of Elasticsearch, acknowledging every write
+ * <p>
+ * Reports the owner id of each written document to the {@link LoadTracker}, so a load test
+ * measures the job and the client, not the index.
+ */
+final class ElasticBulkStub implements AutoCloseable {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final LoadTracker tracker;
+
+    ElasticBulkStub(LoadTracker tracker) throws IOException {
+        this.tracker = tracker;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Returns the address to pass as the elastic host of the job
+     */
+    String address() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String response = exchange.getRequestURI().getPath().endsWith("/_bulk") ? bulk(exchange) : "{}";
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Reads the actions of the bulk request and returns a response with a successful item for
+     * each of them
+     */
+    private String bulk(HttpExchange exchange) throws IOException {
+        tracker.bulkReceived();
+        StringBuilder items = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] action = readAction(line);
+                if (!"delete".equals(action[0])) {
+                    // The document or script of the action
+                    reader.readLine();
+                }
+                tracker.ownerWritten(Integer.parseInt(action[1]));
+                if (items.length() > 0) {
+                    items.append(',');
+                }
+                items.append(item(action[0], action[1]));
+            }
+        }
+        return "{\"took\":1,\"errors\":false,\"items\":[" + items + "]}";
+    }
+
+    /**
+     * Returns the operation and the document id of an action line, e.g.
+     * {@code {"update":{"_index":"petclinic","_id":"6"}}}
+     */
+    private static String[] readAction(String line) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(line)) {
+            parser.nextToken();
+            parser.nextToken();
+            String operation = parser.getCurrentName();
+            parser.nextToken();
+            String id = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("_id".equals(field)) {
+                    id = parser.getText();
+                }
+            }
+            return new String[]{operation, id};
+        }
+    }
+
+    private static String item(String operation, String id) {
+        boolean deleted = "delete".equals(operation);
+        return "{\"" + operation + "\":{\"_index\":\"petclinic\",\"_type\":\"_doc\",\"_id\":\"" + id + "\"," +
+                "\"_version\":1,\"result\":\"" + (deleted ? "deleted" : "updated") + "\"," +
+                "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}," +
+                "\"_seq_no\":0,\"_primary_term\":1,\"status\":200}}";
+    }
+}
@@ -4,10 +4,17 @@ import com.hazelcast.jet.cdc.ParsingException;
 import org.example.jet.petclinic.model.Owner;
 import org.example.jet.petclinic.model.Pet;
 import org.example.jet.petclinic.model.Visit;
+import org.example.jet.petclinic.store.BinaryStore;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.util.Lists.newArrayList;
 
 public class JoiningStateTest {
@@ -94,6 +101,559 @@ public class JoiningStateTest {
         assertThat(outgoingOwner.pets.get(0).visits).isNotEmpty();
     }
 
+    @Test
+    public void when_joinMoreVisits_then_previouslyEmittedOwnerShouldNotChange() {
+        state.join(ownerRecord());
+        state.join(petRecord());
+        Owner firstOutgoingOwner = state.join(visitRecord());
+
+        Owner secondOutgoingOwner = null;
+        for (int i = 0; i < 100; i++) {
+            secondOutgoingOwner = state.join(visitRecord());
+        }
+
+        assertThat(firstOutgoingOwner.pets.get(0).visits).hasSize(1);
+        assertThat(secondOutgoingOwner.pets.get(0).visits).hasSize(101);
+    }
+
+    @Test
+    public void when_updatePet_then_shouldKeepVisits() {
+        state.join(ownerRecord());
+        state.join(petRecord());
+        state.join(visitRecord());
+
+        Owner outgoingOwner = state.join(new Pet(7, "Sam", 6));
+
+        assertThat(outgoingOwner.pets).hasSize(1);
+        assertThat(outgoingOwner.pets.get(0).name).isEqualTo("Sam");
+        assertThat(outgoingOwner.pets.get(0).visits).hasSize(1);
+    }
+
+    @Test
+    public void when_joinVisitBeforePet_then_shouldProduceOwnerWithVisitOnPet() {
+        state.join(ownerRecord());
+        assertThat(state.join(visitRecord())).isNull();
+
+        Owner outgoingOwner = state.join(petRecord());
+
+        assertThat(outgoingOwner.pets).hasSize(1);
+        assertThat(outgoingOwner.pets.get(0).visits).hasSize(1);
+    }
+
+    @Test
+    public void when_petChangesOwner_then_shouldMovePetToNewOwner() {
+        state.join(ownerRecord());
+        state.join(new Owner(8, "Harold", "Davis"));
+        state.join(petRecord());
+
+        Owner newOwner = state.join(new Pet(7, "Samantha", 8));
+        Owner previousOwner = state.join(ownerRecord());
+
+        assertThat(newOwner.pets).extracting(pet -> pet.id).containsExactly(7);
+        assertThat(previousOwner.pets).isEmpty();
+    }
+
+    @Test
+    public void when_petRemoved_then_shouldProduceOwnerWithoutPet() {
+        state.join(ownerRecord());
+        state.join(petRecord());
+
+        Owner outgoingOwner = state.join(new PetRemoval(7));
+
+        assertThat(outgoingOwner.pets).isEmpty();
+        assertThat(state.join(visitRecord())).isNull();
+    }
+
+    @Test
+    public void when_ownersEvicted_then_shouldJoinWithStoredOwners() {
+        state = new JoiningState(new JoiningStateConfig().setMemory(BinaryStore.Memory.OFF_HEAP).setActiveOwners(2));
+
+        for (int id = 1; id <= 10; id++) {
+            state.join(new Owner(id, "Jean" + id, "Coleman"));
+            state.join(new Pet(100 + id, "Samantha" + id, id));
+        }
+        Owner outgoingOwner = null;
+        for (int id = 1; id <= 10; id++) {
+            outgoingOwner = state.join(visitRecord(100 + id));
+            assertThat(outgoingOwner.firstName).isEqualTo("Jean" + id);
+        }
+
+        assertThat(state.ownerCount()).isEqualTo(10);
+        assertThat(outgoingOwner.pets).extracting(pet -> pet.name).containsExactly("Samantha10");
+        assertThat(outgoingOwner.pets.get(0).visits).hasSize(1);
+        assertThat(outgoingOwner.pets.get(0).visits.get(0).keywords).containsExactly("shot");
+    }
+
+    @Test
+    public void when_stateSerialized_then_shouldRestoreState() throws Exception {
+        state.join(ownerRecord());
+        state.join(petRecord());
+        state.join(visitRecord());
+        state.join(visitRecord(8));
+
+        JoiningState restored = serializeAndDeserialize(state);
+
+        Owner outgoingOwner = restored.join(visitRecord());
+        assertThat(outgoingOwner.firstName).isEqualTo("Jean");
+        assertThat(outgoingOwner.pets.get(0).visits).hasSize(2);
+        assertThat(restored.orphanPetCount()).isEqualTo(1);
+
+        Owner ownerWithAdoptedPet = restored.join(new Pet(8, "Leo", 6));
+        assertThat(ownerWithAdoptedPet.pets).hasSize(2);
+        assertThat(ownerWithAdoptedPet.pets.get(1).visits).hasSize(1);
+        assertThat(restored.orphanPetCount()).isZero();
+    }
+
+    @Test
+    public void when_storedOwnerReadButNotChanged_then_shouldNotEncodeItAgain() throws Exception {
+        state = new JoiningState(new JoiningStateConfig().setActiveOwners(2).setPartitions(1));
+        state.update(ownerRecord());
+        state.update(petRecord());
+        state.update(new Visit(1, 7, "rabies shot"));
+        state.update(new Owner(1, "Jean", "Davis"));
+        state.update(new Owner(2, "Harold", "Davis"));
+        serializeAndDeserialize(state);
+
+        // The replayed visit decodes the owner, which is already joined with it
+        assertThat(state.update(new Visit(1, 7, "rabies shot"))).isNull();
+
+        assertThat(state.changedOwnerCount()).isZero();
+    }
+
+    @Test
+    public void when_stateSerializedAgain_then_shouldStoreOnlyChangedOwners() throws Exception {
+        state.update(ownerRecord());
+        state.update(new Owner(1, "Jean", "Davis"));
+        assertThat(state.changedOwnerCount()).isEqualTo(2);
+
+        serializeAndDeserialize(state);
+        assertThat(state.changedOwnerCount()).isZero();
+
+        state.update(petRecord());
+        assertThat(state.changedOwnerCount()).isEqualTo(1);
+
+        JoiningState restored = serializeAndDeserialize(state);
+        assertThat(restored.update(new Owner(6, "Jean", "Franklin")).owner.pets).hasSize(1);
+        assertThat(restored.update(new Owner(1, "Jean", "Davies")).owner.lastName).isEqualTo("Davies");
+    }
+
+    @Test
+    public void when_updateOwner_then_shouldProduceFullUpdate() {
+        OwnerUpdate update = state.update(ownerRecord());
+
+        assertThat(update.full).isTrue();
+        assertThat(update.owner.firstName).isEqualTo("Jean");
+    }
+
+    @Test
+    public void when_updatePetAndVisit_then_shouldProduceChangesOnly() {
+        state.update(ownerRecord());
+
+        OwnerUpdate petUpdate = state.update(petRecord());
+        assertThat(petUpdate.full).isFalse();
+        assertThat(petUpdate.pets).extracting(pet -> pet.name).containsExactly("Samantha");
+        assertThat(petUpdate.pets.get(0).visits).isEmpty();
+
+        state.update(visitRecord());
+        OwnerUpdate visitUpdate = state.update(visitRecord());
+        assertThat(visitUpdate.full).isFalse();
+        assertThat(visitUpdate.pets).isEmpty();
+        assertThat(visitUpdate.visits).extracting(append -> append.index).containsExactly(1);
+        assertThat(visitUpdate.owner.pets.get(0).visits).hasSize(2);
+
+        OwnerUpdate removalUpdate = state.update(new PetRemoval(7));
+        assertThat(removalUpdate.full).isFalse();
+        assertThat(removalUpdate.removedPetIds).containsExactly(7);
+    }
+
+    @Test
+    public void when_firstUpdateAfterRestore_then_shouldProduceFullUpdate() throws Exception {
+        state.update(ownerRecord());
+        state.update(petRecord());
+        assertThat(state.update(visitRecord()).full).isFalse();
+
+        JoiningState restored = serializeAndDeserialize(state);
+
+        OwnerUpdate first = restored.update(visitRecord());
+        assertThat(first.full).isTrue();
+        assertThat(first.owner.pets.get(0).visits).hasSize(2);
+        assertThat(restored.update(visitRecord()).full).isFalse();
+        assertThat(serializeAndDeserialize(restored).update(visitRecord()).full).isTrue();
+    }
+
+    @Test
+    public void when_firstUpdateAfterRestore_then_shouldKeepRemovedPets() throws Exception {
+        state.update(ownerRecord());
+        state.update(petRecord());
+
+        OwnerUpdate removal = serializeAndDeserialize(state).update(new PetRemoval(7));
+
+        assertThat(removal.full).isTrue();
+        assertThat(removal.removedPetIds).containsExactly(7);
+    }
+
+    @Test
+    public void when_joinChanges_then_updatesShouldCarryTheirTimestamps() {
+        Owner owner = ownerRecord();
+        owner.timestamp = 1000;
+        Visit visit = visitRecord();
+        visit.timestamp = 3000;
+
+        assertThat(state.update(owner).timestamp).isEqualTo(1000);
+        assertThat(state.update(petRecord()).timestamp).isZero();
+        assertThat(state.update(visit).timestamp).isEqualTo(3000);
+    }
+
+    @Test
+    public void when_joinChanges_then_versionsShouldGrowWithTimestamps() {
+        Owner owner = ownerRecord();
+        owner.timestamp = 1000;
+        Visit visit = visitRecord();
+        visit.timestamp = 3000;
+        Visit sameMillisecond = visitRecord();
+        sameMillisecond.timestamp = 3000;
+        Owner deleted = ownerRecord();
+        deleted.timestamp = 2000;
+
+        assertThat(state.update(owner).version).isEqualTo(1000L << JoiningState.VERSION_TIMESTAMP_SHIFT);
+        assertThat(state.update(petRecord()).version).isEqualTo((1000L << JoiningState.VERSION_TIMESTAMP_SHIFT) + 1);
+        assertThat(state.update(visit).version).isEqualTo(3000L << JoiningState.VERSION_TIMESTAMP_SHIFT);
+        assertThat(state.update(sameMillisecond).version).isEqualTo((3000L << JoiningState.VERSION_TIMESTAMP_SHIFT) + 1);
+        // A deletion is newer than the owner even if the clock of the database went back
+        assertThat(state.update(new Deletion(deleted)).version).isEqualTo((3000L << JoiningState.VERSION_TIMESTAMP_SHIFT) + 2);
+    }
+
+    @Test
+    public void when_stateSerialized_then_replayedChangesShouldGetSameVersions() throws Exception {
+        state.update(ownerRecord());
+        state.update(petRecord());
+        JoiningState restored = serializeAndDeserialize(state);
+
+        long version = state.update(visitRecord()).version;
+        assertThat(restored.update(visitRecord()).version).isEqualTo(version);
+    }
+
+    @Test
+    public void when_ownerGetsManyVisits_then_shouldSplitIt() {
+        state = new JoiningState(new JoiningStateConfig().setSplitOwnerVisits(2));
+        state.update(ownerRecord());
+        state.update(petRecord());
+
+        OwnerUpdate firstVisit = state.update(new Visit(1, 7, "rabies shot"));
+        OwnerUpdate splitting = state.update(new Visit(2, 7, "spayed"));
+        OwnerUpdate split = state.update(new Visit(3, 7, "dental cleaning"));
+
+        assertThat(firstVisit.split).isFalse();
+        assertThat(splitting.split).isTrue();
+        assertThat(splitting.full).isTrue();
+        assertThat(split.split).isTrue();
+        assertThat(split.full).isFalse();
+        assertThat(split.visits).extracting(append -> append.visit.id).containsExactly(3);
+        assertThat(state.splitOwnerCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void when_splitOwnerDeleted_then_shouldDeleteItsPets() {
+        state = new JoiningState(new JoiningStateConfig().setSplitOwnerPets(2));
+        state.update(ownerRecord());
+        state.update(petRecord());
+        assertThat(state.update(new Pet(8, "Leo", 6)).split).isTrue();
+
+        OwnerUpdate deletion = state.update(new Deletion(ownerRecord()));
+
+        assertThat(deletion.deleted).isTrue();
+        assertThat(deletion.split).isTrue();
+        assertThat(deletion.removedPetIds).containsExactlyInAnyOrder(7, 8);
+    }
+
+    @Test
+    public void when_stateSerialized_then_splitOwnerShouldStaySplit() throws Exception {
+        state = new JoiningState(new JoiningStateConfig().setSplitOwnerPets(1));
+        state.update(ownerRecord());
+        assertThat(state.update(petRecord()).split).isTrue();
+
+        JoiningState restored = serializeAndDeserialize(state);
+
+        assertThat(restored.update(visitRecord()).split).isTrue();
+    }
+
+    @Test
+    public void when_ownerAndPetRepeated_then_shouldSuppressUpdates() {
+        state.update(ownerRecord());
+        state.update(petRecord());
+        state.update(visitRecord());
+
+        assertThat(state.update(ownerRecord())).isNull();
+        assertThat(state.update(petRecord())).isNull();
+        assertThat(state.suppressedUpdateCount()).isEqualTo(2);
+
+        OwnerUpdate renamed = state.update(new Pet(7, "Sam", 6));
+        assertThat(renamed.pets).extracting(pet -> pet.name).containsExactly("Sam");
+        assertThat(state.update(new Pet(7, "Sam", 6))).isNull();
+    }
+
+    @Test
+    public void when_stateSerialized_then_shouldSuppressReplayedUpdates() throws Exception {
+        state.update(ownerRecord());
+        state.update(petRecord());
+
+        JoiningState restored = serializeAndDeserialize(state);
+
+        assertThat(restored.update(ownerRecord())).isNull();
+        assertThat(restored.update(petRecord())).isNull();
+    }
+
+    @Test
+    public void when_petLeftOwner_then_shouldNotSuppressUpdateOfPreviousOwner() {
+        state.update(ownerRecord());
+        state.update(petRecord());
+        state.update(new Owner(8, "Maria", "Escobito"));
+        state.update(new Pet(7, "Samantha", 8));
+
+        // The previous owner was not emitted without the pet
+        OwnerUpdate update = state.update(ownerRecord());
+
+        assertThat(update).isNotNull();
+        assertThat(update.owner.pets).isEmpty();
+    }
+
+    @Test
+    public void when_petWithVisitsAdopted_then_shouldProduceFullUpdate() {
+        state.update(ownerRecord());
+        state.update(visitRecord());
+
+        OwnerUpdate update = state.update(petRecord());
+
+        assertThat(update.full).isTrue();
+        assertThat(update.owner.pets.get(0).visits).hasSize(1);
+    }
+
+    @Test
+    public void when_joinScannedOwner_then_shouldProduceFullOwnerWithPetsAndVisits() {
+        OwnerUpdate update = state.update(scannedOwner());
+
+        assertThat(update.full).isTrue();
+        assertThat(update.owner.firstName).isEqualTo("Jean");
+        assertThat(update.owner.pets).extracting(pet -> pet.id).containsExactly(7);
+        assertThat(update.owner.pets.get(0).visits).extracting(visit -> visit.id).containsExactly(1, 2);
+    }
+
+    @Test
+    public void when_ownerChangedBeforeScannedOwner_then_shouldKeepChangedOwner() {
+        state.update(new Owner(6, "Jean", "Smith"));
+
+        OwnerUpdate update = state.update(scannedOwner());
+
+        assertThat(update.owner.lastName).isEqualTo("Smith");
+        assertThat(update.owner.pets.get(0).visits).hasSize(2);
+    }
+
+    @Test
+    public void when_petChangedBeforeScannedOwner_then_shouldKeepChangedPetWithEarlierVisits() {
+        state.update(new Pet(7, "Sam", 6));
+        state.update(new Visit(3, 7, "annual checkup"));
+
+        OwnerUpdate update = state.update(scannedOwner());
+
+        Pet pet = update.owner.pets.get(0);
+        assertThat(pet.name).isEqualTo("Sam");
+        assertThat(pet.visits).extracting(visit -> visit.id).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    public void when_visitBothChangedAndScanned_then_shouldJoinVisitOnce() {
+        // Visit inserted after the changes started and before its pet was scanned
+        state.update(new Visit(2, 7, "spayed"));
+        state.update(scannedOwner());
+
+        OwnerUpdate update = state.update(new Visit(2, 7, "spayed"));
+
+        assertThat(update).isNull();
+        assertThat(state.update(new Owner(6, "Jean", "Franklin")).owner.pets.get(0).visits)
+                .extracting(visit -> visit.id).containsExactly(1, 2);
+    }
+
+    @Test
+    public void when_ownerDeletedThenScanned_then_shouldNotRecreateOwner() {
+        state = new JoiningState(new JoiningStateConfig().setBootstrap(true));
+
+        assertThat(state.update(new Deletion(new Owner(6, "Jean", "Coleman")))).isNull();
+
+        assertThat(state.update(scannedOwner())).isNull();
+        assertThat(state.ownerCount()).isZero();
+    }
+
+    @Test
+    public void when_petAndVisitDeletedThenScanned_then_shouldSkipDeletedRows() {
+        state = new JoiningState(new JoiningStateConfig().setBootstrap(true));
+        ScannedOwner scanned = scannedOwner();
+        scanned.owner.pets.add(new Pet(8, "Max", 6));
+
+        state.update(new PetRemoval(8, true));
+        state.update(new Deletion(new Visit(2, 7, "spayed")));
+        OwnerUpdate update = state.update(scanned);
+
+        assertThat(update.owner.pets).extracting(pet -> pet.id).containsExactly(7);
+        assertThat(update.owner.pets.get(0).visits).extracting(visit -> visit.id).containsExactly(1);
+        assertThat(scanned.owner.pets).hasSize(2);
+        assertThat(scanned.owner.pets.get(0).visits).hasSize(2);
+    }
+
+    @Test
+    public void when_scanDoneForAllProcessors_then_shouldDropTombstonesAfterGrace() {
+        state = new JoiningState(new JoiningStateConfig().setBootstrap(true));
+        state.update(new Deletion(new Owner(6, "Jean", "Coleman")), 0);
+        state.update(new ScanDone(0, 2, 0), 0);
+        state.update(new ScanDone(1, 2, 0), 0);
+        assertThat(state.tombstoneCount()).isEqualTo(1);
+
+        state.update(new Deletion(new Visit(2, 7, "spayed")), ScanTombstones.DONE_GRACE_MILLIS);
+
+        assertThat(state.tombstoneCount()).isZero();
+    }
+
+    @Test
+    public void when_manyRowsDeletedDuringScan_then_shouldKeepTombstonesBeyondOrphanLimits() {
+        state = new JoiningState(new JoiningStateConfig().setBootstrap(true).setPartitions(1)
+                .setMaxOrphans(1).setOrphanTtlMillis(1000));
+        for (int ownerId = 2; ownerId <= 6; ownerId++) {
+            state.update(new Deletion(new Owner(ownerId, "Jean", "Coleman")), 0);
+        }
+
+        state.update(new Deletion(new Visit(2, 7, "spayed")), 5000);
+
+        assertThat(state.tombstoneCount()).isEqualTo(6);
+        assertThat(state.update(scannedOwner(), 5000)).isNull();
+    }
+
+    @Test
+    public void when_tooManyRowsDeletedDuringScan_then_shouldFail() {
+        state = new JoiningState(new JoiningStateConfig().setBootstrap(true).setPartitions(1).setMaxTombstones(2));
+        state.update(new Deletion(new Owner(1, "Jean", "Coleman")));
+        state.update(new Deletion(new Owner(2, "Jean", "Coleman")));
+
+        assertThatThrownBy(() -> state.update(new Deletion(new Owner(3, "Jean", "Coleman"))))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("More than 2 rows");
+    }
+
+    @Test
+    public void when_notBootstrapping_then_shouldKeepNoTombstones() {
+        state.update(new Deletion(new Owner(6, "Jean", "Coleman")));
+
+        assertThat(state.tombstoneCount()).isZero();
+        assertThat(state.update(scannedOwner())).isNotNull();
+    }
+
+    @Test
+    public void when_orphanPetWaitsTooLong_then_shouldEvictIt() {
+        state = new JoiningState(new JoiningStateConfig().setOrphanTtlMillis(1000));
+        state.update(visitRecord(), 0);
+
+        state.update(new Owner(1, "Jean", "Davis"), 1001);
+
+        assertThat(state.orphanPetCount()).isZero();
+        assertThat(state.evictedOrphanCount()).isEqualTo(1);
+        assertThat(state.update(new Pet(7, "Samantha", 1), 1002).owner.pets.get(0).visits).isEmpty();
+    }
+
+    @Test
+    public void when_ownerWithoutNameWaitsTooLong_then_shouldEvictIt() {
+        state = new JoiningState(new JoiningStateConfig().setOrphanTtlMillis(1000));
+        state.update(petRecord(), 0);
+        assertThat(state.shellOwnerCount()).isEqualTo(1);
+
+        state.update(new Owner(1, "Jean", "Davis"), 1001);
+
+        assertThat(state.shellOwnerCount()).isZero();
+        assertThat(state.ownerCount()).isEqualTo(1);
+        assertThat(state.update(ownerRecord(), 1002).owner.pets).isEmpty();
+    }
+
+    @Test
+    public void when_ownerGetsName_then_shouldNotEvictIt() {
+        state = new JoiningState(new JoiningStateConfig().setOrphanTtlMillis(1000));
+        state.update(petRecord(), 0);
+        state.update(ownerRecord(), 1);
+
+        OwnerUpdate update = state.update(visitRecord(), 5000);
+
+        assertThat(state.evictedOrphanCount()).isZero();
+        assertThat(update.owner.pets.get(0).visits).hasSize(1);
+    }
+
+    @Test
+    public void when_tooManyOrphanPets_then_shouldEvictOldest() {
+        state = new JoiningState(new JoiningStateConfig().setPartitions(1).setMaxOrphans(2));
+        for (int petId = 1; petId <= 3; petId++) {
+            state.update(visitRecord(petId), petId);
+        }
+
+        state.update(ownerRecord(), 4);
+
+        assertThat(state.orphanPetCount()).isEqualTo(2);
+        assertThat(state.update(new Pet(1, "Samantha", 6), 5).full).isFalse();
+    }
+
+    @Test
+    public void when_deleteOwner_then_shouldProduceDeletion() {
+        state.update(ownerRecord());
+        state.update(petRecord());
+
+        OwnerUpdate update = state.update(new Deletion(ownerRecord()));
+
+        assertThat(update.deleted).isTrue();
+        assertThat(update.owner.id).isEqualTo(6);
+        assertThat(state.ownerCount()).isZero();
+        assertThat(state.update(new PetRemoval(7))).isNull();
+    }
+
+    @Test
+    public void when_deleteVisit_then_shouldProduceFullUpdateWithoutVisit() {
+        state.update(ownerRecord());
+        state.update(petRecord());
+        state.update(new Visit(1, 7, "rabies shot"));
+        state.update(new Visit(2, 7, "spayed"));
+
+        OwnerUpdate update = state.update(new Deletion(new Visit(1, 7, "rabies shot")));
+
+        assertThat(update.full).isTrue();
+        assertThat(update.owner.pets.get(0).visits).extracting(visit -> visit.id).containsExactly(2);
+        assertThat(state.update(new Deletion(new Visit(1, 7, "rabies shot")))).isNull();
+    }
+
+    @Test
+    public void when_stateWithOrphansSerialized_then_shouldKeepOrphanTimes() throws Exception {
+        state = new JoiningState(new JoiningStateConfig().setOrphanTtlMillis(1000));
+        state.update(visitRecord(), 0);
+        state.update(new Pet(8, "Leo", 9), 500);
+
+        JoiningState restored = serializeAndDeserialize(state);
+        restored.update(ownerRecord(), 1001);
+
+        assertThat(restored.orphanPetCount()).isZero();
+        assertThat(restored.shellOwnerCount()).isEqualTo(1);
+    }
+
+    private static JoiningState serializeAndDeserialize(JoiningState state) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(state);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (JoiningState) in.readObject();
+        }
+    }
+
+    private static ScannedOwner scannedOwner() {
+        Owner owner = new Owner(6, "Jean", "Coleman");
+        Pet pet = new Pet(7, "Samantha", 6);
+        pet.visits.add(new Visit(1, 7, "rabies shot"));
+        pet.visits.add(new Visit(2, 7, "spayed"));
+        owner.pets.add(pet);
+        return new ScannedOwner(owner);
+    }
+
     @NotNull
     private Owner ownerRecord() {
         return new Owner(6, "Jean", "Coleman");
@@ -106,7 +666,12 @@ public class JoiningStateTest {
 
     @NotNull
     private Visit visitRecord() {
-        Visit visit = new Visit(7, "rabies shot");
+        return visitRecord(7);
+    }
+
+    @NotNull
+    private Visit visitRecord(int petId) {
+        Visit visit = new Visit(petId, "rabies shot");
         visit.setKeywords(newArrayList("shot"));
         return visit;
     }
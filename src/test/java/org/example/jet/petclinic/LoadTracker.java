@@ -0,0 +1,110 @@
+package org.example.jet.petclinic;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * End-to-end latencies of a load test, from a generated change of an owner to the owner
+ * written by a bulk request
+ * <p>
+ * The source and the bulk endpoint run in the same JVM as the test, they report to the
+ * shared {@link #INSTANCE}. The latency of an owner is measured from its oldest change not
+ * written yet, so changes merged into one write count once, with their longest latency.
+ */
+final class LoadTracker {
+
+    static final LoadTracker INSTANCE = new LoadTracker();
+
+    // Latencies in milliseconds, the last bucket counts all longer latencies
+    private static final int MAX_LATENCY_MILLIS = 60_000;
+
+    private final Map<Integer, Long> pendingSinceNanos = new ConcurrentHashMap<>();
+    private final AtomicLongArray latencies = new AtomicLongArray(MAX_LATENCY_MILLIS + 1);
+    private final AtomicLong emittedChanges = new AtomicLong();
+    private final AtomicLong writtenOwners = new AtomicLong();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong firstChangeNanos = new AtomicLong();
+
+    private LoadTracker() {
+    }
+
+    void reset() {
+        pendingSinceNanos.clear();
+        for (int i = 0; i < latencies.length(); i++) {
+            latencies.set(i, 0);
+        }
+        emittedChanges.set(0);
+        writtenOwners.set(0);
+        bulkRequests.set(0);
+        firstChangeNanos.set(0);
+    }
+
+    void changeEmitted(int ownerId) {
+        long now = System.nanoTime();
+        if (emittedChanges.getAndIncrement() == 0) {
+            firstChangeNanos.set(now);
+        }
+        pendingSinceNanos.putIfAbsent(ownerId, now);
+    }
+
+    void ownerWritten(int ownerId) {
+        writtenOwners.incrementAndGet();
+        Long since = pendingSinceNanos.remove(ownerId);
+        if (since != null) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+            latencies.incrementAndGet((int) Math.min(millis, MAX_LATENCY_MILLIS));
+        }
+    }
+
+    void bulkReceived() {
+        bulkRequests.incrementAndGet();
+    }
+
+    long emittedChanges() {
+        return emittedChanges.get();
+    }
+
+    long writtenOwners() {
+        return writtenOwners.get();
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} of the first change, the start of the load
+     */
+    long firstChangeNanos() {
+        return firstChangeNanos.get();
+    }
+
+    long bulkRequests() {
+        return bulkRequests.get();
+    }
+
+    /**
+     * Returns the number of owners with changes not written yet
+     */
+    int pendingOwners() {
+        return pendingSinceNanos.size();
+    }
+
+    /**
+     * Returns the latency in milliseconds below which the given fraction of the latencies are
+     */
+    long latencyPercentile(double fraction) {
+        long count = 0;
+        for (int i = 0; i < latencies.length(); i++) {
+            count += latencies.get(i);
+        }
+        long rank = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < latencies.length(); i++) {
+            seen += latencies.get(i);
+            if (seen >= rank && seen > 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
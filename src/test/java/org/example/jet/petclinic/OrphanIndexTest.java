@@ -0,0 +1,59 @@
+package org.example.jet.petclinic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OrphanIndexTest {
+
+    private final OrphanIndex index = new OrphanIndex();
+
+    @Test
+    public void when_orphanExpired_then_shouldPollIt() {
+        index.add(1, 0);
+        index.add(2, 500);
+
+        assertThat(index.pollEvictable(1000, 1000, 10)).isNull();
+        assertThat(index.pollEvictable(1001, 1000, 10)).isEqualTo(1);
+        assertThat(index.pollEvictable(1001, 1000, 10)).isNull();
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void when_tooManyOrphans_then_shouldPollOldest() {
+        index.add(3, 0);
+        index.add(1, 1);
+        index.add(2, 2);
+
+        assertThat(index.pollEvictable(2, 1000, 2)).isEqualTo(3);
+        assertThat(index.pollEvictable(2, 1000, 2)).isNull();
+    }
+
+    @Test
+    public void when_orphanAddedAgain_then_shouldKeepFirstTime() {
+        index.add(1, 0);
+        index.add(1, 900);
+
+        assertThat(index.pollEvictable(1001, 1000, 10)).isEqualTo(1);
+    }
+
+    @Test
+    public void when_entriesWritten_then_shouldReadSameEntries() throws Exception {
+        index.add(1, 0);
+        index.add(2, 500);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeEntries(new DataOutputStream(bytes));
+
+        OrphanIndex restored = new OrphanIndex();
+        restored.readEntries(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(restored.contains(1)).isTrue();
+        assertThat(restored.pollEvictable(1001, 1000, 10)).isEqualTo(1);
+        assertThat(restored.pollEvictable(1001, 1000, 10)).isNull();
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OwnerFingerprintTest {
+
+    @Test
+    public void when_sameContent_then_shouldHaveSameFingerprint() {
+        assertThat(OwnerFingerprint.of(owner("spayed"))).isEqualTo(OwnerFingerprint.of(owner("spayed")));
+    }
+
+    @Test
+    public void when_indexedFieldChanged_then_shouldHaveOtherFingerprint() {
+        long fingerprint = OwnerFingerprint.of(owner("spayed"));
+
+        Owner renamed = owner("spayed");
+        renamed.lastName = "Davis";
+        Owner petRenamed = owner("spayed");
+        petRenamed.pets.get(0).name = "Sam";
+        Owner otherKeywords = owner("spayed");
+        otherKeywords.pets.get(0).visits.get(0).keywords = asList("rabies");
+
+        assertThat(OwnerFingerprint.of(renamed)).isNotEqualTo(fingerprint);
+        assertThat(OwnerFingerprint.of(petRenamed)).isNotEqualTo(fingerprint);
+        assertThat(OwnerFingerprint.of(otherKeywords)).isNotEqualTo(fingerprint);
+        assertThat(OwnerFingerprint.of(owner("spayed "))).isNotEqualTo(fingerprint);
+    }
+
+    @Test
+    public void when_visitAdded_then_shouldAddHashOfVisit() {
+        Owner owner = owner("spayed");
+        long fingerprint = OwnerFingerprint.of(owner);
+
+        Visit visit = new Visit(3, 7, "dental cleaning");
+        owner.pets.get(0).visits.add(visit);
+
+        assertThat(OwnerFingerprint.of(owner)).isEqualTo(fingerprint + OwnerFingerprint.visit(7, visit));
+    }
+
+    private static Owner owner(String description) {
+        Owner owner = new Owner(6, "Jean", "Coleman");
+        Pet pet = new Pet(7, "Samantha", 6);
+        pet.visits.add(new Visit(1, 7, "rabies shot"));
+        pet.visits.add(new Visit(2, 7, description));
+        pet.visits.get(0).keywords = asList("rabies shot");
+        owner.pets.add(pet);
+        return owner;
+    }
+}
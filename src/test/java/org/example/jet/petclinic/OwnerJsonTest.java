@@ -0,0 +1,87 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.json.JsonUtil;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OwnerJsonTest {
+
+    @Test
+    public void when_ownerRendered_then_shouldMatchJsonUtil() throws Exception {
+        Owner owner = owner("spayed");
+
+        assertThat(render(owner)).isEqualTo(JsonUtil.toJson(owner).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void when_stringsNeedEscaping_then_shouldMatchJsonUtil() throws Exception {
+        Owner owner = owner("\"quoted\" \\ back\nslash\t\b\f\r\u0001\u001f\u007f / é ü 😀 \ud800 end");
+        owner.lastName = "Müller-Lüdenscheidt";
+        owner.pets.get(0).visits.get(0).keywords = asList("x", null, "");
+
+        assertThat(new String(render(owner), StandardCharsets.UTF_8)).isEqualTo(
+                new String(JsonUtil.toJson(owner).getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+        assertThat(render(owner)).isEqualTo(JsonUtil.toJson(owner).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void when_fieldsNull_then_shouldOmitThem() throws Exception {
+        Owner owner = new Owner(Integer.MIN_VALUE, null, null);
+        Pet pet = new Pet(-7);
+        pet.visits.add(new Visit());
+        owner.pets.add(pet);
+        Pet noVisits = new Pet(0, "Leo", null);
+        noVisits.visits = null;
+        owner.pets.add(noVisits);
+        Owner noPets = new Owner(2, "Jean", null);
+        noPets.pets = null;
+
+        assertThat(render(owner)).isEqualTo(JsonUtil.toJson(owner).getBytes(StandardCharsets.UTF_8));
+        assertThat(render(noPets)).isEqualTo(JsonUtil.toJson(noPets).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void when_renderedAgain_then_shouldReuseJsonOfPetsAndVisits() {
+        Owner owner = owner("spayed");
+        render(owner);
+        Pet pet = owner.pets.get(0);
+        byte[] petJson = pet.json;
+        byte[] visitJson = pet.visits.get(0).json;
+
+        // A new snapshot of the pet with a new visit, as emitted by the join
+        Pet changed = new Pet(pet.id, pet.name, pet.ownerId);
+        changed.visits.addAll(pet.visits);
+        changed.visits.add(new Visit(3, 7, "dental cleaning"));
+        owner.pets.set(0, changed);
+        Owner rendered = owner("spayed");
+        rendered.pets.get(0).visits.add(new Visit(3, 7, "dental cleaning"));
+
+        assertThat(render(owner)).isEqualTo(render(rendered));
+        assertThat(pet.json).isSameAs(petJson);
+        assertThat(changed.json).isNotSameAs(petJson);
+        assertThat(changed.visits.get(0).json).isSameAs(visitJson);
+    }
+
+    private static byte[] render(Owner owner) {
+        return OwnerJson.render(owner).toByteArray();
+    }
+
+    private static Owner owner(String description) {
+        Owner owner = new Owner(6, "Jean", "Coleman");
+        Pet pet = new Pet(7, "Samantha", 6);
+        Visit visit = new Visit(1, 7, "rabies shot");
+        visit.setKeywords(asList("rabies", "shot"));
+        pet.visits.add(visit);
+        pet.visits.add(new Visit(2, 7, description));
+        owner.pets.add(pet);
+        owner.pets.add(new Pet(8, "Max", 6));
+        return owner;
+    }
+}
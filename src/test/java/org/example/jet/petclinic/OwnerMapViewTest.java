@@ -0,0 +1,76 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastJsonValue;
+import com.hazelcast.map.IMap;
+import com.hazelcast.query.Predicates;
+import com.hazelcast.test.TestHazelcastInstanceFactory;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OwnerMapViewTest {
+
+    private TestHazelcastInstanceFactory factory;
+    private IMap<Integer, HazelcastJsonValue> map;
+
+    @Before
+    public void setUp() {
+        factory = new TestHazelcastInstanceFactory(1);
+        HazelcastInstance instance = factory.newHazelcastInstance();
+        map = instance.getMap("owners");
+        OwnerMapView.addIndexes(map);
+    }
+
+    @After
+    public void tearDown() {
+        factory.shutdownAll();
+    }
+
+    @Test
+    public void when_flush_then_shouldWriteLatestVersionOfOwners() throws Exception {
+        OwnerMapView.Writer writer = new OwnerMapView.Writer(map);
+        writer.add(OwnerUpdate.full(new Owner(6, "Jean", "Smith")));
+        writer.add(OwnerUpdate.full(owner(6, "Jean", "Coleman", "Samantha")));
+        writer.add(OwnerUpdate.full(owner(1, "George", "Franklin", "Leo")));
+
+        writer.flush();
+
+        assertThat(map).hasSize(2);
+        assertThat(map.get(6).toString()).contains("\"last_name\":\"Coleman\"");
+    }
+
+    @Test
+    public void when_ownerDeleted_then_shouldRemoveOwner() throws Exception {
+        OwnerMapView.Writer writer = new OwnerMapView.Writer(map);
+        writer.add(OwnerUpdate.full(owner(6, "Jean", "Coleman", "Samantha")));
+        writer.flush();
+
+        writer.add(OwnerUpdate.deleted(6));
+        writer.flush();
+
+        assertThat(map).isEmpty();
+    }
+
+    @Test
+    public void when_queryByLastNameOrPetName_then_shouldFindOwners() throws Exception {
+        OwnerMapView.Writer writer = new OwnerMapView.Writer(map);
+        writer.add(OwnerUpdate.full(owner(6, "Jean", "Coleman", "Samantha")));
+        writer.add(OwnerUpdate.full(owner(1, "George", "Franklin", "Leo")));
+        writer.flush();
+
+        assertThat(map.keySet(Predicates.equal(OwnerMapView.LAST_NAME_ATTRIBUTE, "Coleman"))).containsExactly(6);
+        assertThat(map.keySet(Predicates.like(OwnerMapView.LAST_NAME_ATTRIBUTE, "Fr%"))).containsExactly(1);
+        assertThat(map.keySet(Predicates.equal(OwnerMapView.PET_NAME_ATTRIBUTE, "Leo"))).containsExactly(1);
+    }
+
+    private static Owner owner(int id, String firstName, String lastName, String petName) {
+        Owner owner = new Owner(id, firstName, lastName);
+        owner.pets.add(new Pet(id * 10, petName, id));
+        return owner;
+    }
+}
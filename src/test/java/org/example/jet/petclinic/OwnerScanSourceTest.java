@@ -0,0 +1,170 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.OwnerScanSource.Range;
+import org.example.jet.petclinic.OwnerScanSource.RangeScan;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class OwnerScanSourceTest {
+
+    // The in-memory database lives as long as this connection is open
+    private static final String JDBC_URL = "jdbc:h2:mem:petclinic";
+
+    private Connection database;
+
+    @Before
+    public void setUp() throws SQLException {
+        database = DriverManager.getConnection(JDBC_URL);
+        execute("CREATE TABLE owners (id INT PRIMARY KEY, first_name VARCHAR(30), last_name VARCHAR(30))",
+                "CREATE TABLE pets (id INT PRIMARY KEY, name VARCHAR(30), owner_id INT)",
+                "CREATE TABLE visits (id INT PRIMARY KEY, pet_id INT, description VARCHAR(255))");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        execute("DROP ALL OBJECTS");
+        database.close();
+    }
+
+    @Test
+    public void when_join_then_shouldAttachPetsToOwnersAndVisitsToPets() {
+        List<Owner> owners = OwnerScanSource.join(
+                asList(new Owner(1, "Jean", "Coleman"), new Owner(2, "George", "Franklin")),
+                asList(new Pet(10, "Leo", 2), new Pet(11, "Samantha", 1), new Pet(12, "Max", 1)),
+                asList(new Visit(100, 11, "rabies shot"), new Visit(101, 12, "spayed"), new Visit(102, 11, "neutered"))
+        );
+
+        assertThat(owners).extracting(owner -> owner.id).containsExactly(1, 2);
+        assertThat(owners.get(0).pets).extracting(pet -> pet.id).containsExactly(11, 12);
+        assertThat(owners.get(0).pets.get(0).visits).extracting(visit -> visit.id).containsExactly(100, 102);
+        assertThat(owners.get(1).pets.get(0).visits).isEmpty();
+    }
+
+    @Test
+    public void when_remainingRangesReportedByAllProcessors_then_shouldSumThem() {
+        OwnerScanSource.Progress progress = new OwnerScanSource.Progress(2);
+        progress.update(0, 2);
+        progress.update(1, 0);
+        progress.update(0, 1);
+
+        assertThat(progress.remainingRanges()).isEqualTo(1);
+    }
+
+    @Test
+    public void when_notAllProcessorsReported_then_remainingRangesShouldBeUnknown() {
+        OwnerScanSource.Progress progress = new OwnerScanSource.Progress(3);
+        progress.update(0, 0);
+        progress.update(1, 0);
+
+        assertThat(progress.remainingRanges()).isEqualTo(-1);
+    }
+
+    @Test
+    public void when_chunkEndsInsideRange_then_shouldContinueAfterLastOwner() throws SQLException {
+        insertOwners(1, 2, 3, 7, 8);
+        execute("INSERT INTO pets VALUES (10, 'Leo', 7), (11, 'Max', 8)",
+                "INSERT INTO visits VALUES (100, 10, 'rabies shot'), (101, 11, 'spayed')");
+        RangeScan scan = rangeScan(0, 1, 2);
+
+        assertThat(scan.nextChunk()).extracting(owner -> owner.id).containsExactly(1, 2);
+        assertThat(scan.remainingRanges()).extracting(range -> range.from, range -> range.to)
+                                          .containsExactly(tuple(3, 8));
+
+        List<Owner> chunk = scan.nextChunk();
+        assertThat(chunk).extracting(owner -> owner.id).containsExactly(3, 7);
+        assertThat(chunk.get(1).pets).extracting(pet -> pet.id).containsExactly(10);
+        assertThat(chunk.get(1).pets.get(0).visits).extracting(visit -> visit.id).containsExactly(100);
+        assertThat(scan.remainingRanges()).extracting(range -> range.from).containsExactly(8);
+
+        chunk = scan.nextChunk();
+        assertThat(chunk).extracting(owner -> owner.id).containsExactly(8);
+        assertThat(chunk.get(0).pets.get(0).visits).extracting(visit -> visit.id).containsExactly(101);
+        assertThat(scan.isDone()).isTrue();
+        scan.close();
+    }
+
+    @Test
+    public void when_rangeHasNoOwners_then_shouldBeDoneWithoutOwners() throws SQLException {
+        insertOwners(1, 2, 100);
+        RangeScan scan = rangeScan(1, 3, 10);
+
+        assertThat(scan.remainingRanges()).extracting(range -> range.from, range -> range.to)
+                                          .containsExactly(tuple(34, 66));
+        assertThat(scan.nextChunk()).isEmpty();
+        assertThat(scan.isDone()).isTrue();
+        scan.close();
+    }
+
+    @Test
+    public void when_noOwners_then_shouldHaveNoRanges() throws SQLException {
+        RangeScan scan = rangeScan(0, 2, 10);
+
+        assertThat(scan.isDone()).isTrue();
+        scan.close();
+    }
+
+    @Test
+    public void when_restoredWithMoreProcessors_then_shouldDealOutAllRanges() throws SQLException {
+        insertOwners(5, 15, 25);
+        List<List<Range>> saved = asList(asList(new Range(21, 30), new Range(1, 10)), singletonList(new Range(11, 20)));
+
+        RangeScan first = rangeScan(0, 3, 10);
+        first.restoreRanges(saved);
+        RangeScan last = rangeScan(2, 3, 10);
+        last.restoreRanges(saved);
+
+        assertThat(first.remainingRanges()).extracting(range -> range.from).containsExactly(1);
+        assertThat(last.remainingRanges()).extracting(range -> range.from).containsExactly(21);
+        assertThat(last.nextChunk()).extracting(owner -> owner.id).containsExactly(25);
+        first.close();
+        last.close();
+    }
+
+    @Test
+    public void when_restoredWithFewerProcessors_then_shouldDealOutAllRanges() throws SQLException {
+        insertOwners(5, 15, 25);
+        List<List<Range>> saved = asList(singletonList(new Range(1, 10)), singletonList(new Range(11, 20)),
+                singletonList(new Range(21, 30)));
+
+        RangeScan scan = rangeScan(0, 1, 10);
+        scan.restoreRanges(saved);
+
+        assertThat(scan.remainingRanges()).extracting(range -> range.from).containsExactly(1, 11, 21);
+        assertThat(scan.nextChunk()).extracting(owner -> owner.id).containsExactly(5);
+        assertThat(scan.nextChunk()).extracting(owner -> owner.id).containsExactly(15);
+        scan.close();
+    }
+
+    private RangeScan rangeScan(int processorIndex, int processorCount, int chunkSize) throws SQLException {
+        return new RangeScan(DriverManager.getConnection(JDBC_URL), processorIndex, processorCount, chunkSize);
+    }
+
+    private void insertOwners(int... ids) throws SQLException {
+        for (int id : ids) {
+            execute("INSERT INTO owners VALUES (" + id + ", 'Jean', 'Coleman')");
+        }
+    }
+
+    private void execute(String... sqls) throws SQLException {
+        try (Statement statement = database.createStatement()) {
+            for (String sql : sqls) {
+                statement.execute(sql);
+            }
+        }
+    }
+}
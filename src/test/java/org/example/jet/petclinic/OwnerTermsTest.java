@@ -0,0 +1,78 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.Traverser;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.example.jet.petclinic.search.TermChange;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OwnerTermsTest {
+
+    @Test
+    public void when_ownerIndexed_then_shouldAddWordsOfNamesAndKeywords() {
+        OwnerTerms terms = new OwnerTerms();
+
+        List<String> added = added(terms, OwnerUpdate.full(owner("Jean", "rabies shot")));
+
+        assertThat(added).containsExactlyInAnyOrder("jean", "coleman", "samantha", "rabies", "shot");
+    }
+
+    @Test
+    public void when_ownerUpdated_then_shouldEmitOnlyChangedTerms() {
+        OwnerTerms terms = new OwnerTerms();
+        terms.update(OwnerUpdate.full(owner("Jean", "rabies shot")));
+
+        List<TermChange> changes = changes(terms, OwnerUpdate.full(owner("Jeanne", "rabies")));
+
+        assertThat(changes).extracting(change -> change.term + (change.added ? "+" : "-"))
+                           .containsExactlyInAnyOrder("jean-", "shot-", "jeanne+");
+        assertThat(changes).allMatch(change -> change.docId == 6);
+        assertThat(changes(terms, OwnerUpdate.full(owner("Jeanne", "rabies")))).isEmpty();
+    }
+
+    @Test
+    public void when_ownerDeleted_then_shouldRemoveAllTerms() {
+        OwnerTerms terms = new OwnerTerms();
+        terms.update(OwnerUpdate.full(owner("Jean", "rabies")));
+
+        List<TermChange> changes = changes(terms, OwnerUpdate.deleted(6));
+
+        assertThat(changes).hasSize(4).noneMatch(change -> change.added);
+        assertThat(terms.terms()).isEmpty();
+    }
+
+    private static Owner owner(String firstName, String keyword) {
+        Owner owner = new Owner(6, firstName, "Coleman");
+        Pet pet = new Pet(7, "Samantha", 6);
+        Visit visit = new Visit(1, 7, "rabies shot");
+        visit.setKeywords(Arrays.asList(keyword));
+        pet.visits.add(visit);
+        owner.pets.add(pet);
+        return owner;
+    }
+
+    private static List<String> added(OwnerTerms terms, OwnerUpdate update) {
+        List<String> added = new ArrayList<>();
+        for (TermChange change : changes(terms, update)) {
+            assertThat(change.added).isTrue();
+            added.add(change.term);
+        }
+        return added;
+    }
+
+    private static List<TermChange> changes(OwnerTerms terms, OwnerUpdate update) {
+        Traverser<TermChange> traverser = terms.update(update);
+        List<TermChange> changes = new ArrayList<>();
+        for (TermChange change; (change = traverser.next()) != null; ) {
+            changes.add(change);
+        }
+        return changes;
+    }
+}
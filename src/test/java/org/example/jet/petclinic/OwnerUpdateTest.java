@@ -0,0 +1,104 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OwnerUpdateTest {
+
+    private final Owner owner = new Owner(6, "Jean", "Coleman");
+
+    @Test
+    public void when_mergeChanges_then_shouldKeepAllChangesInOrder() {
+        OwnerUpdate merged = OwnerUpdate.merge(
+                OwnerUpdate.merge(
+                        OwnerUpdate.petChanged(owner, new Pet(7, "Samantha", 6)),
+                        OwnerUpdate.visitAppended(owner, 0, new Visit(7, "rabies shot"))),
+                OwnerUpdate.visitAppended(owner, 1, new Visit(7, "spayed")));
+
+        assertThat(merged.full).isFalse();
+        assertThat(merged.pets).extracting(pet -> pet.id).containsExactly(7);
+        assertThat(merged.visits).extracting(append -> append.index).containsExactly(0, 1);
+    }
+
+    @Test
+    public void when_mergeChanges_then_shouldKeepTimestampOfOldestChange() {
+        OwnerUpdate merged = OwnerUpdate.merge(
+                OwnerUpdate.merge(
+                        OwnerUpdate.petChanged(owner, new Pet(7, "Samantha", 6)),
+                        OwnerUpdate.visitAppended(owner, 0, new Visit(7, "rabies shot")).withTimestamp(1000)),
+                OwnerUpdate.full(owner).withTimestamp(2000));
+
+        assertThat(merged.full).isTrue();
+        assertThat(merged.timestamp).isEqualTo(1000);
+    }
+
+    @Test
+    public void when_mergeChanges_then_shouldKeepVersionOfNewestChange() {
+        OwnerUpdate changes = OwnerUpdate.merge(
+                OwnerUpdate.petChanged(owner, new Pet(7, "Samantha", 6)).withVersion(10),
+                OwnerUpdate.visitAppended(owner, 0, new Visit(7, "rabies shot")).withVersion(11));
+        OwnerUpdate deletion = OwnerUpdate.merge(changes, OwnerUpdate.deleted(6).withVersion(12));
+        OwnerUpdate recreated = OwnerUpdate.merge(deletion, OwnerUpdate.full(owner).withVersion(13));
+
+        assertThat(changes.version).isEqualTo(11);
+        assertThat(deletion.version).isEqualTo(12);
+        assertThat(recreated.version).isEqualTo(13);
+    }
+
+    @Test
+    public void when_mergeWithFullUpdate_then_shouldProduceFullUpdateOfNewerOwner() {
+        Owner newer = new Owner(6, "Jean", "Davis");
+
+        OwnerUpdate merged = OwnerUpdate.merge(
+                OwnerUpdate.visitAppended(owner, 0, new Visit(7, "rabies shot")), OwnerUpdate.full(newer));
+
+        assertThat(merged.full).isTrue();
+        assertThat(merged.owner).isSameAs(newer);
+    }
+
+    @Test
+    public void when_mergeWithPetRemoval_then_shouldProduceFullUpdate() {
+        OwnerUpdate merged = OwnerUpdate.merge(
+                OwnerUpdate.petRemoved(owner, 7), OwnerUpdate.visitAppended(owner, 0, new Visit(8, "spayed")));
+
+        assertThat(merged.full).isTrue();
+    }
+
+    @Test
+    public void when_mergeWithPetRemoval_then_shouldKeepRemovedPetsAndForm() {
+        OwnerUpdate merged = OwnerUpdate.merge(
+                OwnerUpdate.petRemoved(owner, 7),
+                OwnerUpdate.visitAppended(owner, 0, new Visit(8, "spayed")).asSplit());
+        OwnerUpdate deleted = OwnerUpdate.merge(
+                merged, OwnerUpdate.deleted(6, Collections.singletonList(8), true));
+
+        assertThat(merged.split).isTrue();
+        assertThat(merged.removedPetIds).containsExactly(7);
+        assertThat(deleted.split).isTrue();
+        assertThat(deleted.removedPetIds).containsExactly(7, 8);
+    }
+
+    @Test
+    public void when_mergeWithDeletion_then_shouldProduceDeletion() {
+        OwnerUpdate merged = OwnerUpdate.merge(OwnerUpdate.full(owner), OwnerUpdate.deleted(6));
+
+        assertThat(merged.deleted).isTrue();
+        assertThat(merged.owner.id).isEqualTo(6);
+    }
+
+    @Test
+    public void when_mergeDeletionWithChange_then_shouldProduceFullUpdate() {
+        OwnerUpdate merged = OwnerUpdate.merge(
+                OwnerUpdate.deleted(6), OwnerUpdate.petChanged(owner, new Pet(7, "Samantha", 6)));
+
+        assertThat(merged.deleted).isFalse();
+        assertThat(merged.full).isTrue();
+        assertThat(merged.owner).isSameAs(owner);
+    }
+}
@@ -121,7 +121,7 @@ public class PetClinicIndexJobTest extends JetTestSupport {
         );
 
         jet = createJetMember();
-        job = jet.newJob(petClinicIndexJob.pipeline());
+        job = jet.newJob(petClinicIndexJob.pipeline(), petClinicIndexJob.jobConfig());
     }
 
     @After
@@ -0,0 +1,120 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.jet.Jet;
+import com.hazelcast.jet.JetInstance;
+import com.hazelcast.jet.Job;
+import com.hazelcast.jet.config.JetConfig;
+import com.hazelcast.jet.picocli.CommandLine;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the job on generated changes against an in-process bulk endpoint and reports the
+ * throughput, the end-to-end latencies and the heap used
+ * <p>
+ * Needs no database, no Elasticsearch and no network. The default load is small, a longer
+ * run is configured with system properties, e.g.
+ * <pre>
+ * mvn test -Dtest=PetClinicLoadTest -Dload.changes=2000000 -Dload.rate=50000 -Dload.skew=0.8 \
+ *     -Dload.outOfOrder=0.1 "-Dload.jobArgs=--elastic-flush-interval 200"
+ * </pre>
+ */
+public class PetClinicLoadTest {
+
+    private static final ILogger log = Logger.getLogger(PetClinicLoadTest.class);
+
+    private final LoadTracker tracker = LoadTracker.INSTANCE;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private ElasticBulkStub elastic;
+    private JetInstance jet;
+
+    @Before
+    public void setUp() throws Exception {
+        tracker.reset();
+        elastic = new ElasticBulkStub(tracker);
+
+        Config config = new Config().setClusterName("load-" + UUID.randomUUID());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        jet = Jet.newJetInstance(new JetConfig().setHazelcastConfig(config));
+    }
+
+    @After
+    public void tearDown() {
+        jet.shutdown();
+        elastic.close();
+    }
+
+    @Test
+    public void when_changesGenerated_then_shouldWriteAllOwners() throws Exception {
+        SyntheticChangeSource.Config load = new SyntheticChangeSource.Config()
+                .setChanges(Long.getLong("load.changes", 20_000))
+                .setChangesPerSecond(Long.getLong("load.rate", 0))
+                .setKeySkew(Double.parseDouble(System.getProperty("load.skew", "0.5")))
+                .setOutOfOrderRatio(Double.parseDouble(System.getProperty("load.outOfOrder", "0.05")));
+
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--elastic-host", elastic.address(),
+                "--elastic-index", "petclinic"
+        ));
+        String jobArgs = System.getProperty("load.jobArgs", "").trim();
+        if (!jobArgs.isEmpty()) {
+            args.addAll(Arrays.asList(jobArgs.split("\\s+")));
+        }
+        PetClinicIndexJob petClinicIndexJob = new PetClinicIndexJob();
+        new CommandLine(petClinicIndexJob).parseArgs(args.toArray(new String[0]));
+
+        AtomicLong peakHeap = new AtomicLong();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 100, TimeUnit.MILLISECONDS);
+
+        log.info("Load: " + load);
+        long start = System.nanoTime();
+        Job job = jet.newJob(petClinicIndexJob.pipeline(SyntheticChangeSource.source(load)),
+                petClinicIndexJob.jobConfig());
+        try {
+            long timeoutNanos = TimeUnit.SECONDS.toNanos(60) + TimeUnit.MILLISECONDS.toNanos(load.getChanges() / 10);
+            while (tracker.emittedChanges() < load.getChanges() || tracker.pendingOwners() > 0) {
+                assertThat(System.nanoTime() - start).as("all owners written in time").isLessThan(timeoutNanos);
+                assertThat(job.getFuture()).as("job running").isNotDone();
+                Thread.sleep(10);
+            }
+        } finally {
+            sampler.shutdownNow();
+        }
+        // Without the start of the job
+        long elapsedNanos = System.nanoTime() - tracker.firstChangeNanos();
+        job.cancel();
+
+        System.gc();
+        double seconds = elapsedNanos / 1e9;
+        log.info(String.format("Changes %d in %.1f s, %.0f changes/s, %d owner writes in %d bulk requests",
+                tracker.emittedChanges(), seconds, tracker.emittedChanges() / seconds,
+                tracker.writtenOwners(), tracker.bulkRequests()));
+        log.info(String.format("End-to-end latency p50 %d ms, p99 %d ms, max %d ms",
+                tracker.latencyPercentile(0.5), tracker.latencyPercentile(0.99), tracker.latencyPercentile(1)));
+        log.info(String.format("Heap peak %d MB, after GC %d MB",
+                peakHeap.get() >> 20, memory.getHeapMemoryUsage().getUsed() >> 20));
+
+        assertThat(tracker.emittedChanges()).isEqualTo(load.getChanges());
+        assertThat(tracker.writtenOwners()).isPositive();
+    }
+}
@@ -0,0 +1,252 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.internal.serialization.Data;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import com.hazelcast.jet.config.JobConfig;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.example.jet.petclinic.search.PostingList;
+import org.example.jet.petclinic.search.TermChange;
+import org.example.jet.petclinic.search.TermPostings;
+import org.example.jet.petclinic.store.BinaryStore;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.util.Lists.newArrayList;
+
+public class PetClinicSerializersTest {
+
+    private final InternalSerializationService serializationService = serializationService();
+
+    @Test
+    public void when_register_then_shouldRegisterAllSerializers() {
+        JobConfig config = PetClinicSerializers.register(new JobConfig());
+
+        assertThat(config.getSerializerConfigs()).containsKeys(
+                Owner.class.getName(), Pet.class.getName(), Visit.class.getName(), PetRemoval.class.getName(),
+                JoiningState.class.getName(), PetOwnerLookup.class.getName(), ScannedOwner.class.getName(),
+                ScannedPet.class.getName(), Deletion.class.getName(), TermChange.class.getName(),
+                OwnerTerms.class.getName(), TermPostings.class.getName(), ScanDone.class.getName()
+        );
+    }
+
+    @Test
+    public void when_serializeOwner_then_shouldRestoreOwnerWithPetsAndVisits() {
+        Owner owner = owner();
+
+        Owner restored = roundTrip(owner);
+
+        assertThat(restored).isNotSameAs(owner);
+        assertThat(restored.toString()).isEqualTo(owner.toString());
+        assertThat(restored.pets.get(1).visits.get(0).keywords).containsExactly("rabies shot", "dog");
+    }
+
+    @Test
+    public void when_serializeOwner_then_shouldBeSmallerThanJavaSerialization() throws Exception {
+        Owner owner = owner();
+
+        Data data = serializationService.toData(owner);
+
+        assertThat(data.toByteArray().length).isLessThan(javaSerialize(owner).length / 2);
+    }
+
+    @Test
+    public void when_serializeRows_then_shouldRestoreTimestamps() {
+        Owner owner = new Owner(1, "George", "Franklin");
+        owner.timestamp = 1600000000000L;
+        Pet pet = new Pet(7, "Samantha", 1);
+        pet.timestamp = 1600000000001L;
+        Visit visit = new Visit(7, "rabies shot");
+        visit.timestamp = 1600000000002L;
+
+        assertThat(roundTrip(owner).timestamp).isEqualTo(owner.timestamp);
+        assertThat(roundTrip(pet).timestamp).isEqualTo(pet.timestamp);
+        assertThat(roundTrip(visit).timestamp).isEqualTo(visit.timestamp);
+    }
+
+    @Test
+    public void when_serializeNulls_then_shouldRestoreNulls() {
+        Owner owner = new Owner(1, null, null);
+        owner.pets = null;
+        Visit visit = new Visit(null, null);
+
+        assertThat(roundTrip(owner).pets).isNull();
+        assertThat(roundTrip(visit).keywords).isNull();
+        assertThat(roundTrip(visit).description).isNull();
+    }
+
+    @Test
+    public void when_serializeJoiningState_then_shouldRestoreState() {
+        JoiningStateConfig config = new JoiningStateConfig().setActiveOwners(2).setPartitions(1).setBootstrap(true);
+        JoiningState restored = roundTrip(joiningState(config));
+        restored.configure(config);
+
+        assertThat(restored.ownerCount()).isEqualTo(5);
+        assertThat(restored.orphanPetCount()).isEqualTo(1);
+        assertThat(restored.tombstoneCount()).isEqualTo(1);
+        Owner outgoingOwner = restored.join(new Visit(101, "spayed"));
+        assertThat(outgoingOwner.firstName).isEqualTo("Jean1");
+        assertThat(outgoingOwner.pets.get(0).visits).hasSize(1);
+        assertThat(restored.update(new Visit(102, "spayed")).full).isTrue();
+        assertThat(restored.update(new Visit(102, "neutered")).full).isFalse();
+    }
+
+    @Test
+    public void when_restoreJoiningState_then_shouldTakeConfigurationOfJob() {
+        JoiningState restored = roundTrip(joiningState(new JoiningStateConfig().setActiveOwners(2).setPartitions(1)
+                .setBootstrap(true)));
+
+        restored.configure(new JoiningStateConfig().setMemory(BinaryStore.Memory.OFF_HEAP).setPartitions(1));
+
+        // The restarted job doesn't scan, no scan sends the signal to drop the tombstones
+        assertThat(restored.tombstoneCount()).isZero();
+        assertThat(restored.ownerCount()).isEqualTo(5);
+        assertThat(restored.join(new Visit(101, "spayed")).pets.get(0).visits).hasSize(1);
+    }
+
+    @Test
+    public void when_restoreJoiningStateWithOtherPartitions_then_shouldFail() {
+        JoiningState restored = roundTrip(joiningState(new JoiningStateConfig().setPartitions(1)));
+
+        assertThatThrownBy(() -> restored.configure(new JoiningStateConfig().setPartitions(2)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("saved with 1 partitions");
+    }
+
+    @Test
+    public void when_restorePetOwnerLookupWithOtherPartitions_then_shouldFail() {
+        PetOwnerLookup restored = roundTrip(new PetOwnerLookup(new JoiningStateConfig()));
+
+        assertThatThrownBy(() -> restored.configure(new JoiningStateConfig().setPartitions(7)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void when_serializePetOwnerLookup_then_shouldRestoreLookup() {
+        PetOwnerLookup lookup = new PetOwnerLookup(new JoiningStateConfig());
+        lookup.route(new Pet(7, "Samantha", 6));
+        lookup.route(new Visit(8, "rabies shot"));
+        lookup.route(new Visit(1, 7, "spayed"));
+
+        PetOwnerLookup restored = roundTrip(lookup);
+
+        assertThat(restored.pendingVisitCount()).isEqualTo(1);
+        assertThat(restored.visitLogCount()).isEqualTo(1);
+        Map.Entry<Integer, Object> routed = restored.route(new Visit(7, "spayed")).next();
+        assertThat(routed.getKey()).isEqualTo(6);
+    }
+
+    @Test
+    public void when_serializePetRemoval_then_shouldRestorePetId() {
+        assertThat(roundTrip(new PetRemoval(7)).petId).isEqualTo(7);
+        assertThat(roundTrip(new PetRemoval(7, true)).deleted).isTrue();
+    }
+
+    @Test
+    public void when_serializeScannedItems_then_shouldRestoreThem() {
+        ScannedOwner restoredOwner = roundTrip(new ScannedOwner(owner()));
+        assertThat(restoredOwner.owner.pets).hasSize(3);
+        assertThat(restoredOwner.owner.pets.get(0).visits).hasSize(20);
+
+        ScannedPet restoredPet = roundTrip(new ScannedPet(7, 6, newArrayList(new Visit(1, 7, "rabies shot"))));
+        assertThat(restoredPet.petId).isEqualTo(7);
+        assertThat(restoredPet.ownerId).isEqualTo(6);
+        assertThat(restoredPet.visits).extracting(visit -> visit.description).containsExactly("rabies shot");
+    }
+
+    @Test
+    public void when_serializeDeletion_then_shouldRestoreDeletedRow() {
+        Deletion restored = roundTrip(new Deletion(new Visit(1, 7, "rabies shot")));
+
+        assertThat(restored.row).isInstanceOf(Visit.class);
+        assertThat(((Visit) restored.row).id).isEqualTo(1);
+    }
+
+    @Test
+    public void when_serializeKeywordIndexState_then_shouldRestoreTermsAndPostings() {
+        OwnerTerms restored = roundTrip(new OwnerTerms(new HashSet<>(Arrays.asList("jean", "rabies"))));
+
+        assertThat(restored.terms()).containsExactlyInAnyOrder("jean", "rabies");
+
+        TermChange change = roundTrip(TermChange.removed("rabies", 6));
+        assertThat(change.term).isEqualTo("rabies");
+        assertThat(change.docId).isEqualTo(6);
+        assertThat(change.added).isFalse();
+
+        TermPostings postings = roundTrip(new TermPostings(PostingList.of(1, 6, 300)));
+        assertThat(postings.postings().toArray()).containsExactly(1, 6, 300);
+    }
+
+    private <T> T roundTrip(T object) {
+        return serializationService.toObject(serializationService.toData(object));
+    }
+
+    private static Owner owner() {
+        Owner owner = new Owner(6, "Jean", "Coleman");
+        for (int petId = 1; petId <= 3; petId++) {
+            Pet pet = new Pet(petId, "Samantha" + petId, 6);
+            for (int i = 0; i < 20; i++) {
+                Visit visit = new Visit(petId * 100 + i, petId, "Gave the rabies shot to a dog " + i);
+                visit.setKeywords(newArrayList("rabies shot", "dog"));
+                pet.visits.add(visit);
+            }
+            owner.pets.add(pet);
+        }
+        return owner;
+    }
+
+    private static byte[] javaSerialize(Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static JoiningState joiningState(JoiningStateConfig config) {
+        JoiningState state = new JoiningState(config);
+        for (int id = 1; id <= 5; id++) {
+            state.join(new Owner(id, "Jean" + id, "Coleman"));
+            state.join(new Pet(100 + id, "Samantha" + id, id));
+        }
+        state.join(new Visit(200, "rabies shot"));
+        state.join(new Deletion(new Owner(9, "Jean", "Coleman")));
+        return state;
+    }
+
+    private static InternalSerializationService serializationService() {
+        SerializationConfig config = new SerializationConfig()
+                .addSerializerConfig(new SerializerConfig()
+                        .setTypeClass(Owner.class).setImplementation(new PetClinicSerializers.OwnerSerializer()))
+                .addSerializerConfig(new SerializerConfig()
+                        .setTypeClass(Pet.class).setImplementation(new PetClinicSerializers.PetSerializer()))
+                .addSerializerConfig(new SerializerConfig()
+                        .setTypeClass(Visit.class).setImplementation(new PetClinicSerializers.VisitSerializer()))
+                .addSerializerConfig(new SerializerConfig()
+                        .setTypeClass(PetRemoval.class).setImplementation(new PetClinicSerializers.PetRemovalSerializer()))
+                .addSerializerConfig(new SerializerConfig()
+                        .setTypeClass(JoiningState.class).setImplementation(new PetClinicSerializers.JoiningStateSerializer()))
+                .addSerializerConfig(new SerializerConfig()
+                        .setTypeClass(PetOwnerLookup.class).setImplementation(new PetClinicSerializers.PetOwnerLookupSerializer()))
+                .addSerializerConfig(new SerializerConfig()
+                        .setTypeClass(Deletion.class).setImplementation(new PetClinicSerializers.DeletionSerializer()))
+                .addSerializerConfig(new SerializerConfig()
+                        .setTypeClass(TermChange.class).setImplementation(new PetClinicSerializers.TermChangeSerializer()))
+                .addSerializerConfig(new SerializerConfig()
+                        .setTypeClass(OwnerTerms.class).setImplementation(new PetClinicSerializers.OwnerTermsSerializer()))
+                .addSerializerConfig(new SerializerConfig()
+                        .setTypeClass(TermPostings.class).setImplementation(new PetClinicSerializers.TermPostingsSerializer()));
+        return new DefaultSerializationServiceBuilder().setConfig(config).build();
+    }
+}
@@ -0,0 +1,251 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.Traverser;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.hazelcast.jet.Util.entry;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.util.Lists.newArrayList;
+
+public class PetOwnerLookupTest {
+
+    private final PetOwnerLookup lookup = new PetOwnerLookup(new JoiningStateConfig().setPartitions(4));
+
+    @Test
+    public void when_routePet_then_shouldPairPetWithOwnerId() {
+        Pet pet = new Pet(7, "Samantha", 6);
+
+        List<Map.Entry<Integer, Object>> routed = drain(lookup.route(pet));
+
+        assertThat(routed).hasSize(1);
+        assertThat(routed.get(0).getKey()).isEqualTo(6);
+        assertThat(routed.get(0).getValue()).isSameAs(pet);
+    }
+
+    @Test
+    public void when_routeVisitOfKnownPet_then_shouldPairVisitWithOwnerId() {
+        lookup.route(new Pet(7, "Samantha", 6));
+        Visit visit = new Visit(7, "rabies shot");
+
+        List<Map.Entry<Integer, Object>> routed = drain(lookup.route(visit));
+
+        assertThat(routed).hasSize(1);
+        assertThat(routed.get(0).getKey()).isEqualTo(6);
+        assertThat(routed.get(0).getValue()).isSameAs(visit);
+    }
+
+    @Test
+    public void when_routeVisitBeforePet_then_shouldRouteVisitAfterPet() {
+        Visit visit = new Visit(7, "rabies shot");
+        assertThat(drain(lookup.route(visit))).isEmpty();
+        assertThat(lookup.pendingVisitCount()).isEqualTo(1);
+
+        Pet pet = new Pet(7, "Samantha", 6);
+        List<Map.Entry<Integer, Object>> routed = drain(lookup.route(pet));
+
+        assertThat(routed).extracting(Map.Entry::getKey).containsExactly(6, 6);
+        assertThat(routed).extracting(Map.Entry::getValue).containsExactly(pet, visit);
+        assertThat(lookup.pendingVisitCount()).isZero();
+    }
+
+    @Test
+    public void when_petMovesToOwnerInOtherPartition_then_shouldRemovePetFromPreviousOwner() {
+        lookup.route(new Pet(7, "Samantha", 6));
+
+        List<Map.Entry<Integer, Object>> routed = drain(lookup.route(new Pet(7, "Samantha", 9)));
+
+        assertThat(routed).extracting(Map.Entry::getKey).containsExactly(6, 9);
+        assertThat(routed.get(0).getValue()).isInstanceOf(PetRemoval.class);
+        assertThat(((PetRemoval) routed.get(0).getValue()).petId).isEqualTo(7);
+    }
+
+    @Test
+    public void when_petWithVisitsMovesToOwnerInOtherPartition_then_newOwnerShouldHaveVisits() {
+        JoiningStateConfig config = new JoiningStateConfig().setPartitions(4);
+        PetOwnerLookup lookup = new PetOwnerLookup(config);
+        Map<Integer, JoiningState> joins = new HashMap<>();
+        List<OwnerUpdate> updates = new ArrayList<>();
+        joinAll(config, joins, updates, new Owner(6, "Jean", "Coleman"));
+        joinAll(config, joins, updates, new Owner(9, "David", "Schroeder"));
+        joinAll(config, joins, updates, drain(lookup.route(new Pet(7, "Samantha", 6))));
+        joinAll(config, joins, updates, drain(lookup.route(new Visit(1, 7, "rabies shot"))));
+        joinAll(config, joins, updates, drain(lookup.route(new Visit(2, 7, "spayed"))));
+        updates.clear();
+
+        joinAll(config, joins, updates, drain(lookup.route(new Pet(7, "Samantha", 9))));
+
+        assertThat(updates).extracting(update -> update.owner.id).containsExactly(6, 9);
+        assertThat(updates.get(0).owner.pets).isEmpty();
+        Owner newOwner = updates.get(1).owner;
+        assertThat(newOwner.pets).extracting(pet -> pet.id).containsExactly(7);
+        assertThat(newOwner.pets.get(0).visits).extracting(visit -> visit.description)
+                                               .containsExactly("rabies shot", "spayed");
+    }
+
+    @Test
+    public void when_petMovesToOwnerInSamePartition_then_shouldRemovePetFromPreviousOwner() {
+        lookup.route(new Pet(7, "Samantha", 6));
+
+        List<Map.Entry<Integer, Object>> routed = drain(lookup.route(new Pet(7, "Samantha", 10)));
+
+        assertThat(routed).extracting(Map.Entry::getKey).containsExactly(6, 10);
+        assertThat(((PetRemoval) routed.get(0).getValue()).petId).isEqualTo(7);
+    }
+
+    @Test
+    public void when_petMovesToOwnerInSamePartition_then_shouldUpdateBothOwners() {
+        JoiningStateConfig config = new JoiningStateConfig().setPartitions(4);
+        PetOwnerLookup lookup = new PetOwnerLookup(config);
+        Map<Integer, JoiningState> joins = new HashMap<>();
+        List<OwnerUpdate> updates = new ArrayList<>();
+        joinAll(config, joins, updates, new Owner(6, "Jean", "Coleman"));
+        joinAll(config, joins, updates, new Owner(10, "Carlos", "Estaban"));
+        joinAll(config, joins, updates, drain(lookup.route(new Pet(7, "Samantha", 6))));
+        joinAll(config, joins, updates, drain(lookup.route(new Visit(1, 7, "rabies shot"))));
+        updates.clear();
+
+        joinAll(config, joins, updates, drain(lookup.route(new Pet(7, "Samantha", 10))));
+
+        assertThat(joins).hasSize(1);
+        assertThat(updates).extracting(update -> update.owner.id).containsExactly(6, 10);
+        assertThat(updates.get(0).owner.pets).isEmpty();
+        assertThat(updates.get(1).owner.pets.get(0).visits).extracting(visit -> visit.description)
+                                                          .containsExactly("rabies shot");
+    }
+
+    @Test
+    public void when_routeScannedPet_then_shouldRoutePendingVisitsToScannedOwner() {
+        lookup.route(new Visit(7, "rabies shot"));
+
+        List<Map.Entry<Integer, Object>> routed = drain(lookup.route(new ScannedPet(7, 6)));
+
+        assertThat(routed).extracting(Map.Entry::getKey).containsExactly(6);
+        assertThat(drain(lookup.route(new Visit(7, "spayed")))).extracting(Map.Entry::getKey).containsExactly(6);
+    }
+
+    @Test
+    public void when_petChangedBeforeScannedPet_then_shouldKeepChangedOwner() {
+        lookup.route(new Pet(7, "Samantha", 10));
+
+        assertThat(drain(lookup.route(new ScannedPet(7, 6)))).isEmpty();
+        assertThat(drain(lookup.route(new Visit(7, "spayed")))).extracting(Map.Entry::getKey).containsExactly(10);
+    }
+
+    @Test
+    public void when_petDoesNotArriveInTime_then_shouldDropPendingVisits() {
+        PetOwnerLookup lookup = new PetOwnerLookup(new JoiningStateConfig().setOrphanTtlMillis(1000));
+        lookup.route(new Visit(1, 7, "rabies shot"), 0);
+
+        lookup.route(new Visit(2, 8, "spayed"), 1001);
+
+        assertThat(lookup.pendingVisitCount()).isEqualTo(1);
+        assertThat(lookup.evictedVisitCount()).isEqualTo(1);
+        assertThat(drain(lookup.route(new Pet(7, "Samantha", 6), 1002))).hasSize(1);
+    }
+
+    @Test
+    public void when_tooManyPetsWithPendingVisits_then_shouldDropOldestPendingVisits() {
+        PetOwnerLookup lookup = new PetOwnerLookup(new JoiningStateConfig().setPartitions(1).setMaxOrphans(2));
+        for (int petId = 1; petId <= 3; petId++) {
+            lookup.route(new Visit(petId, petId, "rabies shot"), 0);
+        }
+
+        lookup.route(new Pet(100, "Samantha", 6), 0);
+
+        assertThat(lookup.pendingVisitCount()).isEqualTo(2);
+        assertThat(drain(lookup.route(new Pet(1, "Samantha", 6), 0))).hasSize(1);
+    }
+
+    @Test
+    public void when_routeDeletedPet_then_shouldRemovePetFromOwner() {
+        lookup.route(new Pet(7, "Samantha", 6));
+
+        List<Map.Entry<Integer, Object>> routed = drain(lookup.route(new Deletion(new Pet(7, "Samantha", 6))));
+
+        assertThat(routed).extracting(Map.Entry::getKey).containsExactly(6);
+        assertThat(((PetRemoval) routed.get(0).getValue()).petId).isEqualTo(7);
+        assertThat(drain(lookup.route(new Visit(7, "spayed")))).isEmpty();
+    }
+
+    @Test
+    public void when_routeDeletedVisit_then_shouldRouteDeletionToOwnerOrDropPendingVisit() {
+        lookup.route(new Visit(1, 7, "rabies shot"));
+        assertThat(drain(lookup.route(new Deletion(new Visit(1, 7, "rabies shot"))))).isEmpty();
+        assertThat(lookup.pendingVisitCount()).isZero();
+
+        lookup.route(new Pet(7, "Samantha", 6));
+        List<Map.Entry<Integer, Object>> routed = drain(lookup.route(new Deletion(new Visit(2, 7, "spayed"))));
+
+        assertThat(routed).extracting(Map.Entry::getKey).containsExactly(6);
+        assertThat(routed.get(0).getValue()).isInstanceOf(Deletion.class);
+    }
+
+    @Test
+    public void when_petDeletedThenScanned_then_shouldRemovePetFromScannedOwner() {
+        PetOwnerLookup lookup = new PetOwnerLookup(new JoiningStateConfig().setBootstrap(true));
+        assertThat(drain(lookup.route(new Deletion(new Pet(7, "Samantha", 6))))).isEmpty();
+
+        List<Map.Entry<Integer, Object>> routed = drain(lookup.route(new ScannedPet(7, 6)));
+
+        assertThat(routed).extracting(Map.Entry::getKey).containsExactly(6);
+        PetRemoval removal = (PetRemoval) routed.get(0).getValue();
+        assertThat(removal.petId).isEqualTo(7);
+        assertThat(removal.deleted).isTrue();
+        assertThat(drain(lookup.route(new Visit(7, "spayed")))).isEmpty();
+    }
+
+    @Test
+    public void when_visitDeletedThenScanned_then_shouldDeleteVisitFromScannedOwner() {
+        PetOwnerLookup lookup = new PetOwnerLookup(new JoiningStateConfig().setBootstrap(true));
+        lookup.route(new Deletion(new Visit(2, 7, "spayed")));
+
+        List<Map.Entry<Integer, Object>> routed = drain(lookup.route(new ScannedPet(7, 6, newArrayList(
+                new Visit(1, 7, "rabies shot"), new Visit(2, 7, "spayed")))));
+
+        assertThat(routed).extracting(Map.Entry::getKey).containsExactly(6);
+        assertThat(((Visit) ((Deletion) routed.get(0).getValue()).row).id).isEqualTo(2);
+    }
+
+    @Test
+    public void when_routeScanDone_then_shouldPassItToJoinPartition() {
+        ScanDone done = new ScanDone(0, 1, 3);
+
+        List<Map.Entry<Integer, Object>> routed = drain(lookup.route(done));
+
+        assertThat(routed).extracting(Map.Entry::getKey).containsExactly(3);
+        assertThat(routed.get(0).getValue()).isSameAs(done);
+    }
+
+    private static void joinAll(JoiningStateConfig config, Map<Integer, JoiningState> joins,
+                                List<OwnerUpdate> updates, Owner owner) {
+        joinAll(config, joins, updates, Collections.singletonList(entry(owner.id, owner)));
+    }
+
+    private static void joinAll(JoiningStateConfig config, Map<Integer, JoiningState> joins,
+                                List<OwnerUpdate> updates, List<Map.Entry<Integer, Object>> items) {
+        for (Map.Entry<Integer, Object> item : items) {
+            JoiningState join = joins.computeIfAbsent(config.partition(item.getKey()), p -> new JoiningState(config));
+            OwnerUpdate update = join.update(item.getValue());
+            if (update != null) {
+                updates.add(update);
+            }
+        }
+    }
+
+    private static List<Map.Entry<Integer, Object>> drain(Traverser<Map.Entry<Integer, Object>> traverser) {
+        List<Map.Entry<Integer, Object>> items = new ArrayList<>();
+        for (Map.Entry<Integer, Object> item; (item = traverser.next()) != null; ) {
+            items.add(item);
+        }
+        return items;
+    }
+}
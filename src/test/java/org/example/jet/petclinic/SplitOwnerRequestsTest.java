@@ -0,0 +1,107 @@
+package org.example.jet.petclinic;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.index.VersionType;
+import org.example.jet.petclinic.model.Owner;
+import org.example.jet.petclinic.model.Pet;
+import org.example.jet.petclinic.model.Visit;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+
+public class SplitOwnerRequestsTest {
+
+    private final SplitOwnerRequests requests = new SplitOwnerRequests("owners", "owners-pets", false);
+    private final Owner owner = owner();
+
+    @Test
+    public void when_splitOwnerWrittenWhole_then_shouldWriteOwnerAndEachPet() {
+        OwnerUpdate update = OwnerUpdate.merge(OwnerUpdate.petRemoved(owner, 9), OwnerUpdate.full(owner).asSplit());
+
+        List<DocWriteRequest<?>> writes = requests.map(update);
+
+        assertThat(writes).extracting(DocWriteRequest::opType, DocWriteRequest::index, DocWriteRequest::id)
+                          .containsExactly(
+                                  tuple(DocWriteRequest.OpType.INDEX, "owners", "6"),
+                                  tuple(DocWriteRequest.OpType.DELETE, "owners-pets", "6_9"),
+                                  tuple(DocWriteRequest.OpType.INDEX, "owners-pets", "6_7"),
+                                  tuple(DocWriteRequest.OpType.INDEX, "owners-pets", "6_8"));
+        assertThat(source(writes.get(0)))
+                .isEqualTo("{\"first_name\":\"Jean\",\"id\":6,\"last_name\":\"Coleman\",\"pet_ids\":[7,8]}");
+        assertThat(source(writes.get(2))).isEqualTo(new String(OwnerJson.pet(owner.pets.get(0)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void when_visitAppendedToSplitOwner_then_shouldWriteOnlyItsPet() {
+        Visit visit = new Visit(2, 8, "spayed");
+        owner.pets.get(1).visits.add(visit);
+
+        List<DocWriteRequest<?>> writes = requests.map(OwnerUpdate.visitAppended(owner, 0, visit).asSplit());
+
+        assertThat(writes).extracting(DocWriteRequest::index, DocWriteRequest::id)
+                          .containsExactly(tuple("owners", "6"), tuple("owners-pets", "6_8"));
+        assertThat(source(writes.get(1))).contains("spayed");
+    }
+
+    @Test
+    public void when_splitOwnerDeleted_then_shouldDeleteOwnerAndPets() {
+        OwnerUpdate deletion = OwnerUpdate.deleted(6, Arrays.asList(7, 8), true);
+
+        List<DocWriteRequest<?>> writes = requests.map(deletion);
+
+        assertThat(writes).extracting(DocWriteRequest::opType, DocWriteRequest::index, DocWriteRequest::id)
+                          .containsExactly(
+                                  tuple(DocWriteRequest.OpType.DELETE, "owners", "6"),
+                                  tuple(DocWriteRequest.OpType.DELETE, "owners-pets", "6_7"),
+                                  tuple(DocWriteRequest.OpType.DELETE, "owners-pets", "6_8"));
+    }
+
+    @Test
+    public void when_petMovesBetweenSplitOwners_then_eachOwnerShouldWriteOnlyItsDocuments() {
+        Owner newOwner = new Owner(9, "David", "Schroeder");
+        newOwner.pets.add(new Pet(7, "Samantha", 9));
+        owner.pets.remove(0);
+
+        List<DocWriteRequest<?>> previousOwnerWrites = requests.map(OwnerUpdate.petRemoved(owner, 7).asSplit());
+        List<DocWriteRequest<?>> newOwnerWrites = requests.map(OwnerUpdate.full(newOwner).asSplit());
+
+        assertThat(previousOwnerWrites).extracting(DocWriteRequest::opType, DocWriteRequest::index, DocWriteRequest::id)
+                                       .containsExactly(
+                                               tuple(DocWriteRequest.OpType.INDEX, "owners", "6"),
+                                               tuple(DocWriteRequest.OpType.DELETE, "owners-pets", "6_7"));
+        assertThat(newOwnerWrites).extracting(DocWriteRequest::opType, DocWriteRequest::index, DocWriteRequest::id)
+                                  .containsExactly(
+                                          tuple(DocWriteRequest.OpType.INDEX, "owners", "9"),
+                                          tuple(DocWriteRequest.OpType.INDEX, "owners-pets", "9_7"));
+    }
+
+    @Test
+    public void when_versioned_then_shouldVersionAllWrites() {
+        SplitOwnerRequests versioned = new SplitOwnerRequests("owners", "owners-pets", true);
+
+        List<DocWriteRequest<?>> writes = versioned.map(OwnerUpdate.full(owner).asSplit().withVersion(42));
+
+        assertThat(writes).hasSize(3);
+        assertThat(writes).extracting(DocWriteRequest::versionType).containsOnly(VersionType.EXTERNAL);
+        assertThat(writes).extracting(DocWriteRequest::version).containsOnly(42L);
+    }
+
+    private static String source(DocWriteRequest<?> request) {
+        return ((IndexRequest) request).source().utf8ToString();
+    }
+
+    private static Owner owner() {
+        Owner owner = new Owner(6, "Jean", "Coleman");
+        Pet pet = new Pet(7, "Samantha", 6);
+        pet.visits.add(new Visit(1, 7, "rabies shot"));
+        owner.pets.add(pet);
+        owner.pets.add(new Pet(8, "Max", 6));
+        return owner;
+    }
+}
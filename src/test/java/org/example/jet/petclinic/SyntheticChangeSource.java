@@ -0,0 +1,331 @@
+package org.example.jet.petclinic;
+
+import com.hazelcast.jet.cdc.ChangeRecord;
+import com.hazelcast.jet.cdc.Operation;
+import com.hazelcast.jet.cdc.RecordPart;
+import com.hazelcast.jet.pipeline.SourceBuilder;
+import com.hazelcast.jet.pipeline.StreamSource;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * Stream source of generated changes of the owners, pets and visits tables, in place of
+ * the change data capture of the database
+ * <p>
+ * Most changes are new visits, the rest are new and renamed owners and pets. The owners and
+ * pets changed are skewed towards the first ones, and some new owners and pets are emitted
+ * after changes of their pets and visits, as after a reordering in the database. Emitted
+ * changes are reported to the {@link LoadTracker}.
+ */
+final class SyntheticChangeSource {
+
+    private static final String[] FIRST_NAMES = {"George", "Betty", "Eduardo", "Harold", "Peter", "Jean", "Jeff",
+            "Maria", "David", "Carlos"};
+    private static final String[] LAST_NAMES = {"Franklin", "Davis", "Rodriquez", "McTavish", "Coleman", "Black",
+            "Escobito", "Schroeder", "Estaban", "Smith"};
+    private static final String[] PET_NAMES = {"Leo", "Basil", "Rosy", "Jewel", "Iggy", "George", "Samantha", "Max",
+            "Lucky", "Mulligan", "Freddy", "Sly"};
+    private static final String[] VISIT_PHRASES = {"rabies shot", "annual checkup", "neutered", "spayed",
+            "broken leg put in a cast", "ear infection treated with antibiotics", "dental cleaning",
+            "vaccination against distemper", "skin allergy", "limping on the front left paw", "weight control diet",
+            "removed a tick", "x-ray of the chest", "follow up after surgery"};
+
+    // Changes a delayed new owner or pet is emitted after
+    private static final int REORDER_DISTANCE = 8;
+
+    private static final int MAX_BATCH = 1024;
+
+    private SyntheticChangeSource() {
+    }
+
+    static StreamSource<ChangeRecord> source(Config config) {
+        return SourceBuilder
+                .stream("syntheticChanges", context -> new Generator(config))
+                .<ChangeRecord>fillBufferFn(Generator::fill)
+                .build();
+    }
+
+    /**
+     * Number, rate and shape of the generated changes
+     */
+    static final class Config implements Serializable {
+
+        private long changes = 100_000;
+        private long changesPerSecond;
+        private double keySkew = 0.5;
+        private double outOfOrderRatio = 0.05;
+        private long seed = 42;
+
+        /**
+         * Sets the number of changes to generate
+         */
+        Config setChanges(long changes) {
+            this.changes = changes;
+            return this;
+        }
+
+        long getChanges() {
+            return changes;
+        }
+
+        /**
+         * Sets the rate of the changes, 0 generates them as fast as the job takes them
+         */
+        Config setChangesPerSecond(long changesPerSecond) {
+            this.changesPerSecond = changesPerSecond;
+            return this;
+        }
+
+        long getChangesPerSecond() {
+            return changesPerSecond;
+        }
+
+        /**
+         * Sets how much the changes concentrate on the first owners and pets, 0 for uniform,
+         * towards 1 for a few hot owners
+         */
+        Config setKeySkew(double keySkew) {
+            if (keySkew < 0 || keySkew >= 1) {
+                throw new IllegalArgumentException("keySkew must be in [0, 1), was " + keySkew);
+            }
+            this.keySkew = keySkew;
+            return this;
+        }
+
+        double getKeySkew() {
+            return keySkew;
+        }
+
+        /**
+         * Sets the fraction of new owners and pets emitted after the changes referencing them
+         */
+        Config setOutOfOrderRatio(double outOfOrderRatio) {
+            this.outOfOrderRatio = outOfOrderRatio;
+            return this;
+        }
+
+        double getOutOfOrderRatio() {
+            return outOfOrderRatio;
+        }
+
+        Config setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        long getSeed() {
+            return seed;
+        }
+
+        @Override
+        public String toString() {
+            return "changes=" + changes +
+                    ", changesPerSecond=" + (changesPerSecond == 0 ? "unlimited" : changesPerSecond) +
+                    ", keySkew=" + keySkew +
+                    ", outOfOrderRatio=" + outOfOrderRatio;
+        }
+    }
+
+    static final class Generator {
+
+        private final Config config;
+        private final Random random;
+        private final double skewExponent;
+        private final LoadTracker tracker = LoadTracker.INSTANCE;
+
+        // Owner id of each pet, pet ids start at 1
+        private final List<Integer> petOwners = new ArrayList<>();
+        private int owners;
+        private int visits;
+        private int renames;
+
+        private final Queue<Delayed> delayed = new ArrayDeque<>();
+        private long generated;
+        private long emitted;
+        private long startNanos;
+
+        Generator(Config config) {
+            this.config = config;
+            this.random = new Random(config.getSeed());
+            this.skewExponent = 1 / (1 - config.getKeySkew());
+        }
+
+        void fill(SourceBuilder.SourceBuffer<ChangeRecord> buffer) {
+            if (startNanos == 0) {
+                startNanos = System.nanoTime();
+            }
+            long allowed = MAX_BATCH;
+            if (config.getChangesPerSecond() > 0) {
+                long due = (System.nanoTime() - startNanos) * config.getChangesPerSecond() / 1_000_000_000L;
+                allowed = Math.min(allowed, due - emitted);
+            }
+            for (long i = 0; i < allowed && emitted < config.getChanges(); i++) {
+                Delayed next = delayed.peek();
+                if (next != null && (next.dueAt <= generated || generated == config.getChanges())) {
+                    delayed.poll();
+                    emit(buffer, next.ownerId, next.record);
+                } else if (generated < config.getChanges()) {
+                    generate(buffer);
+                }
+            }
+        }
+
+        private void generate(SourceBuilder.SourceBuffer<ChangeRecord> buffer) {
+            generated++;
+            int kind = owners < 10 ? 0 : random.nextInt(100);
+            if (kind < 10) {
+                int ownerId = ++owners;
+                ChangeRecord record = owner(Operation.INSERT, ownerId);
+                if (random.nextDouble() < config.getOutOfOrderRatio()) {
+                    delayed.add(new Delayed(generated + REORDER_DISTANCE, ownerId, record));
+                } else {
+                    emit(buffer, ownerId, record);
+                }
+            } else if (kind < 15) {
+                int ownerId = skewed(owners);
+                emit(buffer, ownerId, owner(Operation.UPDATE, ownerId));
+            } else if (kind < 30 || petOwners.isEmpty()) {
+                int ownerId = skewed(owners);
+                petOwners.add(ownerId);
+                ChangeRecord record = pet(Operation.INSERT, petOwners.size(), ownerId);
+                if (random.nextDouble() < config.getOutOfOrderRatio()) {
+                    delayed.add(new Delayed(generated + REORDER_DISTANCE, ownerId, record));
+                } else {
+                    emit(buffer, ownerId, record);
+                }
+            } else if (kind < 35) {
+                int petId = skewed(petOwners.size());
+                emit(buffer, petOwners.get(petId - 1), pet(Operation.UPDATE, petId, petOwners.get(petId - 1)));
+            } else {
+                int petId = skewed(petOwners.size());
+                emit(buffer, petOwners.get(petId - 1), visit(++visits, petId));
+            }
+        }
+
+        private void emit(SourceBuilder.SourceBuffer<ChangeRecord> buffer, int ownerId, ChangeRecord record) {
+            emitted++;
+            tracker.changeEmitted(ownerId);
+            buffer.add(record);
+        }
+
+        /**
+         * Returns an id from 1 to count, low ids more likely the higher the skew
+         */
+        private int skewed(int count) {
+            return 1 + (int) (count * Math.pow(random.nextDouble(), skewExponent));
+        }
+
+        private ChangeRecord owner(Operation operation, int ownerId) {
+            // Renamed owners get a new name, so each change is a real change
+            String lastName = operation == Operation.INSERT ? pick(LAST_NAMES) : pick(LAST_NAMES) + "-" + ++renames;
+            return new SyntheticRecord(ChangeRecordDecoder.OWNERS_TABLE, operation,
+                    "{\"id\":" + ownerId + ",\"first_name\":\"" + pick(FIRST_NAMES) + "\"," +
+                            "\"last_name\":\"" + lastName + "\",\"city\":\"Madison\"}");
+        }
+
+        private ChangeRecord pet(Operation operation, int petId, int ownerId) {
+            String name = operation == Operation.INSERT ? pick(PET_NAMES) : pick(PET_NAMES) + " " + ++renames;
+            return new SyntheticRecord(ChangeRecordDecoder.PETS_TABLE, operation,
+                    "{\"id\":" + petId + ",\"name\":\"" + name + "\",\"birth_date\":\"2012-09-04\"," +
+                            "\"type_id\":1,\"owner_id\":" + ownerId + "}");
+        }
+
+        private ChangeRecord visit(int visitId, int petId) {
+            String description = pick(VISIT_PHRASES) + ", " + pick(VISIT_PHRASES);
+            return new SyntheticRecord(ChangeRecordDecoder.VISITS_TABLE, Operation.INSERT,
+                    "{\"id\":" + visitId + ",\"pet_id\":" + petId + ",\"visit_date\":\"2013-01-01\"," +
+                            "\"description\":\"" + description + "\"}");
+        }
+
+        private String pick(String[] values) {
+            return values[random.nextInt(values.length)];
+        }
+    }
+
+    private static final class Delayed {
+
+        final long dueAt;
+        final int ownerId;
+        final ChangeRecord record;
+
+        Delayed(long dueAt, int ownerId, ChangeRecord record) {
+            this.dueAt = dueAt;
+            this.ownerId = ownerId;
+            this.record = record;
+        }
+    }
+
+    /**
+     * Change record of a generated row, with only the fields the job reads, its timestamp is
+     * the time it was generated
+     */
+    private static final class SyntheticRecord implements ChangeRecord, Serializable {
+
+        private final long timestamp = System.currentTimeMillis();
+        private final String table;
+        private final Operation operation;
+        private final String valueJson;
+
+        SyntheticRecord(String table, Operation operation, String valueJson) {
+            this.table = table;
+            this.operation = operation;
+            this.valueJson = valueJson;
+        }
+
+        @Override
+        public long timestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public Operation operation() {
+            return operation;
+        }
+
+        @Override
+        public String database() {
+            return "petclinic";
+        }
+
+        @Override
+        public String table() {
+            return table;
+        }
+
+        @Override
+        public RecordPart key() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RecordPart value() {
+            return new RecordPart() {
+                @Override
+                public <T> T toObject(Class<T> clazz) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public Map<String, Object> toMap() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public String toJson() {
+                    return valueJson;
+                }
+            };
+        }
+
+        @Override
+        public String toJson() {
+            return valueJson;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.jet.petclinic;
+
+import org.example.jet.petclinic.model.Visit;
+import org.example.jet.petclinic.store.BinaryStore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VisitStoreTest {
+
+    private final VisitStore store = new VisitStore(BinaryStore.Memory.HEAP, null);
+
+    @Test
+    public void when_visitsOfPetsInterleaved_then_shouldReturnVisitsOfEachPetInOrder() {
+        store.append(7, new Visit(1, 7, "rabies shot"));
+        store.append(8, new Visit(2, 8, "spayed"));
+        store.append(7, new Visit(3, 7, "neutered"));
+
+        assertThat(store.get(7)).extracting(visit -> visit.description).containsExactly("rabies shot", "neutered");
+        assertThat(store.get(8)).extracting(visit -> visit.id).containsExactly(2);
+        assertThat(store.get(9)).isEmpty();
+        assertThat(store.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void when_visitRemoved_then_shouldKeepOtherVisitsInOrder() {
+        store.append(7, new Visit(1, 7, "rabies shot"));
+        store.append(7, new Visit(2, 7, "spayed"));
+        store.append(7, new Visit(3, 7, "neutered"));
+
+        store.remove(7, 2);
+        store.append(7, new Visit(4, 7, "checkup"));
+
+        assertThat(store.get(7)).extracting(visit -> visit.id).containsExactly(1, 3, 4);
+    }
+
+    @Test
+    public void when_petRemoved_then_shouldRemoveAllItsVisits() {
+        store.append(7, new Visit(1, 7, "rabies shot"));
+        store.append(7, new Visit(2, 7, "spayed"));
+
+        store.remove(7);
+
+        assertThat(store.get(7)).isEmpty();
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    public void when_prepend_then_shouldPutEarlierVisitsFirstWithoutRepeating() {
+        store.append(7, new Visit(3, 7, "neutered"));
+        store.append(7, new Visit(2, 7, "spayed"));
+
+        store.prepend(7, asList(new Visit(1, 7, "rabies shot"), new Visit(2, 7, "spayed")));
+
+        assertThat(store.get(7)).extracting(visit -> visit.id).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    public void when_writeAndReadEntries_then_shouldContinueAppending() throws IOException {
+        store.append(7, new Visit(1, 7, "rabies shot"));
+        store.append(8, new Visit(2, 8, "spayed"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        store.writeEntries(new DataOutputStream(bytes));
+
+        VisitStore restored = new VisitStore(BinaryStore.Memory.HEAP, null);
+        restored.readEntries(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        restored.append(7, new Visit(3, 7, "neutered"));
+
+        assertThat(restored.get(7)).extracting(visit -> visit.id).containsExactly(1, 3);
+        assertThat(restored.get(8)).extracting(visit -> visit.id).containsExactly(2);
+    }
+}
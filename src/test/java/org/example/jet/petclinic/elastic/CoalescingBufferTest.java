@@ -0,0 +1,63 @@
+package org.example.jet.petclinic.elastic;
+
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CoalescingBufferTest {
+
+    private final CoalescingBuffer<Integer, String> buffer = new CoalescingBuffer<>();
+
+    @Test
+    public void when_putSameKey_then_shouldKeepLatestValue() {
+        buffer.put(1, "a1");
+        buffer.put(2, "b1");
+        buffer.put(1, "a2");
+
+        assertThat(buffer.pendingCount()).isEqualTo(2);
+        assertThat(buffer.coalescedCount()).isEqualTo(1);
+        assertThat(buffer.take(10)).containsExactly(entry(1, "a2"), entry(2, "b1"));
+    }
+
+    @Test
+    public void when_take_then_shouldTakeAtMostMaxValues() {
+        for (int key = 0; key < 5; key++) {
+            buffer.put(key, "v" + key);
+        }
+
+        assertThat(buffer.take(3).keySet()).containsExactly(0, 1, 2);
+        assertThat(buffer.pendingCount()).isEqualTo(2);
+        assertThat(buffer.inFlightCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void when_keyInFlight_then_shouldNotTakeNewerValueUntilComplete() {
+        buffer.put(1, "a1");
+        buffer.take(10);
+        buffer.put(1, "a2");
+        buffer.put(2, "b1");
+
+        assertThat(buffer.take(10)).containsExactly(entry(2, "b1"));
+
+        buffer.complete(asList(1, 2));
+
+        assertThat(buffer.take(10)).containsExactly(entry(1, "a2"));
+    }
+
+    @Test
+    public void when_mergeFn_then_shouldMergePendingValues() {
+        CoalescingBuffer<Integer, String> merging = new CoalescingBuffer<>((older, newer) -> older + "+" + newer);
+        merging.put(1, "a1");
+        merging.put(1, "a2");
+
+        assertThat(merging.take(10)).containsExactly(entry(1, "a1+a2"));
+    }
+
+    private static Map.Entry<Integer, String> entry(Integer key, String value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+}
@@ -0,0 +1,186 @@
+package org.example.jet.petclinic.elastic;
+
+import com.hazelcast.jet.core.test.TestSupport;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.example.jet.petclinic.metrics.TestMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CoalescingElasticSinkPTest {
+
+    private HttpServer server;
+    private TestMetrics metrics;
+    private final List<String> bulks = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void before() throws Exception {
+        // The processor runs on the test thread, which needs a context for its metrics
+        metrics = TestMetrics.install();
+
+        // Accepts any bulk request and reports success for its items, except for documents
+        // marked stale, which are rejected as version conflicts
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/_bulk", exchange -> {
+            String body = read(exchange.getRequestBody());
+            bulks.add(body);
+            StringBuilder items = new StringBuilder();
+            boolean errors = false;
+            String[] lines = body.split("\n");
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i].startsWith("{\"index\"")) {
+                    boolean stale = lines[i + 1].contains("stale");
+                    errors |= stale;
+                    items.append(items.length() == 0 ? "" : ",").append(stale
+                            ? "{\"index\":{\"_index\":\"i\",\"_id\":\"1\",\"status\":409,\"error\":" +
+                            "{\"type\":\"version_conflict_engine_exception\",\"reason\":\"version conflict\"}}}"
+                            : "{\"index\":{\"_index\":\"i\",\"_id\":\"1\",\"_version\":1,\"result\":\"created\",\"status\":201}}");
+                }
+            }
+            byte[] response = ("{\"took\":1,\"errors\":" + errors + ",\"items\":[" + items + "]}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+        TestMetrics.uninstall();
+    }
+
+    @Test
+    public void when_sameKeyWrittenManyTimes_then_shouldWriteLatestVersionOnce() {
+        String host = "http://localhost:" + server.getAddress().getPort();
+        ElasticBulkConfig config = new ElasticBulkConfig().setBulkSize(100).setFlushIntervalMillis(60_000);
+
+        TestSupport.verifyProcessor(() -> new CoalescingElasticSinkP<Map.Entry<Integer, String>>(
+                () -> RestClient.builder(HttpHost.create(host)),
+                Map.Entry::getKey,
+                (older, newer) -> newer,
+                entry -> new IndexRequest("i").id(entry.getKey().toString())
+                                               .source("{\"v\":\"" + entry.getValue() + "\"}", XContentType.JSON),
+                entry -> 0,
+                config))
+                   .disableSnapshots()
+                   .disableProgressAssertion()
+                   .input(asList(entry(1, "a1"), entry(2, "b1"), entry(1, "a2"), entry(1, "a3")))
+                   .expectOutput(Collections.emptyList());
+
+        // The test support runs the processor several times, every run writes once
+        assertThat(bulks).isNotEmpty();
+        for (String bulk : bulks) {
+            assertThat(bulk).contains("a3", "b1").doesNotContain("a1", "a2");
+            assertThat(bulk.split("\n")).hasSize(4);
+        }
+    }
+
+    @Test
+    public void when_itemsCarryChangeTime_then_shouldRecordLag() {
+        String host = "http://localhost:" + server.getAddress().getPort();
+        ElasticBulkConfig config = new ElasticBulkConfig().setBulkSize(100).setFlushIntervalMillis(60_000);
+        long changedAt = System.currentTimeMillis() - 5_000;
+
+        TestSupport.verifyProcessor(() -> new CoalescingElasticSinkP<Map.Entry<Integer, String>>(
+                () -> RestClient.builder(HttpHost.create(host)),
+                Map.Entry::getKey,
+                (older, newer) -> newer,
+                entry -> new IndexRequest("i").id(entry.getKey().toString())
+                                               .source("{\"v\":\"" + entry.getValue() + "\"}", XContentType.JSON),
+                entry -> changedAt,
+                config))
+                   .disableSnapshots()
+                   .disableProgressAssertion()
+                   .input(asList(entry(1, "a1"), entry(2, "b1")))
+                   .expectOutput(Collections.emptyList());
+
+        long bulkCount = metrics.value("elasticBulkSize_count");
+        assertThat(bulkCount).isEqualTo(bulks.size());
+        assertThat(metrics.value("elasticBulkSize_le_2")).isEqualTo(bulkCount);
+        assertThat(metrics.value("elasticLagMillis_count")).isEqualTo(2 * bulkCount);
+        assertThat(metrics.value("elasticLagMillis_sum")).isGreaterThanOrEqualTo(2 * bulkCount * 5_000);
+    }
+
+    @Test
+    public void when_externallyVersionedWriteStale_then_shouldSkipIt() {
+        String host = "http://localhost:" + server.getAddress().getPort();
+        ElasticBulkConfig config = new ElasticBulkConfig().setBulkSize(100).setFlushIntervalMillis(60_000);
+
+        TestSupport.verifyProcessor(() -> new CoalescingElasticSinkP<Map.Entry<Integer, String>>(
+                () -> RestClient.builder(HttpHost.create(host)),
+                Map.Entry::getKey,
+                (older, newer) -> newer,
+                entry -> new IndexRequest("i").id(entry.getKey().toString())
+                                               .source("{\"v\":\"" + entry.getValue() + "\"}", XContentType.JSON)
+                                               .versionType(VersionType.EXTERNAL)
+                                               .version(entry.getKey()),
+                entry -> 0,
+                config))
+                   .disableSnapshots()
+                   .disableProgressAssertion()
+                   .input(asList(entry(1, "stale"), entry(2, "b1")))
+                   .expectOutput(Collections.emptyList());
+
+        assertThat(bulks).isNotEmpty();
+        assertThat(metrics.value("elasticStaleWrites")).isEqualTo(bulks.size());
+    }
+
+    @Test
+    public void when_writeWithoutVersionConflicts_then_shouldFail() {
+        String host = "http://localhost:" + server.getAddress().getPort();
+        ElasticBulkConfig config = new ElasticBulkConfig().setBulkSize(100).setFlushIntervalMillis(60_000);
+
+        assertThatThrownBy(() -> TestSupport.verifyProcessor(() -> new CoalescingElasticSinkP<Map.Entry<Integer, String>>(
+                () -> RestClient.builder(HttpHost.create(host)),
+                Map.Entry::getKey,
+                (older, newer) -> newer,
+                entry -> new IndexRequest("i").id(entry.getKey().toString())
+                                               .source("{\"v\":\"" + entry.getValue() + "\"}", XContentType.JSON),
+                entry -> 0,
+                config))
+                   .disableSnapshots()
+                   .disableProgressAssertion()
+                   .input(asList(entry(1, "stale"), entry(2, "b1")))
+                   .expectOutput(Collections.emptyList()))
+                .hasStackTraceContaining("version conflict");
+    }
+
+    private static Map.Entry<Integer, String> entry(Integer key, String value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
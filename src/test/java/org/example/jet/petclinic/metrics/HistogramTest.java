@@ -0,0 +1,65 @@
+package org.example.jet.petclinic.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HistogramTest {
+
+    private TestMetrics metrics;
+
+    @Before
+    public void before() {
+        metrics = TestMetrics.install();
+    }
+
+    @After
+    public void after() {
+        TestMetrics.uninstall();
+    }
+
+    @Test
+    public void when_oneTwoFive_then_shouldReturnBoundsUpToMax() {
+        assertThat(Histogram.oneTwoFive(1, 100)).containsExactly(1, 2, 5, 10, 20, 50, 100);
+        assertThat(Histogram.oneTwoFive(10, 300)).containsExactly(10, 20, 50, 100, 200);
+    }
+
+    @Test
+    public void when_bucket_then_shouldReturnFirstBoundNotBelowValue() {
+        long[] bounds = {1, 2, 5, 10};
+
+        assertThat(Histogram.bucket(bounds, 0)).isEqualTo(0);
+        assertThat(Histogram.bucket(bounds, 1)).isEqualTo(0);
+        assertThat(Histogram.bucket(bounds, 3)).isEqualTo(2);
+        assertThat(Histogram.bucket(bounds, 10)).isEqualTo(3);
+        assertThat(Histogram.bucket(bounds, 11)).isEqualTo(4);
+    }
+
+    @Test
+    public void when_record_then_shouldCountValuesInBuckets() {
+        Histogram histogram = Histogram.sizes("batch");
+
+        histogram.record(1);
+        histogram.record(3);
+        histogram.record(4);
+        histogram.record(1_000_000);
+
+        assertThat(metrics.value("batch_le_1")).isEqualTo(1);
+        assertThat(metrics.value("batch_le_2")).isEqualTo(0);
+        assertThat(metrics.value("batch_le_5")).isEqualTo(2);
+        assertThat(metrics.value("batch_le_100000")).isEqualTo(0);
+        assertThat(metrics.value("batch_count")).isEqualTo(4);
+        assertThat(metrics.value("batch_sum")).isEqualTo(1_000_008);
+    }
+
+    @Test
+    public void when_histogramsShareName_then_shouldShareMetrics() {
+        Histogram.latencyMillis("lag").record(7);
+        Histogram.latencyMillis("lag").record(8);
+
+        assertThat(metrics.value("lag_le_10")).isEqualTo(2);
+        assertThat(metrics.value("lag_count")).isEqualTo(2);
+    }
+}
@@ -0,0 +1,136 @@
+package org.example.jet.petclinic.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrometheusEndpointTest {
+
+    private static final String NAME = "com.hazelcast.jet:type=Metrics,instance=member1,"
+            + "tag0=\"job=0123\",tag1=\"vertex=JoiningState::update\",tag2=\"proc=0\"";
+
+    private final MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+    private final Map<String, Object> attributes = new LinkedHashMap<>();
+
+    @Before
+    public void before() throws Exception {
+        attributes.put("joinOwners", 42L);
+        attributes.put("joinLatencyMicros_le_10", 3L);
+        attributes.put("joinLatencyMicros_le_20", 0L);
+        attributes.put("joinLatencyMicros_le_50", 2L);
+        attributes.put("joinLatencyMicros_count", 6L);
+        attributes.put("joinLatencyMicros_sum", 500L);
+        attributes.put("description", "not a number");
+        mBeanServer.registerMBean(new Attributes(attributes), new ObjectName(NAME));
+    }
+
+    @Test
+    public void when_render_then_shouldLabelMetricsWithTags() throws Exception {
+        String text = PrometheusEndpoint.render(mBeanServer);
+
+        assertThat(text).contains("# TYPE jet_joinOwners untyped\n"
+                + "jet_joinOwners{instance=\"member1\",job=\"0123\",vertex=\"JoiningState::update\",proc=\"0\"} 42\n");
+        assertThat(text).doesNotContain("description");
+    }
+
+    @Test
+    public void when_renderHistogram_then_shouldRenderCumulativeBuckets() throws Exception {
+        String text = PrometheusEndpoint.render(mBeanServer);
+
+        String labels = "instance=\"member1\",job=\"0123\",vertex=\"JoiningState::update\",proc=\"0\"";
+        assertThat(text).contains("# TYPE jet_joinLatencyMicros histogram\n"
+                + "jet_joinLatencyMicros_bucket{" + labels + ",le=\"10\"} 3\n"
+                + "jet_joinLatencyMicros_bucket{" + labels + ",le=\"20\"} 3\n"
+                + "jet_joinLatencyMicros_bucket{" + labels + ",le=\"50\"} 5\n"
+                + "jet_joinLatencyMicros_bucket{" + labels + ",le=\"+Inf\"} 6\n"
+                + "jet_joinLatencyMicros_count{" + labels + "} 6\n"
+                + "jet_joinLatencyMicros_sum{" + labels + "} 500\n");
+        assertThat(text).doesNotContain("jet_joinLatencyMicros_le_");
+    }
+
+    @Test
+    public void when_started_then_shouldServeMetrics() throws Exception {
+        try (PrometheusEndpoint endpoint = PrometheusEndpoint.start(0)) {
+            HttpURLConnection connection = (HttpURLConnection)
+                    new URL("http://localhost:" + endpoint.port() + "/metrics").openConnection();
+
+            assertThat(connection.getResponseCode()).isEqualTo(200);
+            assertThat(connection.getContentType()).startsWith("text/plain");
+            assertThat(read(connection.getInputStream())).doesNotContain("Exception");
+        }
+    }
+
+    private static String read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        in.transferTo(out);
+        in.close();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * MBean with fixed attributes, like the metrics MBeans of Jet
+     */
+    private static final class Attributes implements DynamicMBean {
+
+        private final Map<String, Object> values;
+
+        Attributes(Map<String, Object> values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) {
+            return values.get(attribute);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                list.add(new Attribute(attribute, values.get(attribute)));
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] infos = values.entrySet().stream()
+                    .map(value -> new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(),
+                            value.getKey(), true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(Attributes.class.getName(), "metrics", infos, null, null, null);
+        }
+    }
+}
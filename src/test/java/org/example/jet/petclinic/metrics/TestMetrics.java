@@ -0,0 +1,79 @@
+package org.example.jet.petclinic.metrics;
+
+import com.hazelcast.internal.metrics.MetricDescriptor;
+import com.hazelcast.internal.metrics.MetricsCollectionContext;
+import com.hazelcast.internal.metrics.ProbeLevel;
+import com.hazelcast.internal.metrics.ProbeUnit;
+import com.hazelcast.internal.metrics.impl.MetricDescriptorImpl;
+import com.hazelcast.jet.impl.metrics.MetricsContext;
+import com.hazelcast.jet.impl.metrics.MetricsImpl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * User metrics of code run on the test thread, as if it was a processor thread
+ */
+public final class TestMetrics {
+
+    private final MetricsContext context = new MetricsContext();
+
+    private TestMetrics() {
+    }
+
+    /**
+     * Sets a metrics context for the test thread
+     */
+    public static TestMetrics install() {
+        TestMetrics metrics = new TestMetrics();
+        MetricsImpl.container().setContext(metrics.context);
+        return metrics;
+    }
+
+    public static void uninstall() {
+        MetricsImpl.container().setContext(null);
+    }
+
+    /**
+     * Returns the values of the metrics by their names
+     */
+    public Map<String, Long> values() {
+        Map<String, Long> values = new TreeMap<>();
+        context.provideDynamicMetrics(new MetricDescriptorImpl(new Supplier<MetricDescriptorImpl>() {
+            @Override
+            public MetricDescriptorImpl get() {
+                return new MetricDescriptorImpl(this);
+            }
+        }), new MetricsCollectionContext() {
+            @Override
+            public void collect(MetricDescriptor descriptor, Object source) {
+            }
+
+            @Override
+            public void collect(MetricDescriptor descriptor, String name, ProbeLevel level, ProbeUnit unit,
+                                long value) {
+                values.put(name, value);
+            }
+
+            @Override
+            public void collect(MetricDescriptor descriptor, String name, ProbeLevel level, ProbeUnit unit,
+                                double value) {
+                values.put(name, (long) value);
+            }
+
+            @Override
+            public void collect(MetricDescriptor descriptor, long value) {
+            }
+
+            @Override
+            public void collect(MetricDescriptor descriptor, double value) {
+            }
+        });
+        return values;
+    }
+
+    public long value(String name) {
+        return values().getOrDefault(name, 0L);
+    }
+}
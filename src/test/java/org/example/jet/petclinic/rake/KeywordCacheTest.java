@@ -0,0 +1,98 @@
+package org.example.jet.petclinic.rake;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KeywordCacheTest {
+
+    @Test
+    public void when_put_then_shouldGetCachedKeywords() {
+        KeywordCache cache = new KeywordCache(100);
+
+        assertThat(cache.get("rabies shot")).isNull();
+        cache.put("rabies shot", asList("rabies shot"));
+
+        assertThat(cache.get("rabies shot")).containsExactly("rabies shot");
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.misses()).isEqualTo(1);
+    }
+
+    @Test
+    public void when_put_then_cachedKeywordsShouldBeImmutable() {
+        KeywordCache cache = new KeywordCache(100);
+
+        List<String> keywords = cache.put("spayed", new ArrayList<>(singletonList("spayed"))).keywords;
+
+        assertThatThrownBy(() -> keywords.add("neutered")).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void when_full_then_shouldEvictLeastRecentlyUsed() {
+        // A single entry per segment
+        KeywordCache cache = new KeywordCache(16);
+
+        int evicted = 0;
+        for (int i = 0; i < 1000; i++) {
+            evicted += cache.put("description " + i, singletonList("description")).evicted;
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(16);
+        assertThat(evicted).isEqualTo(1000 - cache.size());
+        assertThat(cache.evictions()).isEqualTo(evicted);
+    }
+
+    @Test
+    public void when_recentlyUsed_then_shouldNotEvict() {
+        KeywordCache cache = new KeywordCache(16 * 2);
+        cache.put("annual checkup", singletonList("annual checkup"));
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(cache.get("annual checkup")).isNotNull();
+            cache.put("description " + i, singletonList("description"));
+        }
+    }
+
+    @Test
+    public void when_sharedByThreads_then_shouldCountAllLookups() throws Exception {
+        KeywordCache cache = new KeywordCache(64);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        String text = "description " + i % 100;
+                        if (cache.get(text) == null) {
+                            cache.put(text, singletonList(text));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(cache.hits() + cache.misses()).isEqualTo(4 * 10_000);
+        assertThat(cache.size()).isLessThanOrEqualTo(64);
+    }
+
+    @Test
+    public void when_nonPositiveSize_then_shouldFail() {
+        assertThatThrownBy(() -> new KeywordCache(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,206 @@
+package org.example.jet.petclinic.rake;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RakeTest {
+
+    private static final String[] DESCRIPTIONS = {
+            "rabies shot",
+            "spayed",
+            "Overall examination. Checked eyes, nose, legs. Gave rabies shot.",
+            "Annual checkup - the dog is in good health, no issues found",
+            "She'd a limp on the rear-left leg; X-ray (2 views) showed no fracture!",
+            "Follow-up: 10mg/kg twice a day for 7 days, re-check ears in 2 weeks",
+            "Owner reports vomiting\tand lethargy since Monday \"after eating grass\"",
+            "Dental cleaning | extracted 3 teeth | antibiotics for the week",
+            "THE CAT IS NOT EATING AND HAS BEEN HIDING UNDER THE BED",
+            "\u00dcberpr\u00fcfung \u2013 Impfung\u2019s done, fa\u00e7ade of the \u00e9the cat, the-end, x-the, _the, 5the",
+            "",
+            "   ",
+            "the of and"
+    };
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz ABCXYZ 0123456789 .,;:!?-_+/\\|'\"()\t\n" +
+            "\u2019\u2013\u00e9\u00fc\u00df\u0301";
+    private static final String[] FRAGMENTS = {"the", "a", "an", "of", "is", "it", "rabies", "shot", " ", "-", "'s", "i"};
+
+    private final Rake rake = new Rake("en");
+    private final RegexRake reference = new RegexRake("en");
+
+    @Test
+    public void when_getKeywordsFromText_then_shouldMatchRegexImplementation() {
+        for (String description : DESCRIPTIONS) {
+            assertSameKeywords(description);
+        }
+    }
+
+    @Test
+    public void when_getKeywordsFromRandomText_then_shouldMatchRegexImplementation() {
+        Random random = new Random(42);
+        for (int i = 0; i < 5_000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int tokens = random.nextInt(40);
+            for (int j = 0; j < tokens; j++) {
+                if (random.nextBoolean()) {
+                    sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                } else {
+                    sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+            }
+            assertSameKeywords(sb.toString());
+        }
+    }
+
+    @Test
+    public void when_getKeywordsFromLongText_then_shouldMatchRegexImplementation() {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3_000; i++) {
+            sb.append("word").append(random.nextInt(500)).append(random.nextInt(4) == 0 ? ", " : " ");
+            if (random.nextInt(5) == 0) {
+                sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]).append(' ');
+            }
+        }
+
+        assertSameKeywords(sb.toString());
+        assertSameKeywords(DESCRIPTIONS[2]);
+    }
+
+    @Test
+    public void when_getKeywordsFromText_then_shouldDropStopWords() {
+        LinkedHashMap<String, Double> keywords = rake.getKeywordsFromText("Gave the rabies shot to a dog");
+
+        assertThat(keywords.keySet()).containsExactly("rabies shot", "dog", "gave");
+    }
+
+    @Test
+    public void when_topKeywords_then_shouldReturnFirstKeywordsFromText() {
+        assertThat(rake.topKeywords("Gave the rabies shot to a dog", 2)).containsExactly("rabies shot", "dog");
+        assertThat(rake.topKeywords("Gave the rabies shot to a dog", 0)).isEmpty();
+        assertThat(rake.topKeywords("the of and", 5)).isEmpty();
+    }
+
+    @Test
+    public void when_topKeywordsWithTies_then_shouldKeepOrderOfKeywordsFromText() {
+        String text = "fever, cough, sneezing, limp, itch, rash, fever";
+
+        assertThat(rake.topKeywords(text, 3))
+                .containsExactlyElementsOf(first(reference.getKeywordsFromText(text), 3));
+    }
+
+    private void assertSameKeywords(String text) {
+        LinkedHashMap<String, Double> expected = reference.getKeywordsFromText(text);
+        LinkedHashMap<String, Double> actual = rake.getKeywordsFromText(text);
+
+        assertThat(new ArrayList<>(actual.entrySet()))
+                .describedAs("keywords of '%s'", text)
+                .containsExactlyElementsOf(expected.entrySet());
+
+        for (int k = 0; k <= 6; k++) {
+            assertThat(rake.topKeywords(text, k))
+                    .describedAs("top %d keywords of '%s'", k, text)
+                    .containsExactlyElementsOf(first(expected, k));
+        }
+    }
+
+    private static List<String> first(LinkedHashMap<String, Double> keywords, int k) {
+        List<String> result = new ArrayList<>(keywords.keySet());
+        return result.subList(0, Math.min(k, result.size()));
+    }
+
+    /**
+     * The original regex based implementation, used as a reference for the output of {@link Rake}
+     */
+    private static class RegexRake {
+
+        private final String stopWordsPattern;
+
+        RegexRake(String language) {
+            List<String> regexList = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    RegexRake.class.getResourceAsStream("/data/" + language + ".txt")))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    regexList.add("\\b" + line.trim() + "(?![\\w-])");
+                }
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+            stopWordsPattern = String.join("|", regexList);
+        }
+
+        LinkedHashMap<String, Double> getKeywordsFromText(String text) {
+            String[] sentences = text.split("[.!?,;:\\t\\\\\\\\\"\\\\(\\\\)\\\\'\\u2019\\u2013]|\\\\s\\\\-\\\\s");
+
+            List<String> phrases = new ArrayList<>();
+            for (String sentence : sentences) {
+                for (String phrase : sentence.trim().replaceAll(stopWordsPattern, "|").split("\\|")) {
+                    phrase = phrase.trim().toLowerCase();
+                    if (phrase.length() > 0) {
+                        phrases.add(phrase);
+                    }
+                }
+            }
+
+            LinkedHashMap<String, Integer> wordFrequencies = new LinkedHashMap<>();
+            LinkedHashMap<String, Integer> wordDegrees = new LinkedHashMap<>();
+            LinkedHashMap<String, Double> wordScores = new LinkedHashMap<>();
+            for (String phrase : phrases) {
+                String[] words = separateWords(phrase);
+                int degree = words.length - 1;
+                for (String word : words) {
+                    wordFrequencies.put(word, wordDegrees.getOrDefault(word, 0) + 1);
+                    wordDegrees.put(word, wordFrequencies.getOrDefault(word, 0) + degree);
+                }
+            }
+            for (String item : wordFrequencies.keySet()) {
+                wordDegrees.put(item, wordDegrees.get(item) + wordFrequencies.get(item));
+                wordScores.put(item, wordDegrees.get(item) / (wordFrequencies.get(item) * 1.0));
+            }
+
+            LinkedHashMap<String, Double> candidates = new LinkedHashMap<>();
+            for (String phrase : phrases) {
+                double score = 0.0;
+                for (String word : separateWords(phrase)) {
+                    score += wordScores.get(word);
+                }
+                candidates.put(phrase, score);
+            }
+
+            List<Map.Entry<String, Double>> list = new LinkedList<>(candidates.entrySet());
+            Collections.sort(list, Comparator.comparing(Map.Entry::getValue));
+            Collections.reverse(list);
+            LinkedHashMap<String, Double> result = new LinkedHashMap<>();
+            for (Iterator<Map.Entry<String, Double>> it = list.iterator(); it.hasNext(); ) {
+                Map.Entry<String, Double> entry = it.next();
+                result.put(entry.getKey(), entry.getValue());
+            }
+            return result;
+        }
+
+        private static String[] separateWords(String text) {
+            List<String> words = new ArrayList<>();
+            for (String word : text.split("[^a-zA-Z0-9_\\\\+/-\\\\]")) {
+                String current = word.trim().toLowerCase();
+                if (current.length() > 0 && !current.matches("-?\\d+(\\.\\d+)?")) {
+                    words.add(current);
+                }
+            }
+            return words.toArray(new String[0]);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.example.jet.petclinic.search;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.jet.core.test.TestInbox;
+import com.hazelcast.jet.core.test.TestOutbox;
+import com.hazelcast.jet.core.test.TestProcessorContext;
+import com.hazelcast.replicatedmap.ReplicatedMap;
+import com.hazelcast.test.TestHazelcastInstanceFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.hazelcast.jet.Util.entry;
+import static com.hazelcast.test.HazelcastTestSupport.assertTrueEventually;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeywordIndexTest {
+
+    private TestHazelcastInstanceFactory factory;
+    private ReplicatedMap<String, byte[]> map;
+    private KeywordIndexSinkP.Writer writer;
+    private KeywordIndex index;
+
+    @Before
+    public void setUp() {
+        factory = new TestHazelcastInstanceFactory(1);
+        HazelcastInstance instance = factory.newHazelcastInstance();
+        map = instance.getReplicatedMap("keywords");
+        writer = new KeywordIndexSinkP.Writer(map);
+        index = new KeywordIndex(instance, "keywords");
+    }
+
+    @After
+    public void tearDown() {
+        index.close();
+        factory.shutdownAll();
+    }
+
+    @Test
+    public void when_flush_then_shouldWriteLatestPostingListPerTerm() {
+        TermPostings postings = new TermPostings();
+        apply(postings, TermChange.added("rabies", 1));
+        apply(postings, TermChange.added("rabies", 2));
+        apply(postings, TermChange.added("rabies", 3));
+        apply(postings, TermChange.removed("rabies", 2));
+        writer.flush();
+
+        assertThat(index.term("rabies").toArray()).containsExactly(1, 3);
+    }
+
+    @Test
+    public void when_changeHasNoEffect_then_shouldNotEmitPostingList() {
+        TermPostings postings = new TermPostings();
+        postings.apply(TermChange.added("rabies", 1));
+
+        assertThat(postings.apply(TermChange.added("rabies", 1))).isNull();
+        assertThat(postings.apply(TermChange.removed("rabies", 2))).isNull();
+    }
+
+    @Test
+    public void when_allDocumentsRemoved_then_shouldRemoveTerm() {
+        TermPostings postings = new TermPostings();
+        apply(postings, TermChange.added("rabies", 1));
+        writer.flush();
+        apply(postings, TermChange.removed("rabies", 1));
+        writer.flush();
+
+        assertThat(map).isEmpty();
+        assertThat(index.term("rabies").isEmpty()).isTrue();
+    }
+
+    @Test
+    public void when_changesBuffered_then_flushShouldApplyLatestChangePerDocument() {
+        TermPostings postings = new TermPostings(PostingList.of(1, 2));
+        postings.buffer(TermChange.added("rabies", 3));
+        postings.buffer(TermChange.removed("rabies", 3));
+        postings.buffer(TermChange.removed("rabies", 1));
+        postings.buffer(TermChange.added("rabies", 1));
+        postings.buffer(TermChange.added("rabies", 4));
+
+        assertThat(postings.flush().toArray()).containsExactly(1, 2, 4);
+        assertThat(postings.hasBuffered()).isFalse();
+        postings.buffer(TermChange.added("rabies", 4));
+        assertThat(postings.flush()).isNull();
+    }
+
+    @Test
+    public void when_changesOfTermInOneInbox_then_shouldEmitPostingListOnce() throws Exception {
+        TermPostingsP processor = new TermPostingsP();
+        TestOutbox outbox = new TestOutbox(16);
+        processor.init(outbox, new TestProcessorContext());
+        TestInbox inbox = new TestInbox();
+        inbox.addAll(asList(TermChange.added("rabies", 1), TermChange.added("shot", 1),
+                TermChange.added("rabies", 2), TermChange.removed("rabies", 1)));
+
+        processor.process(0, inbox);
+
+        assertThat(inbox).isEmpty();
+        assertThat(outbox.queue(0)).containsExactly(entry("rabies", PostingList.of(2)), entry("shot", PostingList.of(1)));
+    }
+
+    @Test
+    public void when_largePostingListWrittenRecently_then_shouldWaitForInterval() {
+        int[] ids = new int[KeywordIndexSinkP.Writer.LARGE_POSTINGS];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(KeywordIndexSinkP.Writer.LARGE_WRITE_INTERVAL_MILLIS);
+        writer.add(entry("rabies", PostingList.of(ids)));
+        writer.flush(0, false);
+
+        int[] moreIds = Arrays.copyOf(ids, ids.length + 1);
+        moreIds[ids.length] = ids.length;
+        writer.add(entry("rabies", PostingList.of(moreIds)));
+        writer.add(entry("shot", PostingList.of(1)));
+        writer.flush(1, false);
+
+        assertThat(writer.pendingCount()).isEqualTo(1);
+        assertThat(PostingList.decode(map.get("rabies")).size()).isEqualTo(ids.length);
+        writer.flush(intervalNanos, false);
+        assertThat(writer.pendingCount()).isZero();
+        assertThat(PostingList.decode(map.get("rabies")).size()).isEqualTo(ids.length + 1);
+    }
+
+    @Test
+    public void when_queryAllTerms_then_shouldFindDocumentsWithEveryTerm() {
+        add("rabies", 1, 2, 3);
+        add("shot", 2, 3, 4);
+        add("leo", 3);
+
+        assertThat(index.all("rabies", "shot").toArray()).containsExactly(2, 3);
+        assertThat(index.all("rabies", "shot", "leo").toArray()).containsExactly(3);
+        assertThat(index.all("rabies", "missing").isEmpty()).isTrue();
+    }
+
+    @Test
+    public void when_queryPrefix_then_shouldFindDocumentsOfAllMatchingTerms() {
+        add("rabies", 1);
+        add("rabbit", 2);
+        add("radiology", 3);
+        add("rat", 4);
+
+        // Terms reach the sorted set of the index through map events
+        assertTrueEventually(() -> assertThat(index.termCount()).isEqualTo(4));
+        assertThat(index.prefix("rab").toArray()).containsExactly(1, 2);
+        assertThat(index.prefix("x").isEmpty()).isTrue();
+    }
+
+    @Test
+    public void when_search_then_shouldMatchLastWordAsPrefix() {
+        add("coleman", 1, 2);
+        add("samantha", 1);
+        add("sam", 2);
+        add("max", 3);
+        assertTrueEventually(() -> assertThat(index.termCount()).isEqualTo(4));
+
+        assertThat(index.search("Coleman Sa").toArray()).containsExactly(1, 2);
+        assertThat(index.search("coleman, samantha").toArray()).containsExactly(1);
+        assertThat(index.search(" ").isEmpty()).isTrue();
+    }
+
+    private void add(String term, int... docIds) {
+        writer.add(entry(term, PostingList.of(docIds)));
+        writer.flush();
+    }
+
+    private void apply(TermPostings postings, TermChange change) {
+        writer.add(entry(change.term, postings.apply(change)));
+    }
+}
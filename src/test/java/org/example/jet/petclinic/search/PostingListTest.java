@@ -0,0 +1,64 @@
+package org.example.jet.petclinic.search;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostingListTest {
+
+    @Test
+    public void when_of_then_shouldSortAndRemoveDuplicates() {
+        PostingList list = PostingList.of(7, 3, 7, 1);
+
+        assertThat(list.toArray()).containsExactly(1, 3, 7);
+        assertThat(list.contains(3)).isTrue();
+        assertThat(list.contains(4)).isFalse();
+    }
+
+    @Test
+    public void when_encoded_then_shouldDecodeSameIds() {
+        PostingList list = PostingList.of(0, 1, 127, 128, 100_000, Integer.MAX_VALUE);
+
+        assertThat(PostingList.decode(list.encode())).isEqualTo(list);
+        assertThat(PostingList.decode(PostingList.EMPTY.encode())).isEqualTo(PostingList.EMPTY);
+    }
+
+    @Test
+    public void when_idsAreDense_then_shouldEncodeOneBytePerId() {
+        int[] ids = new int[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 50_000 + i * 3;
+        }
+
+        byte[] encoded = PostingList.of(ids).encode();
+
+        // Count and first id take 2 and 3 bytes
+        assertThat(encoded.length).isEqualTo(2 + 3 + 999);
+    }
+
+    @Test
+    public void when_and_then_shouldKeepCommonIds() {
+        assertThat(PostingList.of(1, 3, 5, 7).and(PostingList.of(2, 3, 7, 8)).toArray()).containsExactly(3, 7);
+        assertThat(PostingList.of(1, 3).and(PostingList.EMPTY).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void when_or_then_shouldKeepAllIds() {
+        assertThat(PostingList.of(1, 3, 5).or(PostingList.of(2, 3, 8)).toArray()).containsExactly(1, 2, 3, 5, 8);
+    }
+
+    @Test
+    public void when_update_then_shouldAddAndRemoveIds() {
+        PostingList updated = PostingList.of(1, 3, 5).update(PostingList.of(4, 6), PostingList.of(3, 6));
+
+        assertThat(updated.toArray()).containsExactly(1, 4, 5);
+    }
+
+    @Test
+    public void when_updateChangesNothing_then_shouldReturnSameList() {
+        PostingList list = PostingList.of(1, 3, 5);
+
+        assertThat(list.update(PostingList.of(3), PostingList.of(4))).isSameAs(list);
+        assertThat(list.update(PostingList.of(2), PostingList.of(3)).toArray()).containsExactly(1, 2, 5);
+    }
+}
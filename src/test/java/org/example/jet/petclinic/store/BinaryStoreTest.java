@@ -0,0 +1,153 @@
+package org.example.jet.petclinic.store;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class BinaryStoreTest {
+
+    @Parameter
+    public BinaryStore.Memory memory;
+
+    @Parameters(name = "{0}")
+    public static Object[] memories() {
+        return BinaryStore.Memory.values();
+    }
+
+    @Test
+    public void when_putAndGet_then_shouldReturnCopyOfValue() {
+        BinaryStore store = new BinaryStore(memory);
+        byte[] value = {1, 2, 3};
+
+        store.put(7, value);
+        value[0] = 42;
+
+        assertThat(store.get(7)).containsExactly(1, 2, 3);
+        assertThat(store.get(8)).isNull();
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void when_manyUpdates_then_shouldCompactAndKeepLatestValues() {
+        BinaryStore store = new BinaryStore(memory);
+        Map<Integer, byte[]> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 50_000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextInt(10) == 0) {
+                assertThat(store.remove(key)).isEqualTo(expected.remove(key) != null);
+            } else {
+                byte[] value = new byte[random.nextInt(300)];
+                random.nextBytes(value);
+                store.put(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        assertThat(store.size()).isEqualTo(expected.size());
+        for (Map.Entry<Integer, byte[]> entry : expected.entrySet()) {
+            assertThat(store.get(entry.getKey())).isEqualTo(entry.getValue());
+        }
+        // 50k updates of ~150 bytes would be ~7.5 MB without compaction
+        assertThat(store.allocatedBytes()).isLessThan(4 * 1024 * 1024);
+        assertThat(store.liveBytes()).isEqualTo(expected.values().stream().mapToLong(v -> v.length + 8).sum());
+    }
+
+    @Test
+    public void when_valueLargerThanChunk_then_shouldStoreIt() {
+        BinaryStore store = new BinaryStore(memory);
+        byte[] value = new byte[1 << 20];
+        Arrays.fill(value, (byte) 7);
+
+        store.put(1, new byte[]{1});
+        store.put(2, value);
+
+        assertThat(store.get(2)).isEqualTo(value);
+        assertThat(store.get(1)).containsExactly(1);
+    }
+
+    @Test
+    public void when_serialized_then_shouldKeepValues() throws Exception {
+        BinaryStore store = new BinaryStore(memory);
+        for (int key = 0; key < 100; key++) {
+            store.put(key, new byte[]{(byte) key, (byte) (key + 1)});
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(store);
+        }
+        BinaryStore copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (BinaryStore) in.readObject();
+        }
+
+        assertThat(copy.memory()).isEqualTo(memory);
+        assertThat(copy.size()).isEqualTo(100);
+        assertThat(copy.get(99)).containsExactly(99, 100);
+    }
+
+    @Test
+    public void when_movedToOtherMemory_then_shouldKeepValues() {
+        BinaryStore store = new BinaryStore(BinaryStore.Memory.HEAP);
+        for (int key = 0; key < 100; key++) {
+            store.put(key, new byte[]{(byte) key, (byte) (key + 1)});
+        }
+
+        BinaryStore moved = store.moveTo(memory, null);
+
+        assertThat(moved.memory()).isEqualTo(memory);
+        assertThat(moved.size()).isEqualTo(100);
+        assertThat(moved.liveBytes()).isEqualTo(100 * (8 + 2));
+        assertThat(moved.get(99)).containsExactly(99, 100);
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    public void when_cleared_then_shouldReleaseChunksAndStayUsable() {
+        BinaryStore store = new BinaryStore(memory);
+        for (int key = 0; key < 1000; key++) {
+            store.put(key, new byte[100]);
+        }
+
+        store.clear();
+        store.put(7, new byte[]{7});
+
+        assertThat(store.allocatedBytes()).isEqualTo(1 << 16);
+        assertThat(store.get(7)).containsExactly(7);
+        assertThat(store.get(8)).isNull();
+    }
+
+    @Test
+    public void when_storeMapped_then_shouldNotLeaveFiles() throws Exception {
+        Path directory = Files.createTempDirectory("binary-store-test");
+        BinaryStore store = new BinaryStore(memory, directory.toString());
+        for (int key = 0; key < 10_000; key++) {
+            store.put(key, new byte[100]);
+        }
+
+        assertThat(store.get(9_999)).hasSize(100);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.jet.petclinic.store;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntLongMapTest {
+
+    private static final long MISSING = -1;
+
+    private final IntLongMap map = new IntLongMap(MISSING);
+
+    @Test
+    public void when_get_then_shouldReturnMissingValueForAbsentKey() {
+        assertThat(map.get(42)).isEqualTo(MISSING);
+        assertThat(map.get(0)).isEqualTo(MISSING);
+        assertThat(map.containsKey(42)).isFalse();
+    }
+
+    @Test
+    public void when_putAndRemove_then_shouldBehaveLikeHashMap() {
+        Map<Integer, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            // Small key range to get collisions, removals and the free key
+            int key = random.nextInt(2_000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key)).isEqualTo(expected.getOrDefault(key, MISSING));
+                expected.remove(key);
+            } else {
+                long value = random.nextLong();
+                assertThat(map.put(key, value)).isEqualTo(expected.getOrDefault(key, MISSING));
+                expected.put(key, value);
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (int key = -100; key < 1_900; key++) {
+            assertThat(map.get(key)).isEqualTo(expected.getOrDefault(key, MISSING));
+        }
+
+        Map<Integer, Long> iterated = new HashMap<>();
+        map.forEach(iterated::put);
+        assertThat(iterated).isEqualTo(expected);
+    }
+
+    @Test
+    public void when_serialized_then_shouldKeepEntries() throws Exception {
+        for (int key = 0; key < 1_000; key++) {
+            map.put(key, key * 10L);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(map);
+        }
+        IntLongMap copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (IntLongMap) in.readObject();
+        }
+
+        assertThat(copy.size()).isEqualTo(1_000);
+        assertThat(copy.get(0)).isEqualTo(0L);
+        assertThat(copy.get(999)).isEqualTo(9990L);
+        assertThat(copy.get(1_000)).isEqualTo(MISSING);
+    }
+}